@@ -0,0 +1,344 @@
+package com.ansonator.query;
+
+import com.ansonator.query.cell.NumericAggregate;
+import com.ansonator.query.plan.AggregateNode;
+import com.ansonator.query.plan.BeanSource;
+import com.ansonator.query.plan.FilterNode;
+import com.ansonator.query.plan.NamedSource;
+import com.ansonator.query.plan.Optimizer;
+import com.ansonator.query.plan.PeekNode;
+import com.ansonator.query.plan.PlanCompiler;
+import com.ansonator.query.plan.PlanNode;
+import com.ansonator.query.plan.ProjectNode;
+import com.ansonator.query.plan.QueryContext;
+import com.ansonator.query.plan.RowListSource;
+import com.ansonator.query.plan.ScanNode;
+import com.ansonator.query.plan.Schema;
+import com.ansonator.query.row.Row;
+import com.ansonator.query.sort.RowComparators;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The result of a {@link Query#groupBy}, kept up to date as items are inserted into and deleted
+ * from its input. Each change only touches the groups of the changed items, so keeping the view
+ * current costs time proportional to the changes rather than to the whole input.
+ *
+ * <p>Sums are maintained by subtracting deleted values. A sum is a {@link Long} when its values are
+ * integral and a {@link Double} otherwise, even for a group of one row. Since subtracting a double
+ * does not undo adding it, a sum of doubles is kept exactly, as a {@link BigDecimal}, and rounded
+ * to a double after each change. Minimums and maximums cannot be undone this way: when the current
+ * minimum or maximum of a group is deleted, it is recomputed from the group's remaining rows. The
+ * view only retains rows for this purpose, i.e. when it has a {@link
+ * com.ansonator.query.cell.Aggregator#min} or {@link com.ansonator.query.cell.Aggregator#max}.
+ * Other aggregators cannot be maintained.
+ *
+ * <p>Between the source and the {@code groupBy}, the query may only filter, select and peek. See
+ * {@link Query#materialize}. Instances are thread-safe.
+ */
+public final class IncrementalView {
+  private static final String DELTA = "delta";
+
+  private final Schema schema;
+  private final PreparedQuery input;
+  private final int[] groupBy;
+  private final Map<Integer, BinaryOperator<Object>> accumulators = new HashMap<>();
+  // As accumulators, but sums are left to addToSum
+  private final Map<Integer, BinaryOperator<Object>> merging = new HashMap<>();
+  // Whether each group retains its rows, to recompute its minimums and maximums
+  private final boolean retainRows;
+  private final Map<Row, Group> groups = new HashMap<>();
+
+  private static final class Group {
+    private final Row row;
+    private long size = 1;
+    // By column, the number of rows whose value is not null
+    private final long[] values;
+    // By column, the exact sum once it has a value which is not integral
+    private final ExactSum[] sums;
+    private final Multiset<Row> rows;
+
+    private Group(Row row, boolean retainRows) {
+      this.row = row;
+      this.values = new long[row.vals.length];
+      this.sums = new ExactSum[row.vals.length];
+      this.rows = retainRows ? HashMultiset.create() : null;
+    }
+  }
+
+  /** A sum which, unlike a double, can be undone. Non-finite values are counted separately. */
+  private static final class ExactSum {
+    private BigDecimal finite;
+    // The number of values which are not integral, NaN, and infinite
+    private long doubles = 0;
+    private long nans = 0;
+    private long positive = 0;
+    private long negative = 0;
+
+    private ExactSum(long sum) {
+      this.finite = BigDecimal.valueOf(sum);
+    }
+
+    private void add(Object val, int sign) {
+      if (!NumericAggregate.isIntegral(val)) {
+        doubles += sign;
+      }
+      double value = ((Number) val).doubleValue();
+      if (Double.isNaN(value)) {
+        nans += sign;
+      } else if (value == Double.POSITIVE_INFINITY) {
+        positive += sign;
+      } else if (value == Double.NEGATIVE_INFINITY) {
+        negative += sign;
+      } else {
+        BigDecimal exact =
+            NumericAggregate.isIntegral(val)
+                ? BigDecimal.valueOf(((Number) val).longValue())
+                : new BigDecimal(value);
+        finite = sign > 0 ? finite.add(exact) : finite.subtract(exact);
+      }
+    }
+
+    private double value() {
+      if (nans > 0 || (positive > 0 && negative > 0)) {
+        return Double.NaN;
+      } else if (positive > 0) {
+        return Double.POSITIVE_INFINITY;
+      } else if (negative > 0) {
+        return Double.NEGATIVE_INFINITY;
+      }
+      return finite.doubleValue();
+    }
+  }
+
+  IncrementalView(PlanNode plan, Function<QueryContext, PlanCompiler> compilers) {
+    if (!(plan instanceof AggregateNode)) {
+      throw new IllegalArgumentException(
+          String.format("Cannot materialize [%s]. Only a groupBy can be materialized", plan));
+    }
+    AggregateNode aggregate = (AggregateNode) plan;
+    this.schema = aggregate.getSchema();
+    this.groupBy = schema.indexesOf(aggregate.getGroupBy());
+    aggregate
+        .getAccumulators()
+        .forEach(
+            (column, accumulator) -> {
+              if (!(accumulator instanceof NumericAggregate)) {
+                throw new IllegalArgumentException(
+                    String.format(
+                        "Cannot maintain the accumulator for column [%s]. Use Aggregator.sum, min"
+                            + " or max",
+                        column));
+              }
+              if (schema.contains(column)) {
+                accumulators.put(schema.indexOf(column), accumulator);
+                merging.put(
+                    schema.indexOf(column),
+                    accumulator == NumericAggregate.SUM ? (a, b) -> a : accumulator);
+              }
+            });
+    this.retainRows = accumulators.values().stream().anyMatch(a -> a != NumericAggregate.SUM);
+    ScanNode scan = findScan(aggregate.getChild());
+    PlanNode delta =
+        replaceScan(aggregate.getChild(), scan.withSource(new NamedSource<>(DELTA, typeOf(scan))));
+    this.input = new PreparedQuery(new Optimizer().optimize(delta), compilers);
+    if (scan.getSource() instanceof BeanSource) {
+      insert(((BeanSource<?>) scan.getSource()).items());
+    }
+  }
+
+  private static ScanNode findScan(PlanNode node) {
+    if (node instanceof ScanNode) {
+      return (ScanNode) node;
+    } else if (node instanceof FilterNode
+        || node instanceof ProjectNode
+        || node instanceof PeekNode) {
+      return findScan(node.getChild());
+    }
+    throw new IllegalArgumentException(
+        String.format("Cannot maintain [%s] incrementally. Only where, select and peek can", node));
+  }
+
+  private static PlanNode replaceScan(PlanNode node, ScanNode scan) {
+    return node instanceof ScanNode
+        ? scan
+        : node.withChildren(List.of(replaceScan(node.getChild(), scan)));
+  }
+
+  private static Class<?> typeOf(ScanNode scan) {
+    if (scan.getSource() instanceof BeanSource) {
+      return ((BeanSource<?>) scan.getSource()).getType();
+    } else if (scan.getSource() instanceof NamedSource) {
+      return ((NamedSource<?>) scan.getSource()).getType();
+    }
+    throw new IllegalArgumentException(
+        String.format("Cannot maintain a view of [%s] incrementally", scan.getSource()));
+  }
+
+  public Schema getSchema() {
+    return schema;
+  }
+
+  /**
+   * @param items of the type passed to {@link Query#from}. Consumed.
+   */
+  public synchronized void insert(Stream<?> items) {
+    try (Stream<Row> rows = input.stream(Map.of(DELTA, items), Map.of())) {
+      rows.forEach(this::insert);
+    }
+  }
+
+  /**
+   * @param items of the type passed to {@link Query#from}, each equal to an item which was inserted
+   *     earlier. Consumed.
+   */
+  public synchronized void delete(Stream<?> items) {
+    try (Stream<Row> rows = input.stream(Map.of(DELTA, items), Map.of())) {
+      rows.forEach(this::delete);
+    }
+  }
+
+  /**
+   * @return the number of groups
+   */
+  public synchronized int size() {
+    return groups.size();
+  }
+
+  /**
+   * @return a query over a copy of the current groups, which later changes do not affect
+   */
+  public synchronized Query snapshot() {
+    List<Row> rows =
+        groups.values().stream()
+            .map(group -> new Row(group.row.vals.clone()))
+            .collect(Collectors.toList());
+    return new Query(ScanNode.of(new RowListSource(rows, schema)));
+  }
+
+  private void insert(Row row) {
+    Row key = new Row(row, groupBy);
+    Group group = groups.get(key);
+    if (group == null) {
+      Object[] vals = row.vals.clone();
+      group = new Group(new Row(vals), retainRows);
+      for (Map.Entry<Integer, BinaryOperator<Object>> entry : accumulators.entrySet()) {
+        int index = entry.getKey();
+        if (entry.getValue() == NumericAggregate.SUM) {
+          vals[index] = null;
+          addToSum(group, index, row.vals[index]);
+        }
+        group.values[index] = row.vals[index] == null ? 0 : 1;
+      }
+      groups.put(key, group);
+    } else {
+      group.row.merge(row, merging);
+      group.size++;
+      for (Map.Entry<Integer, BinaryOperator<Object>> entry : accumulators.entrySet()) {
+        int index = entry.getKey();
+        if (entry.getValue() == NumericAggregate.SUM) {
+          addToSum(group, index, row.vals[index]);
+        }
+        group.values[index] += row.vals[index] == null ? 0 : 1;
+      }
+    }
+    if (group.rows != null) {
+      group.rows.add(row);
+    }
+  }
+
+  private void delete(Row row) {
+    Row key = new Row(row, groupBy);
+    Group group = groups.get(key);
+    if (group == null || (group.rows != null && !group.rows.remove(row))) {
+      throw new IllegalArgumentException(String.format("Row %s is not in the view", row));
+    }
+    if (--group.size == 0) {
+      groups.remove(key);
+      return;
+    }
+    boolean recompute = false;
+    for (Map.Entry<Integer, BinaryOperator<Object>> entry : accumulators.entrySet()) {
+      int index = entry.getKey();
+      Object val = row.vals[index];
+      if (val == null) {
+        continue;
+      } else if (--group.values[index] == 0) {
+        group.row.vals[index] = null;
+        group.sums[index] = null;
+      } else if (entry.getValue() == NumericAggregate.SUM) {
+        subtractFromSum(group, index, val);
+      } else if (RowComparators.compareValues(val, group.row.vals[index]) == 0) {
+        recompute = true;
+      }
+    }
+    if (recompute) {
+      recompute(group);
+    }
+  }
+
+  /** Recompute the minimums and maximums of {@code group} from its rows. */
+  private void recompute(Group group) {
+    accumulators.forEach(
+        (index, accumulator) -> {
+          if (accumulator != NumericAggregate.SUM) {
+            Object result = null;
+            for (Row row : group.rows) {
+              result = accumulator.apply(result, row.vals[index]);
+            }
+            group.row.vals[index] = result;
+          }
+        });
+  }
+
+  private static void addToSum(Group group, int index, Object val) {
+    if (val == null) {
+      return;
+    } else if (!(val instanceof Number)) {
+      throw new IllegalArgumentException(String.format("Cannot sum [%s]", val.getClass()));
+    }
+    Object[] vals = group.row.vals;
+    ExactSum exact = group.sums[index];
+    if (exact == null && NumericAggregate.isIntegral(val)) {
+      long sum = vals[index] == null ? 0 : (Long) vals[index];
+      vals[index] = sum + ((Number) val).longValue();
+      return;
+    }
+    if (exact == null) {
+      exact = new ExactSum(vals[index] == null ? 0 : (Long) vals[index]);
+      group.sums[index] = exact;
+    }
+    exact.add(val, 1);
+    vals[index] = exact.value();
+  }
+
+  private static void subtractFromSum(Group group, int index, Object val) {
+    Object[] vals = group.row.vals;
+    ExactSum exact = group.sums[index];
+    if (exact == null) {
+      vals[index] = (Long) vals[index] - ((Number) val).longValue();
+      return;
+    }
+    exact.add(val, -1);
+    if (exact.doubles == 0) {
+      // Only integral values are left
+      vals[index] = exact.finite.longValueExact();
+      group.sums[index] = null;
+    } else {
+      vals[index] = exact.value();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("IncrementalView%s", schema);
+  }
+}
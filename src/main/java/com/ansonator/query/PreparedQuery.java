@@ -0,0 +1,146 @@
+package com.ansonator.query;
+
+import com.ansonator.query.plan.BeanSource;
+import com.ansonator.query.plan.ExplainNode;
+import com.ansonator.query.plan.FilterNode;
+import com.ansonator.query.plan.NamedSource;
+import com.ansonator.query.plan.PlanCompiler;
+import com.ansonator.query.plan.PlanFingerprint;
+import com.ansonator.query.plan.PlanNode;
+import com.ansonator.query.plan.QueryContext;
+import com.ansonator.query.plan.ScanNode;
+import com.ansonator.query.plan.Schema;
+import com.ansonator.query.row.Parameter;
+import com.ansonator.query.row.Row;
+import com.google.common.collect.ImmutableSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.Getter;
+
+/**
+ * A {@link Query} which was optimized once, by {@link Query#prepare}, and can then be executed any
+ * number of times, including concurrently. Each execution supplies a stream for every named source
+ * ({@link Query#from(String, Class)}) and a value for every parameter ({@link Query#param}). A
+ * query reading a {@link Query#from(Stream, Class) stream} cannot be prepared, since only its first
+ * execution could read it.
+ *
+ * <p>Instances are immutable. Executing one only substitutes the sources and parameters into the
+ * optimized plan and compiles the result, so the plan is never re-optimized. In compiled mode, the
+ * generated classes are reused as well, since binding a parameter does not change the shape of the
+ * plan.
+ */
+public final class PreparedQuery {
+  private final PlanNode plan;
+  private final Function<QueryContext, PlanCompiler> compilers;
+  /** Names of the sources to bind on each execution. */
+  @Getter private final Set<String> sources;
+  /** Names of the parameters to bind on each execution. */
+  @Getter private final Set<String> parameters;
+  /** Identifies this query's results. See {@link com.ansonator.query.cache.ResultCache}. */
+  @Getter private final PlanFingerprint fingerprint;
+
+  PreparedQuery(PlanNode plan, Function<QueryContext, PlanCompiler> compilers) {
+    this.plan = plan;
+    this.compilers = compilers;
+    Set<String> sources = new LinkedHashSet<>();
+    Set<String> parameters = new LinkedHashSet<>();
+    collect(plan, sources, parameters);
+    this.sources = ImmutableSet.copyOf(sources);
+    this.parameters = ImmutableSet.copyOf(parameters);
+    this.fingerprint = PlanFingerprint.of(plan);
+  }
+
+  private static void collect(PlanNode node, Set<String> sources, Set<String> parameters) {
+    if (node instanceof ScanNode && ((ScanNode) node).getSource() instanceof NamedSource) {
+      String name = ((NamedSource<?>) ((ScanNode) node).getSource()).getName();
+      if (!sources.add(name)) {
+        throw new IllegalArgumentException(
+            String.format("Source [%s] is read more than once", name));
+      }
+    } else if (node instanceof ScanNode && ((ScanNode) node).getSource() instanceof BeanSource) {
+      // A stream can only be read by the first execution
+      throw new IllegalArgumentException(
+          String.format(
+              "Stream of [%s] cannot be prepared. Use Query.from(String, Class) instead",
+              ((BeanSource<?>) ((ScanNode) node).getSource()).getType().getSimpleName()));
+    } else if (node instanceof FilterNode) {
+      parameters.addAll(Parameter.namesOf(((FilterNode) node).getMatcher()));
+    }
+    node.getChildren().forEach(child -> collect(child, sources, parameters));
+  }
+
+  public Schema getSchema() {
+    return plan.getSchema();
+  }
+
+  /**
+   * @param sources a stream per name in {@link #getSources}. Each is consumed.
+   * @param parameters a value per name in {@link #getParameters}
+   */
+  public Stream<Row> stream(Map<String, ? extends Stream<?>> sources, Map<String, ?> parameters) {
+    return stream(sources, parameters, QueryContext.unlimited());
+  }
+
+  /**
+   * Identical to {@link #stream(Map, Map)}, within the memory limit and deadline of {@code
+   * context}. See {@link Query#stream(QueryContext)}.
+   */
+  public Stream<Row> stream(
+      Map<String, ? extends Stream<?>> sources, Map<String, ?> parameters, QueryContext context) {
+    for (String source : this.sources) {
+      if (!sources.containsKey(source)) {
+        throw new IllegalArgumentException(String.format("Source [%s] is not bound", source));
+      }
+    }
+    return compilers.apply(context).compile(bind(plan, sources, parameters));
+  }
+
+  /** See {@link com.ansonator.query.cache.ResultCache#list} to reuse results between calls. */
+  public List<Row> list(Map<String, ? extends Stream<?>> sources, Map<String, ?> parameters) {
+    try (Stream<Row> rows = stream(sources, parameters)) {
+      return rows.collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * @return the optimized plan, with each operator's estimated number of rows
+   */
+  public ExplainNode explain() {
+    return ExplainNode.of(plan, Map.of());
+  }
+
+  private static PlanNode bind(
+      PlanNode node, Map<String, ? extends Stream<?>> sources, Map<String, ?> parameters) {
+    if (node instanceof ScanNode) {
+      ScanNode scan = (ScanNode) node;
+      if (scan.getFilter() != null) {
+        scan = scan.withFilter(Parameter.bind(scan.getFilter(), parameters));
+      }
+      if (!(scan.getSource() instanceof NamedSource)) {
+        return scan;
+      }
+      NamedSource<?> source = (NamedSource<?>) scan.getSource();
+      return scan.withSource(source.bind(sources.get(source.getName())));
+    }
+    PlanNode bound =
+        node.withChildren(
+            node.getChildren().stream()
+                .map(child -> bind(child, sources, parameters))
+                .collect(Collectors.toList()));
+    if (bound instanceof FilterNode) {
+      FilterNode filter = (FilterNode) bound;
+      return filter.withMatcher(Parameter.bind(filter.getMatcher(), parameters));
+    }
+    return bound;
+  }
+
+  @Override
+  public String toString() {
+    return plan.toTreeString();
+  }
+}
@@ -1,33 +1,81 @@
 package com.ansonator.query;
 
+import com.ansonator.query.adaptive.AdaptiveAggregate;
+import com.ansonator.query.adaptive.AdaptiveHashJoin;
+import com.ansonator.query.batch.BatchCompiler;
 import com.ansonator.query.cell.Aggregator;
+import com.ansonator.query.codegen.FusedCompiler;
+import com.ansonator.query.column.ColumnTable;
+import com.ansonator.query.exchange.Exchange;
+import com.ansonator.query.exchange.ExchangeMetrics;
+import com.ansonator.query.flow.PublisherSpliterator;
+import com.ansonator.query.flow.RowPublisher;
+import com.ansonator.query.io.CsvSchema;
+import com.ansonator.query.io.CsvSource;
+import com.ansonator.query.io.FileSink;
+import com.ansonator.query.io.WriteOptions;
+import com.ansonator.query.plan.AggregateNode;
+import com.ansonator.query.plan.BeanSource;
+import com.ansonator.query.plan.ExchangeNode;
+import com.ansonator.query.plan.ExplainNode;
+import com.ansonator.query.plan.FilterNode;
+import com.ansonator.query.plan.InstrumentedCompiler;
+import com.ansonator.query.plan.JoinNode;
+import com.ansonator.query.plan.LateralJoinNode;
+import com.ansonator.query.plan.LimitNode;
+import com.ansonator.query.plan.NamedSource;
+import com.ansonator.query.plan.Optimizer;
+import com.ansonator.query.plan.PeekNode;
+import com.ansonator.query.plan.PlanCompiler;
+import com.ansonator.query.plan.PlanNode;
+import com.ansonator.query.plan.ProjectNode;
+import com.ansonator.query.plan.QueryContext;
+import com.ansonator.query.plan.ScanNode;
+import com.ansonator.query.plan.SetOperationNode;
+import com.ansonator.query.plan.SetOperationNode.Operation;
+import com.ansonator.query.plan.SortNode;
+import com.ansonator.query.plan.TimeWindowNode;
+import com.ansonator.query.plan.UnionAllNode;
+import com.ansonator.query.plan.WindowNode;
+import com.ansonator.query.row.AndMatcher;
 import com.ansonator.query.row.BiPredicateMatcher;
+import com.ansonator.query.row.ComparisonMatcher;
+import com.ansonator.query.row.Parameter;
 import com.ansonator.query.row.PredicateMatcher;
 import com.ansonator.query.row.Row;
 import com.ansonator.query.row.RowMatcher;
+import com.ansonator.query.set.HashSetOperator;
+import com.ansonator.query.sort.ExternalSorter;
+import com.ansonator.query.sort.NormalizedKeyEncoder;
+import com.ansonator.query.sort.RowComparators;
+import com.ansonator.query.sort.SortKey;
+import com.ansonator.query.stats.TableStatistics;
+import com.ansonator.query.vector.Comparison;
+import com.ansonator.query.window.TimeWindowOperator;
+import com.ansonator.query.window.TimeWindows;
+import com.ansonator.query.window.WindowFunction;
+import com.ansonator.query.window.WindowOperator;
+import com.ansonator.query.window.WindowSpec;
 import com.google.common.base.CaseFormat;
-import com.google.common.collect.Sets;
-import java.lang.reflect.Field;
+import com.google.common.collect.Lists;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Parameter;
+import java.nio.file.Path;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
-import java.util.function.BiConsumer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadFactory;
 import java.util.function.BinaryOperator;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
-import java.util.function.ToIntFunction;
-import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import lombok.AllArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 
 /**
@@ -39,10 +87,15 @@ import lombok.extern.log4j.Log4j2;
  *
  * @author Bryce Anson
  * @implSepc Internally, this class does not maintain type information. Instead, it only maintains a
- *     Stream of {@code Object[]} via class {@link Row} and a mapping of column names to their index
- *     in this array. Because of this, methods (such as {@link #unionAll}) which accept another
- *     Query as argument are unable to verify that their argument is valid. They can only verify
- *     that the columns line up.
+ *     logical plan ({@link PlanNode}) whose rows are {@code Object[]} via class {@link Row}, and
+ *     whose {@link com.ansonator.query.plan.Schema} maps column names to their index in this array.
+ *     Nothing is read until a terminal method ({@link #stream()}, {@link #list()} or {@link
+ *     #stream(Class, Supplier)}). At that point, the plan is rewritten by the {@link Optimizer}
+ *     (e.g., to move filters below joins and to drop unused columns) and compiled into a {@code
+ *     Stream<Row>} by the {@link PlanCompiler}.
+ *     <p>Because of this, methods (such as {@link #unionAll}) which accept another Query as
+ *     argument are unable to verify that their argument is valid. They can only verify that the
+ *     columns line up.
  *     <p>An alternative implementation would parameterize this type and save the {@code Class<T>}
  *     used to construct it. Then, {@link #unionAll} could know that it is operating on a {@code
  *     Query<T>} constructed from the same type. However, this would also require methods which
@@ -56,8 +109,16 @@ import lombok.extern.log4j.Log4j2;
  */
 @Log4j2
 public class Query {
-  private Stream<Row> data;
-  private final Map<String, Integer> selectedColumns = new LinkedHashMap<>();
+  private static final int PUBLISHER_BUFFER_SIZE = 256;
+  private static final int EXCHANGE_CAPACITY = 4;
+  private static final int EXCHANGE_BATCH_SIZE = 1024;
+
+  private PlanNode plan;
+  private boolean batched;
+  private boolean compiled;
+  // 0 unless adaptive
+  private long adaptiveBudget;
+  private boolean lateMaterialized;
 
   //    public interface Input {
   //        default Row toRow() {
@@ -103,58 +164,125 @@ public class Query {
   //        }
   //    }
 
-  private static <T> BinaryOperator<T> throwingMerger() {
-    return (u, v) -> {
-      throw new IllegalStateException(String.format("Duplicate key %s", u));
-    };
-  }
-
   /**
    * @return a copy of the column to index mapping.
    */
   public LinkedHashMap<String, Integer> getSelectedColumns() {
-    return this.selectedColumns.entrySet().stream()
-        .collect(
-            Collectors.toMap(Entry::getKey, Entry::getValue, throwingMerger(), LinkedHashMap::new));
+    return plan.getSchema().toMap();
+  }
+
+  /**
+   * Collect {@link TableStatistics} (row count, and each column's nulls, approximate distinct
+   * values, minimum and maximum) while reading every {@link #from(Stream, Class)} source of this
+   * query. Only columns which the query reads are counted. See {@link #getStatistics}.
+   *
+   * @return Query
+   */
+  public Query collectStatistics() {
+    collectStatistics(plan);
+    return this;
+  }
+
+  private static void collectStatistics(PlanNode node) {
+    if (node instanceof ScanNode && ((ScanNode) node).getSource() instanceof BeanSource) {
+      ((BeanSource<?>) ((ScanNode) node).getSource()).collectStatistics();
+    }
+    node.getChildren().forEach(Query::collectStatistics);
+  }
+
+  /**
+   * @return the statistics of the source this query was created from (the left-most, after joins
+   *     and unions), or null if it has none. Those collected by {@link #collectStatistics} are
+   *     complete once the query has run. A {@link ColumnTable} always has statistics.
+   */
+  public TableStatistics getStatistics() {
+    PlanNode node = plan;
+    while (!(node instanceof ScanNode)) {
+      if (node.getChildren().isEmpty()) {
+        return null;
+      }
+      node = node.getChildren().get(0);
+    }
+    return ((ScanNode) node).getSource().getStatistics();
   }
 
   public Object get(Row row, String column) {
-    int index = selectedColumns.get(column);
+    int index = plan.getSchema().indexOf(column);
     return row.vals[index];
   }
 
+  /**
+   * @return the unoptimized logical plan
+   */
+  public PlanNode getPlan() {
+    return plan;
+  }
+
   // from
 
   public static <T> Query from(Stream<T> data, Class<T> clazz) {
     return new Query(data, clazz);
   }
 
+  /**
+   * Read the items of a {@link Flow.Publisher}, requesting at most {@value #PUBLISHER_BUFFER_SIZE}
+   * items ahead of the query. See {@link PublisherSpliterator}.
+   */
+  public static <T> Query fromPublisher(Flow.Publisher<T> publisher, Class<T> clazz) {
+    return fromPublisher(publisher, clazz, PUBLISHER_BUFFER_SIZE);
+  }
+
+  /**
+   * @param bufferSize maximum number of items requested from {@code publisher} but not yet read by
+   *     the query
+   */
+  public static <T> Query fromPublisher(
+      Flow.Publisher<T> publisher, Class<T> clazz, int bufferSize) {
+    return new Query(PublisherSpliterator.stream(publisher, bufferSize), clazz);
+  }
+
+  /**
+   * A source whose stream is supplied each time the query is executed. Such a query can only be
+   * executed via {@link #prepare}.
+   *
+   * @param name the key of this source's stream in {@link PreparedQuery#stream}
+   */
+  public static <T> Query from(String name, Class<T> clazz) {
+    return new Query(ScanNode.of(new NamedSource<>(name, clazz)));
+  }
+
+  /**
+   * Scan a table held in memory column by column. Unlike a {@link Stream}, a table may be read by
+   * any number of queries. See {@link #toColumnTable}.
+   */
+  public static Query from(ColumnTable table) {
+    return new Query(ScanNode.of(table));
+  }
+
+  /**
+   * Read a delimited text file, e.g. CSV or TSV, whose columns are described by {@code schema}. See
+   * {@link CsvSource}.
+   */
+  public static Query fromCsv(Path path, CsvSchema schema) {
+    return fromCsv(path, schema, false);
+  }
+
+  /**
+   * @param parallel whether to read separate parts of the file on separate threads
+   */
+  public static Query fromCsv(Path path, CsvSchema schema, boolean parallel) {
+    return new Query(ScanNode.of(new CsvSource(path, schema, parallel)));
+  }
+
   // select
 
   public Query select(String... columns) {
-    final int[] indexes = Stream.of(columns).mapToInt(getColumnIndex(selectedColumns)).toArray();
-    data = data.map(row -> new Row(row, indexes));
-    selectedColumns.clear();
-    int i = 0;
-    for (String column : columns) {
-      selectedColumns.put(column, i);
-      i++;
-    }
+    plan = new ProjectNode(plan, List.of(columns));
     return this;
   }
 
   // join
 
-  @AllArgsConstructor(staticName = "of")
-  private static class RowPair {
-    public final Row left;
-    public final Row right;
-
-    private Row concat() {
-      return new Row(Stream.concat(Stream.of(left.vals), Stream.of(right.vals)).toArray());
-    }
-  }
-
   /**
    * Cartesian join two Query results. Follow this with {@link RowMatcher} factory methods like
    * {@link #on} or {@link #using} to perform a more restricted join.
@@ -163,25 +291,7 @@ public class Query {
    * @return Query
    */
   public Query join(final Query other) {
-    // Load the right table into memory
-    List<Row> otherData = other.data.collect(Collectors.toList());
-
-    // Perform the Cartesian join
-    data =
-        data.flatMap(leftRow -> otherData.stream().map(rightRow -> new RowPair(leftRow, rightRow)))
-            .map(RowPair::concat);
-
-    // Modify column names contributed by right table when they are identical to a column from the
-    // left table.
-    Set<String> commonColumns =
-        Sets.intersection(selectedColumns.keySet(), other.selectedColumns.keySet());
-    Map<String, Integer> newRightColumns =
-        other.selectedColumns.entrySet().stream()
-            .collect(
-                Collectors.toMap(
-                    e -> commonColumns.contains(e.getKey()) ? "right_" + e.getKey() : e.getKey(),
-                    e -> e.getValue() + selectedColumns.size()));
-    selectedColumns.putAll(newRightColumns);
+    plan = JoinNode.of(plan, other.plan);
     return this;
   }
 
@@ -195,9 +305,8 @@ public class Query {
    * @return Query with columns matching the fields of otherType
    */
   public <O> Query join(Function<Row, Stream<O>> dataFactory, Class<O> clazz) {
-    return data.map(row -> from(dataFactory.apply(row), clazz))
-        .reduce((a, b) -> a.unionAll(b))
-        .get();
+    plan = new LateralJoinNode<>(plan, dataFactory, clazz);
+    return this;
   }
 
   /**
@@ -216,22 +325,31 @@ public class Query {
    * each joined column.
    *
    * <p>Assumes existence of two columns for each column provided. The second is expected to be
-   * named equal to the first, aside from an extra prefix "right_".
+   * named equal to the first, aside from an extra prefix "right_". Directly after a {@link #join},
+   * the join's own names for its right columns are used instead (see {@link JoinNode}).
    *
    * @param first
    * @param others
    * @return Query
    */
   public Query using(String first, String... others) {
+    final Map<String, String> aliases =
+        plan instanceof JoinNode ? ((JoinNode) plan).getRightAliases() : null;
     final RowMatcher matcher =
         Stream.concat(Stream.of(first), Stream.of(others))
-            .map(col -> BiPredicateMatcher.of(col, "right_" + col, (a, b) -> a.equals(b)))
-            .map(op -> (RowMatcher) op)
+            .map(
+                col ->
+                    colEqual(
+                        col,
+                        aliases == null
+                            ? "right_" + col
+                            : aliases.getOrDefault(col, "right_" + col)))
             .reduce((RowMatcher a, RowMatcher b) -> a.and(b))
             .get();
     final String[] newColumns =
         getSelectedColumns().keySet().stream()
-            .filter(col -> !col.startsWith("right_"))
+            .filter(
+                col -> aliases == null ? !col.startsWith("right_") : !aliases.containsValue(col))
             .toArray(size -> new String[size]);
     return where(matcher).select(newColumns);
   }
@@ -246,17 +364,46 @@ public class Query {
     return PredicateMatcher.of(col, isTrue());
   }
 
+  /**
+   * A placeholder for a value which is supplied each time the query is executed, e.g. {@code
+   * isEqual("species", param("s"))}. Such a query can only be executed via {@link #prepare}.
+   */
+  public static Parameter param(String name) {
+    return Parameter.of(name);
+  }
+
   public static RowMatcher colEqual(String col1, String col2) {
-    return BiPredicateMatcher.of(col1, col2, (a, b) -> a.equals(b));
+    return BiPredicateMatcher.of(col1, col2, BiPredicateMatcher.EQUALS);
   }
 
   public static <T> RowMatcher isEqual(String col1, T val) {
-    return PredicateMatcher.of(col1, (a) -> a.equals(val));
+    return ComparisonMatcher.of(col1, Comparison.EQ, val);
+  }
+
+  /** Values are compared by type (see {@link RowComparators}). */
+  public static <T> RowMatcher isLessThan(String col1, T val) {
+    return ComparisonMatcher.of(col1, Comparison.LT, val);
+  }
+
+  public static <T> RowMatcher isLessThanOrEqualTo(String col1, T val) {
+    return ComparisonMatcher.of(col1, Comparison.LE, val);
+  }
+
+  public static <T> RowMatcher isGreaterThan(String col1, T val) {
+    return ComparisonMatcher.of(col1, Comparison.GT, val);
+  }
+
+  public static <T> RowMatcher isGreaterThanOrEqualTo(String col1, T val) {
+    return ComparisonMatcher.of(col1, Comparison.GE, val);
+  }
+
+  /** Inclusive of both bounds. */
+  public static <T> RowMatcher isBetween(String col1, T low, T high) {
+    return isGreaterThanOrEqualTo(col1, low).and(isLessThanOrEqualTo(col1, high));
   }
 
   public Query where(final RowMatcher matcher) {
-    final Map<String, Integer> selectedColumnsCopy = getSelectedColumns();
-    data = data.filter(row -> matcher.test(row, selectedColumnsCopy));
+    plan = FilterNode.of(plan, matcher);
     return this;
   }
 
@@ -267,30 +414,13 @@ public class Query {
    * @author BA030483
    */
   public Query where(final RowMatcher first, final RowMatcher... others) {
-    final Map<String, Integer> selectedColumnsCopy = getSelectedColumns();
-    RowMatcher matcher =
-        Stream.concat(Stream.of(first), Stream.of(others)).reduce((a, b) -> a.and(b)).get();
-    data = data.filter(row -> matcher.test(row, selectedColumnsCopy));
-    return this;
+    return where(AndMatcher.of(Lists.asList(first, others)));
   }
 
   // groupBy
 
   private Query groupBy(String[] columns, Map<String, BinaryOperator<Object>> accumulators) {
-    final Map<String, Integer> selectedColumnsCopy = getSelectedColumns();
-    Map<Integer, BinaryOperator<Object>> accumulatorsByIndex =
-        accumulators.entrySet().stream()
-            .collect(Collectors.toMap(e -> selectedColumnsCopy.get(e.getKey()), e -> e.getValue()));
-    BiConsumer<Row, Row> fn = (f, r) -> f.merge(r, accumulatorsByIndex);
-    BinaryOperator<Row> op =
-        (f1, f2) -> {
-          f1.merge(f2, accumulatorsByIndex);
-          return f1;
-        };
-    Collector<Row, Row, Row> downstream = Collector.of(Row::new, fn, op);
-    Map<Row, Row> grouped =
-        data.collect(Collectors.groupingBy(row -> select(row, columns), downstream));
-    data = grouped.values().stream();
+    plan = new AggregateNode(plan, List.of(columns), accumulators);
     return this;
   }
 
@@ -309,41 +439,213 @@ public class Query {
     return groupBy(new String[] {col1, col2}, aggregators);
   }
 
+  /**
+   * Aggregate the rows of each group per event-time window, appending columns {@link
+   * TimeWindows#WINDOW_START} and {@link TimeWindows#WINDOW_END}. Unlike {@link #groupBy(String[],
+   * Aggregator...)}, this does not wait for the end of its input. Each window's result is produced
+   * as soon as the watermark closes the window, so this works over unbounded streams, keeping only
+   * open windows in memory. See {@link TimeWindowOperator}.
+   *
+   * @param windows tumbling, sliding or session windows, and their watermark
+   * @return Query
+   */
+  public Query groupBy(
+      TimeWindows windows, String[] groupingColumns, Aggregator<?>... aggregators) {
+    Map<String, BinaryOperator<Object>> accumulators =
+        Stream.of(aggregators)
+            .collect(Collectors.toMap(Aggregator::getName, Aggregator::asOperator));
+    plan = new TimeWindowNode(plan, windows, List.of(groupingColumns), accumulators);
+    return this;
+  }
+
+  public Query groupBy(TimeWindows windows, String col1, Aggregator<?>... aggregators) {
+    return groupBy(windows, new String[] {col1}, aggregators);
+  }
+
   // orderBy
 
   public Query orderBy(Comparator<Row> comparator) {
-    data = data.sorted(comparator);
+    plan = SortNode.byComparator(plan, comparator, 0);
     return this;
   }
 
+  /**
+   * Sort ascending by the provided columns. Values are compared by type (see {@link
+   * RowComparators}).
+   */
   public Query orderBy(String first, String... others) {
-    return orderBy(compareAsStrings(first, others));
+    return orderBy(sortKeys(first, others));
+  }
+
+  public Query orderBy(SortKey first, SortKey... others) {
+    return orderBy(Lists.asList(first, others));
+  }
+
+  /**
+   * Identical to {@link #orderBy(SortKey, SortKey...)} except that each row's sort columns are
+   * encoded once into a normalized byte key. Comparisons then reduce to an unsigned byte array
+   * comparison. This is faster for multi-column sorts and sorts on string columns. See {@link
+   * NormalizedKeyEncoder} for the supported column types.
+   */
+  public Query orderByNormalized(SortKey first, SortKey... others) {
+    plan = SortNode.byKeys(plan, Lists.asList(first, others), true, 0);
+    return this;
+  }
+
+  private Query orderBy(List<SortKey> keys) {
+    plan = SortNode.byKeys(plan, keys, false, 0);
+    return this;
   }
 
   @SafeVarargs
   public final Query orderBy(Comparator<Row> first, Comparator<Row>... others) {
     Comparator<Row> comparator = Stream.of(others).reduce(first, (a, b) -> a.thenComparing(b));
-    data = data.sorted(comparator);
+    return orderBy(comparator);
+  }
+
+  /**
+   * Identical to {@link #orderBy(Comparator, Comparator...)} except that at most {@code
+   * memoryBudget} bytes of rows are held in memory. Beyond that, sorted runs are spilled to the
+   * temp directory and merged back lazily. See {@link ExternalSorter}.
+   *
+   * <p>All values must be encodable by {@link com.ansonator.query.spill.RowCodec}. That is, they
+   * must be boxed primitives, strings, dates or {@link java.io.Serializable}.
+   *
+   * @param memoryBudget maximum estimated size, in bytes, of the rows buffered on the heap
+   * @return Query
+   */
+  @SafeVarargs
+  public final Query orderBy(long memoryBudget, Comparator<Row> first, Comparator<Row>... others) {
+    Comparator<Row> comparator = Stream.of(others).reduce(first, (a, b) -> a.thenComparing(b));
+    plan = SortNode.byComparator(plan, comparator, memoryBudget);
+    return this;
+  }
+
+  public Query orderBy(long memoryBudget, String first, String... others) {
+    return orderBy(memoryBudget, sortKeys(first, others));
+  }
+
+  public Query orderBy(long memoryBudget, SortKey first, SortKey... others) {
+    return orderBy(memoryBudget, Lists.asList(first, others));
+  }
+
+  private Query orderBy(long memoryBudget, List<SortKey> keys) {
+    plan = SortNode.byKeys(plan, keys, false, memoryBudget);
     return this;
   }
 
   // union
 
   public Query unionAll(Query other) {
+    checkSameColumns(other, "union");
+    plan = new UnionAllNode(plan, other.plan);
+    return this;
+  }
+
+  /** Identical to {@link #unionAll} followed by {@link #distinct}. */
+  public Query union(Query other) {
+    return unionAll(other).distinct();
+  }
+
+  /**
+   * Remove duplicate rows, keeping the first occurrence of each. Rows are tracked in a hash table
+   * keyed by {@link com.ansonator.query.set.RowFingerprint}. See {@link HashSetOperator} for how
+   * this spills to disk when the table exceeds its memory budget.
+   */
+  public Query distinct() {
+    return distinct(HashSetOperator.DEFAULT_MEMORY_BUDGET);
+  }
+
+  /**
+   * @param memoryBudget maximum estimated size, in bytes, of the rows tracked on the heap
+   */
+  public Query distinct(long memoryBudget) {
+    plan = SetOperationNode.distinct(plan, memoryBudget);
+    return this;
+  }
+
+  /**
+   * Distinct rows which occur in both this and {@code other}.
+   *
+   * @param other This Query is loaded into a hash table.
+   */
+  public Query intersect(Query other) {
+    checkSameColumns(other, "intersect");
+    return setOperation(Operation.INTERSECT, other, false);
+  }
+
+  /**
+   * Rows which occur in both this and {@code other}, keeping duplicates. A row which occurs m times
+   * here and n times in {@code other} is returned min(m, n) times.
+   *
+   * @param other This Query is loaded into a hash table.
+   */
+  public Query intersectAll(Query other) {
+    checkSameColumns(other, "intersect");
+    return setOperation(Operation.INTERSECT, other, true);
+  }
+
+  /**
+   * Distinct rows which occur in this but not in {@code other}.
+   *
+   * @param other This Query is loaded into a hash table.
+   */
+  public Query except(Query other) {
+    checkSameColumns(other, "except");
+    return setOperation(Operation.EXCEPT, other, false);
+  }
+
+  /**
+   * Rows of this which do not occur in {@code other}, keeping duplicates. A row which occurs m
+   * times here and n times in {@code other} is returned max(m - n, 0) times.
+   *
+   * @param other This Query is loaded into a hash table.
+   */
+  public Query exceptAll(Query other) {
+    checkSameColumns(other, "except");
+    return setOperation(Operation.EXCEPT, other, true);
+  }
+
+  private Query setOperation(Operation operation, Query other, boolean all) {
+    plan =
+        SetOperationNode.of(
+            operation, plan, other.plan, all, HashSetOperator.DEFAULT_MEMORY_BUDGET);
+    return this;
+  }
+
+  private void checkSameColumns(Query other, String operation) {
+    LinkedHashMap<String, Integer> selectedColumns = getSelectedColumns();
     LinkedHashMap<String, Integer> otherColumns = other.getSelectedColumns();
     if (!selectedColumns.equals(otherColumns)) {
       throw new IllegalArgumentException(
           String.format(
-              "Cannot union Query [%s] with Query [%s] because column sets are different.  Use select to limit "
+              "Cannot %s Query [%s] with Query [%s] because column sets are different.  Use select to limit "
                   + "columns first.",
-              selectedColumns.keySet(), otherColumns));
+              operation, selectedColumns.keySet(), otherColumns));
     }
-    data = Stream.concat(data, other.data);
+  }
+
+  // window
+
+  /**
+   * Evaluate window functions over partitions of rows. Each function's result is appended as a new
+   * column named after the function.
+   *
+   * <p>When this Query is already sorted by the partition columns followed by the window's sort
+   * keys (e.g., via {@link #orderBy(SortKey, SortKey...)}), rows are evaluated in a single
+   * streaming pass which only buffers as many rows as the functions' frames require. Otherwise,
+   * rows are sorted first. See {@link WindowOperator}.
+   *
+   * @param spec the partition and sort keys
+   * @return Query
+   */
+  public Query window(WindowSpec spec, WindowFunction first, WindowFunction... others) {
+    plan = new WindowNode(plan, spec, Lists.asList(first, others));
     return this;
   }
 
   public Query limit(int size) {
-    data = data.limit(size);
+    plan = new LimitNode(plan, size);
     return this;
   }
 
@@ -353,86 +655,293 @@ public class Query {
   }
 
   public Query peek(Consumer<Row> action) {
-    data = data.peek(action);
+    plan = new PeekNode(plan, action);
+    return this;
+  }
+
+  /** Identical to {@link #exchange(ExchangeMetrics)}, discarding the metrics. */
+  public Query exchange() {
+    return exchange(new ExchangeMetrics());
+  }
+
+  /**
+   * Run everything built so far on a separate thread, which hands rows to the rest of the query in
+   * batches of {@value #EXCHANGE_BATCH_SIZE} through a queue of at most {@value #EXCHANGE_CAPACITY}
+   * batches. The two parts of the query then overlap, e.g. an I/O bound {@link #peek} or {@link
+   * #join(Function, Class)} below the exchange with a CPU bound {@link #groupBy} above it. See
+   * {@link Exchange}.
+   *
+   * @param metrics receives the exchange's queue depths and stall times, summed over every
+   *     execution
+   * @return Query
+   */
+  public Query exchange(ExchangeMetrics metrics) {
+    return exchange(EXCHANGE_CAPACITY, Exchange.DAEMON_THREADS, metrics);
+  }
+
+  /**
+   * @param capacity maximum number of batches waiting in the queue
+   * @param threads creates the producing thread on each execution, e.g. a factory of virtual
+   *     threads where the JVM supports them
+   */
+  public Query exchange(int capacity, ThreadFactory threads, ExchangeMetrics metrics) {
+    plan = new ExchangeNode(plan, capacity, EXCHANGE_BATCH_SIZE, threads, metrics);
+    return this;
+  }
+
+  /**
+   * Execute this query in batch mode. Operators then exchange batches of about a thousand rows,
+   * stored column by column, instead of single rows. Filters, projections, aggregations and joins
+   * on equal columns process a whole batch in a loop. This generally pays off for large inputs with
+   * selective filters or aggregations. See {@link BatchCompiler}.
+   *
+   * @return Query
+   */
+  public Query batched() {
+    batched = true;
+    compiled = false;
+    return this;
+  }
+
+  /**
+   * Execute this query in compiled mode. The getters, filters and projections between each {@link
+   * #from} and the next join, sort, etc., plus a {@link #groupBy} directly above them, are fused
+   * into one generated class. Generated classes are cached by the shape of the query, so running a
+   * query again, even with different constants, does not generate code again. See {@link
+   * FusedCompiler}.
+   *
+   * @return Query
+   */
+  public Query compiled() {
+    compiled = true;
+    batched = false;
+    return this;
+  }
+
+  /** Identical to {@link #adaptive(long)}, with a budget of 64 MB per operator. */
+  public Query adaptive() {
+    return adaptive(AdaptiveHashJoin.DEFAULT_MEMORY_BUDGET);
+  }
+
+  /**
+   * Let joins on equal columns and aggregations choose their strategy at run time. A join holds its
+   * right side in a hash table if it fits within {@code memoryBudget}, and otherwise partitions
+   * both sides to disk. An aggregation switches from hashing to an external sort once its groups
+   * outgrow {@code memoryBudget}. {@link #explainAnalyze} reports the choices. See {@link
+   * AdaptiveHashJoin} and {@link AdaptiveAggregate}.
+   *
+   * @return Query
+   */
+  public Query adaptive(long memoryBudget) {
+    if (memoryBudget <= 0) {
+      throw new IllegalArgumentException(
+          String.format("Memory budget must be positive but was [%d]", memoryBudget));
+    }
+    adaptiveBudget = memoryBudget;
     return this;
   }
 
+  /**
+   * Carry a row id, rather than the columns which only the output reads, through filters, joins and
+   * sorts over a {@link ColumnTable}. Those columns are read by row id once the rows which survive
+   * are known, so a selective query over wide tables copies far fewer values. See {@link
+   * com.ansonator.query.plan.FetchNode}.
+   *
+   * @return Query
+   */
+  public Query lateMaterialized() {
+    lateMaterialized = true;
+    return this;
+  }
+
+  private Optimizer optimizer() {
+    return new Optimizer(lateMaterialized);
+  }
+
+  /** Optimize and compile the plan. See {@link Optimizer}. */
   public Stream<Row> stream() {
-    return data;
+    return stream(QueryContext.unlimited());
+  }
+
+  /**
+   * Optimize and compile the plan, to run within the memory limit and deadline of {@code context},
+   * until it is cancelled. The context must not be reused by other queries.
+   */
+  public Stream<Row> stream(QueryContext context) {
+    return compilers().apply(context).compile(optimizer().optimize(plan));
+  }
+
+  /**
+   * Optimize the plan once, for a query which will be executed many times. Unlike this Query, the
+   * result is immutable and may be executed concurrently, each time with new streams for the
+   * sources named via {@link #from(String, Class)} and new values for each {@link #param}.
+   *
+   * @return PreparedQuery
+   * @throws IllegalArgumentException if this query reads a {@link #from(Stream, Class) stream}
+   */
+  public PreparedQuery prepare() {
+    return new PreparedQuery(optimizer().optimize(plan), compilers());
+  }
+
+  /**
+   * Materialize the result of this {@link #groupBy} into a view which is then kept up to date by
+   * inserting and deleting items, at a cost proportional to the number of changed items. The query
+   * may only filter, select and peek before its groupBy, and only use {@link Aggregator#sum},
+   * {@link Aggregator#min} and {@link Aggregator#max}. A {@link #from(Stream, Class)} stream is
+   * read into the view right away. A {@link #from(String, Class)} view starts out empty.
+   *
+   * @return IncrementalView
+   */
+  public IncrementalView materialize() {
+    return new IncrementalView(plan, compilers());
+  }
+
+  private Function<QueryContext, PlanCompiler> compilers() {
+    final boolean compiled = this.compiled;
+    final boolean batched = this.batched;
+    final long adaptiveBudget = this.adaptiveBudget;
+    return context -> {
+      PlanCompiler compiler =
+          compiled
+              ? new FusedCompiler(context)
+              : batched ? new BatchCompiler(context) : new PlanCompiler(context);
+      compiler.setAdaptiveBudget(adaptiveBudget);
+      return compiler;
+    };
   }
 
   public List<Row> list() {
-    return data.collect(Collectors.toList());
+    try (Stream<Row> rows = stream()) {
+      return rows.collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Run the query into a {@link ColumnTable}, which holds the result in far less memory than {@link
+   * #list} and can be scanned again via {@link #from(ColumnTable)}.
+   */
+  public ColumnTable toColumnTable() {
+    try (Stream<Row> rows = stream()) {
+      return ColumnTable.of(rows, plan.getSchema());
+    }
+  }
+
+  /** Identical to {@link #toCsv(Path, WriteOptions)} with {@link WriteOptions#defaults}. */
+  public long toCsv(Path path) {
+    return toCsv(path, WriteOptions.defaults());
+  }
+
+  /**
+   * Run the query into a delimited text file. Strings which contain line breaks are quoted with the
+   * line breaks kept, which {@link #fromCsv} does not read back. See {@link FileSink}.
+   *
+   * @return the number of rows written
+   */
+  public long toCsv(Path path, WriteOptions options) {
+    return FileSink.csv(path, plan.getSchema().getNames(), options).write(stream());
+  }
+
+  /** Identical to {@link #toJsonLines(Path, WriteOptions)} with {@link WriteOptions#defaults}. */
+  public long toJsonLines(Path path) {
+    return toJsonLines(path, WriteOptions.defaults());
+  }
+
+  /**
+   * Run the query into a file with one JSON object per row and line, keyed by column name. See
+   * {@link FileSink}.
+   *
+   * @return the number of rows written
+   */
+  public long toJsonLines(Path path, WriteOptions options) {
+    return FileSink.jsonLines(path, plan.getSchema().getNames(), options).write(stream());
+  }
+
+  /** See {@link #stream(QueryContext)}. */
+  public List<Row> list(QueryContext context) {
+    try (Stream<Row> rows = stream(context)) {
+      return rows.collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Identical to {@link #toPublisher(Executor)}, emitting rows on the thread which requests them.
+   */
+  public Flow.Publisher<Row> toPublisher() {
+    return toPublisher(Runnable::run);
+  }
+
+  /**
+   * Publish the result to a single subscriber. The plan is optimized and compiled when the
+   * subscriber arrives, and rows are only read as the subscriber requests them. Operators which
+   * must see their whole input (e.g., {@link #orderBy} and {@link #groupBy}) still do so before
+   * emitting their first row. See {@link RowPublisher}.
+   *
+   * @param executor runs the loop which emits rows
+   */
+  public Flow.Publisher<Row> toPublisher(Executor executor) {
+    final PlanNode plan = this.plan;
+    final Function<QueryContext, PlanCompiler> compilers = compilers();
+    final Optimizer optimizer = optimizer();
+    return new RowPublisher(
+        () -> compilers.apply(QueryContext.unlimited()).compile(optimizer.optimize(plan)),
+        executor);
+  }
+
+  /**
+   * Describe the optimized plan, with each operator's estimated number of rows. This does not read
+   * any data.
+   *
+   * @return the root operator. Its {@code toString} is the whole plan as text.
+   */
+  public ExplainNode explain() {
+    return ExplainNode.of(optimizer().optimize(plan), Map.of());
+  }
+
+  /**
+   * Run the query, discarding its rows, while recording each operator's rows in and out, wall and
+   * CPU time, and allocated bytes. See {@link InstrumentedCompiler} for how these are measured.
+   * Like a terminal method, this consumes the input streams.
+   *
+   * <p>The operators always run in row mode here, even if this query is {@link #batched} or {@link
+   * #compiled}, so the metrics of such a query do not describe how it actually runs. Its output
+   * then starts with a line saying so.
+   *
+   * @return the root operator. Its {@code toString} is the whole plan as text.
+   */
+  public ExplainNode explainAnalyze() {
+    PlanNode optimized = optimizer().optimize(plan);
+    InstrumentedCompiler compiler = new InstrumentedCompiler();
+    compiler.setAdaptiveBudget(adaptiveBudget);
+    try (Stream<Row> rows = compiler.compile(optimized)) {
+      rows.forEach(row -> {});
+    }
+    String mode = compiled ? "compiled" : batched ? "batched" : null;
+    ExplainNode explained =
+        ExplainNode.of(
+            optimized,
+            compiler.getMetrics(),
+            mode == null
+                ? null
+                : String.format("Measured in row mode, not in %s mode as the query runs", mode));
+    log.debug("Analyzed plan\n{}", explained);
+    return explained;
   }
 
   public <O> List<O> list(Class<O> destType, Supplier<O> supplier)
       throws NoSuchFieldException, SecurityException {
-    return stream(destType, supplier).collect(Collectors.toList());
+    try (Stream<O> items = stream(destType, supplier)) {
+      return items.collect(Collectors.toList());
+    }
   }
 
   ////////////////////////////////////////////////////////////////////////////////////////////////////////
 
-  protected <T> Query(final Stream<T> data, final Class<T> fromType) {
-    Map<String, Method> getters = new LinkedHashMap<>();
-    int i = 0;
-    for (Field field : fromType.getDeclaredFields()) {
-      try {
-        Method getter = fromType.getMethod(toGetMethodName(field));
-        //                Method setter = fromType.getMethod(toSetMethodName(field),
-        // field.getType());
-        getters.put(field.getName(), getter);
-        selectedColumns.put(field.getName(), i);
-        i++;
-      } catch (NoSuchMethodException | SecurityException e) {
-        log.warn(
-            "Ignoring field [{}] of class [{}] as it lacks methods [{}()] and/or [{}({})] ",
-            field.getName(),
-            fromType.getName(),
-            toGetMethodName(field),
-            toSetMethodName(field),
-            field.getType().getSimpleName());
-      }
-    }
-    this.data =
-        data.map(
-                item ->
-                    getters.values().stream()
-                        .map(
-                            getter -> {
-                              try {
-                                Object val = getter.invoke(item);
-                                if (val == null) {
-                                  log.warn(
-                                      "Getter [{}] return null for item {}",
-                                      getter.getName(),
-                                      item);
-                                }
-                                return val;
-                              } catch (SecurityException
-                                  | IllegalAccessException
-                                  | IllegalArgumentException
-                                  | InvocationTargetException e) {
-                                throw new IllegalArgumentException(
-                                    String.format(
-                                        "Unable to call " + "method [%s]", getter.getName()));
-                              }
-                            }))
-            .map(Row::new);
-  }
-
-  private static String toGetMethodName(final Field field) {
-    final String prefix;
-    if (field.getType().equals(Boolean.class) || field.getType().equals(boolean.class)) {
-      prefix = "is";
-    } else {
-      prefix = "get";
-    }
-    return prefix + CaseFormat.LOWER_CAMEL.to(CaseFormat.UPPER_CAMEL, field.getName());
+  Query(PlanNode plan) {
+    this.plan = plan;
   }
 
-  private static String toSetMethodName(final Field field) {
-    final String prefix = "set";
-    return prefix + CaseFormat.LOWER_CAMEL.to(CaseFormat.UPPER_CAMEL, field.getName());
+  protected <T> Query(final Stream<T> data, final Class<T> fromType) {
+    this.plan = ScanNode.of(new BeanSource<>(data, fromType));
   }
 
   private static String toFieldName(final Method method) {
@@ -463,6 +972,7 @@ public class Query {
               "Type [%s] is invalid for method stream(destType, supplier).  It lacks a no-argument constructor",
               destType.getName()));
     }
+    final Map<String, Integer> selectedColumns = getSelectedColumns();
     int lastIndex =
         selectedColumns.values().stream().mapToInt(Integer::intValue).max().orElseGet(() -> 0);
     Method[] setters = new Method[lastIndex + 1];
@@ -470,71 +980,49 @@ public class Query {
       if (method.getName().startsWith("set")) {
         String colName = toFieldName(method);
         Integer index = selectedColumns.get(colName);
-        Parameter[] params = method.getParameters();
+        java.lang.reflect.Parameter[] params = method.getParameters();
         if (index != null && params.length == 1) {
           log.debug("Mapping column [{}] to setter [{}]", colName, method.getName());
           setters[index] = method;
         }
       }
     }
-    return data.map(
-        row -> {
-          T dest = supplier.get();
-          for (int i = 0; i < row.vals.length; i++) {
-            if (setters[i] != null) {
-              try {
-                setters[i].invoke(dest, row.vals[i]);
-              } catch (IllegalAccessException
-                  | IllegalArgumentException
-                  | InvocationTargetException e) {
-                throw new RuntimeException(e);
+    return stream()
+        .map(
+            row -> {
+              T dest = supplier.get();
+              for (int i = 0; i < row.vals.length; i++) {
+                if (setters[i] != null) {
+                  try {
+                    setters[i].invoke(dest, row.vals[i]);
+                  } catch (IllegalAccessException
+                      | IllegalArgumentException
+                      | InvocationTargetException e) {
+                    throw new RuntimeException(e);
+                  }
+                } else {
+                  final int iFinal = i;
+                  List<String> colNames =
+                      selectedColumns.entrySet().stream()
+                          .filter(e -> e.getValue().intValue() == iFinal)
+                          .map(Entry::getKey)
+                          .map(col -> CaseFormat.LOWER_CAMEL.to(CaseFormat.UPPER_CAMEL, col))
+                          .collect(Collectors.toList());
+                  String message =
+                      String.format(
+                          "Method set%s not found in type [%s].  Cannot assign Object from index %d"
+                              + " of row %s",
+                          colNames.get(0), destType.getName(), i, row);
+                  throw new RuntimeException(message);
+                }
               }
-            } else {
-              final int iFinal = i;
-              List<String> colNames =
-                  selectedColumns.entrySet().stream()
-                      .filter(e -> e.getValue().intValue() == iFinal)
-                      .map(Entry::getKey)
-                      .map(col -> CaseFormat.LOWER_CAMEL.to(CaseFormat.UPPER_CAMEL, col))
-                      .collect(Collectors.toList());
-              String message =
-                  String.format(
-                      "Method set%s not found in type [%s].  Cannot assign Object from index %d"
-                          + " of row %s",
-                      colNames.get(0), destType.getName(), i, row);
-              throw new RuntimeException(message);
-            }
-          }
-          return dest;
-        });
-  }
-
-  private Row select(final Row row, String... columns) {
-    return new Row(
-        Stream.of(columns).mapToInt(getColumnIndex(selectedColumns)).mapToObj(i -> row.get(i)));
-  }
-
-  private Comparator<Row> compareAsStrings(String first, String... others) {
+              return dest;
+            });
+  }
+
+  private static List<SortKey> sortKeys(String first, String... others) {
     return Stream.concat(Stream.of(first), Stream.of(others))
-        .mapToInt(getColumnIndex(selectedColumns))
-        .mapToObj(
-            i -> {
-              Comparator<Row> comp =
-                  (Row row1, Row row2) ->
-                      (row1.get(i).toString()).compareTo(row2.get(i).toString());
-              return comp;
-            })
-        .reduce((a, b) -> a.thenComparing(b))
-        .get();
-  }
-
-  private static ToIntFunction<String> getColumnIndex(final Map<String, Integer> columns) {
-    return column -> {
-      Integer index = columns.get(column);
-      if (index == null) {
-        throw new IllegalArgumentException(String.format("Column [%s] not found", column));
-      }
-      return index;
-    };
+        .map(SortKey::asc)
+        .collect(Collectors.toList());
   }
 }
@@ -0,0 +1,184 @@
+package com.ansonator.query.adaptive;
+
+import com.ansonator.query.row.Row;
+import com.ansonator.query.sort.ExternalSorter;
+import com.ansonator.query.sort.InMemorySorter;
+import com.ansonator.query.spill.RowCodec;
+import com.ansonator.query.spill.RowSize;
+import com.google.common.collect.Streams;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * A grouping which starts out as a hash aggregation and switches to a sort-based one when its
+ * groups outgrow the memory budget.
+ *
+ * <p>Rows are merged into a hash table of groups, like {@link
+ * com.ansonator.query.plan.PlanCompiler#visitAggregate}, while the groups' estimated size is
+ * counted. If the input ends within the budget, the groups are returned in the same order as that
+ * method's. Otherwise, the groups so far and the rest of the input are sorted by the grouping
+ * columns with an {@link ExternalSorter}, which spills to disk, and adjacent rows with equal keys
+ * are merged. Sorted output is ordered by the grouping columns.
+ *
+ * <p>The chosen strategy is reported through a callback, for {@link
+ * com.ansonator.query.Query#explainAnalyze}.
+ */
+public class AdaptiveAggregate {
+  private final int[] groupBy;
+  private final Map<Integer, BinaryOperator<Object>> accumulators;
+  private final InMemorySorter sorter;
+  private final long memoryBudget;
+  private final Path tempDir;
+  private final Consumer<String> decisions;
+
+  /**
+   * @param accumulators by column index
+   * @param sorter orders rows by the grouping columns
+   * @param decisions receives a description of the chosen strategy
+   */
+  public AdaptiveAggregate(
+      int[] groupBy,
+      Map<Integer, BinaryOperator<Object>> accumulators,
+      InMemorySorter sorter,
+      long memoryBudget,
+      Consumer<String> decisions) {
+    this(
+        groupBy,
+        accumulators,
+        sorter,
+        memoryBudget,
+        Paths.get(System.getProperty("java.io.tmpdir")),
+        decisions);
+  }
+
+  public AdaptiveAggregate(
+      int[] groupBy,
+      Map<Integer, BinaryOperator<Object>> accumulators,
+      InMemorySorter sorter,
+      long memoryBudget,
+      Path tempDir,
+      Consumer<String> decisions) {
+    if (memoryBudget <= 0) {
+      throw new IllegalArgumentException(
+          String.format("Memory budget must be positive but was [%d]", memoryBudget));
+    }
+    this.groupBy = groupBy;
+    this.accumulators = accumulators;
+    this.sorter = sorter;
+    this.memoryBudget = memoryBudget;
+    this.tempDir = tempDir;
+    this.decisions = decisions;
+  }
+
+  /**
+   * @return a merged row per group. The input is not read until a terminal operation is invoked on
+   *     the result.
+   */
+  public Stream<Row> aggregate(Stream<Row> input) {
+    Supplier<Stream<Row>> aggregate = () -> hash(input);
+    return Stream.of(aggregate).flatMap(Supplier::get).onClose(input::close);
+  }
+
+  private Stream<Row> hash(Stream<Row> input) {
+    Map<Row, Row> groups = new HashMap<>();
+    long bytes = 0;
+    Iterator<Row> rows = input.iterator();
+    while (rows.hasNext()) {
+      Row row = rows.next();
+      Row key = new Row(row, groupBy);
+      Row group = groups.get(key);
+      if (group == null) {
+        group = new Row();
+        groups.put(key, group);
+        // A new group holds a key and a state, each at most the size of the row
+        bytes += 2 * RowSize.estimate(row);
+      }
+      group.merge(row, accumulators);
+      if (bytes > memoryBudget && isSpillable(group)) {
+        decisions.accept(
+            String.format(
+                "sort aggregation: [%d] groups exceeded [%d] bytes", groups.size(), memoryBudget));
+        return sorted(groups, rows);
+      }
+    }
+    decisions.accept(
+        String.format("hash aggregation: [%d] groups, [%d] bytes", groups.size(), bytes));
+    return groups.values().stream();
+  }
+
+  private static boolean isSpillable(Row row) {
+    for (Object val : row.vals) {
+      if (!RowCodec.isEncodable(val)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private Stream<Row> sorted(Map<Row, Row> groups, Iterator<Row> rest) {
+    // Release groups as the sorter consumes them
+    Iterator<Row> partial = groups.values().iterator();
+    Iterator<Row> draining =
+        new Iterator<>() {
+          @Override
+          public boolean hasNext() {
+            return partial.hasNext();
+          }
+
+          @Override
+          public Row next() {
+            Row group = partial.next();
+            partial.remove();
+            return group;
+          }
+        };
+    Stream<Row> sorted =
+        ExternalSorter.of(sorter, memoryBudget, tempDir)
+            .sort(Stream.concat(Streams.stream(draining), Streams.stream(rest)));
+    return Streams.stream(new Merging(sorted.iterator())).onClose(sorted::close);
+  }
+
+  /** Merges runs of adjacent rows with equal keys. */
+  private class Merging implements Iterator<Row> {
+    private final Iterator<Row> sorted;
+    private Row next;
+
+    Merging(Iterator<Row> sorted) {
+      this.sorted = sorted;
+      this.next = sorted.hasNext() ? sorted.next() : null;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public Row next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      Row group = new Row();
+      group.merge(next, accumulators);
+      Row key = new Row(group, groupBy);
+      next = null;
+      while (sorted.hasNext()) {
+        Row row = sorted.next();
+        if (!key.equals(new Row(row, groupBy))) {
+          next = row;
+          break;
+        }
+        group.merge(row, accumulators);
+      }
+      return group;
+    }
+  }
+}
@@ -0,0 +1,201 @@
+package com.ansonator.query.adaptive;
+
+import com.ansonator.query.row.Row;
+import com.ansonator.query.spill.RowCodec;
+import com.ansonator.query.spill.RowSize;
+import com.ansonator.query.spill.SpillFile;
+import com.google.common.collect.Streams;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * An equi-join which picks its strategy once it has seen the size of its build (right) side.
+ *
+ * <p>The right side is read into a hash table while its estimated size (see {@link RowSize}) is
+ * counted. If it all fits within the memory budget, the left side streams past the table, as in
+ * {@link com.ansonator.query.plan.PlanCompiler#visitJoin}. Otherwise, the join switches to a
+ * partitioned (grace) hash join: both sides are split by key hash into {@value #PARTITIONS} pairs
+ * of {@link SpillFile}s, and each pair is then joined in memory. Partitioned output is grouped by
+ * partition, so it does not preserve the order of the left side.
+ *
+ * <p>The chosen strategy is reported through a callback, for {@link
+ * com.ansonator.query.Query#explainAnalyze}.
+ */
+public class AdaptiveHashJoin {
+  public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+  static final int PARTITION_BITS = 4;
+  static final int PARTITIONS = 1 << PARTITION_BITS;
+
+  private final Function<Row, Object> leftKey;
+  private final Function<Row, Object> rightKey;
+  private final BinaryOperator<Row> concat;
+  private final long memoryBudget;
+  private final Path tempDir;
+  private final Consumer<String> decisions;
+
+  /**
+   * @param leftKey null for rows which match nothing
+   * @param concat combines a left and a right row
+   * @param decisions receives a description of the chosen strategy
+   */
+  public AdaptiveHashJoin(
+      Function<Row, Object> leftKey,
+      Function<Row, Object> rightKey,
+      BinaryOperator<Row> concat,
+      long memoryBudget,
+      Consumer<String> decisions) {
+    this(
+        leftKey,
+        rightKey,
+        concat,
+        memoryBudget,
+        Paths.get(System.getProperty("java.io.tmpdir")),
+        decisions);
+  }
+
+  public AdaptiveHashJoin(
+      Function<Row, Object> leftKey,
+      Function<Row, Object> rightKey,
+      BinaryOperator<Row> concat,
+      long memoryBudget,
+      Path tempDir,
+      Consumer<String> decisions) {
+    if (memoryBudget <= 0) {
+      throw new IllegalArgumentException(
+          String.format("Memory budget must be positive but was [%d]", memoryBudget));
+    }
+    this.leftKey = leftKey;
+    this.rightKey = rightKey;
+    this.concat = concat;
+    this.memoryBudget = memoryBudget;
+    this.tempDir = tempDir;
+    this.decisions = decisions;
+  }
+
+  /**
+   * @return pairs of left and right rows with equal keys. Neither input is read until a terminal
+   *     operation is invoked on the result.
+   */
+  public Stream<Row> join(Stream<Row> left, Stream<Row> right) {
+    Supplier<Stream<Row>> join = () -> build(left, right);
+    return Stream.of(join).flatMap(Supplier::get).onClose(left::close).onClose(right::close);
+  }
+
+  private Stream<Row> build(Stream<Row> left, Stream<Row> right) {
+    Map<Object, List<Row>> table = new HashMap<>();
+    long rows = 0;
+    long bytes = 0;
+    Iterator<Row> input = right.iterator();
+    while (input.hasNext()) {
+      Row row = input.next();
+      Object key = rightKey.apply(row);
+      if (key == null) {
+        continue;
+      }
+      table.computeIfAbsent(key, k -> new ArrayList<>(1)).add(row);
+      rows++;
+      bytes += RowSize.estimate(row);
+      if (bytes > memoryBudget && isSpillable(row)) {
+        decisions.accept(
+            String.format(
+                "partitioned hash join: right side exceeded [%d] bytes after [%d] rows, spilled to"
+                    + " [%d] partitions",
+                memoryBudget, rows, PARTITIONS));
+        return partitioned(table, input, left);
+      }
+    }
+    decisions.accept(
+        String.format("in-memory hash join: right side [%d] rows, [%d] bytes", rows, bytes));
+    return left.flatMap(leftRow -> probe(table, leftRow));
+  }
+
+  private static boolean isSpillable(Row row) {
+    for (Object val : row.vals) {
+      if (!RowCodec.isEncodable(val)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private Stream<Row> probe(Map<Object, List<Row>> table, Row leftRow) {
+    Object key = leftKey.apply(leftRow);
+    List<Row> matches = key == null ? null : table.get(key);
+    return matches == null
+        ? Stream.empty()
+        : matches.stream().map(rightRow -> concat.apply(leftRow, rightRow));
+  }
+
+  private Stream<Row> partitioned(
+      Map<Object, List<Row>> table, Iterator<Row> right, Stream<Row> left) {
+    SpillFile[] rightFiles = new SpillFile[PARTITIONS];
+    SpillFile[] leftFiles = new SpillFile[PARTITIONS];
+    try {
+      for (int i = 0; i < PARTITIONS; i++) {
+        rightFiles[i] = new SpillFile(tempDir);
+        leftFiles[i] = new SpillFile(tempDir);
+      }
+      table.forEach((key, rows) -> rows.forEach(rightFiles[partition(key)]::write));
+      table.clear();
+      right.forEachRemaining(
+          row -> {
+            Object key = rightKey.apply(row);
+            if (key != null) {
+              rightFiles[partition(key)].write(row);
+            }
+          });
+      left.forEachOrdered(
+          row -> {
+            Object key = leftKey.apply(row);
+            if (key != null) {
+              leftFiles[partition(key)].write(row);
+            }
+          });
+    } catch (RuntimeException e) {
+      close(rightFiles);
+      close(leftFiles);
+      throw e;
+    }
+    return IntStream.range(0, PARTITIONS)
+        .boxed()
+        .flatMap(i -> joinPartition(leftFiles[i], rightFiles[i]))
+        .onClose(() -> close(rightFiles))
+        .onClose(() -> close(leftFiles));
+  }
+
+  private Stream<Row> joinPartition(SpillFile left, SpillFile right) {
+    Map<Object, List<Row>> table = new HashMap<>();
+    right
+        .iterator()
+        .forEachRemaining(
+            row -> table.computeIfAbsent(rightKey.apply(row), k -> new ArrayList<>(1)).add(row));
+    right.close();
+    return Streams.stream(left.iterator())
+        .flatMap(leftRow -> probe(table, leftRow))
+        .onClose(left::close);
+  }
+
+  /** Uses the high bits of the hash, so each partition's own hash table is not skewed. */
+  private static int partition(Object key) {
+    return (key.hashCode() * 0x9E3779B9) >>> (Integer.SIZE - PARTITION_BITS);
+  }
+
+  private static void close(SpillFile[] files) {
+    for (SpillFile file : files) {
+      if (file != null) {
+        file.close();
+      }
+    }
+  }
+}
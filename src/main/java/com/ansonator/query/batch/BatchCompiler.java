@@ -0,0 +1,446 @@
+package com.ansonator.query.batch;
+
+import com.ansonator.query.cell.NumericAggregate;
+import com.ansonator.query.plan.AggregateNode;
+import com.ansonator.query.plan.ExchangeNode;
+import com.ansonator.query.plan.FetchNode;
+import com.ansonator.query.plan.FilterNode;
+import com.ansonator.query.plan.JoinNode;
+import com.ansonator.query.plan.LateralJoinNode;
+import com.ansonator.query.plan.LimitNode;
+import com.ansonator.query.plan.PeekNode;
+import com.ansonator.query.plan.PlanCompiler;
+import com.ansonator.query.plan.PlanNode;
+import com.ansonator.query.plan.PlanVisitor;
+import com.ansonator.query.plan.ProjectNode;
+import com.ansonator.query.plan.QueryContext;
+import com.ansonator.query.plan.ScanNode;
+import com.ansonator.query.plan.Schema;
+import com.ansonator.query.plan.SetOperationNode;
+import com.ansonator.query.plan.SortNode;
+import com.ansonator.query.plan.TimeWindowNode;
+import com.ansonator.query.plan.UnionAllNode;
+import com.ansonator.query.plan.WindowNode;
+import com.ansonator.query.row.Row;
+import com.ansonator.query.spill.RowSize;
+import com.ansonator.query.vector.NumericKernels;
+import com.google.common.base.Suppliers;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Compiles a plan into a pipeline which passes {@link RowBatch}es, rather than single rows, between
+ * operators. Filters ({@link BatchFilter}), projections, aggregations and hash joins process a
+ * whole batch per call. Built-in aggregates ({@link NumericAggregate}) over numeric columns are
+ * reduced per group with {@link NumericKernels}. Every other operator runs row by row via {@link
+ * PlanCompiler}, with its input and output converted between rows and batches.
+ *
+ * <p>See {@link com.ansonator.query.Query#batched}.
+ */
+public class BatchCompiler extends PlanCompiler {
+  private final int capacity;
+  private final PlanVisitor<Stream<RowBatch>> batches = new BatchVisitor();
+
+  public BatchCompiler() {
+    this(RowBatch.DEFAULT_CAPACITY);
+  }
+
+  public BatchCompiler(int capacity) {
+    this(capacity, QueryContext.unlimited());
+  }
+
+  public BatchCompiler(QueryContext context) {
+    this(RowBatch.DEFAULT_CAPACITY, context);
+  }
+
+  public BatchCompiler(int capacity, QueryContext context) {
+    super(context);
+    this.capacity = capacity;
+  }
+
+  @Override
+  public Stream<Row> compile(PlanNode node) {
+    return compileBatches(node).flatMap(RowBatch::rows);
+  }
+
+  public Stream<RowBatch> compileBatches(PlanNode node) {
+    return node.accept(batches);
+  }
+
+  private Stream<RowBatch> toBatches(PlanNode node, Stream<Row> rows) {
+    return RowBatch.of(rows, node.getSchema().size(), capacity);
+  }
+
+  private class BatchVisitor implements PlanVisitor<Stream<RowBatch>> {
+    @Override
+    public Stream<RowBatch> visitScan(ScanNode node) {
+      return toBatches(node, BatchCompiler.super.visitScan(node));
+    }
+
+    @Override
+    public Stream<RowBatch> visitProject(ProjectNode node) {
+      final int[] indexes = node.getChild().getSchema().indexesOf(node.getColumns());
+      return compileBatches(node.getChild()).map(batch -> batch.project(indexes));
+    }
+
+    @Override
+    public Stream<RowBatch> visitFilter(FilterNode node) {
+      final BatchFilter filter = BatchFilter.of(node.getMatcher(), node.getColumnIndexes());
+      return compileBatches(node.getChild())
+          .map(
+              batch -> {
+                int[] selection = batch.selection();
+                return batch.withSelection(
+                    selection, filter.apply(batch, selection, batch.getSelected()));
+              })
+          .filter(batch -> !batch.isEmpty());
+    }
+
+    @Override
+    public Stream<RowBatch> visitJoin(JoinNode node) {
+      if (node.getStrategy() != JoinNode.Strategy.HASH || isAdaptive()) {
+        return toBatches(node, BatchCompiler.super.visitJoin(node));
+      }
+      final int[] leftKeys = node.getLeft().getSchema().indexesOf(node.getLeftKeys());
+      final int[] rightKeys = node.getRight().getSchema().indexesOf(node.getRightKeys());
+      final int width = node.getSchema().size();
+      Stream<Row> right = compile(node.getRight());
+      Supplier<Map<Object, List<Object[]>>> table =
+          Suppliers.memoize(
+              () -> {
+                Map<Object, List<Object[]>> rows = new HashMap<>();
+                right.forEachOrdered(
+                    row -> {
+                      Object key = key(row.vals, rightKeys);
+                      if (key != null) {
+                        context.reserve(RowSize.estimate(row), "HashJoin");
+                        rows.computeIfAbsent(key, k -> new ArrayList<>(1)).add(row.vals);
+                      }
+                    });
+                return rows;
+              });
+      return compileBatches(node.getLeft())
+          .flatMap(
+              batch -> {
+                Map<Object, List<Object[]>> rows = table.get();
+                Object[][] keyColumns = new Object[leftKeys.length][];
+                for (int i = 0; i < leftKeys.length; i++) {
+                  keyColumns[i] = batch.column(leftKeys[i]);
+                }
+                List<RowBatch> output = new ArrayList<>();
+                RowBatch.Builder builder = new RowBatch.Builder(width, capacity);
+                for (int row : batch.selection()) {
+                  List<Object[]> matches = rows.get(key(keyColumns, row));
+                  if (matches == null) {
+                    continue;
+                  }
+                  for (Object[] match : matches) {
+                    builder.add(batch, row, match);
+                    if (builder.isFull()) {
+                      output.add(builder.build());
+                      builder = new RowBatch.Builder(width, capacity);
+                    }
+                  }
+                }
+                if (!builder.isEmpty()) {
+                  output.add(builder.build());
+                }
+                return output.stream();
+              })
+          .onClose(right::close);
+    }
+
+    @Override
+    public Stream<RowBatch> visitLateralJoin(LateralJoinNode<?> node) {
+      return toBatches(node, BatchCompiler.super.visitLateralJoin(node));
+    }
+
+    /**
+     * Groups are accumulated in place in one values array per group. This has the semantics of
+     * {@link Row#merge}: columns without an accumulator must be equal within a group.
+     */
+    @Override
+    public Stream<RowBatch> visitAggregate(AggregateNode node) {
+      if (isAdaptive()) {
+        return toBatches(node, BatchCompiler.super.visitAggregate(node));
+      }
+      final Schema schema = node.getChild().getSchema();
+      final int width = schema.size();
+      final int[] groupBy = schema.indexesOf(node.getGroupBy());
+      @SuppressWarnings("unchecked")
+      final BinaryOperator<Object>[] accumulators = new BinaryOperator[width];
+      node.getAccumulators()
+          .forEach(
+              (column, accumulator) -> {
+                if (schema.contains(column)) {
+                  accumulators[schema.indexOf(column)] = accumulator;
+                }
+              });
+      Stream<RowBatch> input = compileBatches(node.getChild());
+      return Stream.of(input)
+          .flatMap(
+              batches -> {
+                Map<Object, Object[]> groups = new LinkedHashMap<>();
+                batches.forEachOrdered(batch -> accumulate(batch, groupBy, accumulators, groups));
+                RowBatch.Builder builder = new RowBatch.Builder(width, capacity);
+                List<RowBatch> output = new ArrayList<>();
+                for (Object[] group : groups.values()) {
+                  builder.add(group);
+                  if (builder.isFull()) {
+                    output.add(builder.build());
+                    builder = new RowBatch.Builder(width, capacity);
+                  }
+                }
+                if (!builder.isEmpty()) {
+                  output.add(builder.build());
+                }
+                return output.stream();
+              })
+          .onClose(input::close);
+    }
+
+    @Override
+    public Stream<RowBatch> visitSort(SortNode node) {
+      return toBatches(node, BatchCompiler.super.visitSort(node));
+    }
+
+    @Override
+    public Stream<RowBatch> visitLimit(LimitNode node) {
+      return toBatches(node, BatchCompiler.super.visitLimit(node));
+    }
+
+    @Override
+    public Stream<RowBatch> visitPeek(PeekNode node) {
+      return toBatches(node, BatchCompiler.super.visitPeek(node));
+    }
+
+    @Override
+    public Stream<RowBatch> visitUnionAll(UnionAllNode node) {
+      return Stream.concat(
+          compileBatches(node.getChildren().get(0)), compileBatches(node.getChildren().get(1)));
+    }
+
+    @Override
+    public Stream<RowBatch> visitSetOperation(SetOperationNode node) {
+      return toBatches(node, BatchCompiler.super.visitSetOperation(node));
+    }
+
+    @Override
+    public Stream<RowBatch> visitWindow(WindowNode node) {
+      return toBatches(node, BatchCompiler.super.visitWindow(node));
+    }
+
+    @Override
+    public Stream<RowBatch> visitExchange(ExchangeNode node) {
+      return toBatches(node, BatchCompiler.super.visitExchange(node));
+    }
+
+    @Override
+    public Stream<RowBatch> visitTimeWindow(TimeWindowNode node) {
+      return toBatches(node, BatchCompiler.super.visitTimeWindow(node));
+    }
+
+    @Override
+    public Stream<RowBatch> visitFetch(FetchNode node) {
+      return toBatches(node, BatchCompiler.super.visitFetch(node));
+    }
+  }
+
+  private void accumulate(
+      RowBatch batch,
+      int[] groupBy,
+      BinaryOperator<Object>[] accumulators,
+      Map<Object, Object[]> groups) {
+    int width = batch.getWidth();
+    Object[][] columns = new Object[width][];
+    boolean[] reducible = new boolean[width];
+    boolean anyReducible = false;
+    for (int column = 0; column < width; column++) {
+      columns[column] = batch.column(column);
+      reducible[column] = isReducible(accumulators[column], batch, column);
+      anyReducible |= reducible[column];
+    }
+    Object[][] keyColumns = new Object[groupBy.length][];
+    for (int i = 0; i < groupBy.length; i++) {
+      keyColumns[i] = columns[groupBy[i]];
+    }
+    int[] selection = batch.selection();
+    // Rows merged into an existing group, and that group's slot in slotGroups
+    int merged = 0;
+    int[] mergedRows = new int[selection.length];
+    int[] mergedSlots = new int[selection.length];
+    Map<Object[], Integer> slots = new IdentityHashMap<>();
+    List<Object[]> slotGroups = new ArrayList<>();
+    for (int row : selection) {
+      Object key = groupKey(keyColumns, row);
+      Object[] group = groups.get(key);
+      if (group == null) {
+        Object[] values = batch.values(row);
+        context.reserve(2 * RowSize.estimate(values), "Aggregate");
+        for (int column = 0; column < width; column++) {
+          if (accumulators[column] != null) {
+            values[column] = NumericAggregate.first(accumulators[column], values[column]);
+          }
+        }
+        groups.put(key, values);
+        continue;
+      }
+      for (int column = 0; column < width; column++) {
+        Object value = columns[column][row];
+        if (reducible[column]) {
+          continue;
+        } else if (accumulators[column] != null) {
+          group[column] = accumulators[column].apply(group[column], value);
+        } else if (!Objects.equals(group[column], value)) {
+          throw new IllegalArgumentException(
+              String.format(
+                  "Cannot merge [%s] from row %s into [%s] from row %s without an "
+                      + "accumulator for column [%d]",
+                  value, new Row(batch.values(row)), group[column], new Row(group), column));
+        }
+      }
+      if (anyReducible) {
+        mergedRows[merged] = row;
+        mergedSlots[merged++] =
+            slots.computeIfAbsent(
+                group,
+                g -> {
+                  slotGroups.add(g);
+                  return slotGroups.size() - 1;
+                });
+      }
+    }
+    if (merged > 0) {
+      reduce(batch, accumulators, reducible, slotGroups, mergedRows, mergedSlots, merged);
+    }
+  }
+
+  /**
+   * A column can be reduced with {@link NumericKernels} if it is numeric and its accumulator is a
+   * {@link NumericAggregate} which gives the same result in any order. Floating point sums depend
+   * on the order of addition, so they are not.
+   */
+  private static boolean isReducible(
+      BinaryOperator<Object> accumulator, RowBatch batch, int column) {
+    if (!(accumulator instanceof NumericAggregate)) {
+      return false;
+    }
+    NumericColumn numeric = batch.numeric(column);
+    return numeric.isIntegral()
+        || (numeric.doubles != null && numeric.ieeeSafe && accumulator != NumericAggregate.SUM);
+  }
+
+  /**
+   * Reduce each reducible column of the merged rows per group, and then fold that partial result
+   * into the group. The rows are first bucketed by group, so each group's rows are contiguous.
+   */
+  private static void reduce(
+      RowBatch batch,
+      BinaryOperator<Object>[] accumulators,
+      boolean[] reducible,
+      List<Object[]> slotGroups,
+      int[] mergedRows,
+      int[] mergedSlots,
+      int merged) {
+    int[] offsets = new int[slotGroups.size() + 1];
+    for (int i = 0; i < merged; i++) {
+      offsets[mergedSlots[i] + 1]++;
+    }
+    for (int slot = 0; slot < slotGroups.size(); slot++) {
+      offsets[slot + 1] += offsets[slot];
+    }
+    int[] next = Arrays.copyOf(offsets, slotGroups.size());
+    int[] rows = new int[merged];
+    for (int i = 0; i < merged; i++) {
+      rows[next[mergedSlots[i]]++] = mergedRows[i];
+    }
+    NumericKernels kernels = NumericKernels.get();
+    for (int column = 0; column < reducible.length; column++) {
+      if (!reducible[column]) {
+        continue;
+      }
+      NumericColumn numeric = batch.numeric(column);
+      NumericAggregate aggregate = (NumericAggregate) accumulators[column];
+      for (int slot = 0; slot < slotGroups.size(); slot++) {
+        Object[] group = slotGroups.get(slot);
+        Object partial =
+            reduce(kernels, aggregate, numeric, rows, offsets[slot], offsets[slot + 1]);
+        group[column] = aggregate.apply(group[column], partial);
+      }
+    }
+  }
+
+  private static Object reduce(
+      NumericKernels kernels,
+      NumericAggregate aggregate,
+      NumericColumn numeric,
+      int[] rows,
+      int from,
+      int to) {
+    if (numeric.isIntegral()) {
+      switch (aggregate) {
+        case SUM:
+          return kernels.sum(numeric.longs, rows, from, to);
+        case MIN:
+          return numeric.box(kernels.min(numeric.longs, rows, from, to));
+        default:
+          return numeric.box(kernels.max(numeric.longs, rows, from, to));
+      }
+    }
+    return aggregate == NumericAggregate.MIN
+        ? kernels.min(numeric.doubles, rows, from, to)
+        : kernels.max(numeric.doubles, rows, from, to);
+  }
+
+  /** Unlike a join key, a group key may contain nulls. */
+  private static Object groupKey(Object[][] keyColumns, int row) {
+    if (keyColumns.length == 1) {
+      return keyColumns[0][row];
+    }
+    Object[] key = new Object[keyColumns.length];
+    for (int i = 0; i < key.length; i++) {
+      key[i] = keyColumns[i][row];
+    }
+    return new Row(key);
+  }
+
+  /**
+   * @return the join key of a row, or null if any of its values is null
+   */
+  private static Object key(Object[] vals, int[] indexes) {
+    if (indexes.length == 1) {
+      return vals[indexes[0]];
+    }
+    Object[] key = new Object[indexes.length];
+    for (int i = 0; i < indexes.length; i++) {
+      key[i] = vals[indexes[i]];
+      if (key[i] == null) {
+        return null;
+      }
+    }
+    return Arrays.asList(key);
+  }
+
+  private static Object key(Object[][] keyColumns, int row) {
+    if (keyColumns.length == 1) {
+      return keyColumns[0][row];
+    }
+    Object[] key = new Object[keyColumns.length];
+    for (int i = 0; i < key.length; i++) {
+      key[i] = keyColumns[i][row];
+      if (key[i] == null) {
+        return null;
+      }
+    }
+    return Arrays.asList(key);
+  }
+}
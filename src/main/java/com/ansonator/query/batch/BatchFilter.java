@@ -0,0 +1,225 @@
+package com.ansonator.query.batch;
+
+import com.ansonator.query.cell.NumericAggregate;
+import com.ansonator.query.row.AndMatcher;
+import com.ansonator.query.row.BiPredicateMatcher;
+import com.ansonator.query.row.ComparisonMatcher;
+import com.ansonator.query.row.NotMatcher;
+import com.ansonator.query.row.OrMatcher;
+import com.ansonator.query.row.PredicateMatcher;
+import com.ansonator.query.row.Row;
+import com.ansonator.query.row.RowMatcher;
+import com.ansonator.query.vector.Comparison;
+import com.ansonator.query.vector.NumericKernels;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * A {@link RowMatcher} evaluated over a whole {@link RowBatch}. Matchers over one or two columns
+ * become a single loop over those column arrays, calling the predicate once per live row. A {@link
+ * ComparisonMatcher} over a numeric column runs a {@link NumericKernels} comparison instead, which
+ * avoids unboxing per call and uses SIMD where available. The logical matchers combine their
+ * children's selection vectors. Any other matcher is evaluated on materialized rows.
+ */
+@FunctionalInterface
+public interface BatchFilter {
+  /**
+   * Remove rows which do not match from {@code selection}, preserving order.
+   *
+   * @param selection indexes of the live rows of {@code batch}. This is modified.
+   * @param selected number of live rows in {@code selection}
+   * @return number of matching rows, which are now at the front of {@code selection}
+   */
+  int apply(RowBatch batch, int[] selection, int selected);
+
+  /**
+   * @param columns the batch's column to index mapping
+   */
+  static BatchFilter of(RowMatcher matcher, Map<String, Integer> columns) {
+    if (matcher instanceof ComparisonMatcher) {
+      return comparison((ComparisonMatcher) matcher, columns);
+    }
+    if (matcher instanceof PredicateMatcher) {
+      return predicate((PredicateMatcher<?>) matcher, columns);
+    }
+    if (matcher instanceof BiPredicateMatcher) {
+      return biPredicate((BiPredicateMatcher<?, ?>) matcher, columns);
+    }
+    if (matcher instanceof AndMatcher) {
+      return and(
+          ((AndMatcher) matcher)
+              .getConjuncts().stream().map(m -> of(m, columns)).collect(Collectors.toList()));
+    }
+    if (matcher instanceof OrMatcher) {
+      return or(
+          ((OrMatcher) matcher)
+              .getDisjuncts().stream().map(m -> of(m, columns)).collect(Collectors.toList()));
+    }
+    if (matcher instanceof NotMatcher) {
+      return not(of(((NotMatcher) matcher).getMatcher(), columns));
+    }
+    return (batch, selection, selected) -> {
+      int matched = 0;
+      for (int i = 0; i < selected; i++) {
+        int row = selection[i];
+        if (matcher.test(new Row(batch.values(row)), columns)) {
+          selection[matched++] = row;
+        }
+      }
+      return matched;
+    };
+  }
+
+  private static int indexOf(Map<String, Integer> columns, String column) {
+    Integer index = columns.get(column);
+    if (index == null) {
+      throw new IllegalArgumentException(String.format("Column [%s] not found", column));
+    }
+    return index;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static BatchFilter predicate(PredicateMatcher<?> matcher, Map<String, Integer> columns) {
+    final int index = indexOf(columns, matcher.getName());
+    final Predicate<Object> pred = (Predicate<Object>) matcher.getPred();
+    return (batch, selection, selected) -> {
+      Object[] values = batch.column(index);
+      int matched = 0;
+      for (int i = 0; i < selected; i++) {
+        int row = selection[i];
+        if (pred.test(values[row])) {
+          selection[matched++] = row;
+        }
+      }
+      return matched;
+    };
+  }
+
+  private static BatchFilter comparison(ComparisonMatcher matcher, Map<String, Integer> columns) {
+    final int index = indexOf(columns, matcher.getName());
+    final Comparison comparison = matcher.getComparison();
+    final Object value = matcher.getValue();
+    final NumericKernels kernels = NumericKernels.get();
+    return (batch, selection, selected) -> {
+      NumericColumn numeric = batch.numeric(index);
+      if (isIntegralComparison(numeric, comparison, value)) {
+        return kernels.select(
+            numeric.longs, comparison, ((Number) value).longValue(), selection, selected);
+      }
+      if (isDoubleComparison(numeric, value)) {
+        return kernels.select(numeric.doubles, comparison, (Double) value, selection, selected);
+      }
+      Object[] values = batch.column(index);
+      int matched = 0;
+      for (int i = 0; i < selected; i++) {
+        int row = selection[i];
+        if (matcher.matches(values[row])) {
+          selection[matched++] = row;
+        }
+      }
+      return matched;
+    };
+  }
+
+  /**
+   * {@code equals} requires the same type, but ordering compares any two integral values as longs.
+   */
+  private static boolean isIntegralComparison(
+      NumericColumn numeric, Comparison comparison, Object value) {
+    if (!numeric.isIntegral() || !NumericAggregate.isIntegral(value)) {
+      return false;
+    }
+    return value.getClass() == numeric.type
+        || (comparison != Comparison.EQ && comparison != Comparison.NE);
+  }
+
+  /** IEEE comparisons agree with {@code equals} and {@link Double#compare} without NaN or -0.0. */
+  private static boolean isDoubleComparison(NumericColumn numeric, Object value) {
+    return numeric.doubles != null
+        && numeric.ieeeSafe
+        && value instanceof Double
+        && NumericColumn.isIeeeSafe((Double) value);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static BatchFilter biPredicate(
+      BiPredicateMatcher<?, ?> matcher, Map<String, Integer> columns) {
+    final int index1 = indexOf(columns, matcher.getName1());
+    final int index2 = indexOf(columns, matcher.getName2());
+    final BiPredicate<Object, Object> pred = (BiPredicate<Object, Object>) matcher.getPred();
+    return (batch, selection, selected) -> {
+      Object[] values1 = batch.column(index1);
+      Object[] values2 = batch.column(index2);
+      int matched = 0;
+      for (int i = 0; i < selected; i++) {
+        int row = selection[i];
+        if (pred.test(values1[row], values2[row])) {
+          selection[matched++] = row;
+        }
+      }
+      return matched;
+    };
+  }
+
+  private static BatchFilter and(List<BatchFilter> conjuncts) {
+    final BatchFilter[] filters = conjuncts.toArray(new BatchFilter[0]);
+    return (batch, selection, selected) -> {
+      int matched = selected;
+      for (int i = 0; i < filters.length && matched > 0; i++) {
+        matched = filters[i].apply(batch, selection, matched);
+      }
+      return matched;
+    };
+  }
+
+  /** Each disjunct only sees the rows which no earlier disjunct matched. */
+  private static BatchFilter or(List<BatchFilter> disjuncts) {
+    final BatchFilter[] filters = disjuncts.toArray(new BatchFilter[0]);
+    return (batch, selection, selected) -> {
+      boolean[] matches = new boolean[selected == 0 ? 0 : selection[selected - 1] + 1];
+      int[] remaining = Arrays.copyOf(selection, selected);
+      int unmatched = selected;
+      for (int i = 0; i < filters.length && unmatched > 0; i++) {
+        int[] candidates = Arrays.copyOf(remaining, unmatched);
+        int matched = filters[i].apply(batch, candidates, unmatched);
+        for (int j = 0; j < matched; j++) {
+          matches[candidates[j]] = true;
+        }
+        int next = 0;
+        for (int j = 0; j < unmatched; j++) {
+          if (!matches[remaining[j]]) {
+            remaining[next++] = remaining[j];
+          }
+        }
+        unmatched = next;
+      }
+      return compact(selection, selected, matches, true);
+    };
+  }
+
+  private static BatchFilter not(BatchFilter filter) {
+    return (batch, selection, selected) -> {
+      boolean[] matches = new boolean[selected == 0 ? 0 : selection[selected - 1] + 1];
+      int[] candidates = Arrays.copyOf(selection, selected);
+      int matched = filter.apply(batch, candidates, selected);
+      for (int j = 0; j < matched; j++) {
+        matches[candidates[j]] = true;
+      }
+      return compact(selection, selected, matches, false);
+    };
+  }
+
+  private static int compact(int[] selection, int selected, boolean[] matches, boolean keep) {
+    int kept = 0;
+    for (int i = 0; i < selected; i++) {
+      if (matches[selection[i]] == keep) {
+        selection[kept++] = selection[i];
+      }
+    }
+    return kept;
+  }
+}
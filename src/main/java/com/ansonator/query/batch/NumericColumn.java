@@ -0,0 +1,86 @@
+package com.ansonator.query.batch;
+
+import com.ansonator.query.cell.NumericAggregate;
+
+/**
+ * A primitive copy of one {@link RowBatch} column, so that it can be passed to {@link
+ * com.ansonator.query.vector.NumericKernels}. Only columns whose physical rows are all non-null and
+ * of one type have one: integral types become a {@code long[]}, and doubles a {@code double[]}.
+ */
+final class NumericColumn {
+  /** Marks a column which is not numeric. */
+  static final NumericColumn NONE = new NumericColumn(null, null, null, false);
+
+  private static final long NEGATIVE_ZERO = Double.doubleToRawLongBits(-0.0);
+
+  final Class<?> type;
+  final long[] longs;
+  final double[] doubles;
+  /**
+   * True if no value is NaN or -0.0. For such a column, IEEE comparisons agree with {@link
+   * Double#compare}.
+   */
+  final boolean ieeeSafe;
+
+  private NumericColumn(Class<?> type, long[] longs, double[] doubles, boolean ieeeSafe) {
+    this.type = type;
+    this.longs = longs;
+    this.doubles = doubles;
+    this.ieeeSafe = ieeeSafe;
+  }
+
+  /**
+   * @param size number of physical rows in {@code values}
+   */
+  static NumericColumn of(Object[] values, int size) {
+    if (size == 0 || values[0] == null) {
+      return NONE;
+    }
+    Class<?> type = values[0].getClass();
+    if (NumericAggregate.isIntegral(values[0])) {
+      long[] longs = new long[size];
+      for (int row = 0; row < size; row++) {
+        Object value = values[row];
+        if (value == null || value.getClass() != type) {
+          return NONE;
+        }
+        longs[row] = ((Number) value).longValue();
+      }
+      return new NumericColumn(type, longs, null, true);
+    }
+    if (type == Double.class) {
+      double[] doubles = new double[size];
+      boolean ieeeSafe = true;
+      for (int row = 0; row < size; row++) {
+        Object value = values[row];
+        if (value == null || value.getClass() != type) {
+          return NONE;
+        }
+        doubles[row] = (Double) value;
+        ieeeSafe &= isIeeeSafe(doubles[row]);
+      }
+      return new NumericColumn(type, null, doubles, ieeeSafe);
+    }
+    return NONE;
+  }
+
+  static boolean isIeeeSafe(double value) {
+    return !Double.isNaN(value) && Double.doubleToRawLongBits(value) != NEGATIVE_ZERO;
+  }
+
+  boolean isIntegral() {
+    return longs != null;
+  }
+
+  /** Box a value of this column back to its original type. */
+  Object box(long value) {
+    if (type == Integer.class) {
+      return (int) value;
+    } else if (type == Short.class) {
+      return (short) value;
+    } else if (type == Byte.class) {
+      return (byte) value;
+    }
+    return value;
+  }
+}
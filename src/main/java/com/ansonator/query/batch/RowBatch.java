@@ -0,0 +1,201 @@
+package com.ansonator.query.batch;
+
+import com.ansonator.query.row.Row;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Up to {@link #DEFAULT_CAPACITY} rows stored column by column, plus a selection vector listing
+ * which of those rows are still live. Filters only shrink the selection vector. Projections only
+ * reorder the column arrays. Neither copies values.
+ *
+ * <p>Batches are immutable once built. Operators return new batches which may share the arrays of
+ * their input.
+ */
+public final class RowBatch {
+  public static final int DEFAULT_CAPACITY = 1 << 10;
+
+  // columns[column][row]
+  private final Object[][] columns;
+  // Number of physical rows in each column array
+  private final int size;
+  // Ascending indexes of the live rows, or null when every row is live
+  private final int[] selection;
+  private final int selected;
+  // Lazily built primitive copies of columns, shared by batches over the same column arrays
+  private final NumericColumn[] numeric;
+
+  RowBatch(Object[][] columns, int size, int[] selection, int selected) {
+    this(columns, size, selection, selected, new NumericColumn[columns.length]);
+  }
+
+  private RowBatch(
+      Object[][] columns, int size, int[] selection, int selected, NumericColumn[] numeric) {
+    this.columns = columns;
+    this.size = size;
+    this.selection = selection;
+    this.selected = selection == null ? size : selected;
+    this.numeric = numeric;
+  }
+
+  /**
+   * Transpose rows into batches of {@code capacity} rows.
+   *
+   * @param width number of columns in each row
+   */
+  public static Stream<RowBatch> of(Stream<Row> rows, int width, int capacity) {
+    Iterator<Row> iterator = rows.iterator();
+    Iterator<RowBatch> batches =
+        new Iterator<RowBatch>() {
+          @Override
+          public boolean hasNext() {
+            return iterator.hasNext();
+          }
+
+          @Override
+          public RowBatch next() {
+            Builder builder = new Builder(width, capacity);
+            while (builder.size < capacity && iterator.hasNext()) {
+              builder.add(iterator.next().vals);
+            }
+            return builder.build();
+          }
+        };
+    return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(batches, Spliterator.ORDERED | Spliterator.NONNULL),
+            false)
+        .onClose(rows::close);
+  }
+
+  public int getWidth() {
+    return columns.length;
+  }
+
+  /**
+   * @return number of live rows
+   */
+  public int getSelected() {
+    return selected;
+  }
+
+  public boolean isEmpty() {
+    return selected == 0;
+  }
+
+  /**
+   * @return the values of one column, indexed by physical row. Only rows in {@link #selection()}
+   *     are live.
+   */
+  public Object[] column(int column) {
+    return columns[column];
+  }
+
+  /**
+   * @return the column as primitives, or {@link NumericColumn#NONE}. This is built once per column
+   *     array, on first use.
+   */
+  NumericColumn numeric(int column) {
+    if (numeric[column] == null) {
+      numeric[column] = NumericColumn.of(columns[column], size);
+    }
+    return numeric[column];
+  }
+
+  /**
+   * @return a new array holding the indexes of the live rows. Callers may modify it.
+   */
+  public int[] selection() {
+    return selection == null
+        ? IntStream.range(0, size).toArray()
+        : Arrays.copyOf(selection, selected);
+  }
+
+  /**
+   * @param selection ascending indexes of live rows, a subset of {@link #selection()}
+   */
+  public RowBatch withSelection(int[] selection, int selected) {
+    return new RowBatch(columns, size, selection, selected, numeric);
+  }
+
+  /**
+   * @param indexes the columns of this batch which make up each column of the result
+   */
+  public RowBatch project(int[] indexes) {
+    Object[][] projected = new Object[indexes.length][];
+    NumericColumn[] projectedNumeric = new NumericColumn[indexes.length];
+    for (int i = 0; i < indexes.length; i++) {
+      projected[i] = columns[indexes[i]];
+      projectedNumeric[i] = numeric[indexes[i]];
+    }
+    return new RowBatch(projected, size, selection, selected, projectedNumeric);
+  }
+
+  /**
+   * @return the values of one physical row
+   */
+  public Object[] values(int row) {
+    Object[] vals = new Object[columns.length];
+    for (int column = 0; column < columns.length; column++) {
+      vals[column] = columns[column][row];
+    }
+    return vals;
+  }
+
+  /**
+   * @return the live rows, materialized as {@link Row}s
+   */
+  public Stream<Row> rows() {
+    if (selection == null) {
+      return IntStream.range(0, size).mapToObj(row -> new Row(values(row)));
+    }
+    return IntStream.range(0, selected).mapToObj(i -> new Row(values(selection[i])));
+  }
+
+  /** Accumulates rows into a batch. A builder must not be used after {@link #build}. */
+  public static final class Builder {
+    private final Object[][] columns;
+    private final int capacity;
+    private int size;
+
+    public Builder(int width, int capacity) {
+      this.columns = new Object[width][capacity];
+      this.capacity = capacity;
+    }
+
+    public boolean isFull() {
+      return size == capacity;
+    }
+
+    public boolean isEmpty() {
+      return size == 0;
+    }
+
+    public void add(Object[] vals) {
+      for (int column = 0; column < vals.length; column++) {
+        columns[column][size] = vals[column];
+      }
+      size++;
+    }
+
+    /** Append the concatenation of a row of {@code left} and a row of {@code right}. */
+    public void add(RowBatch left, int leftRow, Object[] right) {
+      int width = left.getWidth();
+      for (int column = 0; column < width; column++) {
+        columns[column][size] = left.columns[column][leftRow];
+      }
+      for (int column = 0; column < right.length; column++) {
+        columns[width + column][size] = right[column];
+      }
+      size++;
+    }
+
+    public RowBatch build() {
+      return new RowBatch(columns, size, null, size);
+    }
+  }
+}
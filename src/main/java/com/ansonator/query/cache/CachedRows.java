@@ -0,0 +1,62 @@
+package com.ansonator.query.cache;
+
+import com.ansonator.query.row.Row;
+import com.ansonator.query.spill.RowCodec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A query result encoded into a single byte array by {@link RowCodec}. */
+final class CachedRows {
+  private final byte[] data;
+  private final int size;
+
+  private CachedRows(byte[] data, int size) {
+    this.data = data;
+    this.size = size;
+  }
+
+  /**
+   * @return null if some value cannot be encoded (see {@link RowCodec#isEncodable})
+   */
+  static CachedRows encode(List<Row> rows) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      for (Row row : rows) {
+        for (Object val : row.vals) {
+          if (!RowCodec.isEncodable(val)) {
+            return null;
+          }
+        }
+        RowCodec.write(out, row);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return new CachedRows(bytes.toByteArray(), rows.size());
+  }
+
+  /**
+   * @return new rows on each call, so callers may modify them
+   */
+  List<Row> decode() {
+    List<Row> rows = new ArrayList<>(size);
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+      for (int i = 0; i < size; i++) {
+        rows.add(RowCodec.read(in));
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return rows;
+  }
+
+  int getBytes() {
+    return data.length;
+  }
+}
@@ -0,0 +1,135 @@
+package com.ansonator.query.cache;
+
+import com.ansonator.query.PreparedQuery;
+import com.ansonator.query.plan.PlanFingerprint;
+import com.ansonator.query.row.Row;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Results of {@link PreparedQuery prepared queries}, keyed by the query's {@link PlanFingerprint},
+ * the values of its parameters and a version token supplied by the caller. The token stands for the
+ * contents of the sources: callers change it whenever the data behind a source changes, or call
+ * {@link #invalidate(String)}.
+ *
+ * <p>Results are encoded by {@link com.ansonator.query.spill.RowCodec} into one byte array each,
+ * which is also their weight. The least recently used results are evicted once the total weight
+ * exceeds the budget. Results containing a value which cannot be encoded are not cached.
+ *
+ * <p>Instances are thread-safe and are meant to be shared by every execution of a set of queries.
+ */
+@Log4j2
+public class ResultCache {
+  // Accounts for the key and the entry itself
+  private static final int ENTRY_OVERHEAD = 128;
+
+  private final Cache<Key, CachedRows> results;
+
+  /**
+   * @param maximumBytes maximum total size of the encoded results
+   */
+  public ResultCache(long maximumBytes) {
+    results =
+        CacheBuilder.newBuilder()
+            // Guava enforces the budget per segment, so one segment lets a result use all of it
+            .concurrencyLevel(1)
+            .maximumWeight(maximumBytes)
+            .<Key, CachedRows>weigher(
+                (key, rows) ->
+                    (int) Math.min((long) rows.getBytes() + ENTRY_OVERHEAD, Integer.MAX_VALUE))
+            .recordStats()
+            .build();
+  }
+
+  /**
+   * Identical to {@link PreparedQuery#list}, except that the result is read from this cache when
+   * {@code query} was executed before with the same {@code version} and {@code parameters}. In that
+   * case, {@code sources} are not consumed.
+   *
+   * @param version identifies the contents of {@code sources}. Compared with {@link Object#equals}.
+   * @return new rows on each call, so callers may modify them
+   */
+  public List<Row> list(
+      PreparedQuery query,
+      Object version,
+      Map<String, ? extends Stream<?>> sources,
+      Map<String, ?> parameters) {
+    Map<String, Object> bound = new HashMap<>();
+    for (String parameter : query.getParameters()) {
+      bound.put(parameter, parameters.get(parameter));
+    }
+    Key key =
+        new Key(
+            query.getFingerprint(),
+            query.getSources(),
+            Collections.unmodifiableMap(bound),
+            version);
+    CachedRows cached = results.getIfPresent(key);
+    if (cached != null) {
+      return cached.decode();
+    }
+    List<Row> rows = query.list(sources, parameters);
+    CachedRows encoded = CachedRows.encode(rows);
+    if (encoded == null) {
+      log.debug("Not caching the result of [{}] because it cannot be encoded", key.fingerprint);
+    } else {
+      results.put(key, encoded);
+    }
+    return rows;
+  }
+
+  /** Discard every result read from the source named {@code source}. */
+  public void invalidate(String source) {
+    results.asMap().keySet().removeIf(key -> key.sources.contains(source));
+  }
+
+  /** Discard every result of {@code query}, whatever its version and parameters. */
+  public void invalidate(PreparedQuery query) {
+    PlanFingerprint fingerprint = query.getFingerprint();
+    results.asMap().keySet().removeIf(key -> key.fingerprint.equals(fingerprint));
+  }
+
+  public void invalidateAll() {
+    results.invalidateAll();
+  }
+
+  /**
+   * @return hits, misses and evictions since this cache was created
+   */
+  public CacheStats getStats() {
+    return results.stats();
+  }
+
+  /**
+   * @return the number of cached results
+   */
+  public long size() {
+    return results.size();
+  }
+
+  /**
+   * @return the total size of the encoded results
+   */
+  public long getBytes() {
+    return results.asMap().values().stream().mapToLong(CachedRows::getBytes).sum();
+  }
+
+  @EqualsAndHashCode
+  @RequiredArgsConstructor
+  private static final class Key {
+    private final PlanFingerprint fingerprint;
+    private final Set<String> sources;
+    private final Map<String, Object> parameters;
+    private final Object version;
+  }
+}
@@ -2,16 +2,41 @@ package com.ansonator.query.cell;
 
 import java.util.function.BiConsumer;
 import java.util.function.BinaryOperator;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
-@RequiredArgsConstructor(staticName = "of")
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
 public class Aggregator<T> {
   @Getter private final String name;
   private final BiConsumer<T, T> consumer;
+  // Set instead of consumer for built-in aggregates
+  private final BinaryOperator<Object> operator;
+
+  public static <T> Aggregator<T> of(String name, BiConsumer<T, T> consumer) {
+    return new Aggregator<>(name, consumer, null);
+  }
+
+  /** See {@link NumericAggregate#SUM}. */
+  public static Aggregator<Number> sum(String name) {
+    return new Aggregator<>(name, null, NumericAggregate.SUM);
+  }
+
+  /** See {@link NumericAggregate#MIN}. */
+  public static Aggregator<Object> min(String name) {
+    return new Aggregator<>(name, null, NumericAggregate.MIN);
+  }
+
+  /** See {@link NumericAggregate#MAX}. */
+  public static Aggregator<Object> max(String name) {
+    return new Aggregator<>(name, null, NumericAggregate.MAX);
+  }
 
   @SuppressWarnings("unchecked")
   public BinaryOperator<Object> asOperator() {
+    if (operator != null) {
+      return operator;
+    }
     return (Object a, Object b) -> {
       consumer.accept((T) a, (T) b);
       return a;
@@ -20,6 +45,10 @@ public class Aggregator<T> {
 
   @SuppressWarnings("unchecked")
   public BiConsumer<Object, Object> asConsumer() {
+    if (consumer == null) {
+      throw new IllegalStateException(
+          String.format("Aggregator [%s] returns a new value rather than modifying one", name));
+    }
     return (Object a, Object b) -> consumer.accept((T) a, (T) b);
   }
 }
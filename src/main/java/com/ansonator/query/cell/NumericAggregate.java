@@ -0,0 +1,91 @@
+package com.ansonator.query.cell;
+
+import com.ansonator.query.sort.RowComparators;
+import java.util.function.BinaryOperator;
+
+/**
+ * Built-in aggregates over numbers. Nulls are ignored. The batch executor reduces numeric columns
+ * with these aggregates using SIMD kernels (see {@link com.ansonator.query.vector.NumericKernels}).
+ *
+ * <p>See {@link Aggregator#sum}, {@link Aggregator#min} and {@link Aggregator#max}.
+ */
+public enum NumericAggregate implements BinaryOperator<Object> {
+  /**
+   * The sum of integral values is a {@link Long}. Otherwise, it is a {@link Double}. This holds for
+   * a single value too.
+   */
+  SUM {
+    @Override
+    Object first(Object b) {
+      if (!(b instanceof Number)) {
+        throw new IllegalArgumentException(String.format("Cannot sum [%s]", b.getClass()));
+      }
+      return isIntegral(b)
+          ? (Object) ((Number) b).longValue()
+          : (Object) ((Number) b).doubleValue();
+    }
+
+    @Override
+    Object combine(Object a, Object b) {
+      if (!(a instanceof Number) || !(b instanceof Number)) {
+        throw new IllegalArgumentException(
+            String.format("Cannot sum [%s] and [%s]", a.getClass(), b.getClass()));
+      }
+      if (isIntegral(a) && isIntegral(b)) {
+        return ((Number) a).longValue() + ((Number) b).longValue();
+      }
+      return ((Number) a).doubleValue() + ((Number) b).doubleValue();
+    }
+  },
+  /** Values are compared as {@link RowComparators#compareValues} does. */
+  MIN {
+    @Override
+    Object combine(Object a, Object b) {
+      return RowComparators.compareValues(b, a) < 0 ? b : a;
+    }
+  },
+  /** Values are compared as {@link RowComparators#compareValues} does. */
+  MAX {
+    @Override
+    Object combine(Object a, Object b) {
+      return RowComparators.compareValues(b, a) > 0 ? b : a;
+    }
+  };
+
+  @Override
+  public Object apply(Object a, Object b) {
+    if (b == null) {
+      return a;
+    }
+    if (a == null) {
+      return first(b);
+    }
+    return combine(a, b);
+  }
+
+  /**
+   * @param b not null
+   * @return the result for a single value
+   */
+  Object first(Object b) {
+    return b;
+  }
+
+  abstract Object combine(Object a, Object b);
+
+  /**
+   * @return the state of a new group whose first value in the column of {@code accumulator} is
+   *     {@code value}. Groups take their first row as is, so this normalizes built-in aggregates,
+   *     e.g. a sum of one Integer to a Long.
+   */
+  public static Object first(BinaryOperator<Object> accumulator, Object value) {
+    return accumulator instanceof NumericAggregate ? accumulator.apply(null, value) : value;
+  }
+
+  public static boolean isIntegral(Object val) {
+    return val instanceof Integer
+        || val instanceof Long
+        || val instanceof Short
+        || val instanceof Byte;
+  }
+}
@@ -0,0 +1,10 @@
+package com.ansonator.query.codegen;
+
+/** A {@link FusedPipeline} which ends in an aggregation. */
+public interface AggregatingPipeline extends FusedPipeline {
+  /**
+   * Merge a row into its group in place. This has the semantics of {@link
+   * com.ansonator.query.row.Row#merge}.
+   */
+  void merge(Object[] group, Object[] row);
+}
@@ -0,0 +1,159 @@
+package com.ansonator.query.codegen;
+
+import com.ansonator.query.cell.NumericAggregate;
+import com.ansonator.query.plan.AggregateNode;
+import com.ansonator.query.plan.FilterNode;
+import com.ansonator.query.plan.PlanCompiler;
+import com.ansonator.query.plan.ProjectNode;
+import com.ansonator.query.plan.QueryContext;
+import com.ansonator.query.row.Row;
+import com.ansonator.query.spill.RowSize;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import java.lang.invoke.MethodHandle;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Compiles chains of filters and projections over {@link com.ansonator.query.plan.BeanSource}s,
+ * optionally ending in an aggregation, into one generated class per chain (see {@link
+ * PipelineGenerator}). Each item then passes through a single call which reads its getters,
+ * evaluates every filter and builds the output row, instead of through a stream stage per operator.
+ * An aggregation merges rows into their group with unrolled per-column code.
+ *
+ * <p>Generated classes are cached by plan shape, so a query which differs from an earlier one only
+ * in its constants, predicates or accumulators reuses that query's class. Filters whose matchers
+ * are lambdas, and every other operator, run as in {@link PlanCompiler}.
+ *
+ * <p>See {@link com.ansonator.query.Query#compiled}.
+ */
+public class FusedCompiler extends PlanCompiler {
+  private static final int CACHE_SIZE = 256;
+
+  private static final Cache<List<Object>, MethodHandle> PIPELINES =
+      CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).recordStats().build();
+
+  /**
+   * @return hits and misses (i.e. classes generated) of the shared cache of generated classes
+   */
+  public static CacheStats getCacheStats() {
+    return PIPELINES.stats();
+  }
+
+  public FusedCompiler() {}
+
+  public FusedCompiler(QueryContext context) {
+    super(context);
+  }
+
+  @Override
+  public Stream<Row> visitProject(ProjectNode node) {
+    FusedPlan plan = FusedPlan.of(node);
+    return plan == null ? super.visitProject(node) : rows(plan);
+  }
+
+  @Override
+  public Stream<Row> visitFilter(FilterNode node) {
+    FusedPlan plan = FusedPlan.of(node);
+    return plan == null ? super.visitFilter(node) : rows(plan);
+  }
+
+  @Override
+  public Stream<Row> visitAggregate(AggregateNode node) {
+    FusedPlan plan = FusedPlan.of(node);
+    return plan == null || isAdaptive() ? super.visitAggregate(node) : groups(plan);
+  }
+
+  static FusedPipeline pipeline(FusedPlan plan) {
+    try {
+      MethodHandle constructor =
+          PIPELINES.get(plan.getKey(), () -> PipelineGenerator.generate(plan));
+      return (FusedPipeline) constructor.invokeExact(plan.getArguments().toArray());
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } catch (Throwable e) {
+      throw new IllegalStateException(String.format("Unable to create pipeline [%s]", plan), e);
+    }
+  }
+
+  private Stream<Row> rows(FusedPlan plan) {
+    FusedPipeline pipeline = pipeline(plan);
+    Stream<?> items = context.checked(plan.getSource().items());
+    Spliterator<?> source = items.spliterator();
+    Spliterator<Row> rows =
+        new Spliterators.AbstractSpliterator<Row>(
+            source.estimateSize(), Spliterator.ORDERED | Spliterator.NONNULL) {
+          private Object[] next;
+
+          @Override
+          public boolean tryAdvance(Consumer<? super Row> action) {
+            next = null;
+            while (next == null && source.tryAdvance(item -> next = pipeline.apply(item))) {}
+            if (next == null) {
+              return false;
+            }
+            action.accept(new Row(next));
+            return true;
+          }
+
+          @Override
+          public void forEachRemaining(Consumer<? super Row> action) {
+            source.forEachRemaining(
+                item -> {
+                  Object[] vals = pipeline.apply(item);
+                  if (vals != null) {
+                    action.accept(new Row(vals));
+                  }
+                });
+          }
+        };
+    return StreamSupport.stream(rows, false).onClose(items::close);
+  }
+
+  /**
+   * Groups are kept in a {@link HashMap} keyed like {@link PlanCompiler#visitAggregate}, so they
+   * come out in the same order.
+   */
+  private Stream<Row> groups(FusedPlan plan) {
+    AggregatingPipeline pipeline = (AggregatingPipeline) pipeline(plan);
+    int[] groupBy = plan.getGroupBy();
+    BinaryOperator<Object>[] accumulators = plan.getAccumulators();
+    Stream<?> items = context.checked(plan.getSource().items());
+    return Stream.of(items)
+        .flatMap(
+            input -> {
+              Map<Row, Object[]> groups = new HashMap<>();
+              input.forEachOrdered(
+                  item -> {
+                    Object[] vals = pipeline.apply(item);
+                    if (vals == null) {
+                      return;
+                    }
+                    Row key = new Row(new Row(vals), groupBy);
+                    Object[] group = groups.get(key);
+                    if (group == null) {
+                      context.reserve(2 * RowSize.estimate(vals), "Aggregate");
+                      for (int column = 0; column < vals.length; column++) {
+                        if (accumulators[column] != null) {
+                          vals[column] = NumericAggregate.first(accumulators[column], vals[column]);
+                        }
+                      }
+                      groups.put(key, vals);
+                    } else {
+                      pipeline.merge(group, vals);
+                    }
+                  });
+              return groups.values().stream().map(Row::new);
+            })
+        .onClose(items::close);
+  }
+}
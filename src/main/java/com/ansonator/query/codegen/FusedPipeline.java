@@ -0,0 +1,14 @@
+package com.ansonator.query.codegen;
+
+/**
+ * The operators between a bean source and an optional aggregation, fused into generated code. See
+ * {@link FusedCompiler}.
+ */
+public interface FusedPipeline {
+  /**
+   * Read one item through its getters, apply every filter, and project it.
+   *
+   * @return the output row's values, or null if a filter rejected the item
+   */
+  Object[] apply(Object item);
+}
@@ -0,0 +1,328 @@
+package com.ansonator.query.codegen;
+
+import com.ansonator.query.plan.AggregateNode;
+import com.ansonator.query.plan.BeanSource;
+import com.ansonator.query.plan.FilterNode;
+import com.ansonator.query.plan.PlanNode;
+import com.ansonator.query.plan.ProjectNode;
+import com.ansonator.query.plan.ScanNode;
+import com.ansonator.query.plan.Schema;
+import com.ansonator.query.row.AndMatcher;
+import com.ansonator.query.row.BiPredicateMatcher;
+import com.ansonator.query.row.ComparisonMatcher;
+import com.ansonator.query.row.NotMatcher;
+import com.ansonator.query.row.OrMatcher;
+import com.ansonator.query.row.PredicateMatcher;
+import com.ansonator.query.row.RowMatcher;
+import com.ansonator.query.vector.Comparison;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import lombok.Getter;
+
+/**
+ * A chain of filters and projections over a {@link BeanSource}, optionally ending in an
+ * aggregation, described so that it can be fused into one {@link FusedPipeline}.
+ *
+ * <p>A plan has a shape and arguments. The shape is everything the generated code depends on: the
+ * bean type, which getters are read, the structure of the filters, the output columns and the
+ * aggregation. The arguments are the rest: predicates, constants and accumulators. Plans with the
+ * same shape share one generated class. Arguments are numbered in the order {@link #describe}
+ * visits them, which {@link PipelineGenerator} repeats.
+ */
+final class FusedPlan {
+  /** Argument kinds, which are also their field descriptors. */
+  static final char LONG = 'J';
+
+  static final char DOUBLE = 'D';
+  static final char BOOLEAN = 'Z';
+  static final char OBJECT = 'L';
+
+  @Getter private final BeanSource<?> source;
+  // Scan columns read by the pipeline, in order of first use
+  private final Map<String, Integer> columns = new LinkedHashMap<>();
+  @Getter private final List<Method> getters = new ArrayList<>();
+  // Conjuncts of every filter, bottom up, each paired with its filter to resolve column aliases
+  @Getter private final List<RowMatcher> conjuncts = new ArrayList<>();
+  @Getter private final List<FilterNode> conjunctFilters = new ArrayList<>();
+  @Getter private final int[] output;
+  private final AggregateNode aggregate;
+  @Getter private final int[] groupBy;
+  @Getter private final boolean[] accumulated;
+  // By output column, its accumulator or null
+  @Getter private final BinaryOperator<Object>[] accumulators;
+  private final StringBuilder shape = new StringBuilder();
+  @Getter private final List<Object> arguments = new ArrayList<>();
+  private final StringBuilder argumentKinds = new StringBuilder();
+
+  private FusedPlan(
+      BeanSource<?> source, List<FilterNode> filters, Schema schema, AggregateNode aggregate) {
+    this.source = source;
+    this.aggregate = aggregate;
+    shape.append(source.getType().getName());
+    for (FilterNode filter : filters) {
+      for (RowMatcher conjunct : conjuncts(filter.getMatcher())) {
+        conjuncts.add(conjunct);
+        conjunctFilters.add(filter);
+        shape.append(" WHERE ");
+        describe(conjunct, filter);
+      }
+    }
+    output = new int[schema.size()];
+    shape.append(" SELECT");
+    for (int i = 0; i < output.length; i++) {
+      output[i] = column(schema.getNames().get(i));
+      shape.append(' ').append(output[i]);
+    }
+    if (aggregate == null) {
+      groupBy = null;
+      accumulated = null;
+      accumulators = null;
+      return;
+    }
+    groupBy = schema.indexesOf(aggregate.getGroupBy());
+    accumulated = new boolean[output.length];
+    accumulators = newAccumulators(output.length);
+    shape.append(" GROUP BY");
+    for (int index : groupBy) {
+      shape.append(' ').append(index);
+    }
+    shape.append(" ACCUMULATE");
+    for (int i = 0; i < output.length; i++) {
+      BinaryOperator<Object> accumulator =
+          aggregate.getAccumulators().get(schema.getNames().get(i));
+      if (accumulator != null) {
+        accumulated[i] = true;
+        accumulators[i] = accumulator;
+        shape.append(' ').append(i);
+        argument(OBJECT, accumulator);
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static BinaryOperator<Object>[] newAccumulators(int size) {
+    return new BinaryOperator[size];
+  }
+
+  /**
+   * @param node the top of the chain
+   * @return null if the chain cannot be fused
+   */
+  static FusedPlan of(PlanNode node) {
+    AggregateNode aggregate = null;
+    PlanNode top = node;
+    if (node instanceof AggregateNode) {
+      aggregate = (AggregateNode) node;
+      top = aggregate.getChild();
+    }
+    List<FilterNode> filters = new ArrayList<>();
+    PlanNode current = top;
+    while (current instanceof FilterNode || current instanceof ProjectNode) {
+      if (current instanceof FilterNode) {
+        if (!isFusable(((FilterNode) current).getMatcher())) {
+          return null;
+        }
+        filters.add((FilterNode) current);
+      }
+      current = current.getChild();
+    }
+    if (!(current instanceof ScanNode)
+        || !(((ScanNode) current).getSource() instanceof BeanSource)) {
+      return null;
+    }
+    BeanSource<?> source = (BeanSource<?>) ((ScanNode) current).getSource();
+    // Statistics are collected by the source as it is read
+    if (!isAccessible(source.getType()) || source.getStatistics() != null) {
+      return null;
+    }
+    Collections.reverse(filters);
+    return new FusedPlan(source, filters, top.getSchema(), aggregate);
+  }
+
+  /** Generated code can only call getters of public types which it can load by name. */
+  private static boolean isAccessible(Class<?> type) {
+    if (!Modifier.isPublic(type.getModifiers())) {
+      return false;
+    }
+    try {
+      return Class.forName(type.getName(), false, FusedPlan.class.getClassLoader()) == type;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  private static boolean isFusable(RowMatcher matcher) {
+    if (matcher instanceof ComparisonMatcher
+        || matcher instanceof PredicateMatcher
+        || matcher instanceof BiPredicateMatcher) {
+      return true;
+    }
+    if (matcher instanceof AndMatcher) {
+      return ((AndMatcher) matcher).getConjuncts().stream().allMatch(FusedPlan::isFusable);
+    }
+    if (matcher instanceof OrMatcher) {
+      return ((OrMatcher) matcher).getDisjuncts().stream().allMatch(FusedPlan::isFusable);
+    }
+    if (matcher instanceof NotMatcher) {
+      return isFusable(((NotMatcher) matcher).getMatcher());
+    }
+    return false;
+  }
+
+  private static List<RowMatcher> conjuncts(RowMatcher matcher) {
+    return matcher instanceof AndMatcher ? ((AndMatcher) matcher).getConjuncts() : List.of(matcher);
+  }
+
+  /**
+   * @return the index of a scan column among the columns the pipeline reads
+   */
+  int column(String name) {
+    Integer index = columns.get(name);
+    if (index == null) {
+      index = columns.size();
+      columns.put(name, index);
+      getters.add(source.getGetter(name));
+    }
+    return index;
+  }
+
+  /**
+   * @return the index of the scan column which a matcher reads as {@code name}
+   */
+  int column(FilterNode filter, String name) {
+    return column(filter.resolve(name));
+  }
+
+  Class<?> typeOf(int column) {
+    return getters.get(column).getReturnType();
+  }
+
+  boolean isAggregate() {
+    return aggregate != null;
+  }
+
+  /**
+   * @return one character per argument: {@link #LONG}, {@link #DOUBLE}, {@link #BOOLEAN} or {@link
+   *     #OBJECT}
+   */
+  String getArgumentKinds() {
+    return argumentKinds.toString();
+  }
+
+  /** Plans with equal keys can share a generated class. */
+  List<Object> getKey() {
+    return List.of(source.getType(), shape.toString());
+  }
+
+  private void argument(char kind, Object value) {
+    arguments.add(value);
+    argumentKinds.append(kind);
+  }
+
+  private void describe(RowMatcher matcher, FilterNode filter) {
+    if (matcher instanceof ComparisonMatcher) {
+      ComparisonMatcher comparison = (ComparisonMatcher) matcher;
+      int column = column(filter, comparison.getName());
+      char kind = comparisonKind(typeOf(column), comparison);
+      Object value = comparison.getValue();
+      shape
+          .append(column)
+          .append(' ')
+          .append(comparison.getComparison().name())
+          .append(' ')
+          .append(kind)
+          .append(value == null ? "null" : value.getClass().getName());
+      argument(kind, kind == OBJECT ? comparison : value);
+    } else if (matcher instanceof PredicateMatcher) {
+      PredicateMatcher<?> predicate = (PredicateMatcher<?>) matcher;
+      shape.append("predicate(").append(column(filter, predicate.getName())).append(')');
+      argument(OBJECT, predicate.getPred());
+    } else if (matcher instanceof BiPredicateMatcher) {
+      BiPredicateMatcher<?, ?> predicate = (BiPredicateMatcher<?, ?>) matcher;
+      int column1 = column(filter, predicate.getName1());
+      int column2 = column(filter, predicate.getName2());
+      if (predicate.isEquality()) {
+        shape.append(column1).append(" = ").append(column2);
+      } else {
+        shape.append("predicate(").append(column1).append(", ").append(column2).append(')');
+        argument(OBJECT, predicate.getPred());
+      }
+    } else if (matcher instanceof AndMatcher) {
+      describe("AND", ((AndMatcher) matcher).getConjuncts(), filter);
+    } else if (matcher instanceof OrMatcher) {
+      describe("OR", ((OrMatcher) matcher).getDisjuncts(), filter);
+    } else {
+      shape.append("NOT ");
+      describe(((NotMatcher) matcher).getMatcher(), filter);
+    }
+  }
+
+  private void describe(String operator, List<RowMatcher> matchers, FilterNode filter) {
+    shape.append('(');
+    for (int i = 0; i < matchers.size(); i++) {
+      if (i > 0) {
+        shape.append(' ').append(operator).append(' ');
+      }
+      describe(matchers.get(i), filter);
+    }
+    shape.append(')');
+  }
+
+  /**
+   * How a comparison is compiled. A primitive getter is compared to a constant of a matching type
+   * without boxing. This must agree with {@link ComparisonMatcher#matches}: {@code equals} requires
+   * the same type, while ordering compares integral values as longs and doubles as {@link
+   * Double#compare} does.
+   *
+   * @return {@link #LONG}, {@link #DOUBLE} or {@link #BOOLEAN} to compare primitives, or {@link
+   *     #OBJECT} to call {@link ComparisonMatcher#matches}
+   */
+  static char comparisonKind(Class<?> type, ComparisonMatcher matcher) {
+    Object value = matcher.getValue();
+    Comparison comparison = matcher.getComparison();
+    boolean equality = comparison == Comparison.EQ || comparison == Comparison.NE;
+    if (isIntegral(type) && isIntegral(value)) {
+      return !equality || value.getClass() == boxed(type) ? LONG : OBJECT;
+    }
+    if (type == double.class && value instanceof Double) {
+      return DOUBLE;
+    }
+    if (type == boolean.class && value instanceof Boolean && equality) {
+      return BOOLEAN;
+    }
+    return OBJECT;
+  }
+
+  private static boolean isIntegral(Class<?> type) {
+    return type == int.class || type == long.class || type == short.class || type == byte.class;
+  }
+
+  private static boolean isIntegral(Object value) {
+    return value instanceof Integer
+        || value instanceof Long
+        || value instanceof Short
+        || value instanceof Byte;
+  }
+
+  private static Class<?> boxed(Class<?> type) {
+    if (type == int.class) {
+      return Integer.class;
+    } else if (type == long.class) {
+      return Long.class;
+    } else if (type == short.class) {
+      return Short.class;
+    }
+    return Byte.class;
+  }
+
+  @Override
+  public String toString() {
+    return shape.toString();
+  }
+}
@@ -0,0 +1,422 @@
+package com.ansonator.query.codegen;
+
+import static org.objectweb.asm.Opcodes.*;
+
+import com.ansonator.query.plan.FilterNode;
+import com.ansonator.query.row.AndMatcher;
+import com.ansonator.query.row.BiPredicateMatcher;
+import com.ansonator.query.row.ComparisonMatcher;
+import com.ansonator.query.row.NotMatcher;
+import com.ansonator.query.row.OrMatcher;
+import com.ansonator.query.row.PredicateMatcher;
+import com.ansonator.query.row.Row;
+import com.ansonator.query.row.RowMatcher;
+import com.ansonator.query.vector.Comparison;
+import com.google.common.primitives.Primitives;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiPredicate;
+import java.util.function.BinaryOperator;
+import java.util.function.Predicate;
+import lombok.extern.log4j.Log4j2;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+/**
+ * Generates the bytecode of a {@link FusedPipeline} for one {@link FusedPlan} shape, and defines it
+ * as a hidden class in this package.
+ *
+ * <p>{@code apply} is straight-line code: for each filter conjunct, call the getters it needs which
+ * have not been called yet and keep their results in locals, then evaluate it, returning null on
+ * the first failure. Finally, call the remaining getters and fill the output array. Column indexes
+ * are constants. Comparisons between a primitive getter and a constant run without boxing. Only
+ * predicates and accumulators, held in final fields, are called through interfaces.
+ */
+@Log4j2
+final class PipelineGenerator {
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+  private static final String NAME = "com/ansonator/query/codegen/GeneratedPipeline";
+  private static final String OBJECT = Type.getInternalName(Object.class);
+
+  private final FusedPlan plan;
+  private final String bean;
+  private final boolean isInterface;
+  private final String kinds;
+  // Local variable slot of each column's value in apply, or -1 before its getter is called
+  private final int[] locals;
+  private int nextLocal = 3;
+  private int nextArgument;
+  private MethodVisitor mv;
+
+  private PipelineGenerator(FusedPlan plan) {
+    this.plan = plan;
+    this.bean = Type.getInternalName(plan.getSource().getType());
+    this.isInterface = plan.getSource().getType().isInterface();
+    this.kinds = plan.getArgumentKinds();
+    this.locals = new int[plan.getGetters().size()];
+    Arrays.fill(locals, -1);
+  }
+
+  /**
+   * @return a constructor of the generated class. It takes {@link FusedPlan#getArguments}.
+   */
+  static MethodHandle generate(FusedPlan plan) {
+    byte[] bytes = new PipelineGenerator(plan).generate();
+    try {
+      MethodHandles.Lookup hidden = LOOKUP.defineHiddenClass(bytes, true);
+      log.debug("Generated {} for {}", hidden.lookupClass().getName(), plan);
+      return hidden
+          .findConstructor(hidden.lookupClass(), MethodType.methodType(void.class, Object[].class))
+          .asType(MethodType.methodType(FusedPipeline.class, Object[].class));
+    } catch (IllegalAccessException | NoSuchMethodException e) {
+      throw new IllegalStateException(String.format("Unable to generate pipeline [%s]", plan), e);
+    }
+  }
+
+  /** Called by generated code when a column without an accumulator differs within a group. */
+  static IllegalArgumentException cannotMerge(Object[] group, Object[] row, int column) {
+    return new IllegalArgumentException(
+        String.format(
+            "Cannot merge [%s] from row %s into [%s] from row %s without an "
+                + "accumulator for column [%d]",
+            row[column], new Row(row), group[column], new Row(group), column));
+  }
+
+  private byte[] generate() {
+    ClassWriter cw =
+        new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+          // Frames only ever merge values of the same type, so this never needs to load classes
+          @Override
+          protected String getCommonSuperClass(String type1, String type2) {
+            return OBJECT;
+          }
+        };
+    cw.visit(
+        V17,
+        ACC_PUBLIC | ACC_FINAL | ACC_SUPER,
+        NAME,
+        null,
+        OBJECT,
+        new String[] {
+          Type.getInternalName(plan.isAggregate() ? AggregatingPipeline.class : FusedPipeline.class)
+        });
+    for (int i = 0; i < kinds.length(); i++) {
+      cw.visitField(ACC_PRIVATE | ACC_FINAL, "a" + i, descriptor(kinds.charAt(i)), null, null)
+          .visitEnd();
+    }
+    mv = cw.visitMethod(ACC_PUBLIC, "<init>", "([Ljava/lang/Object;)V", null, null);
+    constructor();
+    mv = cw.visitMethod(ACC_PUBLIC, "apply", "(Ljava/lang/Object;)[Ljava/lang/Object;", null, null);
+    apply();
+    if (plan.isAggregate()) {
+      mv =
+          cw.visitMethod(
+              ACC_PUBLIC, "merge", "([Ljava/lang/Object;[Ljava/lang/Object;)V", null, null);
+      merge();
+    }
+    cw.visitEnd();
+    return cw.toByteArray();
+  }
+
+  private static String descriptor(char kind) {
+    return kind == FusedPlan.OBJECT ? "Ljava/lang/Object;" : String.valueOf(kind);
+  }
+
+  /** Unbox each argument into its field. */
+  private void constructor() {
+    mv.visitCode();
+    mv.visitVarInsn(ALOAD, 0);
+    mv.visitMethodInsn(INVOKESPECIAL, OBJECT, "<init>", "()V", false);
+    for (int i = 0; i < kinds.length(); i++) {
+      mv.visitVarInsn(ALOAD, 0);
+      mv.visitVarInsn(ALOAD, 1);
+      push(i);
+      mv.visitInsn(AALOAD);
+      switch (kinds.charAt(i)) {
+        case FusedPlan.LONG:
+          mv.visitTypeInsn(CHECKCAST, "java/lang/Number");
+          mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Number", "longValue", "()J", false);
+          break;
+        case FusedPlan.DOUBLE:
+          mv.visitTypeInsn(CHECKCAST, "java/lang/Number");
+          mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Number", "doubleValue", "()D", false);
+          break;
+        case FusedPlan.BOOLEAN:
+          mv.visitTypeInsn(CHECKCAST, "java/lang/Boolean");
+          mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Boolean", "booleanValue", "()Z", false);
+          break;
+        default:
+          break;
+      }
+      mv.visitFieldInsn(PUTFIELD, NAME, "a" + i, descriptor(kinds.charAt(i)));
+    }
+    mv.visitInsn(RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  private void apply() {
+    mv.visitCode();
+    mv.visitVarInsn(ALOAD, 1);
+    mv.visitTypeInsn(CHECKCAST, bean);
+    mv.visitVarInsn(ASTORE, 2);
+    Label reject = new Label();
+    List<RowMatcher> conjuncts = plan.getConjuncts();
+    for (int i = 0; i < conjuncts.size(); i++) {
+      FilterNode filter = plan.getConjunctFilters().get(i);
+      for (String column : conjuncts.get(i).getColumns()) {
+        read(plan.column(filter, column));
+      }
+      filter(conjuncts.get(i), filter, reject);
+    }
+    int[] output = plan.getOutput();
+    for (int column : output) {
+      read(column);
+    }
+    push(output.length);
+    mv.visitTypeInsn(ANEWARRAY, OBJECT);
+    for (int i = 0; i < output.length; i++) {
+      mv.visitInsn(DUP);
+      push(i);
+      loadBoxed(output[i]);
+      mv.visitInsn(AASTORE);
+    }
+    mv.visitInsn(ARETURN);
+    mv.visitLabel(reject);
+    mv.visitInsn(ACONST_NULL);
+    mv.visitInsn(ARETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  /** Call a column's getter into a local, unless that was done already. */
+  private void read(int column) {
+    if (locals[column] >= 0) {
+      return;
+    }
+    Method getter = plan.getGetters().get(column);
+    Type type = Type.getType(getter.getReturnType());
+    mv.visitVarInsn(ALOAD, 2);
+    mv.visitMethodInsn(
+        isInterface ? INVOKEINTERFACE : INVOKEVIRTUAL,
+        bean,
+        getter.getName(),
+        Type.getMethodDescriptor(getter),
+        isInterface);
+    mv.visitVarInsn(type.getOpcode(ISTORE), nextLocal);
+    locals[column] = nextLocal;
+    nextLocal += type.getSize();
+  }
+
+  private void load(int column) {
+    mv.visitVarInsn(Type.getType(plan.typeOf(column)).getOpcode(ILOAD), locals[column]);
+  }
+
+  private void loadBoxed(int column) {
+    load(column);
+    Class<?> type = plan.typeOf(column);
+    if (type.isPrimitive()) {
+      Class<?> boxed = Primitives.wrap(type);
+      mv.visitMethodInsn(
+          INVOKESTATIC,
+          Type.getInternalName(boxed),
+          "valueOf",
+          Type.getMethodDescriptor(Type.getType(boxed), Type.getType(type)),
+          false);
+    }
+  }
+
+  private void loadArgument(int argument) {
+    mv.visitVarInsn(ALOAD, 0);
+    mv.visitFieldInsn(GETFIELD, NAME, "a" + argument, descriptor(kinds.charAt(argument)));
+  }
+
+  /**
+   * Jump to {@code rejected} unless the current item matches. Arguments are consumed in the same
+   * order as {@link FusedPlan} added them.
+   */
+  private void filter(RowMatcher matcher, FilterNode node, Label rejected) {
+    if (matcher instanceof ComparisonMatcher) {
+      compare((ComparisonMatcher) matcher, node, rejected);
+    } else if (matcher instanceof PredicateMatcher) {
+      loadArgument(nextArgument++);
+      mv.visitTypeInsn(CHECKCAST, Type.getInternalName(Predicate.class));
+      loadBoxed(plan.column(node, ((PredicateMatcher<?>) matcher).getName()));
+      mv.visitMethodInsn(
+          INVOKEINTERFACE,
+          Type.getInternalName(Predicate.class),
+          "test",
+          "(Ljava/lang/Object;)Z",
+          true);
+      mv.visitJumpInsn(IFEQ, rejected);
+    } else if (matcher instanceof BiPredicateMatcher) {
+      BiPredicateMatcher<?, ?> predicate = (BiPredicateMatcher<?, ?>) matcher;
+      if (predicate.isEquality()) {
+        loadBoxed(plan.column(node, predicate.getName1()));
+        loadBoxed(plan.column(node, predicate.getName2()));
+        mv.visitMethodInsn(INVOKEVIRTUAL, OBJECT, "equals", "(Ljava/lang/Object;)Z", false);
+      } else {
+        loadArgument(nextArgument++);
+        mv.visitTypeInsn(CHECKCAST, Type.getInternalName(BiPredicate.class));
+        loadBoxed(plan.column(node, predicate.getName1()));
+        loadBoxed(plan.column(node, predicate.getName2()));
+        mv.visitMethodInsn(
+            INVOKEINTERFACE,
+            Type.getInternalName(BiPredicate.class),
+            "test",
+            "(Ljava/lang/Object;Ljava/lang/Object;)Z",
+            true);
+      }
+      mv.visitJumpInsn(IFEQ, rejected);
+    } else if (matcher instanceof AndMatcher) {
+      for (RowMatcher conjunct : ((AndMatcher) matcher).getConjuncts()) {
+        filter(conjunct, node, rejected);
+      }
+    } else if (matcher instanceof OrMatcher) {
+      List<RowMatcher> disjuncts = ((OrMatcher) matcher).getDisjuncts();
+      Label matched = new Label();
+      for (int i = 0; i < disjuncts.size() - 1; i++) {
+        Label next = new Label();
+        filter(disjuncts.get(i), node, next);
+        mv.visitJumpInsn(GOTO, matched);
+        mv.visitLabel(next);
+      }
+      filter(disjuncts.get(disjuncts.size() - 1), node, rejected);
+      mv.visitLabel(matched);
+    } else {
+      Label matched = new Label();
+      filter(((NotMatcher) matcher).getMatcher(), node, matched);
+      mv.visitJumpInsn(GOTO, rejected);
+      mv.visitLabel(matched);
+    }
+  }
+
+  private void compare(ComparisonMatcher matcher, FilterNode node, Label rejected) {
+    int column = plan.column(node, matcher.getName());
+    int argument = nextArgument++;
+    switch (FusedPlan.comparisonKind(plan.typeOf(column), matcher)) {
+      case FusedPlan.LONG:
+        load(column);
+        if (plan.typeOf(column) != long.class) {
+          mv.visitInsn(I2L);
+        }
+        loadArgument(argument);
+        mv.visitInsn(LCMP);
+        jumpUnless(matcher.getComparison(), rejected);
+        break;
+      case FusedPlan.DOUBLE:
+        load(column);
+        loadArgument(argument);
+        mv.visitMethodInsn(INVOKESTATIC, "java/lang/Double", "compare", "(DD)I", false);
+        jumpUnless(matcher.getComparison(), rejected);
+        break;
+      case FusedPlan.BOOLEAN:
+        load(column);
+        loadArgument(argument);
+        mv.visitJumpInsn(
+            matcher.getComparison() == Comparison.EQ ? IF_ICMPNE : IF_ICMPEQ, rejected);
+        break;
+      default:
+        loadArgument(argument);
+        mv.visitTypeInsn(CHECKCAST, Type.getInternalName(ComparisonMatcher.class));
+        loadBoxed(column);
+        mv.visitMethodInsn(
+            INVOKEVIRTUAL,
+            Type.getInternalName(ComparisonMatcher.class),
+            "matches",
+            "(Ljava/lang/Object;)Z",
+            false);
+        mv.visitJumpInsn(IFEQ, rejected);
+    }
+  }
+
+  /** Jump to {@code rejected} unless the sign on the stack satisfies {@code comparison}. */
+  private void jumpUnless(Comparison comparison, Label rejected) {
+    switch (comparison) {
+      case EQ:
+        mv.visitJumpInsn(IFNE, rejected);
+        break;
+      case NE:
+        mv.visitJumpInsn(IFEQ, rejected);
+        break;
+      case LT:
+        mv.visitJumpInsn(IFGE, rejected);
+        break;
+      case LE:
+        mv.visitJumpInsn(IFGT, rejected);
+        break;
+      case GT:
+        mv.visitJumpInsn(IFLE, rejected);
+        break;
+      default:
+        mv.visitJumpInsn(IFLT, rejected);
+    }
+  }
+
+  /** One unrolled step per column, as in {@link Row#merge}. */
+  private void merge() {
+    mv.visitCode();
+    boolean[] accumulated = plan.getAccumulated();
+    for (int column = 0; column < accumulated.length; column++) {
+      if (accumulated[column]) {
+        mv.visitVarInsn(ALOAD, 1);
+        push(column);
+        loadArgument(nextArgument++);
+        mv.visitTypeInsn(CHECKCAST, Type.getInternalName(BinaryOperator.class));
+        loadElement(1, column);
+        loadElement(2, column);
+        mv.visitMethodInsn(
+            INVOKEINTERFACE,
+            Type.getInternalName(BinaryOperator.class),
+            "apply",
+            "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;",
+            true);
+        mv.visitInsn(AASTORE);
+      } else {
+        Label equal = new Label();
+        loadElement(1, column);
+        loadElement(2, column);
+        mv.visitMethodInsn(INVOKEVIRTUAL, OBJECT, "equals", "(Ljava/lang/Object;)Z", false);
+        mv.visitJumpInsn(IFNE, equal);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitVarInsn(ALOAD, 2);
+        push(column);
+        mv.visitMethodInsn(
+            INVOKESTATIC,
+            Type.getInternalName(PipelineGenerator.class),
+            "cannotMerge",
+            "([Ljava/lang/Object;[Ljava/lang/Object;I)Ljava/lang/IllegalArgumentException;",
+            false);
+        mv.visitInsn(ATHROW);
+        mv.visitLabel(equal);
+      }
+    }
+    mv.visitInsn(RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  private void loadElement(int array, int index) {
+    mv.visitVarInsn(ALOAD, array);
+    push(index);
+    mv.visitInsn(AALOAD);
+  }
+
+  private void push(int value) {
+    if (value <= 5) {
+      mv.visitInsn(ICONST_0 + value);
+    } else if (value <= Byte.MAX_VALUE) {
+      mv.visitIntInsn(BIPUSH, value);
+    } else if (value <= Short.MAX_VALUE) {
+      mv.visitIntInsn(SIPUSH, value);
+    } else {
+      mv.visitLdcInsn(value);
+    }
+  }
+}
@@ -0,0 +1,169 @@
+package com.ansonator.query.column;
+
+import com.ansonator.query.column.ColumnVector.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Appends values to one column of a {@link ColumnTable}. The column's type is taken from its first
+ * non-null value. A value of any other type turns the column into an {@link Type#OBJECT} column.
+ */
+final class ColumnBuilder {
+  private static final int INITIAL_CAPACITY = 16;
+
+  // Null until the first non-null value
+  private Type type = null;
+  private int size = 0;
+  private int capacity = 0;
+  private final BitSet nulls = new BitSet();
+
+  private int[] ints;
+  private long[] longs;
+  private double[] doubles;
+  private BitSet booleans;
+  private int[] codes;
+  private Map<String, Integer> codesByValue;
+  private List<String> dictionary;
+  private Object[] objects;
+
+  void add(Object value) {
+    if (value == null) {
+      nulls.set(size++);
+      return;
+    }
+    Type valueType = typeOf(value);
+    if (type == null) {
+      type = valueType;
+      capacity = 0;
+      allocate(Math.max(INITIAL_CAPACITY, size + 1));
+    } else if (type != valueType && type != Type.OBJECT) {
+      toObjects();
+    }
+    if (size >= capacity) {
+      // Nulls do not grow the arrays
+      allocate(Math.max(capacity * 2, size + 1));
+    }
+    switch (type) {
+      case INT:
+        ints[size] = (Integer) value;
+        break;
+      case LONG:
+        longs[size] = (Long) value;
+        break;
+      case DOUBLE:
+        doubles[size] = (Double) value;
+        break;
+      case BOOLEAN:
+        booleans.set(size, (Boolean) value);
+        break;
+      case DICTIONARY:
+        codes[size] =
+            codesByValue.computeIfAbsent(
+                (String) value,
+                v -> {
+                  dictionary.add(v);
+                  return dictionary.size() - 1;
+                });
+        break;
+      default:
+        objects[size] = value;
+    }
+    size++;
+  }
+
+  private static Type typeOf(Object value) {
+    if (value instanceof Integer) {
+      return Type.INT;
+    } else if (value instanceof Long) {
+      return Type.LONG;
+    } else if (value instanceof Double) {
+      return Type.DOUBLE;
+    } else if (value instanceof Boolean) {
+      return Type.BOOLEAN;
+    } else if (value instanceof String) {
+      return Type.DICTIONARY;
+    }
+    return Type.OBJECT;
+  }
+
+  /** Grows (or creates) the arrays of the current type. */
+  private void allocate(int newCapacity) {
+    switch (type) {
+      case INT:
+        ints = ints == null ? new int[newCapacity] : Arrays.copyOf(ints, newCapacity);
+        break;
+      case LONG:
+        longs = longs == null ? new long[newCapacity] : Arrays.copyOf(longs, newCapacity);
+        break;
+      case DOUBLE:
+        doubles = doubles == null ? new double[newCapacity] : Arrays.copyOf(doubles, newCapacity);
+        break;
+      case BOOLEAN:
+        if (booleans == null) {
+          booleans = new BitSet();
+        }
+        break;
+      case DICTIONARY:
+        if (codes == null) {
+          codes = new int[newCapacity];
+          codesByValue = new HashMap<>();
+          dictionary = new ArrayList<>();
+        } else {
+          codes = Arrays.copyOf(codes, newCapacity);
+        }
+        break;
+      default:
+        objects = objects == null ? new Object[newCapacity] : Arrays.copyOf(objects, newCapacity);
+    }
+    capacity = newCapacity;
+  }
+
+  private void toObjects() {
+    // Nulls do not grow the arrays, so there may be more rows than capacity
+    int length = Math.max(capacity, size);
+    Object[] values = new Object[length];
+    ColumnVector current = vector(length);
+    for (int row = 0; row < size; row++) {
+      values[row] = current.get(row);
+    }
+    capacity = length;
+    ints = null;
+    longs = null;
+    doubles = null;
+    booleans = null;
+    codes = null;
+    codesByValue = null;
+    dictionary = null;
+    objects = values;
+    type = Type.OBJECT;
+  }
+
+  ColumnVector build() {
+    if (type == null) {
+      // Only nulls
+      return new ColumnVector.ObjectVector(new Object[size], nulls);
+    }
+    return vector(size);
+  }
+
+  private ColumnVector vector(int length) {
+    switch (type) {
+      case INT:
+        return new ColumnVector.IntVector(Arrays.copyOf(ints, length), nulls);
+      case LONG:
+        return new ColumnVector.LongVector(Arrays.copyOf(longs, length), nulls);
+      case DOUBLE:
+        return new ColumnVector.DoubleVector(Arrays.copyOf(doubles, length), nulls);
+      case BOOLEAN:
+        return new ColumnVector.BooleanVector(booleans, nulls);
+      case DICTIONARY:
+        return new ColumnVector.DictionaryVector(Arrays.copyOf(codes, length), dictionary, nulls);
+      default:
+        return new ColumnVector.ObjectVector(Arrays.copyOf(objects, length), nulls);
+    }
+  }
+}
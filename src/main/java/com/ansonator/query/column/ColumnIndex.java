@@ -0,0 +1,212 @@
+package com.ansonator.query.column;
+
+import com.ansonator.query.row.ComparisonMatcher;
+import com.ansonator.query.row.Parameter;
+import com.ansonator.query.sort.RowComparators;
+import com.ansonator.query.vector.Comparison;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A secondary index on one column of a {@link ColumnTable}, from values to the rows which hold
+ * them. A {@link HashIndex} finds the rows equal to a value, and a {@link SortedIndex} also the
+ * rows in a range. Scans of the table look up the rows which a filter's comparisons on indexed
+ * columns allow, rather than reading every row. Nulls are not indexed, since no comparison matches
+ * them.
+ *
+ * <p>See {@link ColumnTable#withHashIndex} and {@link ColumnTable#withSortedIndex}.
+ */
+public abstract class ColumnIndex {
+  public enum Type {
+    HASH,
+    SORTED
+  }
+
+  public abstract Type getType();
+
+  /**
+   * @param comparisons on this index's column, all of which a row must match
+   * @return every row, in ascending order, which may match {@code comparisons}, or null if this
+   *     index cannot tell
+   */
+  abstract int[] lookup(List<ComparisonMatcher> comparisons);
+
+  private static boolean isBound(ComparisonMatcher comparison) {
+    return !(comparison.getValue() instanceof Parameter);
+  }
+
+  /** Equality lookups. */
+  static final class HashIndex extends ColumnIndex {
+    private static final int[] NONE = new int[0];
+    private final Map<Object, int[]> rows;
+
+    private HashIndex(Map<Object, int[]> rows) {
+      this.rows = rows;
+    }
+
+    static HashIndex of(ColumnVector column, int size) {
+      Map<Object, Integer> counts = new HashMap<>();
+      for (int row = 0; row < size; row++) {
+        Object value = column.get(row);
+        if (value != null) {
+          counts.merge(value, 1, Integer::sum);
+        }
+      }
+      Map<Object, int[]> rows = new HashMap<>();
+      Map<Object, Integer> filled = new HashMap<>();
+      for (int row = 0; row < size; row++) {
+        Object value = column.get(row);
+        if (value != null) {
+          int[] ids = rows.computeIfAbsent(value, key -> new int[counts.get(key)]);
+          ids[filled.merge(value, 1, Integer::sum) - 1] = row;
+        }
+      }
+      return new HashIndex(rows);
+    }
+
+    @Override
+    public Type getType() {
+      return Type.HASH;
+    }
+
+    @Override
+    int[] lookup(List<ComparisonMatcher> comparisons) {
+      for (ComparisonMatcher comparison : comparisons) {
+        if (comparison.getComparison() == Comparison.EQ && isBound(comparison)) {
+          Object value = comparison.getValue();
+          return value == null ? NONE : rows.getOrDefault(value, NONE);
+        }
+      }
+      return null;
+    }
+  }
+
+  /** Equality and range lookups, by binary search over the rows ordered by value. */
+  static final class SortedIndex extends ColumnIndex {
+    // Each non-null value, ascending, and the row which holds it
+    private final Object[] values;
+    private final int[] rows;
+
+    private SortedIndex(Object[] values, int[] rows) {
+      this.values = values;
+      this.rows = rows;
+    }
+
+    static SortedIndex of(String name, ColumnVector column, int size) {
+      List<Integer> ids = new ArrayList<>();
+      Object first = null;
+      for (int row = 0; row < size; row++) {
+        Object value = column.get(row);
+        if (value == null) {
+          continue;
+        }
+        if (first == null) {
+          first = value;
+        }
+        if (!(value instanceof Comparable) || !ZoneMap.isComparable(first, value)) {
+          throw new IllegalArgumentException(
+              String.format(
+                  "Column [%s] holds values which cannot be ordered: [%s] and [%s]",
+                  name, first, value));
+        }
+        ids.add(row);
+      }
+      // Stable, so equal values stay in row order
+      ids.sort(Comparator.comparing(column::get, RowComparators::compareValues));
+      return new SortedIndex(
+          ids.stream().map(column::get).toArray(), ids.stream().mapToInt(i -> i).toArray());
+    }
+
+    @Override
+    public Type getType() {
+      return Type.SORTED;
+    }
+
+    @Override
+    int[] lookup(List<ComparisonMatcher> comparisons) {
+      int from = 0;
+      int to = values.length;
+      boolean used = false;
+      for (ComparisonMatcher comparison : comparisons) {
+        Object value = comparison.getValue();
+        if (!isBound(comparison) || comparison.getComparison() == Comparison.NE) {
+          continue;
+        }
+        if (value == null) {
+          return new int[0];
+        }
+        if (values.length > 0 && !ZoneMap.isComparable(values[0], value)) {
+          continue;
+        }
+        used = true;
+        switch (comparison.getComparison()) {
+          case EQ:
+            from = Math.max(from, search(value, false));
+            to = Math.min(to, search(value, true));
+            break;
+          case LT:
+            to = Math.min(to, search(value, false));
+            break;
+          case LE:
+            to = Math.min(to, search(value, true));
+            break;
+          case GT:
+            from = Math.max(from, search(value, true));
+            break;
+          default:
+            from = Math.max(from, search(value, false));
+        }
+      }
+      if (!used) {
+        return null;
+      }
+      if (from >= to) {
+        return new int[0];
+      }
+      int[] found = Arrays.copyOfRange(rows, from, to);
+      Arrays.sort(found);
+      return found;
+    }
+
+    /**
+     * @return the first position whose value is greater than ({@code after}) or at least {@code
+     *     value}
+     */
+    private int search(Object value, boolean after) {
+      int low = 0;
+      int high = values.length;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        int result = RowComparators.compareValues(values[middle], value);
+        if (result < 0 || (after && result == 0)) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      return low;
+    }
+  }
+
+  /**
+   * @param comparisons by column
+   * @return the fewest rows which any index finds for its column's comparisons, or null when no
+   *     index applies
+   */
+  static int[] lookup(
+      Map<String, ColumnIndex> indexes, Map<String, List<ComparisonMatcher>> comparisons) {
+    int[] best = null;
+    for (Map.Entry<String, List<ComparisonMatcher>> entry : comparisons.entrySet()) {
+      ColumnIndex index = indexes.get(entry.getKey());
+      int[] found = index == null ? null : index.lookup(entry.getValue());
+      if (found != null && (best == null || found.length < best.length)) {
+        best = found;
+      }
+    }
+    return best;
+  }
+}
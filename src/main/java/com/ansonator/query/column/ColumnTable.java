@@ -0,0 +1,339 @@
+package com.ansonator.query.column;
+
+import com.ansonator.query.plan.RandomAccessSource;
+import com.ansonator.query.plan.RowSource;
+import com.ansonator.query.plan.Schema;
+import com.ansonator.query.row.AndMatcher;
+import com.ansonator.query.row.ComparisonMatcher;
+import com.ansonator.query.row.Row;
+import com.ansonator.query.row.RowMatcher;
+import com.ansonator.query.spill.RowSize;
+import com.ansonator.query.stats.ColumnStatistics;
+import com.ansonator.query.stats.TableStatistics;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import lombok.Getter;
+
+/**
+ * An immutable table held in memory column by column, e.g. a reference table which is scanned by
+ * many queries. Each column is a {@link ColumnVector}: a primitive array for numbers and booleans,
+ * an int per row for strings, which are dictionary encoded, and a bitmap of nulls. This takes far
+ * less memory than a {@code List<Row>}, with its object header and array per row and a box per
+ * value, especially for low cardinality strings.
+ *
+ * <p>A table is a {@link RowSource}: scans only read the requested columns, and produce new rows.
+ * Rows are also split into chunks of {@link #CHUNK_SIZE}, with a {@link ZoneMap} per column, so
+ * scans skip chunks which a filter cannot match, e.g. a range of dates in time ordered data.
+ * Secondary {@link ColumnIndex}es, added by {@link #withHashIndex} and {@link #withSortedIndex},
+ * let scans read only the rows which a filter's comparisons on an indexed column allow. Rows can
+ * also be read by position, for {@link com.ansonator.query.Query#lateMaterialized}. {@link
+ * TableStatistics} of every column are computed when the table is built. See {@link
+ * com.ansonator.query.Query#from(ColumnTable)} and {@link com.ansonator.query.Query#toColumnTable}.
+ */
+public final class ColumnTable implements RandomAccessSource {
+  public static final int CHUNK_SIZE = 4096;
+
+  @Getter private final Schema schema;
+  private final int size;
+  private final ColumnVector[] columns;
+  // By column name
+  private final Map<String, ZoneMap> zones;
+  private final Map<String, ColumnIndex> indexes;
+  @Getter private final TableStatistics statistics;
+
+  private ColumnTable(
+      Schema schema,
+      int size,
+      ColumnVector[] columns,
+      Map<String, ZoneMap> zones,
+      Map<String, ColumnIndex> indexes,
+      TableStatistics statistics) {
+    this.schema = schema;
+    this.size = size;
+    this.columns = columns;
+    this.zones = zones;
+    this.indexes = indexes;
+    this.statistics = statistics;
+  }
+
+  private ColumnTable(Schema schema, int size, ColumnVector[] columns) {
+    this(schema, size, columns, new HashMap<>(), Map.of(), TableStatistics.of(schema.getNames()));
+    for (String column : schema.getNames()) {
+      ColumnVector vector = columns[schema.indexOf(column)];
+      zones.put(column, ZoneMap.of(vector, size, CHUNK_SIZE));
+      ColumnStatistics values = statistics.getColumn(column);
+      for (int row = 0; row < size; row++) {
+        values.add(vector.get(row));
+      }
+    }
+    statistics.addRows(size);
+  }
+
+  /**
+   * @param rows each laid out as {@code schema}
+   */
+  public static ColumnTable of(Stream<Row> rows, Schema schema) {
+    Builder builder = builder(schema);
+    try (rows) {
+      rows.forEachOrdered(builder::add);
+    }
+    return builder.build();
+  }
+
+  public static Builder builder(Schema schema) {
+    return new Builder(schema);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public ColumnVector getColumn(String column) {
+    return columns[schema.indexOf(column)];
+  }
+
+  public ZoneMap getZoneMap(String column) {
+    return zones.get(column);
+  }
+
+  /**
+   * @return the index on {@code column}, or null
+   */
+  public ColumnIndex getIndex(String column) {
+    return indexes.get(column);
+  }
+
+  /**
+   * @return a table with the same columns, plus a hash index on {@code column} which scans use to
+   *     find the rows equal to a constant
+   */
+  public ColumnTable withHashIndex(String column) {
+    return withIndex(column, ColumnIndex.HashIndex.of(getColumn(column), size));
+  }
+
+  /**
+   * @return a table with the same columns, plus a sorted index on {@code column} which scans use to
+   *     find the rows equal to a constant or within a range
+   * @throws IllegalArgumentException if the column's values are not all numbers or all of one
+   *     {@link Comparable} type
+   */
+  public ColumnTable withSortedIndex(String column) {
+    return withIndex(column, ColumnIndex.SortedIndex.of(column, getColumn(column), size));
+  }
+
+  private ColumnTable withIndex(String column, ColumnIndex index) {
+    Map<String, ColumnIndex> indexes = new HashMap<>(this.indexes);
+    indexes.put(column, index);
+    return new ColumnTable(schema, size, columns, zones, Map.copyOf(indexes), statistics);
+  }
+
+  public Object get(int row, int column) {
+    return columns[column].get(row);
+  }
+
+  public Row row(int row) {
+    Object[] vals = new Object[columns.length];
+    for (int column = 0; column < columns.length; column++) {
+      vals[column] = columns[column].get(row);
+    }
+    return new Row(vals);
+  }
+
+  @Override
+  public Stream<Row> open(List<String> columns) {
+    return read(columns, IntStream.range(0, size), null);
+  }
+
+  @Override
+  public boolean canSkip() {
+    return true;
+  }
+
+  /**
+   * Reads only the rows which an index finds for the filter's comparisons, if any index applies.
+   * Otherwise, skips each chunk of rows whose {@link ZoneMap}s show that none of them can match.
+   */
+  @Override
+  public Stream<Row> open(List<String> columns, RowMatcher filter) {
+    return read(columns, rows(filter), null);
+  }
+
+  /**
+   * @return the positions of the rows which may match {@code filter}, in ascending order
+   */
+  private IntStream rows(RowMatcher filter) {
+    if (!indexes.isEmpty()) {
+      int[] rows = ColumnIndex.lookup(indexes, comparisons(filter));
+      if (rows != null) {
+        return Arrays.stream(rows);
+      }
+    }
+    int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    return IntStream.range(0, chunks)
+        .filter(chunk -> ZoneMap.mayMatch(filter, zones, chunk))
+        .flatMap(
+            chunk -> IntStream.range(chunk * CHUNK_SIZE, Math.min(size, (chunk + 1) * CHUNK_SIZE)));
+  }
+
+  /**
+   * @return the comparisons with constants which every matching row must satisfy, by column
+   */
+  private static Map<String, List<ComparisonMatcher>> comparisons(RowMatcher filter) {
+    List<RowMatcher> conjuncts =
+        filter instanceof AndMatcher ? ((AndMatcher) filter).getConjuncts() : List.of(filter);
+    Map<String, List<ComparisonMatcher>> comparisons = new HashMap<>();
+    for (RowMatcher conjunct : conjuncts) {
+      if (conjunct instanceof ComparisonMatcher) {
+        ComparisonMatcher comparison = (ComparisonMatcher) conjunct;
+        comparisons
+            .computeIfAbsent(comparison.getName(), name -> new ArrayList<>())
+            .add(comparison);
+      }
+    }
+    return comparisons;
+  }
+
+  /**
+   * @param rowId the name of a column holding each row's position, or null
+   */
+  private Stream<Row> read(List<String> columns, IntStream rows, String rowId) {
+    // Null for the row id
+    final ColumnVector[] vectors =
+        columns.stream()
+            .map(column -> column.equals(rowId) ? null : this.columns[schema.indexOf(column)])
+            .toArray(ColumnVector[]::new);
+    return rows.mapToObj(
+        row -> {
+          Object[] vals = new Object[vectors.length];
+          for (int i = 0; i < vectors.length; i++) {
+            vals[i] = vectors[i] == null ? row : vectors[i].get(row);
+          }
+          return new Row(vals);
+        });
+  }
+
+  @Override
+  public RowSource withRowIds(String rowId) {
+    if (schema.contains(rowId)) {
+      throw new IllegalArgumentException(
+          String.format("Row id [%s] is already a column of %s", rowId, schema.getNames()));
+    }
+    return new RowIds(rowId);
+  }
+
+  @Override
+  public IntFunction<Object> reader(String column) {
+    return getColumn(column)::get;
+  }
+
+  @Override
+  public long estimateRows() {
+    return size;
+  }
+
+  /**
+   * @return the estimated heap consumed by the table's values. Compare with {@link RowSize}.
+   */
+  public long getBytes() {
+    return Arrays.stream(columns).mapToLong(ColumnVector::getBytes).sum();
+  }
+
+  @Override
+  public String toString() {
+    return indexes.isEmpty()
+        ? String.format("Columns(%d)", size)
+        : String.format("Columns(%d indexed on %s)", size, new TreeSet<>(indexes.keySet()));
+  }
+
+  /** The table's rows plus a column holding each row's position. See {@link #withRowIds}. */
+  private final class RowIds implements RowSource {
+    private final String rowId;
+    @Getter private final Schema schema;
+
+    private RowIds(String rowId) {
+      this.rowId = rowId;
+      List<String> names = new ArrayList<>(ColumnTable.this.schema.getNames());
+      names.add(rowId);
+      this.schema = Schema.of(names);
+    }
+
+    @Override
+    public Stream<Row> open(List<String> columns) {
+      return read(columns, IntStream.range(0, size), rowId);
+    }
+
+    @Override
+    public boolean canSkip() {
+      return true;
+    }
+
+    @Override
+    public Stream<Row> open(List<String> columns, RowMatcher filter) {
+      return read(columns, rows(filter), rowId);
+    }
+
+    @Override
+    public long estimateRows() {
+      return size;
+    }
+
+    @Override
+    public TableStatistics getStatistics() {
+      return statistics;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s with %s", ColumnTable.this, rowId);
+    }
+  }
+
+  /** Appends rows to a new table. Not thread safe. */
+  public static final class Builder {
+    private final Schema schema;
+    private final ColumnBuilder[] columns;
+    private int size = 0;
+    private boolean built = false;
+
+    private Builder(Schema schema) {
+      this.schema = schema;
+      this.columns = new ColumnBuilder[schema.size()];
+      for (int column = 0; column < columns.length; column++) {
+        columns[column] = new ColumnBuilder();
+      }
+    }
+
+    public Builder add(Row row) {
+      if (built) {
+        throw new IllegalStateException("Table has already been built");
+      }
+      if (row.vals.length != columns.length) {
+        throw new IllegalArgumentException(
+            String.format("Row %s does not match schema %s", row, schema.getNames()));
+      }
+      for (int column = 0; column < columns.length; column++) {
+        columns[column].add(row.vals[column]);
+      }
+      size++;
+      return this;
+    }
+
+    public ColumnTable build() {
+      if (built) {
+        throw new IllegalStateException("Table has already been built");
+      }
+      built = true;
+      return new ColumnTable(
+          schema,
+          size,
+          Arrays.stream(columns).map(ColumnBuilder::build).toArray(ColumnVector[]::new));
+    }
+  }
+}
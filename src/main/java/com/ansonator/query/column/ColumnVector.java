@@ -0,0 +1,216 @@
+package com.ansonator.query.column;
+
+import com.ansonator.query.spill.RowSize;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The values of one column of a {@link ColumnTable}. Integers, longs, doubles and booleans are
+ * stored in primitive arrays, strings as an int code per row into a dictionary of distinct values,
+ * and anything else as objects. Nulls are marked in a bitmap, which is omitted when there are none.
+ */
+public abstract class ColumnVector {
+  private static final long ARRAY_OVERHEAD = 16;
+
+  public enum Type {
+    INT,
+    LONG,
+    DOUBLE,
+    BOOLEAN,
+    DICTIONARY,
+    OBJECT
+  }
+
+  // Null when the column has no nulls
+  private final BitSet nulls;
+
+  ColumnVector(BitSet nulls) {
+    this.nulls = nulls == null || nulls.isEmpty() ? null : nulls;
+  }
+
+  public abstract Type getType();
+
+  public final boolean isNull(int row) {
+    return nulls != null && nulls.get(row);
+  }
+
+  /**
+   * @return the value in {@code row}, boxed
+   */
+  public final Object get(int row) {
+    return isNull(row) ? null : value(row);
+  }
+
+  abstract Object value(int row);
+
+  /**
+   * @return the estimated heap consumed by this column. See {@link RowSize}.
+   */
+  public final long getBytes() {
+    return valueBytes() + (nulls == null ? 0 : ARRAY_OVERHEAD + nulls.size() / Byte.SIZE);
+  }
+
+  abstract long valueBytes();
+
+  static final class IntVector extends ColumnVector {
+    private final int[] values;
+
+    IntVector(int[] values, BitSet nulls) {
+      super(nulls);
+      this.values = values;
+    }
+
+    @Override
+    public Type getType() {
+      return Type.INT;
+    }
+
+    @Override
+    Object value(int row) {
+      return values[row];
+    }
+
+    @Override
+    long valueBytes() {
+      return ARRAY_OVERHEAD + Integer.BYTES * (long) values.length;
+    }
+  }
+
+  static final class LongVector extends ColumnVector {
+    private final long[] values;
+
+    LongVector(long[] values, BitSet nulls) {
+      super(nulls);
+      this.values = values;
+    }
+
+    @Override
+    public Type getType() {
+      return Type.LONG;
+    }
+
+    @Override
+    Object value(int row) {
+      return values[row];
+    }
+
+    @Override
+    long valueBytes() {
+      return ARRAY_OVERHEAD + Long.BYTES * (long) values.length;
+    }
+  }
+
+  static final class DoubleVector extends ColumnVector {
+    private final double[] values;
+
+    DoubleVector(double[] values, BitSet nulls) {
+      super(nulls);
+      this.values = values;
+    }
+
+    @Override
+    public Type getType() {
+      return Type.DOUBLE;
+    }
+
+    @Override
+    Object value(int row) {
+      return values[row];
+    }
+
+    @Override
+    long valueBytes() {
+      return ARRAY_OVERHEAD + Double.BYTES * (long) values.length;
+    }
+  }
+
+  static final class BooleanVector extends ColumnVector {
+    private final BitSet values;
+
+    BooleanVector(BitSet values, BitSet nulls) {
+      super(nulls);
+      this.values = values;
+    }
+
+    @Override
+    public Type getType() {
+      return Type.BOOLEAN;
+    }
+
+    @Override
+    Object value(int row) {
+      return values.get(row);
+    }
+
+    @Override
+    long valueBytes() {
+      return ARRAY_OVERHEAD + values.size() / Byte.SIZE;
+    }
+  }
+
+  /** Strings, as an index per row into a list of distinct values. */
+  static final class DictionaryVector extends ColumnVector {
+    private final int[] codes;
+    private final String[] dictionary;
+
+    DictionaryVector(int[] codes, List<String> dictionary, BitSet nulls) {
+      super(nulls);
+      this.codes = codes;
+      this.dictionary = dictionary.toArray(new String[0]);
+    }
+
+    @Override
+    public Type getType() {
+      return Type.DICTIONARY;
+    }
+
+    @Override
+    Object value(int row) {
+      return dictionary[codes[row]];
+    }
+
+    /**
+     * @return the number of distinct values
+     */
+    int cardinality() {
+      return dictionary.length;
+    }
+
+    @Override
+    long valueBytes() {
+      long bytes = 2 * ARRAY_OVERHEAD + Integer.BYTES * (long) codes.length;
+      for (String value : dictionary) {
+        bytes += Integer.BYTES + RowSize.estimate(value);
+      }
+      return bytes;
+    }
+  }
+
+  static final class ObjectVector extends ColumnVector {
+    private final Object[] values;
+
+    ObjectVector(Object[] values, BitSet nulls) {
+      super(nulls);
+      this.values = values;
+    }
+
+    @Override
+    public Type getType() {
+      return Type.OBJECT;
+    }
+
+    @Override
+    Object value(int row) {
+      return values[row];
+    }
+
+    @Override
+    long valueBytes() {
+      long bytes = ARRAY_OVERHEAD + Integer.BYTES * (long) values.length;
+      for (Object value : values) {
+        bytes += RowSize.estimate(value);
+      }
+      return bytes;
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package com.ansonator.query.column;
+
+import com.ansonator.query.row.AndMatcher;
+import com.ansonator.query.row.ComparisonMatcher;
+import com.ansonator.query.row.OrMatcher;
+import com.ansonator.query.row.Parameter;
+import com.ansonator.query.row.RowMatcher;
+import com.ansonator.query.sort.RowComparators;
+import java.util.Map;
+
+/**
+ * The minimum, maximum and number of nulls of one column per chunk of consecutive rows of a {@link
+ * ColumnTable}. Scans use them to skip chunks which a filter cannot match (see {@link #mayMatch}).
+ *
+ * <p>Minimums and maximums are only kept for chunks whose non-null values are all numbers or all of
+ * one {@link Comparable} class, e.g. dates, since only then do they bound the comparisons of {@link
+ * ComparisonMatcher}.
+ */
+public final class ZoneMap {
+  private final int chunkSize;
+  // Null for chunks without bounds
+  private final Object[] min;
+  private final Object[] max;
+  private final int[] nullCounts;
+  private final int[] rowCounts;
+
+  private ZoneMap(int chunkSize, int chunks) {
+    this.chunkSize = chunkSize;
+    this.min = new Object[chunks];
+    this.max = new Object[chunks];
+    this.nullCounts = new int[chunks];
+    this.rowCounts = new int[chunks];
+  }
+
+  static ZoneMap of(ColumnVector column, int size, int chunkSize) {
+    int chunks = (size + chunkSize - 1) / chunkSize;
+    ZoneMap zones = new ZoneMap(chunkSize, chunks);
+    for (int chunk = 0; chunk < chunks; chunk++) {
+      int from = chunk * chunkSize;
+      int to = Math.min(size, from + chunkSize);
+      zones.rowCounts[chunk] = to - from;
+      Object low = null;
+      Object high = null;
+      boolean bounded = true;
+      for (int row = from; row < to; row++) {
+        Object value = column.get(row);
+        if (value == null) {
+          zones.nullCounts[chunk]++;
+        } else if (bounded) {
+          if (low == null) {
+            bounded = value instanceof Number || value instanceof Comparable;
+            low = value;
+            high = value;
+          } else if (!isComparable(low, value)) {
+            bounded = false;
+          } else if (RowComparators.compareValues(value, low) < 0) {
+            low = value;
+          } else if (RowComparators.compareValues(value, high) > 0) {
+            high = value;
+          }
+        }
+      }
+      if (bounded) {
+        zones.min[chunk] = low;
+        zones.max[chunk] = high;
+      }
+    }
+    return zones;
+  }
+
+  /**
+   * @return true if {@link RowComparators#compareValues} orders these two values consistently with
+   *     the other values of their kind
+   */
+  static boolean isComparable(Object a, Object b) {
+    return (a instanceof Number && b instanceof Number) || a.getClass() == b.getClass();
+  }
+
+  public int getChunks() {
+    return rowCounts.length;
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * @return the smallest non-null value in {@code chunk}, or null if unknown
+   */
+  public Object getMin(int chunk) {
+    return min[chunk];
+  }
+
+  /**
+   * @return the largest non-null value in {@code chunk}, or null if unknown
+   */
+  public Object getMax(int chunk) {
+    return max[chunk];
+  }
+
+  public int getNullCount(int chunk) {
+    return nullCounts[chunk];
+  }
+
+  /**
+   * @param zones by column name
+   * @return false if no row of {@code chunk} can match {@code matcher}. Matchers other than {@link
+   *     ComparisonMatcher}s combined by {@link AndMatcher} and {@link OrMatcher} may match
+   *     anything.
+   */
+  public static boolean mayMatch(RowMatcher matcher, Map<String, ZoneMap> zones, int chunk) {
+    if (matcher instanceof AndMatcher) {
+      for (RowMatcher conjunct : ((AndMatcher) matcher).getConjuncts()) {
+        if (!mayMatch(conjunct, zones, chunk)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (matcher instanceof OrMatcher) {
+      for (RowMatcher disjunct : ((OrMatcher) matcher).getDisjuncts()) {
+        if (mayMatch(disjunct, zones, chunk)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    if (matcher instanceof ComparisonMatcher) {
+      ComparisonMatcher comparison = (ComparisonMatcher) matcher;
+      ZoneMap column = zones.get(comparison.getName());
+      return column == null || column.mayMatch(comparison, chunk);
+    }
+    return true;
+  }
+
+  private boolean mayMatch(ComparisonMatcher matcher, int chunk) {
+    Object value = matcher.getValue();
+    if (value instanceof Parameter) {
+      return true;
+    }
+    if (value == null || nullCounts[chunk] == rowCounts[chunk]) {
+      // Null never matches
+      return false;
+    }
+    Object low = min[chunk];
+    Object high = max[chunk];
+    if (low == null || !isComparable(low, value)) {
+      return true;
+    }
+    switch (matcher.getComparison()) {
+      case EQ:
+        return RowComparators.compareValues(value, low) >= 0
+            && RowComparators.compareValues(value, high) <= 0;
+      case NE:
+        return !(low.equals(high) && low.equals(value));
+      case LT:
+        return RowComparators.compareValues(low, value) < 0;
+      case LE:
+        return RowComparators.compareValues(low, value) <= 0;
+      case GT:
+        return RowComparators.compareValues(high, value) > 0;
+      default:
+        return RowComparators.compareValues(high, value) >= 0;
+    }
+  }
+}
@@ -0,0 +1,202 @@
+package com.ansonator.query.exchange;
+
+import com.ansonator.query.row.Row;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.lang.ref.Cleaner;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads a stream on a thread of its own, handing its rows to the consuming thread in batches
+ * through a bounded queue. The two sides of an exchange then run concurrently: while the consumer
+ * works on one batch, the producer fills the next. When the queue is full, the producer waits, so
+ * at most {@code capacity + 2} batches are in memory at once.
+ *
+ * <p>The producing thread is started when the first row is read. It stops, and closes the input,
+ * once the input is exhausted, the resulting stream is closed, or the resulting stream is garbage
+ * collected without being read to the end (e.g., below a {@code limit}). Exceptions and errors
+ * thrown by the input are rethrown to the consumer.
+ */
+public final class Exchange implements Spliterator<Row> {
+  /** Creates a daemon platform thread per exchange and execution. */
+  public static final ThreadFactory DAEMON_THREADS =
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("junq-exchange-%d").build();
+
+  private static final Cleaner CLEANER = Cleaner.create();
+  private static final Object END = new Object();
+
+  private final Producer producer;
+  private final ThreadFactory threads;
+  private final ExchangeMetrics metrics;
+  private boolean started = false;
+  private Row[] batch = new Row[0];
+  private int next = 0;
+  private boolean done = false;
+
+  private static final class Failure {
+    private final Throwable cause;
+
+    private Failure(Throwable cause) {
+      this.cause = cause;
+    }
+  }
+
+  /** Runs on its own thread. Must not refer to the {@link Exchange}, so that it can be cleaned. */
+  private static final class Producer implements Runnable {
+    private final Stream<Row> input;
+    private final BlockingQueue<Object> queue;
+    private final int batchSize;
+    private final ExchangeMetrics metrics;
+    private volatile boolean closed = false;
+    private volatile Thread thread;
+
+    private Producer(Stream<Row> input, int capacity, int batchSize, ExchangeMetrics metrics) {
+      this.input = input;
+      this.queue = new ArrayBlockingQueue<>(capacity);
+      this.batchSize = batchSize;
+      this.metrics = metrics;
+    }
+
+    @Override
+    public void run() {
+      try (input) {
+        Spliterator<Row> rows = input.spliterator();
+        Row[] batch = new Row[batchSize];
+        int[] size = {0};
+        Consumer<Row> add = row -> batch[size[0]++] = row;
+        boolean more = true;
+        while (more && !closed) {
+          while (size[0] < batchSize && (more = rows.tryAdvance(add))) {}
+          if (size[0] > 0) {
+            put(Arrays.copyOf(batch, size[0]));
+            size[0] = 0;
+          }
+        }
+        put(END);
+      } catch (InterruptedException e) {
+        // Closed by the consumer
+      } catch (Throwable e) {
+        // Errors too, or else the consumer would wait forever
+        try {
+          put(new Failure(e));
+        } catch (InterruptedException interrupted) {
+          // Closed by the consumer
+        }
+      }
+    }
+
+    private void put(Object item) throws InterruptedException {
+      if (!queue.offer(item)) {
+        long start = System.nanoTime();
+        queue.put(item);
+        metrics.addProducerStall(System.nanoTime() - start);
+      }
+    }
+
+    private void start(ThreadFactory threads) {
+      thread = threads.newThread(this);
+      thread.start();
+    }
+
+    private void close() {
+      closed = true;
+      Thread running = thread;
+      if (running != null) {
+        running.interrupt();
+      } else {
+        input.close();
+      }
+    }
+  }
+
+  private Exchange(Producer producer, ThreadFactory threads, ExchangeMetrics metrics) {
+    this.producer = producer;
+    this.threads = threads;
+    this.metrics = metrics;
+  }
+
+  /**
+   * @param capacity maximum number of batches waiting in the queue
+   * @param batchSize maximum number of rows per batch
+   */
+  public static Stream<Row> of(
+      Stream<Row> input,
+      int capacity,
+      int batchSize,
+      ThreadFactory threads,
+      ExchangeMetrics metrics) {
+    Producer producer = new Producer(input, capacity, batchSize, metrics);
+    Exchange exchange = new Exchange(producer, threads, metrics);
+    CLEANER.register(exchange, producer::close);
+    return StreamSupport.stream(exchange, false).onClose(producer::close);
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super Row> action) {
+    while (next == batch.length) {
+      if (done) {
+        return false;
+      }
+      take();
+    }
+    action.accept(batch[next++]);
+    return true;
+  }
+
+  private void take() {
+    if (!started) {
+      started = true;
+      producer.start(threads);
+    }
+    int depth = producer.queue.size();
+    Object item = producer.queue.poll();
+    if (item == null) {
+      long start = System.nanoTime();
+      try {
+        item = producer.queue.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        producer.close();
+        throw new IllegalStateException("Interrupted while waiting for an exchange", e);
+      }
+      metrics.addConsumerStall(System.nanoTime() - start);
+    }
+    if (item == END) {
+      done = true;
+    } else if (item instanceof Failure) {
+      done = true;
+      Throwable cause = ((Failure) item).cause;
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException("Exchange input failed", cause);
+    } else {
+      batch = (Row[]) item;
+      next = 0;
+      metrics.addBatch(batch.length, depth);
+    }
+  }
+
+  @Override
+  public Spliterator<Row> trySplit() {
+    return null;
+  }
+
+  @Override
+  public long estimateSize() {
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public int characteristics() {
+    return ORDERED | NONNULL;
+  }
+}
@@ -0,0 +1,84 @@
+package com.ansonator.query.exchange;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What an exchange did, summed over every execution of the query which contains it. Instances are
+ * thread-safe. See {@link com.ansonator.query.Query#exchange}.
+ */
+public class ExchangeMetrics {
+  private final LongAdder rows = new LongAdder();
+  private final LongAdder batches = new LongAdder();
+  private final LongAdder depthSum = new LongAdder();
+  private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+  private final AtomicLong producerStallNanos = new AtomicLong();
+  private final AtomicLong consumerStallNanos = new AtomicLong();
+
+  void addBatch(int rows, int depth) {
+    this.rows.add(rows);
+    this.batches.increment();
+    this.depthSum.add(depth);
+    this.maxDepth.accumulate(depth);
+  }
+
+  void addProducerStall(long nanos) {
+    producerStallNanos.addAndGet(nanos);
+  }
+
+  void addConsumerStall(long nanos) {
+    consumerStallNanos.addAndGet(nanos);
+  }
+
+  public long getRows() {
+    return rows.sum();
+  }
+
+  public long getBatches() {
+    return batches.sum();
+  }
+
+  /**
+   * @return the largest number of batches waiting in the queue, seen as a batch was taken
+   */
+  public long getMaxQueueDepth() {
+    return maxDepth.get();
+  }
+
+  /**
+   * @return the average number of batches waiting in the queue, seen as a batch was taken
+   */
+  public double getAverageQueueDepth() {
+    long batches = getBatches();
+    return batches == 0 ? 0 : (double) depthSum.sum() / batches;
+  }
+
+  /**
+   * @return time the producing stage spent waiting for room in a full queue. High when the
+   *     consuming stage is the bottleneck.
+   */
+  public long getProducerStallNanos() {
+    return producerStallNanos.get();
+  }
+
+  /**
+   * @return time the consuming stage spent waiting on an empty queue. High when the producing stage
+   *     is the bottleneck.
+   */
+  public long getConsumerStallNanos() {
+    return consumerStallNanos.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "rows=%d, batches=%d, queue depth avg=%.1f max=%d, stalls producer=%dms consumer=%dms",
+        getRows(),
+        getBatches(),
+        getAverageQueueDepth(),
+        getMaxQueueDepth(),
+        getProducerStallNanos() / 1_000_000,
+        getConsumerStallNanos() / 1_000_000);
+  }
+}
@@ -0,0 +1,169 @@
+package com.ansonator.query.flow;
+
+import java.util.Spliterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Pulls the items of a {@link Flow.Publisher} into a {@link Stream}. The publisher is subscribed to
+ * when the stream is first read. At most {@code bufferSize} items are requested ahead of the
+ * reader, and more are requested each time the reader has consumed half of them, so a slow query
+ * slows down the publisher rather than buffering its items. The reading thread blocks while the
+ * buffer is empty.
+ *
+ * <p>Closing the stream cancels the subscription.
+ */
+public class PublisherSpliterator<T> implements Spliterator<T>, Flow.Subscriber<T> {
+  private static final Object COMPLETE = new Object();
+  // Wakes a reader blocked on an empty buffer when the terminal signal arrives
+  private static final Object WAKE = new Object();
+
+  private final Flow.Publisher<T> publisher;
+  private final int bufferSize;
+  // Items, and possibly WAKE
+  private final BlockingQueue<Object> buffer;
+  // COMPLETE or a Failure, once signalled. Kept out of the buffer so it cannot be lost when the
+  // buffer is full.
+  private volatile Object terminal;
+  private volatile Flow.Subscription subscription;
+  private boolean subscribed = false;
+  private boolean done = false;
+  private int consumed = 0;
+
+  private static final class Failure {
+    private final Throwable cause;
+
+    private Failure(Throwable cause) {
+      this.cause = cause;
+    }
+  }
+
+  public PublisherSpliterator(Flow.Publisher<T> publisher, int bufferSize) {
+    if (bufferSize < 1) {
+      throw new IllegalArgumentException(
+          String.format("Buffer size [%d] must be positive", bufferSize));
+    }
+    this.publisher = publisher;
+    this.bufferSize = bufferSize;
+    this.buffer = new ArrayBlockingQueue<>(bufferSize);
+  }
+
+  /**
+   * @return a sequential stream of the publisher's items
+   */
+  public static <T> Stream<T> stream(Flow.Publisher<T> publisher, int bufferSize) {
+    PublisherSpliterator<T> items = new PublisherSpliterator<>(publisher, bufferSize);
+    return StreamSupport.stream(items, false).onClose(items::cancel);
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    if (this.subscription != null) {
+      subscription.cancel();
+      return;
+    }
+    this.subscription = subscription;
+    subscription.request(bufferSize);
+  }
+
+  @Override
+  public void onNext(T item) {
+    if (!buffer.offer(item)) {
+      onError(
+          new IllegalStateException(
+              String.format("Publisher [%s] sent more items than were requested", publisher)));
+    }
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    terminate(new Failure(throwable));
+  }
+
+  @Override
+  public void onComplete() {
+    terminate(COMPLETE);
+  }
+
+  private void terminate(Object signal) {
+    if (terminal != null) {
+      return;
+    }
+    terminal = signal;
+    // If the buffer is full, the reader is not blocked and sees the signal once it drains it
+    buffer.offer(WAKE);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public boolean tryAdvance(Consumer<? super T> action) {
+    if (done) {
+      return false;
+    }
+    if (!subscribed) {
+      subscribed = true;
+      publisher.subscribe(this);
+    }
+    Object next = buffer.poll();
+    while (next == null || next == WAKE) {
+      // Items sent before the terminal signal are still read first
+      Object end = terminal;
+      next = buffer.poll();
+      if (next == null && end != null) {
+        next = end;
+      } else if (next == null) {
+        try {
+          next = buffer.take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          cancel();
+          throw new IllegalStateException(
+              String.format("Interrupted while waiting for publisher [%s]", publisher), e);
+        }
+      }
+    }
+    if (next == COMPLETE) {
+      done = true;
+      return false;
+    } else if (next instanceof Failure) {
+      done = true;
+      Throwable cause = ((Failure) next).cause;
+      throw cause instanceof RuntimeException
+          ? (RuntimeException) cause
+          : new IllegalStateException(String.format("Publisher [%s] failed", publisher), cause);
+    }
+    // The subscription is set, since items only arrive after onSubscribe requested them
+    if (++consumed >= (bufferSize + 1) / 2) {
+      subscription.request(consumed);
+      consumed = 0;
+    }
+    action.accept((T) next);
+    return true;
+  }
+
+  void cancel() {
+    done = true;
+    if (subscription != null) {
+      subscription.cancel();
+    }
+  }
+
+  @Override
+  public Spliterator<T> trySplit() {
+    return null;
+  }
+
+  @Override
+  public long estimateSize() {
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public int characteristics() {
+    return ORDERED | NONNULL;
+  }
+}
@@ -0,0 +1,138 @@
+package com.ansonator.query.flow;
+
+import com.ansonator.query.row.Row;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Publishes the rows of a query. The query is compiled when a subscriber arrives, and rows are
+ * pulled from it only as the subscriber requests them, so operators which do not materialize their
+ * input (filters, projections, joins against a materialized side, ...) never read ahead of demand.
+ *
+ * <p>Rows are emitted on the given executor, one drain at a time. Since a query's sources can only
+ * be read once, only one subscriber is accepted. Others receive {@link Flow.Subscriber#onError}.
+ */
+public class RowPublisher implements Flow.Publisher<Row> {
+  private final Supplier<Stream<Row>> rows;
+  private final Executor executor;
+  private final AtomicBoolean subscribed = new AtomicBoolean();
+
+  /**
+   * @param rows compiles the query. Called at most once.
+   * @param executor runs the loop which emits rows. {@code Runnable::run} emits them on the thread
+   *     which calls {@link Flow.Subscription#request}.
+   */
+  public RowPublisher(Supplier<Stream<Row>> rows, Executor executor) {
+    this.rows = rows;
+    this.executor = executor;
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super Row> subscriber) {
+    if (!subscribed.compareAndSet(false, true)) {
+      subscriber.onSubscribe(
+          new Flow.Subscription() {
+            @Override
+            public void request(long n) {}
+
+            @Override
+            public void cancel() {}
+          });
+      subscriber.onError(
+          new IllegalStateException("A query can only be published to one subscriber"));
+      return;
+    }
+    subscriber.onSubscribe(new RowSubscription(subscriber));
+  }
+
+  private class RowSubscription implements Flow.Subscription {
+    private final Flow.Subscriber<? super Row> subscriber;
+    private final AtomicLong demand = new AtomicLong();
+    // Number of requests not yet seen by the drain loop. Only one drain runs at a time.
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile boolean cancelled = false;
+    private volatile Throwable invalidRequest;
+    private Stream<Row> stream;
+    private Iterator<Row> iterator;
+
+    private RowSubscription(Flow.Subscriber<? super Row> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        invalidRequest =
+            new IllegalArgumentException(String.format("Requested [%d] rows. Must be positive", n));
+      } else {
+        demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+      }
+      schedule();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      schedule();
+    }
+
+    private void schedule() {
+      if (pending.getAndIncrement() == 0) {
+        executor.execute(this::drain);
+      }
+    }
+
+    private void drain() {
+      int missed = 1;
+      do {
+        if (cancelled) {
+          close();
+        } else if (invalidRequest != null) {
+          cancelled = true;
+          close();
+          subscriber.onError(invalidRequest);
+        } else {
+          emit();
+        }
+        missed = pending.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private void emit() {
+      try {
+        if (iterator == null) {
+          stream = rows.get();
+          iterator = stream.iterator();
+        }
+        while (demand.get() > 0 && !cancelled) {
+          if (!iterator.hasNext()) {
+            cancelled = true;
+            close();
+            subscriber.onComplete();
+            return;
+          }
+          Row row = iterator.next();
+          demand.decrementAndGet();
+          subscriber.onNext(row);
+        }
+      } catch (RuntimeException e) {
+        cancelled = true;
+        close();
+        subscriber.onError(e);
+      }
+    }
+
+    private void close() {
+      if (stream != null) {
+        stream.close();
+        stream = null;
+      }
+    }
+  }
+}
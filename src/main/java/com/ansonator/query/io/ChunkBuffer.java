@@ -0,0 +1,65 @@
+package com.ansonator.query.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * A growable byte array which rows are encoded into and which is then written out whole. Unlike
+ * {@link java.io.ByteArrayOutputStream}, it is not synchronized, and is reset rather than copied.
+ */
+final class ChunkBuffer extends OutputStream {
+  private byte[] bytes;
+  private int size = 0;
+
+  ChunkBuffer(int capacity) {
+    bytes = new byte[capacity];
+  }
+
+  int size() {
+    return size;
+  }
+
+  void reset() {
+    size = 0;
+  }
+
+  /**
+   * @return the array to write {@code length} more bytes into, at {@link #size()}
+   */
+  byte[] reserve(int length) {
+    if (size + length > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, size + length));
+    }
+    return bytes;
+  }
+
+  /** Follows {@link #reserve} once the bytes are written. */
+  void advance(int length) {
+    size += length;
+  }
+
+  @Override
+  public void write(int b) {
+    reserve(1)[size++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    System.arraycopy(b, off, reserve(len), size, len);
+    size += len;
+  }
+
+  void writeTo(WritableByteChannel channel) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, size);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  void writeTo(OutputStream out) throws IOException {
+    out.write(bytes, 0, size);
+  }
+}
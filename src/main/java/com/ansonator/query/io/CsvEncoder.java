@@ -0,0 +1,123 @@
+package com.ansonator.query.io;
+
+import com.ansonator.query.row.Row;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Encodes rows as delimited text. Integers are written digit by digit and ASCII strings char by
+ * char, straight into the buffer. Strings are quoted when they contain the delimiter, a quote or a
+ * line break, or are empty, since an empty unquoted field is null.
+ *
+ * <p>Line breaks are kept inside quoted fields, as CSV allows. {@link CsvSource} reads the output
+ * back as long as no string contains a line break, since it splits files at any line break.
+ */
+final class CsvEncoder extends RowEncoder {
+  private final List<String> columns;
+  private final byte delimiter;
+  private final boolean header;
+
+  CsvEncoder(ChunkBuffer buffer, List<String> columns, WriteOptions options) {
+    super(buffer);
+    this.columns = columns;
+    this.delimiter = (byte) options.getDelimiter();
+    this.header = options.isHeader();
+  }
+
+  @Override
+  void header() {
+    if (header) {
+      for (int i = 0; i < columns.size(); i++) {
+        if (i > 0) {
+          buffer.write(delimiter);
+        }
+        writeString(columns.get(i));
+      }
+      buffer.write('\n');
+    }
+  }
+
+  @Override
+  void encode(Row row) {
+    for (int i = 0; i < columns.size(); i++) {
+      if (i > 0) {
+        buffer.write(delimiter);
+      }
+      Object value = row.get(i);
+      if (value == null) {
+        continue;
+      } else if (value instanceof Integer || value instanceof Long) {
+        writeLong(((Number) value).longValue());
+      } else if (value instanceof String) {
+        writeString((String) value);
+      } else if (value instanceof Number || value instanceof Boolean) {
+        writeAscii(value.toString());
+      } else {
+        writeString(value.toString());
+      }
+    }
+    buffer.write('\n');
+  }
+
+  private void writeLong(long value) {
+    if (value == Long.MIN_VALUE) {
+      writeAscii(Long.toString(value));
+      return;
+    }
+    if (value < 0) {
+      buffer.write('-');
+      value = -value;
+    }
+    int length = 1;
+    for (long rest = value / 10; rest > 0; rest /= 10) {
+      length++;
+    }
+    byte[] bytes = buffer.reserve(length);
+    int end = buffer.size() + length;
+    for (int i = end - 1; i >= buffer.size(); i--) {
+      bytes[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    buffer.advance(length);
+  }
+
+  private void writeAscii(String text) {
+    int length = text.length();
+    byte[] bytes = buffer.reserve(length);
+    int start = buffer.size();
+    for (int i = 0; i < length; i++) {
+      bytes[start + i] = (byte) text.charAt(i);
+    }
+    buffer.advance(length);
+  }
+
+  private void writeString(String text) {
+    boolean ascii = true;
+    boolean quote = text.isEmpty();
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c >= 0x80) {
+        ascii = false;
+      } else if (c == delimiter || c == '"' || c == '\n' || c == '\r') {
+        quote = true;
+      }
+    }
+    if (!quote) {
+      if (ascii) {
+        writeAscii(text);
+      } else {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        buffer.write(bytes, 0, bytes.length);
+      }
+      return;
+    }
+    buffer.write('"');
+    for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+      if (b == '"') {
+        buffer.write('"');
+      }
+      buffer.write(b);
+    }
+    buffer.write('"');
+  }
+}
@@ -0,0 +1,84 @@
+package com.ansonator.query.io;
+
+import com.ansonator.query.plan.Schema;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+
+/**
+ * The columns of a delimited text file, in file order, each with the type its fields are decoded
+ * to, plus the delimiter and whether the first line is a header. See {@link CsvSource}.
+ */
+@Getter
+public final class CsvSchema {
+  public enum Type {
+    STRING,
+    INT,
+    LONG,
+    DOUBLE,
+    BOOLEAN
+  }
+
+  private final List<String> names;
+  private final List<Type> types;
+  private final char delimiter;
+  private final boolean header;
+
+  private CsvSchema(List<String> names, List<Type> types, char delimiter, boolean header) {
+    this.names = ImmutableList.copyOf(names);
+    this.types = ImmutableList.copyOf(types);
+    this.delimiter = delimiter;
+    this.header = header;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public Schema toSchema() {
+    return Schema.of(names);
+  }
+
+  public static final class Builder {
+    private final List<String> names = new ArrayList<>();
+    private final List<Type> types = new ArrayList<>();
+    private char delimiter = ',';
+    private boolean header = false;
+
+    private Builder() {}
+
+    public Builder column(String name, Type type) {
+      if (names.contains(name)) {
+        throw new IllegalArgumentException(String.format("Duplicate column [%s]", name));
+      }
+      names.add(name);
+      types.add(type);
+      return this;
+    }
+
+    /**
+     * @param delimiter an ASCII character other than a quote or line break, e.g. a tab
+     */
+    public Builder delimiter(char delimiter) {
+      if (delimiter > 0x7f || delimiter == '"' || delimiter == '\n' || delimiter == '\r') {
+        throw new IllegalArgumentException(String.format("Unsupported delimiter [%s]", delimiter));
+      }
+      this.delimiter = delimiter;
+      return this;
+    }
+
+    /** Skip the first line of the file. */
+    public Builder header() {
+      this.header = true;
+      return this;
+    }
+
+    public CsvSchema build() {
+      if (names.isEmpty()) {
+        throw new IllegalStateException("A CSV schema needs at least one column");
+      }
+      return new CsvSchema(names, types, delimiter, header);
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package com.ansonator.query.io;
+
+import com.ansonator.query.plan.RowSource;
+import com.ansonator.query.plan.Schema;
+import com.ansonator.query.row.Row;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads a delimited text file (CSV, TSV, ...) straight from memory mapped bytes. Only the fields of
+ * requested columns are decoded, directly into each row's values, so numbers never become
+ * intermediate strings. A parallel source splits the file at line boundaries (see {@link
+ * CsvSpliterator}), so that each thread reads a separate part of it.
+ *
+ * <p>Fields may be quoted with {@code "}, in which case they may contain the delimiter and doubled
+ * quotes, but not line breaks. An empty, unquoted field is null. Lines may end with {@code \n} or
+ * {@code \r\n}. Text is UTF-8.
+ *
+ * <p>Unlike a {@link Stream}, the file may be read by any number of queries.
+ */
+public class CsvSource implements RowSource {
+  private final Path path;
+  private final CsvSchema csvSchema;
+  private final Schema schema;
+  private final boolean parallel;
+
+  public CsvSource(Path path, CsvSchema csvSchema, boolean parallel) {
+    this.path = path;
+    this.csvSchema = csvSchema;
+    this.schema = csvSchema.toSchema();
+    this.parallel = parallel;
+  }
+
+  @Override
+  public Schema getSchema() {
+    return schema;
+  }
+
+  @Override
+  public Stream<Row> open(List<String> columns) {
+    long size;
+    try {
+      size = Files.size(path);
+    } catch (IOException e) {
+      throw new UncheckedIOException(String.format("Unable to read [%s]", path), e);
+    }
+    int[] slots = new int[schema.size()];
+    for (int field = 0; field < slots.length; field++) {
+      slots[field] = columns.indexOf(schema.getNames().get(field));
+    }
+    return StreamSupport.stream(
+        new CsvSpliterator(path, size, csvSchema, slots, columns.size()), parallel);
+  }
+
+  @Override
+  public String toString() {
+    return path.getFileName().toString();
+  }
+}
@@ -0,0 +1,360 @@
+package com.ansonator.query.io;
+
+import com.ansonator.query.row.Row;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Parses the lines which start within a range of a file's bytes. The file is memory mapped a window
+ * at a time, and only projected fields are decoded. Splitting halves the range and moves the
+ * boundary to the next line start, so every line is read by exactly one spliterator. See {@link
+ * CsvSource}.
+ */
+final class CsvSpliterator implements Spliterator<Row> {
+  /** Ranges are not split below this many bytes. */
+  static final long MIN_SPLIT = 1 << 20;
+
+  private static final int WINDOW = 64 << 20;
+  // Powers of ten which a double represents exactly
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+    1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private final Path path;
+  private final long fileSize;
+  private final CsvSchema schema;
+  private final CsvSchema.Type[] types;
+  private final byte delimiter;
+  // By field, the index of its value in each row, or -1 if it is not read
+  private final int[] slots;
+  private final int width;
+  private final int lastField;
+
+  // The start of the next line, and the end of the range
+  private long position;
+  private final long end;
+  private boolean skipHeader;
+
+  private MappedByteBuffer window;
+  private long windowStart = 0;
+  private long windowEnd = 0;
+  private byte[] scratch = new byte[64];
+
+  CsvSpliterator(Path path, long fileSize, CsvSchema schema, int[] slots, int width) {
+    this(path, fileSize, schema, slots, width, 0, fileSize, schema.isHeader());
+  }
+
+  private CsvSpliterator(
+      Path path,
+      long fileSize,
+      CsvSchema schema,
+      int[] slots,
+      int width,
+      long position,
+      long end,
+      boolean skipHeader) {
+    this.path = path;
+    this.fileSize = fileSize;
+    this.schema = schema;
+    this.types = schema.getTypes().toArray(new CsvSchema.Type[0]);
+    this.delimiter = (byte) schema.getDelimiter();
+    this.slots = slots;
+    this.width = width;
+    int last = -1;
+    for (int field = 0; field < slots.length; field++) {
+      if (slots[field] >= 0) {
+        last = field;
+      }
+    }
+    this.lastField = last;
+    this.position = position;
+    this.end = end;
+    this.skipHeader = skipHeader;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super Row> action) {
+    if (skipHeader) {
+      skipHeader = false;
+      if (position < end) {
+        position = lineEnd(position) + 1;
+      }
+    }
+    while (position < end) {
+      long lineEnd = lineEnd(position);
+      long lineStart = position;
+      position = lineEnd + 1;
+      int stop = (int) (lineEnd - windowStart);
+      int start = (int) (lineStart - windowStart);
+      if (stop > start && window.get(stop - 1) == '\r') {
+        stop--;
+      }
+      if (stop > start) {
+        action.accept(parse(start, stop));
+        return true;
+      }
+      // Blank lines are skipped
+    }
+    return false;
+  }
+
+  @Override
+  public Spliterator<Row> trySplit() {
+    if (end - position < 2 * MIN_SPLIT) {
+      return null;
+    }
+    long aligned = lineEnd(position + (end - position) / 2) + 1;
+    if (aligned >= end) {
+      return null;
+    }
+    Spliterator<Row> prefix =
+        new CsvSpliterator(path, fileSize, schema, slots, width, position, aligned, skipHeader);
+    position = aligned;
+    skipHeader = false;
+    return prefix;
+  }
+
+  @Override
+  public long estimateSize() {
+    // Bytes, rather than lines, which is only a relative measure of the work left
+    return end - position;
+  }
+
+  @Override
+  public int characteristics() {
+    return ORDERED | NONNULL | IMMUTABLE;
+  }
+
+  /**
+   * @return the position of the line break which ends the line starting at {@code from}, or the
+   *     file size. The window then holds the whole line.
+   */
+  private long lineEnd(long from) {
+    if (from < windowStart || from >= windowEnd) {
+      map(from, WINDOW);
+    }
+    long scanned = from;
+    while (true) {
+      int limit = (int) (windowEnd - windowStart);
+      for (int i = (int) (scanned - windowStart); i < limit; i++) {
+        if (window.get(i) == '\n') {
+          return windowStart + i;
+        }
+      }
+      if (windowEnd >= fileSize) {
+        return fileSize;
+      }
+      // The line continues past the window
+      scanned = windowEnd;
+      long length = 2 * (windowEnd - from);
+      if (length > Integer.MAX_VALUE) {
+        throw new IllegalStateException(
+            String.format("Line at byte [%d] of [%s] is too long", from, path));
+      }
+      map(from, Math.max(WINDOW, length));
+    }
+  }
+
+  private void map(long start, long length) {
+    long mapped = Math.min(Math.min(length, fileSize - start), Integer.MAX_VALUE);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      window = channel.map(FileChannel.MapMode.READ_ONLY, start, mapped);
+    } catch (IOException e) {
+      throw new UncheckedIOException(String.format("Unable to map [%s]", path), e);
+    }
+    windowStart = start;
+    windowEnd = start + mapped;
+  }
+
+  /** Decodes the projected fields of the line in window positions [{@code i}, {@code stop}). */
+  private Row parse(int i, int stop) {
+    Object[] vals = new Object[width];
+    for (int field = 0; field <= lastField && i <= stop; field++) {
+      int start = i;
+      int fieldEnd;
+      boolean quoted = i < stop && window.get(i) == '"';
+      boolean escaped = false;
+      if (quoted) {
+        start = i + 1;
+        int j = start;
+        while (j < stop) {
+          if (window.get(j) == '"') {
+            if (j + 1 < stop && window.get(j + 1) == '"') {
+              escaped = true;
+              j += 2;
+              continue;
+            }
+            break;
+          }
+          j++;
+        }
+        fieldEnd = j;
+        i = Math.min(j + 1, stop);
+        while (i < stop && window.get(i) != delimiter) {
+          i++;
+        }
+      } else {
+        i = start;
+        while (i < stop && window.get(i) != delimiter) {
+          i++;
+        }
+        fieldEnd = i;
+      }
+      if (slots[field] >= 0) {
+        vals[slots[field]] = decode(field, start, fieldEnd, quoted, escaped);
+      }
+      // Past the delimiter
+      i++;
+    }
+    return new Row(vals);
+  }
+
+  private Object decode(int field, int start, int end, boolean quoted, boolean escaped) {
+    if (start == end && !quoted) {
+      return null;
+    }
+    switch (types[field]) {
+      case INT:
+        long value = parseLong(field, start, end);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+          throw invalid(field, start, end);
+        }
+        return (int) value;
+      case LONG:
+        return parseLong(field, start, end);
+      case DOUBLE:
+        return parseDouble(field, start, end);
+      case BOOLEAN:
+        if (matches(start, end, "true")) {
+          return Boolean.TRUE;
+        } else if (matches(start, end, "false")) {
+          return Boolean.FALSE;
+        }
+        throw invalid(field, start, end);
+      default:
+        int length = copy(start, end);
+        if (escaped) {
+          // Undouble quotes
+          int kept = 0;
+          for (int i = 0; i < length; i++) {
+            scratch[kept++] = scratch[i];
+            if (scratch[i] == '"') {
+              i++;
+            }
+          }
+          length = kept;
+        }
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+  }
+
+  private long parseLong(int field, int start, int end) {
+    int i = start;
+    boolean negative = i < end && window.get(i) == '-';
+    if (negative || (i < end && window.get(i) == '+')) {
+      i++;
+    }
+    if (i == end || end - i > 18) {
+      // Too many digits to accumulate without overflow
+      try {
+        return Long.parseLong(text(start, end));
+      } catch (NumberFormatException e) {
+        throw invalid(field, start, end);
+      }
+    }
+    long value = 0;
+    for (; i < end; i++) {
+      int digit = window.get(i) - '0';
+      if (digit < 0 || digit > 9) {
+        throw invalid(field, start, end);
+      }
+      value = value * 10 + digit;
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * Plain decimals with at most 15 significant digits are computed exactly from their digits and a
+   * power of ten. Anything else goes through {@link Double#parseDouble}.
+   */
+  private double parseDouble(int field, int start, int end) {
+    int i = start;
+    boolean negative = i < end && window.get(i) == '-';
+    if (negative || (i < end && window.get(i) == '+')) {
+      i++;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int fraction = -1;
+    for (; i < end; i++) {
+      byte b = window.get(i);
+      if (b >= '0' && b <= '9') {
+        mantissa = mantissa * 10 + (b - '0');
+        digits++;
+        if (fraction >= 0) {
+          fraction++;
+        }
+      } else if (b == '.' && fraction < 0) {
+        fraction = 0;
+      } else {
+        break;
+      }
+    }
+    if (i == end && digits > 0 && digits <= 15) {
+      double value = fraction > 0 ? mantissa / POWERS_OF_TEN[fraction] : mantissa;
+      return negative ? -value : value;
+    }
+    try {
+      return Double.parseDouble(text(start, end));
+    } catch (NumberFormatException e) {
+      throw invalid(field, start, end);
+    }
+  }
+
+  private boolean matches(int start, int end, String expected) {
+    if (end - start != expected.length()) {
+      return false;
+    }
+    for (int i = 0; i < expected.length(); i++) {
+      if (Character.toLowerCase(window.get(start + i)) != expected.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the number of bytes copied from the window into {@link #scratch}
+   */
+  private int copy(int start, int end) {
+    int length = end - start;
+    if (length > scratch.length) {
+      scratch = new byte[Math.max(length, 2 * scratch.length)];
+    }
+    window.get(start, scratch, 0, length);
+    return length;
+  }
+
+  private String text(int start, int end) {
+    return new String(scratch, 0, copy(start, end), StandardCharsets.UTF_8);
+  }
+
+  private IllegalArgumentException invalid(int field, int start, int end) {
+    return new IllegalArgumentException(
+        String.format(
+            "Field [%s] at byte [%d] of [%s] is not a valid %s: [%s]",
+            schema.getNames().get(field),
+            windowStart + start,
+            path,
+            types[field],
+            text(start, end)));
+  }
+}
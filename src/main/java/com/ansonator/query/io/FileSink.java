@@ -0,0 +1,217 @@
+package com.ansonator.query.io;
+
+import com.ansonator.query.row.Row;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes rows to a file as CSV (or TSV, etc.) or JSON Lines. Rows are encoded into a large buffer
+ * which is reused for every chunk of rows and written to a {@link FileChannel} whole, so no object
+ * is allocated per row beyond what the encoding itself needs.
+ *
+ * <p>With {@link WriteOptions.Builder#parallel}, rows are read on the calling thread in chunks,
+ * which separate threads encode, and compress if gzipped, while the calling thread writes finished
+ * chunks in order. Each compressed chunk is then a separate gzip member, which gzip readers, e.g.
+ * {@link java.util.zip.GZIPInputStream}, read as one file.
+ */
+public final class FileSink {
+  private static final int BUFFER_SIZE = 1 << 20;
+  private static final int CHUNK_ROWS = 8192;
+
+  private final Path path;
+  private final WriteOptions options;
+  // Creates an encoder for the columns, into a new buffer
+  private final Supplier<RowEncoder> encoders;
+
+  private FileSink(Path path, WriteOptions options, Supplier<RowEncoder> encoders) {
+    this.path = path;
+    this.options = options;
+    this.encoders = encoders;
+  }
+
+  public static FileSink csv(Path path, List<String> columns, WriteOptions options) {
+    return new FileSink(
+        path, options, () -> new CsvEncoder(new ChunkBuffer(BUFFER_SIZE), columns, options));
+  }
+
+  /** The delimiter and header options do not apply. */
+  public static FileSink jsonLines(Path path, List<String> columns, WriteOptions options) {
+    return new FileSink(
+        path, options, () -> new JsonLinesEncoder(new ChunkBuffer(BUFFER_SIZE), columns));
+  }
+
+  /**
+   * Replace the file with {@code rows}, and close them.
+   *
+   * @return the number of rows written
+   */
+  public long write(Stream<Row> rows) {
+    try (Stream<Row> closed = rows;
+        FileChannel channel =
+            FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+      return options.getThreads() > 1
+          ? writeParallel(closed.iterator(), channel)
+          : writeSequential(closed.iterator(), channel);
+    } catch (IOException e) {
+      throw new UncheckedIOException(String.format("Unable to write [%s]", path), e);
+    }
+  }
+
+  private long writeSequential(Iterator<Row> rows, FileChannel channel) throws IOException {
+    RowEncoder encoder = encoders.get();
+    ChunkBuffer buffer = encoder.getBuffer();
+    OutputStream gzip =
+        options.isGzip() ? new GZIPOutputStream(Channels.newOutputStream(channel), 1 << 16) : null;
+    long count = 0;
+    encoder.header();
+    while (rows.hasNext()) {
+      encoder.encode(rows.next());
+      count++;
+      if (buffer.size() >= BUFFER_SIZE) {
+        write(encoder, gzip, channel);
+      }
+    }
+    write(encoder, gzip, channel);
+    if (gzip != null) {
+      // Also closes the channel, which is then closed again harmlessly
+      gzip.close();
+    }
+    return count;
+  }
+
+  private static void write(RowEncoder encoder, OutputStream gzip, FileChannel channel)
+      throws IOException {
+    encoder.flush();
+    if (gzip != null) {
+      encoder.getBuffer().writeTo(gzip);
+    } else {
+      encoder.getBuffer().writeTo(channel);
+    }
+    encoder.getBuffer().reset();
+  }
+
+  private long writeParallel(Iterator<Row> rows, FileChannel channel) throws IOException {
+    int threads = options.getThreads();
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            threads,
+            runnable -> {
+              Thread thread = new Thread(runnable, "file-sink-" + path.getFileName());
+              thread.setDaemon(true);
+              return thread;
+            });
+    ConcurrentLinkedQueue<Chunk> idle = new ConcurrentLinkedQueue<>();
+    Deque<Future<Chunk>> pending = new ArrayDeque<>();
+    long count = 0;
+    boolean first = true;
+    try {
+      while (rows.hasNext()) {
+        List<Row> chunkRows = new ArrayList<>(CHUNK_ROWS);
+        while (chunkRows.size() < CHUNK_ROWS && rows.hasNext()) {
+          chunkRows.add(rows.next());
+        }
+        count += chunkRows.size();
+        boolean header = first;
+        first = false;
+        pending.add(
+            executor.submit(
+                () -> {
+                  Chunk chunk = idle.poll();
+                  return (chunk == null ? new Chunk(encoders.get()) : chunk)
+                      .encode(header, chunkRows, options.isGzip());
+                }));
+        // Bound the rows held in memory to a couple of chunks per thread
+        if (pending.size() >= 2 * threads) {
+          idle.add(writeNext(pending, channel));
+        }
+      }
+      if (first) {
+        // No rows, but still a header (and a valid gzip file)
+        Chunk chunk = new Chunk(encoders.get());
+        chunk.encode(true, List.of(), options.isGzip()).writeTo(channel);
+      }
+      while (!pending.isEmpty()) {
+        writeNext(pending, channel);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    return count;
+  }
+
+  private Chunk writeNext(Deque<Future<Chunk>> pending, FileChannel channel) throws IOException {
+    Chunk chunk;
+    try {
+      chunk = pending.remove().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(String.format("Interrupted writing [%s]", path), e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      } else if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+    chunk.writeTo(channel);
+    return chunk;
+  }
+
+  /** An encoder, plus a buffer for its output compressed, which are reused by later chunks. */
+  private static final class Chunk {
+    private final RowEncoder encoder;
+    private final ChunkBuffer compressed = new ChunkBuffer(BUFFER_SIZE / 4);
+    private boolean gzip;
+
+    Chunk(RowEncoder encoder) {
+      this.encoder = encoder;
+    }
+
+    Chunk encode(boolean header, List<Row> rows, boolean gzip) throws IOException {
+      this.gzip = gzip;
+      ChunkBuffer buffer = encoder.getBuffer();
+      buffer.reset();
+      if (header) {
+        encoder.header();
+      }
+      for (Row row : rows) {
+        encoder.encode(row);
+      }
+      encoder.flush();
+      if (gzip) {
+        compressed.reset();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed, 1 << 16)) {
+          buffer.writeTo(out);
+        }
+      }
+      return this;
+    }
+
+    void writeTo(FileChannel channel) throws IOException {
+      (gzip ? compressed : encoder.getBuffer()).writeTo(channel);
+    }
+  }
+}
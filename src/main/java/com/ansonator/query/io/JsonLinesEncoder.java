@@ -0,0 +1,75 @@
+package com.ansonator.query.io;
+
+import com.ansonator.query.row.Row;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * Encodes each row as a JSON object on its own line, with Jackson's streaming generator. Field
+ * names are escaped once, up front. Numbers, booleans and strings keep their JSON types, and any
+ * other value is written as its {@code toString}.
+ */
+final class JsonLinesEncoder extends RowEncoder {
+  private static final JsonFactory FACTORY = new JsonFactory();
+
+  private final SerializableString[] names;
+  private final JsonGenerator generator;
+
+  JsonLinesEncoder(ChunkBuffer buffer, List<String> columns) {
+    super(buffer);
+    this.names = columns.stream().map(SerializedString::new).toArray(SerializableString[]::new);
+    try {
+      this.generator = FACTORY.createGenerator(buffer, JsonEncoding.UTF8);
+    } catch (IOException e) {
+      // The buffer never throws
+      throw new IllegalStateException(e);
+    }
+    generator.setRootValueSeparator(null);
+  }
+
+  @Override
+  void encode(Row row) throws IOException {
+    generator.writeStartObject();
+    for (int i = 0; i < names.length; i++) {
+      generator.writeFieldName(names[i]);
+      Object value = row.get(i);
+      if (value == null) {
+        generator.writeNull();
+      } else if (value instanceof String) {
+        generator.writeString((String) value);
+      } else if (value instanceof Integer) {
+        generator.writeNumber((Integer) value);
+      } else if (value instanceof Long) {
+        generator.writeNumber((Long) value);
+      } else if (value instanceof Double) {
+        generator.writeNumber((Double) value);
+      } else if (value instanceof Float) {
+        generator.writeNumber((Float) value);
+      } else if (value instanceof Boolean) {
+        generator.writeBoolean((Boolean) value);
+      } else if (value instanceof BigDecimal) {
+        generator.writeNumber((BigDecimal) value);
+      } else if (value instanceof BigInteger) {
+        generator.writeNumber((BigInteger) value);
+      } else if (value instanceof Number) {
+        generator.writeNumber(value.toString());
+      } else {
+        generator.writeString(value.toString());
+      }
+    }
+    generator.writeEndObject();
+    generator.writeRaw('\n');
+  }
+
+  @Override
+  void flush() throws IOException {
+    generator.flush();
+  }
+}
@@ -0,0 +1,28 @@
+package com.ansonator.query.io;
+
+import com.ansonator.query.row.Row;
+import java.io.IOException;
+
+/**
+ * Encodes rows as text into a {@link ChunkBuffer} which is reused from chunk to chunk. An encoder
+ * is used by one thread at a time.
+ */
+abstract class RowEncoder {
+  protected final ChunkBuffer buffer;
+
+  protected RowEncoder(ChunkBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  ChunkBuffer getBuffer() {
+    return buffer;
+  }
+
+  /** Encode what comes before the first row, if anything. */
+  void header() throws IOException {}
+
+  abstract void encode(Row row) throws IOException;
+
+  /** Complete any rows which are still held by the encoder, before the buffer is written. */
+  void flush() throws IOException {}
+}
@@ -0,0 +1,80 @@
+package com.ansonator.query.io;
+
+import lombok.Getter;
+
+/**
+ * How {@link FileSink} writes a file: the CSV delimiter and header, whether to compress it with
+ * gzip, and whether to encode it on several threads.
+ */
+@Getter
+public final class WriteOptions {
+  private final char delimiter;
+  private final boolean header;
+  private final boolean gzip;
+  private final int threads;
+
+  private WriteOptions(char delimiter, boolean header, boolean gzip, int threads) {
+    this.delimiter = delimiter;
+    this.header = header;
+    this.gzip = gzip;
+    this.threads = threads;
+  }
+
+  /** Comma delimited, with a header, uncompressed, and encoded on the calling thread. */
+  public static WriteOptions defaults() {
+    return builder().build();
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static final class Builder {
+    private char delimiter = ',';
+    private boolean header = true;
+    private boolean gzip = false;
+    private int threads = 1;
+
+    private Builder() {}
+
+    /**
+     * @param delimiter an ASCII character other than a quote or line break, e.g. a tab
+     */
+    public Builder delimiter(char delimiter) {
+      if (delimiter > 0x7f || delimiter == '"' || delimiter == '\n' || delimiter == '\r') {
+        throw new IllegalArgumentException(String.format("Unsupported delimiter [%s]", delimiter));
+      }
+      this.delimiter = delimiter;
+      return this;
+    }
+
+    /** Do not start a CSV file with a line of column names. */
+    public Builder noHeader() {
+      this.header = false;
+      return this;
+    }
+
+    public Builder gzip() {
+      this.gzip = true;
+      return this;
+    }
+
+    /** Encode (and compress) chunks of rows on one thread per processor. */
+    public Builder parallel() {
+      return parallel(Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Encode (and compress) chunks of rows on {@code threads} threads. */
+    public Builder parallel(int threads) {
+      if (threads < 1) {
+        throw new IllegalArgumentException(String.format("Invalid thread count [%d]", threads));
+      }
+      this.threads = threads;
+      return this;
+    }
+
+    public WriteOptions build() {
+      return new WriteOptions(delimiter, header, gzip, threads);
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package com.ansonator.query.plan;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import lombok.Getter;
+
+/**
+ * Merges the rows of each group via {@link com.ansonator.query.row.Row#merge}. Columns without an
+ * accumulator must be equal within a group.
+ */
+@Getter
+public class AggregateNode extends PlanNode {
+  private final List<String> groupBy;
+  private final Map<String, BinaryOperator<Object>> accumulators;
+
+  public AggregateNode(
+      PlanNode child, List<String> groupBy, Map<String, BinaryOperator<Object>> accumulators) {
+    super(child.getSchema(), child);
+    this.groupBy = ImmutableList.copyOf(groupBy);
+    this.accumulators = ImmutableMap.copyOf(accumulators);
+    groupBy.forEach(child.getSchema()::indexOf);
+  }
+
+  @Override
+  public PlanNode withChildren(List<PlanNode> children) {
+    return new AggregateNode(children.get(0), groupBy, accumulators);
+  }
+
+  @Override
+  public <R> R accept(PlanVisitor<R> visitor) {
+    return visitor.visitAggregate(this);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Aggregate[by %s, accumulate %s]", groupBy, accumulators.keySet());
+  }
+}
@@ -0,0 +1,175 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.row.Row;
+import com.ansonator.query.stats.ColumnStatistics;
+import com.ansonator.query.stats.TableStatistics;
+import com.google.common.base.CaseFormat;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Reads the fields of each item via their getters. A field is a column if it has a getter named
+ * {@code getField()}, or {@code isField()} for booleans.
+ */
+@Log4j2
+public class BeanSource<T> implements RowSource {
+  private final Stream<T> data;
+  private final Class<T> type;
+  private final Map<String, Method> getters;
+  private final Schema schema;
+  private final long estimatedRows;
+  // Null unless collected
+  private volatile TableStatistics statistics;
+
+  public BeanSource(Stream<T> data, Class<T> type) {
+    // Obtaining the spliterator does not consume any items. It exposes the size of sized sources.
+    Spliterator<T> items = data.spliterator();
+    this.estimatedRows = items.hasCharacteristics(Spliterator.SIZED) ? items.estimateSize() : -1;
+    this.data = StreamSupport.stream(items, data.isParallel()).onClose(data::close);
+    this.type = type;
+    this.getters = getters(type);
+    this.schema = Schema.of(new ArrayList<>(getters.keySet()));
+  }
+
+  /**
+   * @return the columns of {@code type}, in field declaration order
+   */
+  public static Schema schemaOf(Class<?> type) {
+    return Schema.of(new ArrayList<>(getters(type).keySet()));
+  }
+
+  private static Map<String, Method> getters(Class<?> type) {
+    Map<String, Method> getters = new LinkedHashMap<>();
+    for (Field field : type.getDeclaredFields()) {
+      try {
+        getters.put(field.getName(), type.getMethod(toGetMethodName(field)));
+      } catch (NoSuchMethodException | SecurityException e) {
+        log.warn(
+            "Ignoring field [{}] of class [{}] as it lacks methods [{}()] and/or [{}({})] ",
+            field.getName(),
+            type.getName(),
+            toGetMethodName(field),
+            toSetMethodName(field),
+            field.getType().getSimpleName());
+      }
+    }
+    return getters;
+  }
+
+  @Override
+  public Schema getSchema() {
+    return schema;
+  }
+
+  @Override
+  public Stream<Row> open(List<String> columns) {
+    final Method[] selected = columns.stream().map(getters::get).toArray(Method[]::new);
+    final TableStatistics statistics = this.statistics;
+    if (statistics != null) {
+      final ColumnStatistics[] read =
+          columns.stream().map(statistics::getColumn).toArray(ColumnStatistics[]::new);
+      return data.map(
+          item -> {
+            Object[] vals = new Object[selected.length];
+            for (int i = 0; i < selected.length; i++) {
+              vals[i] = invoke(selected[i], item);
+              read[i].add(vals[i]);
+            }
+            statistics.addRow();
+            return new Row(vals);
+          });
+    }
+    return data.map(
+        item -> {
+          Object[] vals = new Object[selected.length];
+          for (int i = 0; i < selected.length; i++) {
+            vals[i] = invoke(selected[i], item);
+          }
+          return new Row(vals);
+        });
+  }
+
+  /**
+   * Collect {@link TableStatistics} of the columns which are read, from now on. They are complete
+   * once the items have been read.
+   */
+  public void collectStatistics() {
+    if (statistics == null) {
+      statistics = TableStatistics.of(schema.getNames());
+    }
+  }
+
+  @Override
+  public TableStatistics getStatistics() {
+    return statistics;
+  }
+
+  public Class<T> getType() {
+    return type;
+  }
+
+  /**
+   * @return the getter which reads {@code column}
+   */
+  public Method getGetter(String column) {
+    Method getter = getters.get(column);
+    if (getter == null) {
+      throw new IllegalArgumentException(String.format("Column [%s] not found", column));
+    }
+    return getter;
+  }
+
+  /**
+   * The items themselves, for callers which read their getters directly (see {@link
+   * com.ansonator.query.codegen.FusedCompiler}). Like {@link #open}, this may only be called once.
+   */
+  public Stream<T> items() {
+    return data;
+  }
+
+  @Override
+  public long estimateRows() {
+    return estimatedRows;
+  }
+
+  private static Object invoke(Method getter, Object item) {
+    try {
+      return getter.invoke(item);
+    } catch (SecurityException
+        | IllegalAccessException
+        | IllegalArgumentException
+        | InvocationTargetException e) {
+      throw new IllegalArgumentException(
+          String.format("Unable to call " + "method [%s]", getter.getName()));
+    }
+  }
+
+  private static String toGetMethodName(final Field field) {
+    final String prefix;
+    if (field.getType().equals(Boolean.class) || field.getType().equals(boolean.class)) {
+      prefix = "is";
+    } else {
+      prefix = "get";
+    }
+    return prefix + CaseFormat.LOWER_CAMEL.to(CaseFormat.UPPER_CAMEL, field.getName());
+  }
+
+  private static String toSetMethodName(final Field field) {
+    final String prefix = "set";
+    return prefix + CaseFormat.LOWER_CAMEL.to(CaseFormat.UPPER_CAMEL, field.getName());
+  }
+
+  @Override
+  public String toString() {
+    return type.getSimpleName();
+  }
+}
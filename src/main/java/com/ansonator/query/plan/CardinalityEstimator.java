@@ -0,0 +1,232 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.row.ComparisonMatcher;
+import com.ansonator.query.row.RowMatcher;
+import com.ansonator.query.stats.ColumnStatistics;
+import com.ansonator.query.stats.TableStatistics;
+import com.ansonator.query.vector.Comparison;
+import java.util.List;
+
+/**
+ * Estimates the number of rows each node produces, or -1 when unknown. Without column statistics,
+ * these are textbook guesses: each filter conjunct keeps a quarter of its input, a hash join keeps
+ * one right row per left row, and an aggregation keeps a tenth of its input.
+ *
+ * <p>Where a source has {@link TableStatistics}, a comparison for equality keeps one in as many
+ * rows as the column has distinct values, a range comparison on a number keeps the fraction of the
+ * column's range it covers, a hash join keeps the product of its inputs over the larger number of
+ * distinct keys, and an aggregation keeps at most the product of its grouping columns' distinct
+ * values.
+ */
+public class CardinalityEstimator implements PlanVisitor<Long> {
+  static final double CONJUNCT_SELECTIVITY = 0.25;
+  static final double GROUP_RATIO = 0.1;
+
+  public long estimate(PlanNode node) {
+    return node.accept(this);
+  }
+
+  private static long scale(long rows, double ratio) {
+    return rows < 0 ? -1 : Math.max(rows == 0 ? 0 : 1, Math.round(rows * ratio));
+  }
+
+  private static long min(long rows, long limit) {
+    return rows < 0 ? limit : Math.min(rows, limit);
+  }
+
+  @Override
+  public Long visitScan(ScanNode node) {
+    long rows = node.getSource().estimateRows();
+    TableStatistics statistics = node.getSource().getStatistics();
+    return rows < 0 && statistics != null && statistics.getRowCount() > 0
+        ? statistics.getRowCount()
+        : rows;
+  }
+
+  /**
+   * @return the statistics of the source column which {@code column} of {@code node} was read from,
+   *     or null when unknown or empty
+   */
+  static ColumnStatistics statisticsOf(PlanNode node, String column) {
+    if (node instanceof ScanNode) {
+      TableStatistics statistics = ((ScanNode) node).getSource().getStatistics();
+      ColumnStatistics values = statistics == null ? null : statistics.getColumn(column);
+      return values == null || values.getCount() == 0 ? null : values;
+    }
+    if (node instanceof FetchNode) {
+      FetchNode.Fetch fetch = ((FetchNode) node).getFetches().get(column);
+      if (fetch != null) {
+        TableStatistics statistics = fetch.getSource().getStatistics();
+        return statistics == null ? null : statistics.getColumn(fetch.getColumn());
+      }
+      return statisticsOf(node.getChild(), column);
+    }
+    if (node instanceof JoinNode) {
+      JoinNode join = (JoinNode) node;
+      return join.isLeftColumn(column)
+          ? statisticsOf(join.getLeft(), column)
+          : statisticsOf(join.getRight(), join.toRightColumn(column));
+    }
+    if (node instanceof FilterNode
+        || node instanceof ProjectNode
+        || node instanceof SortNode
+        || node instanceof LimitNode
+        || node instanceof PeekNode
+        || node instanceof ExchangeNode) {
+      // The same column below, though with fewer rows
+      return statisticsOf(node.getChild(), column);
+    }
+    return null;
+  }
+
+  /**
+   * @return the fraction of rows of {@code filter}'s child which {@code conjunct} keeps
+   */
+  private static double selectivity(FilterNode filter, RowMatcher conjunct) {
+    if (!(conjunct instanceof ComparisonMatcher)) {
+      return CONJUNCT_SELECTIVITY;
+    }
+    ComparisonMatcher comparison = (ComparisonMatcher) conjunct;
+    ColumnStatistics values = statisticsOf(filter.getChild(), filter.resolve(comparison.getName()));
+    if (values == null || values.getDistinctCount() == 0) {
+      return CONJUNCT_SELECTIVITY;
+    }
+    double nonNull = 1 - (double) values.getNullCount() / values.getCount();
+    Object value = comparison.getValue();
+    switch (comparison.getComparison()) {
+      case EQ:
+        return nonNull / values.getDistinctCount();
+      case NE:
+        return nonNull * (1 - 1.0 / values.getDistinctCount());
+      default:
+        if (!(value instanceof Number
+            && values.getMin() instanceof Number
+            && values.getMax() instanceof Number)) {
+          return CONJUNCT_SELECTIVITY;
+        }
+        double min = ((Number) values.getMin()).doubleValue();
+        double max = ((Number) values.getMax()).doubleValue();
+        double below =
+            max > min
+                ? Math.min(1, Math.max(0, (((Number) value).doubleValue() - min) / (max - min)))
+                : 0.5;
+        boolean less =
+            comparison.getComparison() == Comparison.LT
+                || comparison.getComparison() == Comparison.LE;
+        return nonNull * (less ? below : 1 - below);
+    }
+  }
+
+  /**
+   * @return the product of the distinct values of {@code columns} of {@code node}, or -1 when
+   *     unknown
+   */
+  private static long distinctCount(PlanNode node, List<String> columns) {
+    long product = 1;
+    for (String column : columns) {
+      ColumnStatistics values = statisticsOf(node, column);
+      if (values == null) {
+        return -1;
+      }
+      // Nulls form a group too
+      long distinct = values.getDistinctCount() + (values.getNullCount() > 0 ? 1 : 0);
+      product =
+          product > Long.MAX_VALUE / Math.max(1, distinct) ? Long.MAX_VALUE : product * distinct;
+    }
+    return product;
+  }
+
+  @Override
+  public Long visitProject(ProjectNode node) {
+    return estimate(node.getChild());
+  }
+
+  @Override
+  public Long visitFilter(FilterNode node) {
+    double selectivity = 1;
+    for (RowMatcher conjunct : Conjuncts.of(node.getMatcher())) {
+      selectivity *= selectivity(node, conjunct);
+    }
+    return scale(estimate(node.getChild()), selectivity);
+  }
+
+  @Override
+  public Long visitJoin(JoinNode node) {
+    long left = estimate(node.getLeft());
+    long right = estimate(node.getRight());
+    if (node.getStrategy() == JoinNode.Strategy.HASH) {
+      long leftKeys = distinctCount(node.getLeft(), node.getLeftKeys());
+      long rightKeys = distinctCount(node.getRight(), node.getRightKeys());
+      if (left < 0 || right < 0 || leftKeys <= 0 || rightKeys <= 0) {
+        return left;
+      }
+      return Math.round((double) left * right / Math.max(leftKeys, rightKeys));
+    }
+    return left < 0 || right < 0 ? -1 : left * right;
+  }
+
+  @Override
+  public Long visitLateralJoin(LateralJoinNode<?> node) {
+    return -1L;
+  }
+
+  @Override
+  public Long visitAggregate(AggregateNode node) {
+    long rows = estimate(node.getChild());
+    long groups = distinctCount(node.getChild(), node.getGroupBy());
+    return groups < 0 ? scale(rows, GROUP_RATIO) : min(rows, Math.max(1, groups));
+  }
+
+  @Override
+  public Long visitSort(SortNode node) {
+    long rows = estimate(node.getChild());
+    return node.hasLimit() ? min(rows, node.getLimit()) : rows;
+  }
+
+  @Override
+  public Long visitLimit(LimitNode node) {
+    return min(estimate(node.getChild()), node.getLimit());
+  }
+
+  @Override
+  public Long visitPeek(PeekNode node) {
+    return estimate(node.getChild());
+  }
+
+  @Override
+  public Long visitUnionAll(UnionAllNode node) {
+    long left = estimate(node.getChildren().get(0));
+    long right = estimate(node.getChildren().get(1));
+    return left < 0 || right < 0 ? -1 : left + right;
+  }
+
+  @Override
+  public Long visitSetOperation(SetOperationNode node) {
+    long left = estimate(node.getChild());
+    if (node.getOperation() == SetOperationNode.Operation.INTERSECT) {
+      long right = estimate(node.getChildren().get(1));
+      return right < 0 ? left : min(left, right);
+    }
+    return left;
+  }
+
+  @Override
+  public Long visitWindow(WindowNode node) {
+    return estimate(node.getChild());
+  }
+
+  @Override
+  public Long visitExchange(ExchangeNode node) {
+    return estimate(node.getChild());
+  }
+
+  @Override
+  public Long visitTimeWindow(TimeWindowNode node) {
+    return scale(estimate(node.getChild()), GROUP_RATIO);
+  }
+
+  @Override
+  public Long visitFetch(FetchNode node) {
+    return estimate(node.getChild());
+  }
+}
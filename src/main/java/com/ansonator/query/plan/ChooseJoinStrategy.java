@@ -0,0 +1,58 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.row.BiPredicateMatcher;
+import com.ansonator.query.row.RowMatcher;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns column equality between the two sides of a join (e.g., from {@link
+ * com.ansonator.query.Query#on} or {@link com.ansonator.query.Query#using}) into the keys of a hash
+ * join. This replaces a Cartesian product followed by a filter with a single probe per left row.
+ */
+class ChooseJoinStrategy implements Rule {
+  @Override
+  public PlanNode apply(PlanNode node) {
+    if (!(node instanceof FilterNode) || !(node.getChild() instanceof JoinNode)) {
+      return node;
+    }
+    FilterNode filter = (FilterNode) node;
+    JoinNode join = (JoinNode) node.getChild();
+    List<RowMatcher> kept = new ArrayList<>();
+    for (RowMatcher conjunct : Conjuncts.of(filter.getMatcher())) {
+      JoinNode keyed =
+          conjunct instanceof BiPredicateMatcher
+              ? withKey(filter, join, (BiPredicateMatcher<?, ?>) conjunct)
+              : null;
+      if (keyed == null) {
+        kept.add(conjunct);
+      } else {
+        join = keyed;
+      }
+    }
+    if (join == node.getChild()) {
+      return node;
+    }
+    return Conjuncts.filter(join, kept, filter);
+  }
+
+  /**
+   * @return {@code join} with an additional key, or null if {@code matcher} is not an equality
+   *     between a left column and a right column
+   */
+  private static JoinNode withKey(
+      FilterNode filter, JoinNode join, BiPredicateMatcher<?, ?> matcher) {
+    if (!matcher.isEquality()) {
+      return null;
+    }
+    String first = filter.resolve(matcher.getName1());
+    String second = filter.resolve(matcher.getName2());
+    if (join.isLeftColumn(first) && join.toRightColumn(second) != null) {
+      return join.withKey(first, join.toRightColumn(second));
+    }
+    if (join.isLeftColumn(second) && join.toRightColumn(first) != null) {
+      return join.withKey(second, join.toRightColumn(first));
+    }
+    return null;
+  }
+}
@@ -0,0 +1,23 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.row.AndMatcher;
+import com.ansonator.query.row.RowMatcher;
+import java.util.List;
+
+final class Conjuncts {
+  private Conjuncts() {}
+
+  static List<RowMatcher> of(RowMatcher matcher) {
+    return matcher instanceof AndMatcher ? ((AndMatcher) matcher).getConjuncts() : List.of(matcher);
+  }
+
+  /**
+   * @return the remaining conjuncts above {@code child}, or {@code child} if there are none
+   */
+  static PlanNode filter(PlanNode child, List<RowMatcher> conjuncts, FilterNode original) {
+    if (conjuncts.isEmpty()) {
+      return child;
+    }
+    return FilterNode.of(child, AndMatcher.of(conjuncts), original.getAliases());
+  }
+}
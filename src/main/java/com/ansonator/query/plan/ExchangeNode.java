@@ -0,0 +1,53 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.exchange.ExchangeMetrics;
+import com.ansonator.query.sort.SortKey;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import lombok.Getter;
+
+/**
+ * Runs its input on a separate thread, passing rows up in batches through a bounded queue. See
+ * {@link com.ansonator.query.exchange.Exchange}.
+ */
+@Getter
+public class ExchangeNode extends PlanNode {
+  private final int capacity;
+  private final int batchSize;
+  private final ThreadFactory threads;
+  private final ExchangeMetrics metrics;
+
+  public ExchangeNode(
+      PlanNode child, int capacity, int batchSize, ThreadFactory threads, ExchangeMetrics metrics) {
+    super(child.getSchema(), child);
+    if (capacity < 1 || batchSize < 1) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Exchange capacity [%d] and batch size [%d] must be positive", capacity, batchSize));
+    }
+    this.capacity = capacity;
+    this.batchSize = batchSize;
+    this.threads = threads;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public List<SortKey> getSortedBy() {
+    return getChild().getSortedBy();
+  }
+
+  @Override
+  public PlanNode withChildren(List<PlanNode> children) {
+    return new ExchangeNode(children.get(0), capacity, batchSize, threads, metrics);
+  }
+
+  @Override
+  public <R> R accept(PlanVisitor<R> visitor) {
+    return visitor.visitExchange(this);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Exchange[%d x %d rows]", capacity, batchSize);
+  }
+}
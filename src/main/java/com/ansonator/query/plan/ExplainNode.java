@@ -0,0 +1,140 @@
+package com.ansonator.query.plan;
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+import lombok.Getter;
+
+/**
+ * One operator of an explained plan. See {@link com.ansonator.query.Query#explain} and {@link
+ * com.ansonator.query.Query#explainAnalyze}. {@link #toString} renders the whole tree as text, one
+ * operator per line.
+ */
+@Getter
+public class ExplainNode {
+  private final String operator;
+  private final List<String> columns;
+  // -1 when unknown
+  private final long estimatedRows;
+  // Null unless analyzed
+  private final OperatorMetrics metrics;
+  private final List<ExplainNode> children;
+  // Printed above the plan. Only ever set on the root.
+  private final String note;
+
+  private ExplainNode(
+      PlanNode node,
+      CardinalityEstimator estimator,
+      Map<PlanNode, OperatorMetrics> metrics,
+      String note) {
+    this.note = note;
+    this.operator = node.toString();
+    this.columns = node.getSchema().getNames();
+    this.estimatedRows = estimator.estimate(node);
+    this.metrics = metrics.get(node);
+    this.children =
+        node.getChildren().stream()
+            .map(child -> new ExplainNode(child, estimator, metrics, null))
+            .collect(ImmutableList.toImmutableList());
+  }
+
+  /**
+   * @param metrics empty unless the plan was executed by an {@link InstrumentedCompiler}
+   */
+  public static ExplainNode of(PlanNode root, Map<PlanNode, OperatorMetrics> metrics) {
+    return of(root, metrics, null);
+  }
+
+  /**
+   * @param note a line printed above the plan by {@link #toString}, or null
+   */
+  public static ExplainNode of(PlanNode root, Map<PlanNode, OperatorMetrics> metrics, String note) {
+    return new ExplainNode(root, new CardinalityEstimator(), metrics, note);
+  }
+
+  public boolean isAnalyzed() {
+    return metrics != null;
+  }
+
+  /**
+   * @return rows produced by the children, or -1 if not analyzed
+   */
+  public long getRowsIn() {
+    if (!isAnalyzed()) {
+      return -1;
+    }
+    return children.stream()
+        .filter(ExplainNode::isAnalyzed)
+        .mapToLong(c -> c.metrics.getRowsOut())
+        .sum();
+  }
+
+  /**
+   * @return wall time spent in this operator alone, excluding its children, or -1 if not analyzed
+   */
+  public long getSelfWallNanos() {
+    if (!isAnalyzed()) {
+      return -1;
+    }
+    return Math.max(0, metrics.getWallNanos() - sumChildren(OperatorMetrics::getWallNanos));
+  }
+
+  /**
+   * @return CPU time spent in this operator alone, excluding its children, or -1 if not analyzed
+   */
+  public long getSelfCpuNanos() {
+    if (!isAnalyzed()) {
+      return -1;
+    }
+    return Math.max(0, metrics.getCpuNanos() - sumChildren(OperatorMetrics::getCpuNanos));
+  }
+
+  /**
+   * @return bytes allocated by this operator alone, excluding its children, or -1 if unknown
+   */
+  public long getSelfAllocatedBytes() {
+    if (!isAnalyzed() || metrics.getAllocatedBytes() < 0) {
+      return -1;
+    }
+    return Math.max(
+        0, metrics.getAllocatedBytes() - sumChildren(OperatorMetrics::getAllocatedBytes));
+  }
+
+  private long sumChildren(ToLongFunction<OperatorMetrics> metric) {
+    return children.stream()
+        .filter(ExplainNode::isAnalyzed)
+        .mapToLong(child -> Math.max(0, metric.applyAsLong(child.metrics)))
+        .sum();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder();
+    if (note != null) {
+      text.append(note).append('\n');
+    }
+    append(text, 0);
+    return text.toString();
+  }
+
+  private void append(StringBuilder text, int depth) {
+    text.append("  ".repeat(depth)).append(operator);
+    text.append(" (estimated rows=").append(estimatedRows < 0 ? "?" : estimatedRows).append(')');
+    if (isAnalyzed()) {
+      text.append(
+          String.format(
+              " (rows in=%d out=%d, time=%.3f ms, cpu=%.3f ms, allocated=%s)",
+              getRowsIn(),
+              metrics.getRowsOut(),
+              getSelfWallNanos() / 1e6,
+              getSelfCpuNanos() / 1e6,
+              getSelfAllocatedBytes() < 0 ? "?" : getSelfAllocatedBytes() + " bytes"));
+      if (metrics.getStrategy() != null) {
+        text.append(" (").append(metrics.getStrategy()).append(')');
+      }
+    }
+    text.append('\n');
+    children.forEach(child -> child.append(text, depth + 1));
+  }
+}
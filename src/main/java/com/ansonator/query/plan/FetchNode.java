@@ -0,0 +1,61 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.sort.SortKey;
+import com.google.common.collect.ImmutableMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Reads columns which were left out of the plan below it by their row ids, and restores the columns
+ * of the original plan. See {@link LateMaterialization}.
+ */
+@Getter
+public class FetchNode extends PlanNode {
+  /** Where to read one column. */
+  @Getter
+  @RequiredArgsConstructor(staticName = "of")
+  public static class Fetch {
+    // A column of the child
+    private final String rowId;
+    private final RandomAccessSource source;
+    private final String column;
+
+    @Override
+    public String toString() {
+      return String.format("%s by %s", column, rowId);
+    }
+  }
+
+  // By output column
+  private final Map<String, Fetch> fetches;
+
+  /**
+   * @param columns the output, each either a column of {@code child} or a key of {@code fetches}
+   */
+  public FetchNode(PlanNode child, List<String> columns, Map<String, Fetch> fetches) {
+    super(Schema.of(columns), child);
+    this.fetches = ImmutableMap.copyOf(fetches);
+  }
+
+  @Override
+  public List<SortKey> getSortedBy() {
+    return getChild().getSortedBy();
+  }
+
+  @Override
+  public PlanNode withChildren(List<PlanNode> children) {
+    return new FetchNode(children.get(0), getSchema().getNames(), fetches);
+  }
+
+  @Override
+  public <R> R accept(PlanVisitor<R> visitor) {
+    return visitor.visitFetch(this);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Fetch%s", fetches.values());
+  }
+}
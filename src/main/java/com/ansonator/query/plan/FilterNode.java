@@ -0,0 +1,99 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.row.RowMatcher;
+import com.ansonator.query.sort.SortKey;
+import com.google.common.collect.ImmutableMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import lombok.Getter;
+
+/**
+ * Keeps the rows accepted by a {@link RowMatcher}.
+ *
+ * <p>When a filter is pushed below a join, the columns its matcher reads may have different names
+ * in the join's input (e.g., "right_species" is "species" on the right). {@code aliases} maps each
+ * such name to the child's column, so that the matcher itself never needs to be rewritten.
+ */
+@Getter
+public class FilterNode extends PlanNode {
+  private final RowMatcher matcher;
+  private final Map<String, String> aliases;
+
+  private FilterNode(PlanNode child, RowMatcher matcher, Map<String, String> aliases) {
+    super(child.getSchema(), child);
+    this.matcher = matcher;
+    this.aliases = ImmutableMap.copyOf(aliases);
+  }
+
+  public static FilterNode of(PlanNode child, RowMatcher matcher) {
+    return new FilterNode(child, matcher, Map.of());
+  }
+
+  /**
+   * @param aliases maps names read by {@code matcher} to columns of {@code child}
+   */
+  public static FilterNode of(PlanNode child, RowMatcher matcher, Map<String, String> aliases) {
+    Map<String, String> nonTrivial =
+        aliases.entrySet().stream()
+            .filter(e -> !e.getKey().equals(e.getValue()))
+            .collect(ImmutableMap.toImmutableMap(Map.Entry::getKey, Map.Entry::getValue));
+    return new FilterNode(child, matcher, nonTrivial);
+  }
+
+  public FilterNode withMatcher(RowMatcher matcher) {
+    return new FilterNode(getChild(), matcher, aliases);
+  }
+
+  /**
+   * @return the name of {@code column} in this node's child
+   */
+  public String resolve(String column) {
+    return aliases.getOrDefault(column, column);
+  }
+
+  /**
+   * @return the child columns read by the matcher, or null when unknown
+   */
+  public Set<String> getReferencedColumns() {
+    Set<String> columns = matcher.getColumns();
+    if (columns == null) {
+      return null;
+    }
+    Set<String> resolved = new HashSet<>();
+    columns.forEach(column -> resolved.add(resolve(column)));
+    return resolved;
+  }
+
+  /**
+   * @return the column to index mapping passed to the matcher
+   */
+  public Map<String, Integer> getColumnIndexes() {
+    Map<String, Integer> columns = getChild().getSchema().toMap();
+    aliases.forEach((alias, column) -> columns.put(alias, getChild().getSchema().indexOf(column)));
+    return columns;
+  }
+
+  @Override
+  public List<SortKey> getSortedBy() {
+    return getChild().getSortedBy();
+  }
+
+  @Override
+  public PlanNode withChildren(List<PlanNode> children) {
+    return new FilterNode(children.get(0), matcher, aliases);
+  }
+
+  @Override
+  public <R> R accept(PlanVisitor<R> visitor) {
+    return visitor.visitFilter(this);
+  }
+
+  @Override
+  public String toString() {
+    return aliases.isEmpty()
+        ? String.format("Filter[%s]", matcher)
+        : String.format("Filter[%s with %s]", matcher, aliases);
+  }
+}
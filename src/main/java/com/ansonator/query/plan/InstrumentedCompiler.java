@@ -0,0 +1,136 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.row.Row;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A {@link PlanCompiler} which records {@link OperatorMetrics} for every node.
+ *
+ * <p>Each node's stream is wrapped in a spliterator which runs a clock while the node (and its
+ * inputs) produce a row, and pauses it while the row is handed to the consumer. So, a node's time
+ * excludes its ancestors' work. Wrapping also prevents the JDK from fusing adjacent stream stages,
+ * and reading the thread's CPU time and allocations for every row is not free. Expect an analyzed
+ * query to run noticeably slower than the same query via {@link com.ansonator.query.Query#stream}.
+ */
+public class InstrumentedCompiler extends PlanCompiler {
+  private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+  private final Map<PlanNode, OperatorMetrics> metrics = new IdentityHashMap<>();
+
+  /**
+   * @return metrics of each compiled node. These are updated as the compiled stream is consumed.
+   */
+  public Map<PlanNode, OperatorMetrics> getMetrics() {
+    return metrics;
+  }
+
+  @Override
+  protected void decided(PlanNode node, String strategy) {
+    super.decided(node, strategy);
+    metrics.computeIfAbsent(node, n -> new OperatorMetrics()).setStrategy(strategy);
+  }
+
+  @Override
+  public Stream<Row> compile(PlanNode node) {
+    Stream<Row> rows = super.compile(node);
+    OperatorMetrics nodeMetrics = metrics.computeIfAbsent(node, n -> new OperatorMetrics());
+    return StreamSupport.stream(new MeteredSpliterator(rows.spliterator(), nodeMetrics), false)
+        .onClose(rows::close);
+  }
+
+  private static long cpuTime() {
+    return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : 0;
+  }
+
+  @SuppressWarnings("deprecation") // Thread.getId() is the only option before Java 19
+  private static long allocatedBytes() {
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+      if (sunThreads.isThreadAllocatedMemorySupported()
+          && sunThreads.isThreadAllocatedMemoryEnabled()) {
+        return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+
+  private static class MeteredSpliterator implements Spliterator<Row> {
+    private final Spliterator<Row> source;
+    private final OperatorMetrics metrics;
+    private long wallStart;
+    private long cpuStart;
+    private long allocatedStart;
+
+    MeteredSpliterator(Spliterator<Row> source, OperatorMetrics metrics) {
+      this.source = source;
+      this.metrics = metrics;
+    }
+
+    private void start() {
+      allocatedStart = allocatedBytes();
+      cpuStart = cpuTime();
+      wallStart = System.nanoTime();
+    }
+
+    private void stop(long rows) {
+      long wall = System.nanoTime() - wallStart;
+      long cpu = cpuTime() - cpuStart;
+      long allocated = allocatedStart < 0 ? -1 : allocatedBytes() - allocatedStart;
+      metrics.add(rows, wall, cpu, allocated);
+    }
+
+    private Consumer<Row> paused(Consumer<? super Row> action) {
+      return row -> {
+        stop(1);
+        try {
+          action.accept(row);
+        } finally {
+          start();
+        }
+      };
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Row> action) {
+      start();
+      try {
+        return source.tryAdvance(paused(action));
+      } finally {
+        stop(0);
+      }
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Row> action) {
+      start();
+      try {
+        source.forEachRemaining(paused(action));
+      } finally {
+        stop(0);
+      }
+    }
+
+    @Override
+    public Spliterator<Row> trySplit() {
+      return null;
+    }
+
+    @Override
+    public long estimateSize() {
+      return source.estimateSize();
+    }
+
+    @Override
+    public int characteristics() {
+      return source.characteristics()
+          & (Spliterator.ORDERED | Spliterator.SIZED | Spliterator.NONNULL);
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.sort.SortKey;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import lombok.Getter;
+
+/**
+ * Inner join. The right input is loaded into memory and the left input is streamed, so the left
+ * input's order is preserved.
+ *
+ * <p>Columns contributed by the right input are prefixed with "right_" when the left input has a
+ * column of the same name. If that name is taken too, e.g. by the "right_id" of an earlier join, a
+ * number is appended: "right_id_2", "right_id_3", and so on. These output names are fixed when the
+ * join is created so that they do not change if either input's columns are later pruned.
+ */
+@Getter
+public class JoinNode extends PlanNode {
+  public enum Strategy {
+    /** Cartesian product of the inputs. */
+    NESTED_LOOP,
+    /**
+     * Right rows are hashed by {@code rightKeys} and probed with the left rows' {@code leftKeys}.
+     */
+    HASH
+  }
+
+  private final Strategy strategy;
+  // Right input column to output column
+  private final Map<String, String> rightAliases;
+  private final List<String> leftKeys;
+  private final List<String> rightKeys;
+
+  private JoinNode(
+      PlanNode left,
+      PlanNode right,
+      Strategy strategy,
+      Map<String, String> rightAliases,
+      List<String> leftKeys,
+      List<String> rightKeys) {
+    super(schemaOf(left, right, rightAliases), left, right);
+    this.strategy = strategy;
+    this.rightAliases = ImmutableMap.copyOf(rightAliases);
+    this.leftKeys = ImmutableList.copyOf(leftKeys);
+    this.rightKeys = ImmutableList.copyOf(rightKeys);
+  }
+
+  /** A Cartesian join. */
+  public static JoinNode of(PlanNode left, PlanNode right) {
+    ImmutableMap.Builder<String, String> aliases = ImmutableMap.builder();
+    Set<String> taken = new HashSet<>(left.getSchema().getNames());
+    taken.addAll(right.getSchema().getNames());
+    for (String column : right.getSchema().getNames()) {
+      if (left.getSchema().contains(column)) {
+        String alias = "right_" + column;
+        for (int i = 2; taken.contains(alias); i++) {
+          alias = "right_" + column + "_" + i;
+        }
+        taken.add(alias);
+        aliases.put(column, alias);
+      }
+    }
+    return new JoinNode(left, right, Strategy.NESTED_LOOP, aliases.build(), List.of(), List.of());
+  }
+
+  private static Schema schemaOf(PlanNode left, PlanNode right, Map<String, String> rightAliases) {
+    List<String> names = new ArrayList<>(left.getSchema().getNames());
+    for (String column : right.getSchema().getNames()) {
+      names.add(rightAliases.getOrDefault(column, column));
+    }
+    return Schema.of(names);
+  }
+
+  public PlanNode getLeft() {
+    return getChildren().get(0);
+  }
+
+  public PlanNode getRight() {
+    return getChildren().get(1);
+  }
+
+  /**
+   * @return a hash join which additionally requires {@code leftKey} to equal {@code rightKey}
+   */
+  public JoinNode withKey(String leftKey, String rightKey) {
+    return new JoinNode(
+        getLeft(),
+        getRight(),
+        Strategy.HASH,
+        rightAliases,
+        ImmutableList.<String>builder().addAll(leftKeys).add(leftKey).build(),
+        ImmutableList.<String>builder().addAll(rightKeys).add(rightKey).build());
+  }
+
+  /**
+   * @param column an output column
+   * @return the right input's name for {@code column}, or null if it does not come from the right
+   */
+  public String toRightColumn(String column) {
+    for (Map.Entry<String, String> alias : rightAliases.entrySet()) {
+      if (alias.getValue().equals(column)) {
+        return alias.getKey();
+      }
+    }
+    if (rightAliases.containsKey(column) || !getRight().getSchema().contains(column)) {
+      return null;
+    }
+    return column;
+  }
+
+  /**
+   * @param column an output column
+   * @return true if {@code column} comes from the left input
+   */
+  public boolean isLeftColumn(String column) {
+    return getLeft().getSchema().contains(column);
+  }
+
+  @Override
+  public List<SortKey> getSortedBy() {
+    return getLeft().getSortedBy();
+  }
+
+  @Override
+  public PlanNode withChildren(List<PlanNode> children) {
+    return new JoinNode(
+        children.get(0), children.get(1), strategy, rightAliases, leftKeys, rightKeys);
+  }
+
+  @Override
+  public <R> R accept(PlanVisitor<R> visitor) {
+    return visitor.visitJoin(this);
+  }
+
+  @Override
+  public String toString() {
+    return strategy == Strategy.HASH
+        ? String.format("HashJoin[%s = %s]", leftKeys, rightKeys)
+        : "NestedLoopJoin";
+  }
+}
@@ -0,0 +1,168 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.sort.SortKey;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Defers reading columns of a {@link RandomAccessSource} which only the output needs. Their scan
+ * produces a row id in their place, which filters, projections, sorts, limits, exchanges and joins
+ * carry along instead of the columns themselves. A {@link FetchNode} above those operators reads
+ * the deferred columns by row id, only for the rows which remain. So, for example, a selective join
+ * of two wide tables only copies the join keys and row ids until its output.
+ *
+ * <p>Any other operator, or a filter or sort which reads columns not known up front, receives
+ * complete rows: deferred columns are fetched below it. Applied after {@link PruneColumns}, so that
+ * only columns which are used are fetched.
+ */
+class LateMaterialization {
+  private static final String ROW_ID = "$row_id";
+
+  private int rowIds = 0;
+
+  /** The rewritten plan, and where to read each column of the original plan which it left out. */
+  private static class Deferred {
+    private final PlanNode node;
+    private final Map<String, FetchNode.Fetch> fetches;
+
+    Deferred(PlanNode node, Map<String, FetchNode.Fetch> fetches) {
+      this.node = node;
+      this.fetches = fetches;
+    }
+  }
+
+  /**
+   * @return a plan with the same schema as {@code root}
+   */
+  PlanNode apply(PlanNode root) {
+    if (root instanceof ScanNode) {
+      // There is nothing to carry a row id through
+      return root;
+    }
+    Deferred deferred = rewrite(root, Set.of());
+    if (deferred.fetches.isEmpty()) {
+      return deferred.node;
+    }
+    return new FetchNode(deferred.node, root.getSchema().getNames(), deferred.fetches);
+  }
+
+  /**
+   * @param used the columns of {@code node} which operators between it and the next {@link
+   *     FetchNode} read. The rest may be deferred.
+   */
+  private Deferred rewrite(PlanNode node, Set<String> used) {
+    if (node instanceof ScanNode) {
+      return rewriteScan((ScanNode) node, used);
+    }
+    if (node instanceof FilterNode) {
+      Set<String> referenced = ((FilterNode) node).getReferencedColumns();
+      if (referenced != null) {
+        return rewriteChild(node, union(used, referenced));
+      }
+    } else if (node instanceof SortNode) {
+      List<SortKey> keys = ((SortNode) node).getKeys();
+      if (keys != null) {
+        return rewriteChild(
+            node, union(used, keys.stream().map(SortKey::getColumn).collect(Collectors.toList())));
+      }
+    } else if (node instanceof LimitNode || node instanceof ExchangeNode) {
+      return rewriteChild(node, used);
+    } else if (node instanceof ProjectNode) {
+      return rewriteProject((ProjectNode) node, used);
+    } else if (node instanceof JoinNode) {
+      return rewriteJoin((JoinNode) node, used);
+    }
+    // Every other node reads whole rows
+    List<PlanNode> children =
+        node.getChildren().stream().map(this::apply).collect(Collectors.toList());
+    return new Deferred(
+        children.equals(node.getChildren()) ? node : node.withChildren(children), Map.of());
+  }
+
+  private Deferred rewriteScan(ScanNode scan, Set<String> used) {
+    if (!(scan.getSource() instanceof RandomAccessSource)) {
+      return new Deferred(scan, Map.of());
+    }
+    RandomAccessSource source = (RandomAccessSource) scan.getSource();
+    List<String> kept = new ArrayList<>();
+    List<String> deferred = new ArrayList<>();
+    for (String column : scan.getSchema().getNames()) {
+      (used.contains(column) ? kept : deferred).add(column);
+    }
+    if (deferred.isEmpty()) {
+      return new Deferred(scan, Map.of());
+    }
+    String rowId = ROW_ID + rowIds++;
+    kept.add(rowId);
+    ScanNode narrow = ScanNode.of(source.withRowIds(rowId)).withColumns(kept);
+    if (scan.getFilter() != null) {
+      narrow = narrow.withFilter(scan.getFilter());
+    }
+    Map<String, FetchNode.Fetch> fetches = new LinkedHashMap<>();
+    deferred.forEach(column -> fetches.put(column, FetchNode.Fetch.of(rowId, source, column)));
+    return new Deferred(narrow, fetches);
+  }
+
+  private Deferred rewriteChild(PlanNode node, Set<String> used) {
+    Deferred child = rewrite(node.getChild(), used);
+    if (child.node == node.getChild()) {
+      return new Deferred(node, Map.of());
+    }
+    return new Deferred(node.withChildren(List.of(child.node)), child.fetches);
+  }
+
+  private Deferred rewriteProject(ProjectNode project, Set<String> used) {
+    Deferred child = rewrite(project.getChild(), used);
+    if (child.node == project.getChild()) {
+      return new Deferred(project, Map.of());
+    }
+    // Replace each deferred column with its row id
+    Set<String> columns = new LinkedHashSet<>();
+    Map<String, FetchNode.Fetch> fetches = new LinkedHashMap<>();
+    for (String column : project.getColumns()) {
+      FetchNode.Fetch fetch = child.fetches.get(column);
+      if (fetch == null) {
+        columns.add(column);
+      } else {
+        fetches.put(column, fetch);
+      }
+    }
+    fetches.values().forEach(fetch -> columns.add(fetch.getRowId()));
+    return new Deferred(new ProjectNode(child.node, new ArrayList<>(columns)), fetches);
+  }
+
+  private Deferred rewriteJoin(JoinNode join, Set<String> used) {
+    Set<String> leftUsed = new HashSet<>(join.getLeftKeys());
+    Set<String> rightUsed = new HashSet<>(join.getRightKeys());
+    for (String column : used) {
+      if (join.isLeftColumn(column)) {
+        leftUsed.add(column);
+      } else {
+        rightUsed.add(join.toRightColumn(column));
+      }
+    }
+    Deferred left = rewrite(join.getLeft(), leftUsed);
+    Deferred right = rewrite(join.getRight(), rightUsed);
+    if (left.node == join.getLeft() && right.node == join.getRight()) {
+      return new Deferred(join, Map.of());
+    }
+    Map<String, FetchNode.Fetch> fetches = new LinkedHashMap<>(left.fetches);
+    // Row ids are unique, so they keep their names in the output
+    right.fetches.forEach(
+        (column, fetch) -> fetches.put(join.getRightAliases().getOrDefault(column, column), fetch));
+    return new Deferred(join.withChildren(List.of(left.node, right.node)), fetches);
+  }
+
+  private static Set<String> union(Set<String> first, Collection<String> second) {
+    Set<String> union = new HashSet<>(first);
+    union.addAll(second);
+    return union;
+  }
+}
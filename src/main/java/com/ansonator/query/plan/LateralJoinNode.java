@@ -0,0 +1,35 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.row.Row;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import lombok.Getter;
+
+/** Replaces each input row with the items produced for it by {@code dataFactory}. */
+@Getter
+public class LateralJoinNode<O> extends PlanNode {
+  private final Function<Row, Stream<O>> dataFactory;
+  private final Class<O> type;
+
+  public LateralJoinNode(PlanNode child, Function<Row, Stream<O>> dataFactory, Class<O> type) {
+    super(BeanSource.schemaOf(type), child);
+    this.dataFactory = dataFactory;
+    this.type = type;
+  }
+
+  @Override
+  public PlanNode withChildren(List<PlanNode> children) {
+    return new LateralJoinNode<>(children.get(0), dataFactory, type);
+  }
+
+  @Override
+  public <R> R accept(PlanVisitor<R> visitor) {
+    return visitor.visitLateralJoin(this);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("LateralJoin[%s]", type.getSimpleName());
+  }
+}
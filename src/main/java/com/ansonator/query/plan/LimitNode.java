@@ -0,0 +1,35 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.sort.SortKey;
+import java.util.List;
+import lombok.Getter;
+
+@Getter
+public class LimitNode extends PlanNode {
+  private final long limit;
+
+  public LimitNode(PlanNode child, long limit) {
+    super(child.getSchema(), child);
+    this.limit = limit;
+  }
+
+  @Override
+  public List<SortKey> getSortedBy() {
+    return getChild().getSortedBy();
+  }
+
+  @Override
+  public PlanNode withChildren(List<PlanNode> children) {
+    return new LimitNode(children.get(0), limit);
+  }
+
+  @Override
+  public <R> R accept(PlanVisitor<R> visitor) {
+    return visitor.visitLimit(this);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Limit[%d]", limit);
+  }
+}
@@ -0,0 +1,43 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.row.Row;
+import java.util.List;
+import java.util.stream.Stream;
+import lombok.Getter;
+
+/**
+ * A placeholder for a {@link BeanSource} whose stream is supplied each time a {@link
+ * com.ansonator.query.PreparedQuery} is executed. See {@link com.ansonator.query.Query#from(String,
+ * Class)}.
+ */
+@Getter
+public class NamedSource<T> implements RowSource {
+  private final String name;
+  private final Class<T> type;
+  private final Schema schema;
+
+  public NamedSource(String name, Class<T> type) {
+    this.name = name;
+    this.type = type;
+    this.schema = BeanSource.schemaOf(type);
+  }
+
+  /**
+   * @param data items of {@link #getType}
+   */
+  @SuppressWarnings("unchecked")
+  public BeanSource<T> bind(Stream<?> data) {
+    return new BeanSource<>((Stream<T>) data, type);
+  }
+
+  @Override
+  public Stream<Row> open(List<String> columns) {
+    throw new IllegalStateException(
+        String.format("Source [%s] is not bound. Use Query.prepare", name));
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s:%s", name, type.getSimpleName());
+  }
+}
@@ -0,0 +1,30 @@
+package com.ansonator.query.plan;
+
+import lombok.Getter;
+
+/**
+ * What one operator did during {@link com.ansonator.query.Query#explainAnalyze}. Times and
+ * allocations are inclusive of the operator's inputs, and only cover the thread which consumed the
+ * query. See {@link ExplainNode} for exclusive values.
+ */
+@Getter
+public class OperatorMetrics {
+  private long rowsOut;
+  private long wallNanos;
+  private long cpuNanos;
+  // -1 when the JVM does not measure thread allocations
+  private long allocatedBytes;
+  // The strategy chosen at run time, if any. See com.ansonator.query.Query#adaptive.
+  private String strategy;
+
+  void setStrategy(String strategy) {
+    this.strategy = strategy;
+  }
+
+  void add(long rows, long wallNanos, long cpuNanos, long allocatedBytes) {
+    this.rowsOut += rows;
+    this.wallNanos += wallNanos;
+    this.cpuNanos += cpuNanos;
+    this.allocatedBytes = allocatedBytes < 0 ? -1 : this.allocatedBytes + allocatedBytes;
+  }
+}
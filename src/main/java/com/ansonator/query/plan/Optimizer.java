@@ -0,0 +1,97 @@
+package com.ansonator.query.plan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Rewrites a plan into an equivalent plan which is cheaper to execute. The rules are:
+ *
+ * <ol>
+ *   <li>{@link PushDownFilter predicate pushdown}
+ *   <li>{@link ChooseJoinStrategy join strategy choice}
+ *   <li>{@link PushDownLimit limit pushdown}
+ *   <li>{@link PruneColumns projection pruning}
+ *   <li>{@link LateMaterialization late materialization}, if enabled
+ * </ol>
+ *
+ * The first three are applied top-down to every node until the plan stops changing. Pruning and
+ * late materialization are applied last. The optimized plan always has the same columns as the
+ * original.
+ */
+@Log4j2
+public class Optimizer {
+  private static final int MAX_PASSES = 16;
+
+  private final List<Rule> rules =
+      List.of(new PushDownFilter(), new ChooseJoinStrategy(), new PushDownLimit());
+  private final boolean lateMaterialization;
+
+  public Optimizer() {
+    this(false);
+  }
+
+  /**
+   * @param lateMaterialization see {@link LateMaterialization}
+   */
+  public Optimizer(boolean lateMaterialization) {
+    this.lateMaterialization = lateMaterialization;
+  }
+
+  public PlanNode optimize(PlanNode root) {
+    PlanNode plan = root;
+    for (int pass = 0; pass < MAX_PASSES; pass++) {
+      PlanNode next = plan;
+      for (Rule rule : rules) {
+        next = transformDown(next, rule);
+      }
+      if (next == plan) {
+        break;
+      }
+      plan = next;
+    }
+    plan = removeIdentityProjects(new PruneColumns().apply(plan));
+    if (lateMaterialization) {
+      plan = new LateMaterialization().apply(plan);
+    }
+    if (!plan.getSchema().equals(root.getSchema())) {
+      plan = new ProjectNode(plan, root.getSchema().getNames());
+    }
+    final PlanNode optimized = plan;
+    log.debug("Optimized plan\n{}", optimized::toTreeString);
+    return optimized;
+  }
+
+  private static PlanNode transformDown(PlanNode node, Rule rule) {
+    PlanNode current = node;
+    for (int i = 0; i < MAX_PASSES; i++) {
+      PlanNode next = rule.apply(current);
+      if (next == current) {
+        break;
+      }
+      current = next;
+    }
+    return withChildren(current, child -> transformDown(child, rule));
+  }
+
+  private static PlanNode removeIdentityProjects(PlanNode node) {
+    PlanNode current = withChildren(node, Optimizer::removeIdentityProjects);
+    if (current instanceof ProjectNode
+        && current.getSchema().equals(current.getChild().getSchema())) {
+      return current.getChild();
+    }
+    return current;
+  }
+
+  private static PlanNode withChildren(PlanNode node, UnaryOperator<PlanNode> transform) {
+    List<PlanNode> children = new ArrayList<>();
+    boolean changed = false;
+    for (PlanNode child : node.getChildren()) {
+      PlanNode transformed = transform.apply(child);
+      changed |= transformed != child;
+      children.add(transformed);
+    }
+    return changed ? node.withChildren(children) : node;
+  }
+}
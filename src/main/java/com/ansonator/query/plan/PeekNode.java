@@ -0,0 +1,41 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.row.Row;
+import com.ansonator.query.sort.SortKey;
+import java.util.List;
+import java.util.function.Consumer;
+import lombok.Getter;
+
+/**
+ * Passes each row to an action. The optimizer does not move filters or limits across this node, so
+ * the action sees the same rows and columns as it would without optimization.
+ */
+@Getter
+public class PeekNode extends PlanNode {
+  private final Consumer<Row> action;
+
+  public PeekNode(PlanNode child, Consumer<Row> action) {
+    super(child.getSchema(), child);
+    this.action = action;
+  }
+
+  @Override
+  public List<SortKey> getSortedBy() {
+    return getChild().getSortedBy();
+  }
+
+  @Override
+  public PlanNode withChildren(List<PlanNode> children) {
+    return new PeekNode(children.get(0), action);
+  }
+
+  @Override
+  public <R> R accept(PlanVisitor<R> visitor) {
+    return visitor.visitPeek(this);
+  }
+
+  @Override
+  public String toString() {
+    return "Peek";
+  }
+}
@@ -0,0 +1,378 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.adaptive.AdaptiveAggregate;
+import com.ansonator.query.adaptive.AdaptiveHashJoin;
+import com.ansonator.query.exchange.Exchange;
+import com.ansonator.query.row.Row;
+import com.ansonator.query.row.RowMatcher;
+import com.ansonator.query.set.HashSetOperator;
+import com.ansonator.query.sort.ExternalSorter;
+import com.ansonator.query.sort.InMemorySorter;
+import com.ansonator.query.sort.SortKey;
+import com.ansonator.query.spill.RowSize;
+import com.ansonator.query.window.TimeWindowOperator;
+import com.ansonator.query.window.WindowOperator;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.Maps;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Turns a plan into a {@code Stream<Row>}. Each node is compiled into stream operations on its
+ * children's streams. Nothing is read until a terminal operation is invoked on the result.
+ *
+ * <p>Operators which hold rows in memory reserve them from the {@link QueryContext}, and scans and
+ * joins check it for cancellation. A compiler, like its context, compiles one execution.
+ */
+@Log4j2
+public class PlanCompiler implements PlanVisitor<Stream<Row>> {
+  /** Sorts with a limit at or below this size keep only the top rows on the heap. */
+  public static final long TOP_N_THRESHOLD = 1 << 16;
+  /** The spill budget requested for sorts without one, under a memory limit. */
+  public static final long DEFAULT_SORT_BUDGET = 64L << 20;
+  /** Hash join tables are sized up front for their estimated rows, up to this many. */
+  private static final int MAX_PRESIZE = 1 << 20;
+
+  protected final QueryContext context;
+  // 0 unless hash joins and aggregations choose their strategy at run time
+  private long adaptiveBudget = 0;
+
+  public PlanCompiler() {
+    this(QueryContext.unlimited());
+  }
+
+  public PlanCompiler(QueryContext context) {
+    this.context = context;
+  }
+
+  /**
+   * Let hash joins and aggregations choose their strategy at run time, by the size of their input.
+   * See {@link AdaptiveHashJoin} and {@link AdaptiveAggregate}.
+   *
+   * @param memoryBudget the most each of them holds in memory before switching to a strategy which
+   *     spills to disk. Under a memory limit, at most half of the query's remaining memory.
+   */
+  public void setAdaptiveBudget(long memoryBudget) {
+    this.adaptiveBudget = memoryBudget;
+  }
+
+  public boolean isAdaptive() {
+    return adaptiveBudget > 0;
+  }
+
+  /**
+   * Called when an operator chooses its strategy at run time.
+   *
+   * @param strategy describes the choice and the reason for it
+   */
+  protected void decided(PlanNode node, String strategy) {
+    log.debug("{}: {}", node, strategy);
+  }
+
+  public Stream<Row> compile(PlanNode node) {
+    return node.accept(this);
+  }
+
+  /**
+   * @return the estimated number of rows of {@code node}, to size its hash table up front. See
+   *     {@link CardinalityEstimator}.
+   */
+  private static int expectedRows(PlanNode node) {
+    long rows = new CardinalityEstimator().estimate(node);
+    return rows < 0 ? 0 : (int) Math.min(rows, MAX_PRESIZE);
+  }
+
+  @Override
+  public Stream<Row> visitScan(ScanNode node) {
+    List<String> columns = node.getSchema().getNames();
+    return context.checked(
+        node.getFilter() == null
+            ? node.getSource().open(columns)
+            : node.getSource().open(columns, node.getFilter()));
+  }
+
+  @Override
+  public Stream<Row> visitProject(ProjectNode node) {
+    final int[] indexes = node.getChild().getSchema().indexesOf(node.getColumns());
+    return compile(node.getChild()).map(row -> new Row(row, indexes));
+  }
+
+  @Override
+  public Stream<Row> visitFilter(FilterNode node) {
+    final Map<String, Integer> columns = node.getColumnIndexes();
+    final RowMatcher matcher = node.getMatcher();
+    return compile(node.getChild()).filter(row -> matcher.test(row, columns));
+  }
+
+  @Override
+  public Stream<Row> visitJoin(JoinNode node) {
+    Stream<Row> left = compile(node.getLeft());
+    Stream<Row> right = compile(node.getRight());
+    if (node.getStrategy() == JoinNode.Strategy.NESTED_LOOP) {
+      // Load the right table into memory on first use
+      Supplier<List<Row>> rightRows =
+          Suppliers.memoize(
+              () -> context.reserving(right, "NestedLoopJoin").collect(Collectors.toList()));
+      return context
+          .checked(
+              left.flatMap(
+                  leftRow -> rightRows.get().stream().map(rightRow -> concat(leftRow, rightRow))))
+          .onClose(right::close);
+    }
+    final Function<Row, Object> leftKey = keyOf(node.getLeft().getSchema(), node.getLeftKeys());
+    final Function<Row, Object> rightKey = keyOf(node.getRight().getSchema(), node.getRightKeys());
+    if (isAdaptive()) {
+      long budget = context.reserveSpillable(adaptiveBudget, "HashJoin");
+      return context.checked(
+          new AdaptiveHashJoin(
+                  leftKey,
+                  rightKey,
+                  PlanCompiler::concat,
+                  budget,
+                  strategy -> decided(node, strategy))
+              .join(left, right));
+    }
+    Supplier<Map<Object, List<Row>>> table =
+        Suppliers.memoize(
+            () -> {
+              Map<Object, List<Row>> rows =
+                  Maps.newHashMapWithExpectedSize(expectedRows(node.getRight()));
+              right.forEachOrdered(
+                  row -> {
+                    Object key = rightKey.apply(row);
+                    if (key != null) {
+                      context.reserve(RowSize.estimate(row), "HashJoin");
+                      rows.computeIfAbsent(key, k -> new ArrayList<>(1)).add(row);
+                    }
+                  });
+              return rows;
+            });
+    return context
+        .checked(
+            left.flatMap(
+                leftRow -> {
+                  Object key = leftKey.apply(leftRow);
+                  List<Row> matches = key == null ? null : table.get().get(key);
+                  return matches == null
+                      ? Stream.empty()
+                      : matches.stream().map(rightRow -> concat(leftRow, rightRow));
+                }))
+        .onClose(right::close);
+  }
+
+  /**
+   * @return the key column's value, or a list of the key columns' values. Null if any value is
+   *     null, as null never equals anything.
+   */
+  private static Function<Row, Object> keyOf(Schema schema, List<String> columns) {
+    final int[] indexes = schema.indexesOf(columns);
+    if (indexes.length == 1) {
+      final int index = indexes[0];
+      return row -> row.vals[index];
+    }
+    return row -> {
+      Object[] key = new Object[indexes.length];
+      for (int i = 0; i < indexes.length; i++) {
+        key[i] = row.vals[indexes[i]];
+        if (key[i] == null) {
+          return null;
+        }
+      }
+      return Arrays.asList(key);
+    };
+  }
+
+  private static Row concat(Row left, Row right) {
+    Object[] vals = Arrays.copyOf(left.vals, left.vals.length + right.vals.length);
+    System.arraycopy(right.vals, 0, vals, left.vals.length, right.vals.length);
+    return new Row(vals);
+  }
+
+  @Override
+  public Stream<Row> visitLateralJoin(LateralJoinNode<?> node) {
+    return compile(node.getChild()).flatMap(row -> lateral(node, row));
+  }
+
+  private static <O> Stream<Row> lateral(LateralJoinNode<O> node, Row row) {
+    BeanSource<O> source = new BeanSource<>(node.getDataFactory().apply(row), node.getType());
+    return source.open(node.getSchema().getNames());
+  }
+
+  @Override
+  public Stream<Row> visitAggregate(AggregateNode node) {
+    final Schema schema = node.getChild().getSchema();
+    Map<Integer, BinaryOperator<Object>> accumulatorsByIndex = new HashMap<>();
+    node.getAccumulators()
+        .forEach(
+            (column, accumulator) -> {
+              if (schema.contains(column)) {
+                accumulatorsByIndex.put(schema.indexOf(column), accumulator);
+              }
+            });
+    if (isAdaptive()) {
+      InMemorySorter sorter =
+          new InMemorySorter(
+              node.getGroupBy().stream().map(SortKey::asc).collect(Collectors.toList()),
+              schema.asMap(),
+              false);
+      return new AdaptiveAggregate(
+              schema.indexesOf(node.getGroupBy()),
+              accumulatorsByIndex,
+              sorter,
+              context.reserveSpillable(adaptiveBudget, "Aggregate"),
+              strategy -> decided(node, strategy))
+          .aggregate(compile(node.getChild()));
+    }
+    BiConsumer<Row, Row> fn =
+        (f, r) -> {
+          if (f.vals == null) {
+            // A new group holds a key and a state, each at most the size of the row
+            context.reserve(2 * RowSize.estimate(r), "Aggregate");
+          }
+          f.merge(r, accumulatorsByIndex);
+        };
+    BinaryOperator<Row> op =
+        (f1, f2) -> {
+          f1.merge(f2, accumulatorsByIndex);
+          return f1;
+        };
+    Collector<Row, Row, Row> downstream = Collector.of(Row::new, fn, op);
+    final int[] indexes = schema.indexesOf(node.getGroupBy());
+    Stream<Row> input = compile(node.getChild());
+    return Stream.of(input)
+        .flatMap(
+            rows ->
+                rows
+                    .collect(Collectors.groupingBy(row -> new Row(row, indexes), downstream))
+                    .values()
+                    .stream())
+        .onClose(input::close);
+  }
+
+  @Override
+  public Stream<Row> visitSort(SortNode node) {
+    Stream<Row> input = compile(node.getChild());
+    InMemorySorter sorter =
+        node.getKeys() == null
+            ? new InMemorySorter(node.getComparator())
+            : new InMemorySorter(
+                node.getKeys(), node.getChild().getSchema().asMap(), node.isNormalized());
+    if (node.hasLimit() && node.getLimit() <= TOP_N_THRESHOLD) {
+      return sorter.top(context.checked(input), (int) node.getLimit());
+    }
+    long budget = node.getMemoryBudget();
+    if (budget <= 0 && context.isLimited()) {
+      budget = DEFAULT_SORT_BUDGET;
+    }
+    Stream<Row> sorted =
+        budget > 0
+            ? ExternalSorter.of(sorter, context.reserveSpillable(budget, "Sort")).sort(input)
+            : sorter.sort(input);
+    return node.hasLimit() ? sorted.limit(node.getLimit()) : sorted;
+  }
+
+  @Override
+  public Stream<Row> visitLimit(LimitNode node) {
+    return compile(node.getChild()).limit(node.getLimit());
+  }
+
+  @Override
+  public Stream<Row> visitPeek(PeekNode node) {
+    return compile(node.getChild()).peek(node.getAction());
+  }
+
+  @Override
+  public Stream<Row> visitUnionAll(UnionAllNode node) {
+    return Stream.concat(compile(node.getChildren().get(0)), compile(node.getChildren().get(1)));
+  }
+
+  @Override
+  public Stream<Row> visitSetOperation(SetOperationNode node) {
+    HashSetOperator operator =
+        HashSetOperator.of(context.reserveSpillable(node.getMemoryBudget(), "SetOperation"));
+    Stream<Row> left = compile(node.getChild());
+    switch (node.getOperation()) {
+      case DISTINCT:
+        return operator.distinct(left);
+      case INTERSECT:
+        return operator.intersect(left, compile(node.getChildren().get(1)), node.isAll());
+      case EXCEPT:
+        return operator.except(left, compile(node.getChildren().get(1)), node.isAll());
+      default:
+        throw new IllegalArgumentException(
+            String.format("Unsupported operation [%s]", node.getOperation()));
+    }
+  }
+
+  @Override
+  public Stream<Row> visitWindow(WindowNode node) {
+    PlanNode child = node.getChild();
+    WindowOperator operator =
+        new WindowOperator(node.getSpec(), node.getFunctions(), child.getSchema().asMap());
+    Stream<Row> input = compile(child);
+    if (node.requiresSort()) {
+      // Sorted in memory first
+      input = context.reserving(input, "Window");
+    }
+    return operator.evaluate(input, child.getSortedBy());
+  }
+
+  @Override
+  public Stream<Row> visitExchange(ExchangeNode node) {
+    return Exchange.of(
+        compile(node.getChild()),
+        node.getCapacity(),
+        node.getBatchSize(),
+        node.getThreads(),
+        node.getMetrics());
+  }
+
+  @Override
+  public Stream<Row> visitTimeWindow(TimeWindowNode node) {
+    PlanNode child = node.getChild();
+    return new TimeWindowOperator(
+            node.getWindows(), node.getGroupBy(), node.getAccumulators(), child.getSchema().asMap())
+        .evaluate(compile(child));
+  }
+
+  @Override
+  public Stream<Row> visitFetch(FetchNode node) {
+    Schema child = node.getChild().getSchema();
+    List<String> columns = node.getSchema().getNames();
+    // Each output column is either copied from the child or read by the row id at its index
+    final int[] indexes = new int[columns.size()];
+    @SuppressWarnings("unchecked")
+    final IntFunction<Object>[] readers = new IntFunction[columns.size()];
+    for (int i = 0; i < indexes.length; i++) {
+      FetchNode.Fetch fetch = node.getFetches().get(columns.get(i));
+      if (fetch == null) {
+        indexes[i] = child.indexOf(columns.get(i));
+      } else {
+        indexes[i] = child.indexOf(fetch.getRowId());
+        readers[i] = fetch.getSource().reader(fetch.getColumn());
+      }
+    }
+    return compile(node.getChild())
+        .map(
+            row -> {
+              Object[] vals = new Object[indexes.length];
+              for (int i = 0; i < indexes.length; i++) {
+                Object val = row.vals[indexes[i]];
+                vals[i] = readers[i] == null ? val : readers[i].apply((Integer) val);
+              }
+              return new Row(vals);
+            });
+  }
+}
@@ -0,0 +1,127 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.cell.NumericAggregate;
+import com.ansonator.query.row.AndMatcher;
+import com.ansonator.query.row.BiPredicateMatcher;
+import com.ansonator.query.row.ComparisonMatcher;
+import com.ansonator.query.row.NotMatcher;
+import com.ansonator.query.row.OrMatcher;
+import com.ansonator.query.row.PredicateMatcher;
+import com.ansonator.query.row.RowMatcher;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.BinaryOperator;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * Identifies a plan by what it computes, so that equal fingerprints imply equal results over equal
+ * inputs. Two separately built plans have equal fingerprints when their {@link
+ * PlanNode#toTreeString} is the same, their constants are {@link Object#equals equal}, and they
+ * share the very same instances of anything opaque: lambdas passed to {@code where}, {@code
+ * orderBy}, {@code groupBy}, {@code join} or {@code peek}, window functions, and the streams of
+ * {@link BeanSource}s. Opaque parts are compared by identity because two lambdas cannot be compared
+ * otherwise.
+ */
+@EqualsAndHashCode
+public final class PlanFingerprint {
+  /** The plan as text. */
+  @Getter private final String description;
+  // Constants, compared by equals, and Identity wrappers around opaque parts
+  private final List<Object> parts;
+
+  private PlanFingerprint(String description, List<Object> parts) {
+    this.description = description;
+    this.parts = parts;
+  }
+
+  public static PlanFingerprint of(PlanNode plan) {
+    List<Object> parts = new ArrayList<>();
+    collect(plan, parts);
+    return new PlanFingerprint(plan.toTreeString(), ImmutableList.copyOf(parts));
+  }
+
+  private static void collect(PlanNode node, List<Object> parts) {
+    if (node instanceof ScanNode) {
+      ScanNode scan = (ScanNode) node;
+      if (!(scan.getSource() instanceof NamedSource)) {
+        parts.add(new Identity(scan.getSource()));
+      }
+      if (scan.getFilter() != null) {
+        collect(scan.getFilter(), parts);
+      }
+    } else if (node instanceof FilterNode) {
+      collect(((FilterNode) node).getMatcher(), parts);
+    } else if (node instanceof AggregateNode) {
+      collect(((AggregateNode) node).getAccumulators().values(), parts);
+    } else if (node instanceof FetchNode) {
+      ((FetchNode) node)
+          .getFetches()
+          .values()
+          .forEach(fetch -> parts.add(new Identity(fetch.getSource())));
+    } else if (node instanceof TimeWindowNode) {
+      parts.add(new Identity(((TimeWindowNode) node).getWindows()));
+      collect(((TimeWindowNode) node).getAccumulators().values(), parts);
+    } else if (node instanceof SortNode) {
+      if (((SortNode) node).getComparator() != null) {
+        parts.add(new Identity(((SortNode) node).getComparator()));
+      }
+    } else if (node instanceof LateralJoinNode) {
+      parts.add(new Identity(((LateralJoinNode<?>) node).getDataFactory()));
+    } else if (node instanceof PeekNode) {
+      parts.add(new Identity(((PeekNode) node).getAction()));
+    } else if (node instanceof WindowNode) {
+      ((WindowNode) node).getFunctions().forEach(function -> parts.add(new Identity(function)));
+    }
+    node.getChildren().forEach(child -> collect(child, parts));
+  }
+
+  private static void collect(Collection<BinaryOperator<Object>> accumulators, List<Object> parts) {
+    for (BinaryOperator<Object> accumulator : accumulators) {
+      parts.add(accumulator instanceof NumericAggregate ? accumulator : new Identity(accumulator));
+    }
+  }
+
+  private static void collect(RowMatcher matcher, List<Object> parts) {
+    if (matcher instanceof ComparisonMatcher) {
+      parts.add(((ComparisonMatcher) matcher).getValue());
+    } else if (matcher instanceof AndMatcher) {
+      ((AndMatcher) matcher).getConjuncts().forEach(m -> collect(m, parts));
+    } else if (matcher instanceof OrMatcher) {
+      ((OrMatcher) matcher).getDisjuncts().forEach(m -> collect(m, parts));
+    } else if (matcher instanceof NotMatcher) {
+      collect(((NotMatcher) matcher).getMatcher(), parts);
+    } else if (matcher instanceof PredicateMatcher) {
+      parts.add(new Identity(((PredicateMatcher<?>) matcher).getPred()));
+    } else if (matcher instanceof BiPredicateMatcher) {
+      parts.add(new Identity(((BiPredicateMatcher<?, ?>) matcher).getPred()));
+    } else {
+      parts.add(new Identity(matcher));
+    }
+  }
+
+  @Override
+  public String toString() {
+    return description;
+  }
+
+  private static final class Identity {
+    private final Object value;
+
+    Identity(Object value) {
+      this.value = value;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Identity && ((Identity) other).value == value;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(value);
+    }
+  }
+}
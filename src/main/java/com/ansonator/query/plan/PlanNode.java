@@ -0,0 +1,62 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.sort.SortKey;
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+
+/**
+ * A node of the logical plan built by {@link com.ansonator.query.Query}. Nodes are immutable. The
+ * {@link Optimizer} rewrites them into a new tree, which the {@link PlanCompiler} then turns into a
+ * {@code Stream<Row>} at a terminal call.
+ */
+public abstract class PlanNode {
+  private final Schema schema;
+  private final List<PlanNode> children;
+
+  protected PlanNode(Schema schema, PlanNode... children) {
+    this.schema = schema;
+    this.children = ImmutableList.copyOf(children);
+  }
+
+  public Schema getSchema() {
+    return schema;
+  }
+
+  public List<PlanNode> getChildren() {
+    return children;
+  }
+
+  public PlanNode getChild() {
+    return children.get(0);
+  }
+
+  /**
+   * @return the keys by which this node's output is known to be sorted. Empty when unknown.
+   */
+  public List<SortKey> getSortedBy() {
+    return List.of();
+  }
+
+  /**
+   * @return a copy of this node with its children replaced
+   */
+  public abstract PlanNode withChildren(List<PlanNode> children);
+
+  public abstract <R> R accept(PlanVisitor<R> visitor);
+
+  /** This node and its descendants, one per line, indented by depth. */
+  public String toTreeString() {
+    StringBuilder builder = new StringBuilder();
+    appendTree(builder, 0);
+    return builder.toString();
+  }
+
+  private void appendTree(StringBuilder builder, int depth) {
+    builder.append("  ".repeat(depth)).append(this).append('\n');
+    children.forEach(child -> child.appendTree(builder, depth + 1));
+  }
+
+  /** A one line description of this node, without its children. */
+  @Override
+  public abstract String toString();
+}
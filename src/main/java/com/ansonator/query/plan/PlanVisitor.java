@@ -0,0 +1,33 @@
+package com.ansonator.query.plan;
+
+public interface PlanVisitor<R> {
+  R visitScan(ScanNode node);
+
+  R visitProject(ProjectNode node);
+
+  R visitFilter(FilterNode node);
+
+  R visitJoin(JoinNode node);
+
+  R visitLateralJoin(LateralJoinNode<?> node);
+
+  R visitAggregate(AggregateNode node);
+
+  R visitSort(SortNode node);
+
+  R visitLimit(LimitNode node);
+
+  R visitPeek(PeekNode node);
+
+  R visitUnionAll(UnionAllNode node);
+
+  R visitSetOperation(SetOperationNode node);
+
+  R visitWindow(WindowNode node);
+
+  R visitExchange(ExchangeNode node);
+
+  R visitTimeWindow(TimeWindowNode node);
+
+  R visitFetch(FetchNode node);
+}
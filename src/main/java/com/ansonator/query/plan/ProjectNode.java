@@ -0,0 +1,44 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.sort.SortKey;
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import lombok.Getter;
+
+/** Selects and reorders columns. */
+@Getter
+public class ProjectNode extends PlanNode {
+  private final List<String> columns;
+
+  public ProjectNode(PlanNode child, List<String> columns) {
+    super(Schema.of(columns), child);
+    this.columns = ImmutableList.copyOf(columns);
+    columns.forEach(child.getSchema()::indexOf);
+  }
+
+  /** A prefix of the sort order survives as long as its columns do. */
+  @Override
+  public List<SortKey> getSortedBy() {
+    List<SortKey> sortedBy = getChild().getSortedBy();
+    int sorted = 0;
+    while (sorted < sortedBy.size() && getSchema().contains(sortedBy.get(sorted).getColumn())) {
+      sorted++;
+    }
+    return sortedBy.subList(0, sorted);
+  }
+
+  @Override
+  public PlanNode withChildren(List<PlanNode> children) {
+    return new ProjectNode(children.get(0), columns);
+  }
+
+  @Override
+  public <R> R accept(PlanVisitor<R> visitor) {
+    return visitor.visitProject(this);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Project%s", columns);
+  }
+}
@@ -0,0 +1,121 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.sort.SortKey;
+import com.ansonator.query.window.TimeWindows;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Removes columns which no ancestor reads, all the way down to the {@link ScanNode}s. So, for
+ * example, a bean's getter is only invoked if its column is used.
+ *
+ * <p>Some nodes pass rows to client code which may read columns by position (e.g., a comparator
+ * passed to {@link com.ansonator.query.Query#orderBy(java.util.Comparator)}, or a {@link
+ * PeekNode}). Those nodes, and nodes whose semantics depend on the whole row (set operations), keep
+ * all of their input's columns.
+ */
+class PruneColumns {
+  /**
+   * @return a plan with the same schema as {@code root}
+   */
+  PlanNode apply(PlanNode root) {
+    return prune(root, new HashSet<>(root.getSchema().getNames()));
+  }
+
+  /**
+   * @param required the columns of {@code node} which must be kept
+   * @return {@code node} with as few columns as possible, though at least {@code required}
+   */
+  private PlanNode prune(PlanNode node, Set<String> required) {
+    if (node instanceof ScanNode) {
+      return ((ScanNode) node).withColumns(required);
+    }
+    if (node instanceof ProjectNode) {
+      List<String> columns =
+          ((ProjectNode) node)
+              .getColumns().stream().filter(required::contains).collect(Collectors.toList());
+      PlanNode child = prune(node.getChild(), new HashSet<>(columns));
+      if (columns.equals(((ProjectNode) node).getColumns()) && child == node.getChild()) {
+        return node;
+      }
+      return new ProjectNode(child, columns);
+    }
+    if (node instanceof FilterNode) {
+      Set<String> referenced = ((FilterNode) node).getReferencedColumns();
+      return referenced == null ? pruneAll(node) : pruneChild(node, union(required, referenced));
+    }
+    if (node instanceof LimitNode || node instanceof ExchangeNode) {
+      return pruneChild(node, required);
+    }
+    if (node instanceof AggregateNode) {
+      AggregateNode aggregate = (AggregateNode) node;
+      Set<String> columns = union(required, aggregate.getGroupBy());
+      aggregate.getAccumulators().keySet().stream()
+          .filter(node.getSchema()::contains)
+          .forEach(columns::add);
+      return pruneChild(node, columns);
+    }
+    if (node instanceof TimeWindowNode) {
+      TimeWindowNode windows = (TimeWindowNode) node;
+      Set<String> columns = union(required, windows.getGroupBy());
+      columns.remove(TimeWindows.WINDOW_START);
+      columns.remove(TimeWindows.WINDOW_END);
+      columns.add(windows.getWindows().getTimeColumn());
+      windows.getAccumulators().keySet().stream()
+          .filter(node.getChild().getSchema()::contains)
+          .forEach(columns::add);
+      return pruneChild(node, columns);
+    }
+    if (node instanceof SortNode) {
+      List<SortKey> keys = ((SortNode) node).getKeys();
+      if (keys == null) {
+        return pruneAll(node);
+      }
+      return pruneChild(
+          node,
+          union(required, keys.stream().map(SortKey::getColumn).collect(Collectors.toList())));
+    }
+    if (node instanceof JoinNode) {
+      JoinNode join = (JoinNode) node;
+      Set<String> left = new HashSet<>(join.getLeftKeys());
+      Set<String> right = new HashSet<>(join.getRightKeys());
+      for (String column : required) {
+        if (join.isLeftColumn(column)) {
+          left.add(column);
+        } else {
+          right.add(join.toRightColumn(column));
+        }
+      }
+      return withChildren(
+          node, List.of(prune(join.getLeft(), left), prune(join.getRight(), right)));
+    }
+    return pruneAll(node);
+  }
+
+  private PlanNode pruneChild(PlanNode node, Set<String> required) {
+    return withChildren(node, List.of(prune(node.getChild(), required)));
+  }
+
+  /** Keep every column of each child, but allow the children to prune their own inputs. */
+  private PlanNode pruneAll(PlanNode node) {
+    List<PlanNode> children = new ArrayList<>();
+    for (PlanNode child : node.getChildren()) {
+      children.add(prune(child, new HashSet<>(child.getSchema().getNames())));
+    }
+    return withChildren(node, children);
+  }
+
+  private static PlanNode withChildren(PlanNode node, List<PlanNode> children) {
+    return children.equals(node.getChildren()) ? node : node.withChildren(children);
+  }
+
+  private static Set<String> union(Set<String> first, Collection<String> second) {
+    Set<String> union = new HashSet<>(first);
+    union.addAll(second);
+    return union;
+  }
+}
@@ -0,0 +1,165 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.row.AndMatcher;
+import com.ansonator.query.row.RowMatcher;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Moves filters towards the scans so that fewer rows flow through the rest of the plan.
+ *
+ * <ul>
+ *   <li>Adjacent filters are combined.
+ *   <li>Filters move below projections, unlimited sorts, unions, set operations and exchanges, none
+ *       of which change which rows a filter accepts.
+ *   <li>Conjuncts which only read grouping columns move below an aggregation.
+ *   <li>Conjuncts which only read columns of one side of a join move to that side.
+ *   <li>A filter directly above a scan is also given to the scan, if its source can skip rows.
+ * </ul>
+ *
+ * Filters never move below a {@link PeekNode}, {@link LimitNode} or {@link WindowNode}.
+ */
+class PushDownFilter implements Rule {
+  @Override
+  public PlanNode apply(PlanNode node) {
+    if (!(node instanceof FilterNode)) {
+      return node;
+    }
+    FilterNode filter = (FilterNode) node;
+    PlanNode child = filter.getChild();
+    if (child instanceof FilterNode) {
+      return merge(filter, (FilterNode) child);
+    }
+    if (child instanceof ProjectNode) {
+      return pushBelowProject(filter, (ProjectNode) child);
+    }
+    if ((child instanceof SortNode && !((SortNode) child).hasLimit())
+        || child instanceof UnionAllNode
+        || child instanceof SetOperationNode
+        || child instanceof ExchangeNode) {
+      // These nodes have the same columns as each of their children
+      List<PlanNode> children =
+          child.getChildren().stream()
+              .map(
+                  grandchild ->
+                      (PlanNode)
+                          FilterNode.of(grandchild, filter.getMatcher(), filter.getAliases()))
+              .collect(Collectors.toList());
+      return child.withChildren(children);
+    }
+    if (child instanceof AggregateNode) {
+      return pushBelowAggregate(filter, (AggregateNode) child);
+    }
+    if (child instanceof JoinNode) {
+      return pushBelowJoin(filter, (JoinNode) child);
+    }
+    if (child instanceof ScanNode) {
+      return pushIntoScan(filter, (ScanNode) child);
+    }
+    return node;
+  }
+
+  private static PlanNode merge(FilterNode filter, FilterNode child) {
+    if (!filter.getAliases().isEmpty() || !child.getAliases().isEmpty()) {
+      return filter;
+    }
+    return FilterNode.of(
+        child.getChild(), AndMatcher.of(List.of(child.getMatcher(), filter.getMatcher())));
+  }
+
+  private static PlanNode pushIntoScan(FilterNode filter, ScanNode scan) {
+    if (!scan.getSource().canSkip()
+        || !filter.getAliases().isEmpty()
+        || filter.getMatcher() == scan.getFilter()) {
+      return filter;
+    }
+    // The filter stays, since the source may still produce rows which do not match
+    return filter.withChildren(List.of(scan.withFilter(filter.getMatcher())));
+  }
+
+  private static PlanNode pushBelowProject(FilterNode filter, ProjectNode project) {
+    // A projection never renames, but a conjunct reading a column it drops must stay above it, so
+    // that the column is still reported as not found.
+    List<RowMatcher> pushed = new ArrayList<>();
+    List<RowMatcher> kept = new ArrayList<>();
+    for (RowMatcher conjunct : Conjuncts.of(filter.getMatcher())) {
+      Map<String, String> resolved = resolve(filter, conjunct);
+      boolean projected = resolved != null && project.getColumns().containsAll(resolved.values());
+      (projected ? pushed : kept).add(conjunct);
+    }
+    if (pushed.isEmpty()) {
+      return filter;
+    }
+    PlanNode below = Conjuncts.filter(project.getChild(), pushed, filter);
+    return Conjuncts.filter(project.withChildren(List.of(below)), kept, filter);
+  }
+
+  private static PlanNode pushBelowAggregate(FilterNode filter, AggregateNode aggregate) {
+    List<RowMatcher> pushed = new ArrayList<>();
+    List<RowMatcher> kept = new ArrayList<>();
+    for (RowMatcher conjunct : Conjuncts.of(filter.getMatcher())) {
+      Map<String, String> resolved = resolve(filter, conjunct);
+      boolean groupingOnly =
+          resolved != null && aggregate.getGroupBy().containsAll(resolved.values());
+      (groupingOnly ? pushed : kept).add(conjunct);
+    }
+    if (pushed.isEmpty()) {
+      return filter;
+    }
+    PlanNode below = Conjuncts.filter(aggregate.getChild(), pushed, filter);
+    return Conjuncts.filter(aggregate.withChildren(List.of(below)), kept, filter);
+  }
+
+  private static PlanNode pushBelowJoin(FilterNode filter, JoinNode join) {
+    List<RowMatcher> left = new ArrayList<>();
+    Map<String, String> leftAliases = new HashMap<>();
+    List<RowMatcher> right = new ArrayList<>();
+    Map<String, String> rightAliases = new HashMap<>();
+    List<RowMatcher> kept = new ArrayList<>();
+    for (RowMatcher conjunct : Conjuncts.of(filter.getMatcher())) {
+      Map<String, String> resolved = resolve(filter, conjunct);
+      if (resolved == null) {
+        kept.add(conjunct);
+      } else if (resolved.values().stream().allMatch(join::isLeftColumn)) {
+        left.add(conjunct);
+        leftAliases.putAll(resolved);
+      } else if (resolved.values().stream()
+          .allMatch(column -> join.toRightColumn(column) != null)) {
+        right.add(conjunct);
+        resolved.forEach((name, column) -> rightAliases.put(name, join.toRightColumn(column)));
+      } else {
+        kept.add(conjunct);
+      }
+    }
+    if (left.isEmpty() && right.isEmpty()) {
+      return filter;
+    }
+    PlanNode newLeft =
+        left.isEmpty()
+            ? join.getLeft()
+            : FilterNode.of(join.getLeft(), AndMatcher.of(left), leftAliases);
+    PlanNode newRight =
+        right.isEmpty()
+            ? join.getRight()
+            : FilterNode.of(join.getRight(), AndMatcher.of(right), rightAliases);
+    return Conjuncts.filter(join.withChildren(List.of(newLeft, newRight)), kept, filter);
+  }
+
+  /**
+   * @return each column read by {@code conjunct} mapped to its name in the filter's child, or null
+   *     when unknown
+   */
+  static Map<String, String> resolve(FilterNode filter, RowMatcher conjunct) {
+    Set<String> columns = conjunct.getColumns();
+    if (columns == null) {
+      return null;
+    }
+    Map<String, String> resolved = new HashMap<>();
+    columns.forEach(column -> resolved.put(column, filter.resolve(column)));
+    return resolved;
+  }
+}
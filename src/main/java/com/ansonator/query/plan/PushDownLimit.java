@@ -0,0 +1,50 @@
+package com.ansonator.query.plan;
+
+import java.util.List;
+
+/**
+ * Moves limits towards the scans.
+ *
+ * <ul>
+ *   <li>Adjacent limits are combined.
+ *   <li>A limit moves below a projection.
+ *   <li>A limit above a sort becomes a top-N sort, which only keeps the first rows on the heap.
+ *   <li>A limit is copied into both inputs of a union.
+ * </ul>
+ */
+class PushDownLimit implements Rule {
+  @Override
+  public PlanNode apply(PlanNode node) {
+    if (!(node instanceof LimitNode)) {
+      return node;
+    }
+    long limit = ((LimitNode) node).getLimit();
+    PlanNode child = node.getChild();
+    if (child instanceof LimitNode) {
+      return new LimitNode(child.getChild(), Math.min(limit, ((LimitNode) child).getLimit()));
+    }
+    if (child instanceof ProjectNode) {
+      return child.withChildren(List.of(new LimitNode(child.getChild(), limit)));
+    }
+    if (child instanceof SortNode) {
+      SortNode sort = (SortNode) child;
+      return sort.hasLimit() && sort.getLimit() <= limit ? sort : sort.withLimit(limit);
+    }
+    if (child instanceof UnionAllNode) {
+      List<PlanNode> inputs = child.getChildren();
+      if (inputs.stream().allMatch(input -> isLimited(input, limit))) {
+        return node;
+      }
+      return node.withChildren(
+          List.of(
+              child.withChildren(
+                  List.of(
+                      new LimitNode(inputs.get(0), limit), new LimitNode(inputs.get(1), limit)))));
+    }
+    return node;
+  }
+
+  private static boolean isLimited(PlanNode node, long limit) {
+    return node instanceof LimitNode && ((LimitNode) node).getLimit() <= limit;
+  }
+}
@@ -0,0 +1,20 @@
+package com.ansonator.query.plan;
+
+import lombok.Getter;
+
+/**
+ * Thrown to the thread reading a query once it has been {@link QueryContext#cancel cancelled} or
+ * has passed its deadline.
+ */
+@Getter
+public class QueryCancelledException extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  /** True if the query was cancelled because it passed its deadline. */
+  private final boolean timedOut;
+
+  public QueryCancelledException(String message, boolean timedOut) {
+    super(message);
+    this.timedOut = timedOut;
+  }
+}
@@ -0,0 +1,149 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.row.Row;
+import com.ansonator.query.spill.RowSize;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * The memory budget, deadline and cancellation flag of one execution of a query.
+ *
+ * <p>Operators which hold rows in memory (hash and nested loop joins, aggregations, sorts and
+ * window functions over unsorted input) reserve each row's estimated size (see {@link RowSize})
+ * before keeping it, and fail with a {@link QueryMemoryExceededException} rather than exhaust the
+ * heap. Operators which are able to spill (sorts and set operations) are instead given a share of
+ * the remaining budget, beyond which they write to disk. Reservations are held until the execution
+ * ends, so a context must not be reused across executions.
+ *
+ * <p>Scans check for cancellation and the deadline every {@value #CHECK_INTERVAL} rows, as do joins
+ * for the rows they produce. Either raises a {@link QueryCancelledException} on the thread which
+ * reads the query.
+ */
+public class QueryContext {
+  static final int CHECK_INTERVAL = 1024;
+  /** Spilling operators are not given less than this. */
+  static final long MIN_SPILL_BUDGET = 256L << 10;
+
+  private final long memoryLimit;
+  private final long timeoutNanos;
+  // 0 when there is no deadline
+  private final long deadline;
+  private final AtomicLong reserved = new AtomicLong();
+  private volatile boolean cancelled = false;
+
+  /**
+   * @param memoryLimit maximum total size, in bytes, of the rows held by the query's operators
+   * @param timeout from now. {@link Duration#ZERO} for none.
+   */
+  public QueryContext(long memoryLimit, Duration timeout) {
+    if (memoryLimit <= 0 || timeout.isNegative()) {
+      throw new IllegalArgumentException(
+          String.format("Invalid memory limit [%d] or timeout [%s]", memoryLimit, timeout));
+    }
+    this.memoryLimit = memoryLimit;
+    this.timeoutNanos = timeout.toNanos();
+    this.deadline = timeout.isZero() ? 0 : Math.max(1, System.nanoTime() + timeoutNanos);
+  }
+
+  /**
+   * @return a context without a memory limit or a deadline, which can still be cancelled
+   */
+  public static QueryContext unlimited() {
+    return new QueryContext(Long.MAX_VALUE, Duration.ZERO);
+  }
+
+  public long getMemoryLimit() {
+    return memoryLimit;
+  }
+
+  public boolean isLimited() {
+    return memoryLimit != Long.MAX_VALUE;
+  }
+
+  /**
+   * @return the estimated size, in bytes, of the rows reserved so far
+   */
+  public long getReservedBytes() {
+    return reserved.get();
+  }
+
+  /**
+   * Stop the query. It fails with a {@link QueryCancelledException} the next time one of its
+   * operators checks. May be called from any thread.
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * @throws QueryCancelledException if the query was cancelled or is past its deadline
+   */
+  public void check() {
+    if (cancelled) {
+      throw new QueryCancelledException("Query was cancelled", false);
+    }
+    if (deadline != 0 && System.nanoTime() - deadline > 0) {
+      cancelled = true;
+      throw new QueryCancelledException(
+          String.format("Query exceeded its timeout of [%d] ms", timeoutNanos / 1_000_000), true);
+    }
+  }
+
+  /**
+   * @param operator describes the operator for error messages
+   * @throws QueryMemoryExceededException if {@code bytes} do not fit into the remaining budget
+   */
+  public void reserve(long bytes, String operator) {
+    long total = reserved.addAndGet(bytes);
+    if (total > memoryLimit) {
+      reserved.addAndGet(-bytes);
+      throw new QueryMemoryExceededException(operator, bytes, total - bytes, memoryLimit);
+    }
+  }
+
+  /**
+   * Reserve memory for an operator which spills to disk beyond its budget. Without a memory limit,
+   * the operator gets {@code requested}. Otherwise, it gets at most half of the remaining budget.
+   *
+   * @return the operator's budget
+   * @throws QueryMemoryExceededException if less than {@value #MIN_SPILL_BUDGET} bytes remain
+   */
+  public long reserveSpillable(long requested, String operator) {
+    if (!isLimited()) {
+      return requested;
+    }
+    long granted = Math.min(requested, (memoryLimit - reserved.get()) / 2);
+    if (granted < Math.min(requested, MIN_SPILL_BUDGET)) {
+      throw new QueryMemoryExceededException(
+          operator, Math.min(requested, MIN_SPILL_BUDGET), reserved.get(), memoryLimit);
+    }
+    reserve(granted, operator);
+    return granted;
+  }
+
+  /**
+   * @return {@code items}, checking for cancellation every {@value #CHECK_INTERVAL} items
+   */
+  public <T> Stream<T> checked(Stream<T> items) {
+    final long[] count = {0};
+    check();
+    return items.peek(
+        item -> {
+          if ((++count[0] & (CHECK_INTERVAL - 1)) == 0) {
+            check();
+          }
+        });
+  }
+
+  /**
+   * @return {@code rows}, reserving the size of each row as it passes
+   */
+  public Stream<Row> reserving(Stream<Row> rows, String operator) {
+    return rows.peek(row -> reserve(RowSize.estimate(row), operator));
+  }
+}
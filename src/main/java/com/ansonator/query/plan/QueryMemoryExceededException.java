@@ -0,0 +1,30 @@
+package com.ansonator.query.plan;
+
+import lombok.Getter;
+
+/**
+ * Thrown to the thread reading a query when one of its operators would exceed the query's memory
+ * limit. See {@link QueryContext}.
+ */
+@Getter
+public class QueryMemoryExceededException extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  private final String operator;
+  private final long requestedBytes;
+  private final long reservedBytes;
+  private final long memoryLimit;
+
+  public QueryMemoryExceededException(
+      String operator, long requestedBytes, long reservedBytes, long memoryLimit) {
+    super(
+        String.format(
+            "Operator [%s] cannot reserve [%d] bytes. The query has already reserved [%d] of its"
+                + " [%d] bytes",
+            operator, requestedBytes, reservedBytes, memoryLimit));
+    this.operator = operator;
+    this.requestedBytes = requestedBytes;
+    this.reservedBytes = reservedBytes;
+    this.memoryLimit = memoryLimit;
+  }
+}
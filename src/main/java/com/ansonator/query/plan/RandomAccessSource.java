@@ -0,0 +1,21 @@
+package com.ansonator.query.plan;
+
+import java.util.function.IntFunction;
+
+/**
+ * A {@link RowSource} whose rows can be read again by position, so that a plan may carry only a row
+ * id through its operators and read the other columns for the rows which remain. See {@link
+ * LateMaterialization}.
+ */
+public interface RandomAccessSource extends RowSource {
+  /**
+   * @param rowId a name which is not in {@link #getSchema}
+   * @return a source with the same rows, plus column {@code rowId} holding each row's position
+   */
+  RowSource withRowIds(String rowId);
+
+  /**
+   * @return the value of {@code column} by row position
+   */
+  IntFunction<Object> reader(String column);
+}
@@ -0,0 +1,40 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.row.Row;
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import java.util.stream.Stream;
+import lombok.Getter;
+
+/** Rows held in memory, e.g. a snapshot of a {@link com.ansonator.query.IncrementalView}. */
+public class RowListSource implements RowSource {
+  private final List<Row> rows;
+  @Getter private final Schema schema;
+
+  /**
+   * @param rows each laid out as {@code schema}. They are not copied.
+   */
+  public RowListSource(List<Row> rows, Schema schema) {
+    this.rows = ImmutableList.copyOf(rows);
+    this.schema = schema;
+  }
+
+  @Override
+  public Stream<Row> open(List<String> columns) {
+    if (columns.equals(schema.getNames())) {
+      return rows.stream().map(row -> new Row(row.vals.clone()));
+    }
+    final int[] indexes = schema.indexesOf(columns);
+    return rows.stream().map(row -> new Row(row, indexes));
+  }
+
+  @Override
+  public long estimateRows() {
+    return rows.size();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Rows(%d)", rows.size());
+  }
+}
@@ -0,0 +1,57 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.row.Row;
+import com.ansonator.query.row.RowMatcher;
+import com.ansonator.query.stats.TableStatistics;
+import java.util.List;
+import java.util.stream.Stream;
+
+/** The leaf of a plan. See {@link ScanNode}. */
+public interface RowSource {
+  /**
+   * @return every column this source is able to produce.
+   */
+  Schema getSchema();
+
+  /**
+   * Produce rows containing only the requested columns, in the requested order. Sources should
+   * avoid the cost of reading columns which were not requested.
+   *
+   * @param columns a subset of {@link #getSchema}
+   */
+  Stream<Row> open(List<String> columns);
+
+  /**
+   * @return true if {@link #open(List, RowMatcher)} is able to skip rows which do not match a
+   *     filter
+   */
+  default boolean canSkip() {
+    return false;
+  }
+
+  /**
+   * Like {@link #open(List)}, but rows which cannot match {@code filter} may be left out, e.g. by
+   * skipping whole blocks of storage. Rows which are produced may still not match, so callers apply
+   * the filter themselves.
+   *
+   * @param filter reads only columns of {@link #getSchema}
+   */
+  default Stream<Row> open(List<String> columns, RowMatcher filter) {
+    return open(columns);
+  }
+
+  /**
+   * @return the number of rows this source will produce, or -1 when unknown
+   */
+  default long estimateRows() {
+    return -1;
+  }
+
+  /**
+   * @return statistics of this source's columns, or null when unknown. They may be filled in while
+   *     the source is read.
+   */
+  default TableStatistics getStatistics() {
+    return null;
+  }
+}
@@ -0,0 +1,9 @@
+package com.ansonator.query.plan;
+
+/** A local rewrite applied by the {@link Optimizer} to every node of a plan. */
+interface Rule {
+  /**
+   * @return the rewritten node, or {@code node} itself when this rule does not apply
+   */
+  PlanNode apply(PlanNode node);
+}
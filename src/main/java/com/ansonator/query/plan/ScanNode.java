@@ -0,0 +1,70 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.row.RowMatcher;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import lombok.Getter;
+
+/**
+ * Reads a {@link RowSource}, limited to the columns which the rest of the plan needs, and skipping
+ * rows which cannot match {@link #getFilter} where the source is able to.
+ */
+@Getter
+public class ScanNode extends PlanNode {
+  private final RowSource source;
+  // A hint, or null. A FilterNode above this node still applies it to every row.
+  private final RowMatcher filter;
+
+  private ScanNode(RowSource source, List<String> columns, RowMatcher filter) {
+    super(Schema.of(columns));
+    this.source = source;
+    this.filter = filter;
+  }
+
+  public static ScanNode of(RowSource source) {
+    return new ScanNode(source, source.getSchema().getNames(), null);
+  }
+
+  /**
+   * @param columns a subset of the source's columns. They are kept in source order.
+   */
+  public ScanNode withColumns(Collection<String> columns) {
+    List<String> kept =
+        source.getSchema().getNames().stream()
+            .filter(columns::contains)
+            .collect(Collectors.toList());
+    return kept.equals(getSchema().getNames()) ? this : new ScanNode(source, kept, filter);
+  }
+
+  /**
+   * @param source has the same schema as this node's source
+   */
+  public ScanNode withSource(RowSource source) {
+    return new ScanNode(source, getSchema().getNames(), filter);
+  }
+
+  /**
+   * @param filter see {@link RowSource#open(List, RowMatcher)}
+   */
+  public ScanNode withFilter(RowMatcher filter) {
+    return new ScanNode(source, getSchema().getNames(), filter);
+  }
+
+  @Override
+  public PlanNode withChildren(List<PlanNode> children) {
+    return this;
+  }
+
+  @Override
+  public <R> R accept(PlanVisitor<R> visitor) {
+    return visitor.visitScan(this);
+  }
+
+  @Override
+  public String toString() {
+    return filter == null
+        ? String.format("Scan[%s %s]", source, getSchema())
+        : String.format("Scan[%s %s skip unless %s]", source, getSchema(), filter);
+  }
+}
@@ -0,0 +1,84 @@
+package com.ansonator.query.plan;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ordered column names produced by a {@link PlanNode}. A column's index in each {@link
+ * com.ansonator.query.row.Row} is its position in this list.
+ */
+public final class Schema {
+  private final List<String> names;
+  private final Map<String, Integer> indexes;
+
+  private Schema(List<String> names) {
+    this.names = ImmutableList.copyOf(names);
+    Map<String, Integer> indexes = new LinkedHashMap<>();
+    for (String name : this.names) {
+      if (indexes.put(name, indexes.size()) != null) {
+        throw new IllegalArgumentException(String.format("Column [%s] already exists", name));
+      }
+    }
+    this.indexes = ImmutableMap.copyOf(indexes);
+  }
+
+  public static Schema of(List<String> names) {
+    return new Schema(names);
+  }
+
+  public List<String> getNames() {
+    return names;
+  }
+
+  public int size() {
+    return names.size();
+  }
+
+  public boolean contains(String column) {
+    return indexes.containsKey(column);
+  }
+
+  public int indexOf(String column) {
+    Integer index = indexes.get(column);
+    if (index == null) {
+      throw new IllegalArgumentException(String.format("Column [%s] not found", column));
+    }
+    return index;
+  }
+
+  public int[] indexesOf(List<String> columns) {
+    return columns.stream().mapToInt(this::indexOf).toArray();
+  }
+
+  /**
+   * @return an unmodifiable column to index mapping, in column order.
+   */
+  public Map<String, Integer> asMap() {
+    return indexes;
+  }
+
+  /**
+   * @return a modifiable copy of the column to index mapping, in column order.
+   */
+  public LinkedHashMap<String, Integer> toMap() {
+    return new LinkedHashMap<>(indexes);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof Schema && names.equals(((Schema) obj).names);
+  }
+
+  @Override
+  public int hashCode() {
+    return names.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return names.toString();
+  }
+}
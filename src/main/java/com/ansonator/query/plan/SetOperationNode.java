@@ -0,0 +1,52 @@
+package com.ansonator.query.plan;
+
+import java.util.List;
+import lombok.Getter;
+
+/** See {@link com.ansonator.query.set.HashSetOperator}. */
+@Getter
+public class SetOperationNode extends PlanNode {
+  public enum Operation {
+    /** Has no right input. */
+    DISTINCT,
+    INTERSECT,
+    EXCEPT
+  }
+
+  private final Operation operation;
+  // Keep duplicates. Ignored for DISTINCT.
+  private final boolean all;
+  private final long memoryBudget;
+
+  private SetOperationNode(
+      Operation operation, boolean all, long memoryBudget, PlanNode... children) {
+    super(children[0].getSchema(), children);
+    this.operation = operation;
+    this.all = all;
+    this.memoryBudget = memoryBudget;
+  }
+
+  public static SetOperationNode distinct(PlanNode child, long memoryBudget) {
+    return new SetOperationNode(Operation.DISTINCT, false, memoryBudget, child);
+  }
+
+  public static SetOperationNode of(
+      Operation operation, PlanNode left, PlanNode right, boolean all, long memoryBudget) {
+    return new SetOperationNode(operation, all, memoryBudget, left, right);
+  }
+
+  @Override
+  public PlanNode withChildren(List<PlanNode> children) {
+    return new SetOperationNode(operation, all, memoryBudget, children.toArray(new PlanNode[0]));
+  }
+
+  @Override
+  public <R> R accept(PlanVisitor<R> visitor) {
+    return visitor.visitSetOperation(this);
+  }
+
+  @Override
+  public String toString() {
+    return operation + (all ? " ALL" : "");
+  }
+}
@@ -0,0 +1,93 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.row.Row;
+import com.ansonator.query.sort.SortKey;
+import com.google.common.collect.ImmutableList;
+import java.util.Comparator;
+import java.util.List;
+import lombok.Getter;
+
+/**
+ * Sorts by either {@link SortKey}s or an opaque comparator. See {@link
+ * com.ansonator.query.sort.InMemorySorter} and {@link com.ansonator.query.sort.ExternalSorter}.
+ */
+@Getter
+public class SortNode extends PlanNode {
+  private final List<SortKey> keys;
+  private final Comparator<Row> comparator;
+  private final boolean normalized;
+  // Zero when the sort is done in memory
+  private final long memoryBudget;
+  // Negative when all rows are returned. Otherwise, only the first limit rows are kept.
+  private final long limit;
+
+  private SortNode(
+      PlanNode child,
+      List<SortKey> keys,
+      Comparator<Row> comparator,
+      boolean normalized,
+      long memoryBudget,
+      long limit) {
+    super(child.getSchema(), child);
+    this.keys = keys;
+    this.comparator = comparator;
+    this.normalized = normalized;
+    this.memoryBudget = memoryBudget;
+    this.limit = limit;
+    if (keys != null) {
+      keys.forEach(key -> child.getSchema().indexOf(key.getColumn()));
+    }
+  }
+
+  /**
+   * @param memoryBudget zero to sort in memory
+   */
+  public static SortNode byKeys(
+      PlanNode child, List<SortKey> keys, boolean normalized, long memoryBudget) {
+    return new SortNode(child, ImmutableList.copyOf(keys), null, normalized, memoryBudget, -1);
+  }
+
+  /**
+   * @param memoryBudget zero to sort in memory
+   */
+  public static SortNode byComparator(
+      PlanNode child, Comparator<Row> comparator, long memoryBudget) {
+    return new SortNode(child, null, comparator, false, memoryBudget, -1);
+  }
+
+  public SortNode withLimit(long limit) {
+    return new SortNode(getChild(), keys, comparator, normalized, memoryBudget, limit);
+  }
+
+  public boolean hasLimit() {
+    return limit >= 0;
+  }
+
+  @Override
+  public List<SortKey> getSortedBy() {
+    return keys == null ? List.of() : keys;
+  }
+
+  @Override
+  public PlanNode withChildren(List<PlanNode> children) {
+    return new SortNode(children.get(0), keys, comparator, normalized, memoryBudget, limit);
+  }
+
+  @Override
+  public <R> R accept(PlanVisitor<R> visitor) {
+    return visitor.visitSort(this);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder description = new StringBuilder(hasLimit() ? "TopN[" + limit + ", " : "Sort[");
+    description.append(keys == null ? "comparator" : keys.toString());
+    if (normalized) {
+      description.append(", normalized");
+    }
+    if (memoryBudget > 0) {
+      description.append(", external ").append(memoryBudget).append(" bytes");
+    }
+    return description.append(']').toString();
+  }
+}
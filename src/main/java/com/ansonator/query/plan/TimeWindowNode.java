@@ -0,0 +1,57 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.window.TimeWindows;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import lombok.Getter;
+
+/**
+ * Merges the rows of each group per event-time window, and appends the window's start and end. See
+ * {@link com.ansonator.query.window.TimeWindowOperator}.
+ */
+@Getter
+public class TimeWindowNode extends PlanNode {
+  private final TimeWindows windows;
+  private final List<String> groupBy;
+  private final Map<String, BinaryOperator<Object>> accumulators;
+
+  public TimeWindowNode(
+      PlanNode child,
+      TimeWindows windows,
+      List<String> groupBy,
+      Map<String, BinaryOperator<Object>> accumulators) {
+    super(schemaOf(child), child);
+    this.windows = windows;
+    this.groupBy = ImmutableList.copyOf(groupBy);
+    this.accumulators = ImmutableMap.copyOf(accumulators);
+    groupBy.forEach(child.getSchema()::indexOf);
+    child.getSchema().indexOf(windows.getTimeColumn());
+  }
+
+  private static Schema schemaOf(PlanNode child) {
+    List<String> names = new ArrayList<>(child.getSchema().getNames());
+    names.add(TimeWindows.WINDOW_START);
+    names.add(TimeWindows.WINDOW_END);
+    return Schema.of(names);
+  }
+
+  @Override
+  public PlanNode withChildren(List<PlanNode> children) {
+    return new TimeWindowNode(children.get(0), windows, groupBy, accumulators);
+  }
+
+  @Override
+  public <R> R accept(PlanVisitor<R> visitor) {
+    return visitor.visitTimeWindow(this);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "TimeWindow[%s by %s, accumulate %s]", windows, groupBy, accumulators.keySet());
+  }
+}
@@ -0,0 +1,25 @@
+package com.ansonator.query.plan;
+
+import java.util.List;
+
+/** Rows of the left input followed by rows of the right input. Both have the same columns. */
+public class UnionAllNode extends PlanNode {
+  public UnionAllNode(PlanNode left, PlanNode right) {
+    super(left.getSchema(), left, right);
+  }
+
+  @Override
+  public PlanNode withChildren(List<PlanNode> children) {
+    return new UnionAllNode(children.get(0), children.get(1));
+  }
+
+  @Override
+  public <R> R accept(PlanVisitor<R> visitor) {
+    return visitor.visitUnionAll(this);
+  }
+
+  @Override
+  public String toString() {
+    return "UnionAll";
+  }
+}
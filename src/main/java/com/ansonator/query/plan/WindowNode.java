@@ -0,0 +1,58 @@
+package com.ansonator.query.plan;
+
+import com.ansonator.query.sort.SortKey;
+import com.ansonator.query.window.WindowFunction;
+import com.ansonator.query.window.WindowSpec;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+
+/** Appends a column per window function. See {@link com.ansonator.query.window.WindowOperator}. */
+@Getter
+public class WindowNode extends PlanNode {
+  private final WindowSpec spec;
+  private final List<WindowFunction> functions;
+
+  public WindowNode(PlanNode child, WindowSpec spec, List<WindowFunction> functions) {
+    super(schemaOf(child, functions), child);
+    this.spec = spec;
+    this.functions = ImmutableList.copyOf(functions);
+  }
+
+  private static Schema schemaOf(PlanNode child, List<WindowFunction> functions) {
+    List<String> names = new ArrayList<>(child.getSchema().getNames());
+    functions.forEach(function -> names.add(function.getName()));
+    return Schema.of(names);
+  }
+
+  /**
+   * @return true if the child's rows must be sorted before evaluation
+   */
+  public boolean requiresSort() {
+    return !spec.isSatisfiedBy(getChild().getSortedBy());
+  }
+
+  @Override
+  public List<SortKey> getSortedBy() {
+    return requiresSort() ? spec.getSortKeys() : getChild().getSortedBy();
+  }
+
+  @Override
+  public PlanNode withChildren(List<PlanNode> children) {
+    return new WindowNode(children.get(0), spec, functions);
+  }
+
+  @Override
+  public <R> R accept(PlanVisitor<R> visitor) {
+    return visitor.visitWindow(this);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "Window[%s %s]",
+        spec,
+        functions.stream().map(WindowFunction::getName).collect(ImmutableList.toImmutableList()));
+  }
+}
@@ -0,0 +1,52 @@
+package com.ansonator.query.row;
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import lombok.Getter;
+
+/** Short-circuiting logical AND of several {@link RowMatcher}s. See {@link RowMatcher#and}. */
+@Getter
+public class AndMatcher implements RowMatcher {
+  private final List<RowMatcher> conjuncts;
+
+  private AndMatcher(List<RowMatcher> conjuncts) {
+    this.conjuncts = conjuncts;
+  }
+
+  /** Nested {@code AndMatcher}s are flattened so that each conjunct can be inspected on its own. */
+  public static RowMatcher of(List<RowMatcher> matchers) {
+    ImmutableList.Builder<RowMatcher> conjuncts = ImmutableList.builder();
+    for (RowMatcher matcher : matchers) {
+      if (matcher instanceof AndMatcher) {
+        conjuncts.addAll(((AndMatcher) matcher).conjuncts);
+      } else {
+        conjuncts.add(matcher);
+      }
+    }
+    List<RowMatcher> flattened = conjuncts.build();
+    return flattened.size() == 1 ? flattened.get(0) : new AndMatcher(flattened);
+  }
+
+  @Override
+  public boolean test(Row row, Map<String, Integer> columnByIndex) {
+    for (RowMatcher conjunct : conjuncts) {
+      if (!conjunct.test(row, columnByIndex)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public Set<String> getColumns() {
+    return RowMatcher.union(conjuncts);
+  }
+
+  @Override
+  public String toString() {
+    return conjuncts.stream().map(Object::toString).collect(Collectors.joining(" AND ", "(", ")"));
+  }
+}
@@ -1,6 +1,8 @@
 package com.ansonator.query.row;
 
+import com.google.common.collect.ImmutableSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.BiPredicate;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
@@ -10,6 +12,12 @@ import lombok.Setter;
 @Setter
 @RequiredArgsConstructor(staticName = "of")
 public class BiPredicateMatcher<T1, T2> implements RowMatcher {
+  /**
+   * Column equality. Matchers built with this predicate are recognized by the query planner as
+   * equi-join conditions.
+   */
+  public static final BiPredicate<Object, Object> EQUALS = (a, b) -> a.equals(b);
+
   private final String name1;
   private final String name2;
   private final BiPredicate<T1, T2> pred;
@@ -27,4 +35,18 @@ public class BiPredicateMatcher<T1, T2> implements RowMatcher {
     }
     return pred.test((T1) row.vals[index1], (T2) row.vals[index2]);
   }
+
+  public boolean isEquality() {
+    return pred == EQUALS;
+  }
+
+  @Override
+  public Set<String> getColumns() {
+    return ImmutableSet.of(name1, name2);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(isEquality() ? "%s = %s" : "predicate(%s, %s)", name1, name2);
+  }
 }
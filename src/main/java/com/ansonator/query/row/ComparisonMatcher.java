@@ -0,0 +1,62 @@
+package com.ansonator.query.row;
+
+import com.ansonator.query.sort.RowComparators;
+import com.ansonator.query.vector.Comparison;
+import java.util.Map;
+import java.util.Set;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Compares a column to a constant. {@link Comparison#EQ} and {@link Comparison#NE} use {@code
+ * equals}. The other comparisons order values by type, as {@link RowComparators#compareValues}
+ * does. A null value never matches. The value may be a {@link Parameter}, which must be bound
+ * before the matcher is evaluated.
+ *
+ * <p>Unlike a {@link PredicateMatcher}, the batch executor can evaluate this over a numeric column
+ * with SIMD kernels (see {@link com.ansonator.query.vector.NumericKernels}).
+ */
+@Getter
+@RequiredArgsConstructor(staticName = "of")
+public class ComparisonMatcher implements RowMatcher {
+  private final String name;
+  private final Comparison comparison;
+  private final Object value;
+
+  @Override
+  public boolean test(Row row, Map<String, Integer> columnByIndex) {
+    final Integer index = columnByIndex.get(name);
+    if (index == null) {
+      throw new IllegalArgumentException(String.format("Column [%s] not found", name));
+    }
+    return matches(row.vals[index]);
+  }
+
+  public boolean matches(Object val) {
+    if (val == null || value == null) {
+      return false;
+    }
+    if (value instanceof Parameter) {
+      throw new IllegalStateException(
+          String.format("Parameter [%s] is not bound. Use Query.prepare", value));
+    }
+    switch (comparison) {
+      case EQ:
+        return val.equals(value);
+      case NE:
+        return !val.equals(value);
+      default:
+        return comparison.test(RowComparators.compareValues(val, value));
+    }
+  }
+
+  @Override
+  public Set<String> getColumns() {
+    return Set.of(name);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s %s %s", name, comparison, value);
+  }
+}
@@ -0,0 +1,28 @@
+package com.ansonator.query.row;
+
+import java.util.Map;
+import java.util.Set;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/** Logical negation of a {@link RowMatcher}. See {@link RowMatcher#negate}. */
+@Getter
+@RequiredArgsConstructor(staticName = "of")
+public class NotMatcher implements RowMatcher {
+  private final RowMatcher matcher;
+
+  @Override
+  public boolean test(Row row, Map<String, Integer> columnByIndex) {
+    return !matcher.test(row, columnByIndex);
+  }
+
+  @Override
+  public Set<String> getColumns() {
+    return matcher.getColumns();
+  }
+
+  @Override
+  public String toString() {
+    return "NOT " + matcher;
+  }
+}
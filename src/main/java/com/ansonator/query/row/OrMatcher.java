@@ -0,0 +1,51 @@
+package com.ansonator.query.row;
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import lombok.Getter;
+
+/** Short-circuiting logical OR of several {@link RowMatcher}s. See {@link RowMatcher#or}. */
+@Getter
+public class OrMatcher implements RowMatcher {
+  private final List<RowMatcher> disjuncts;
+
+  private OrMatcher(List<RowMatcher> disjuncts) {
+    this.disjuncts = disjuncts;
+  }
+
+  public static RowMatcher of(List<RowMatcher> matchers) {
+    ImmutableList.Builder<RowMatcher> disjuncts = ImmutableList.builder();
+    for (RowMatcher matcher : matchers) {
+      if (matcher instanceof OrMatcher) {
+        disjuncts.addAll(((OrMatcher) matcher).disjuncts);
+      } else {
+        disjuncts.add(matcher);
+      }
+    }
+    List<RowMatcher> flattened = disjuncts.build();
+    return flattened.size() == 1 ? flattened.get(0) : new OrMatcher(flattened);
+  }
+
+  @Override
+  public boolean test(Row row, Map<String, Integer> columnByIndex) {
+    for (RowMatcher disjunct : disjuncts) {
+      if (disjunct.test(row, columnByIndex)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public Set<String> getColumns() {
+    return RowMatcher.union(disjuncts);
+  }
+
+  @Override
+  public String toString() {
+    return disjuncts.stream().map(Object::toString).collect(Collectors.joining(" OR ", "(", ")"));
+  }
+}
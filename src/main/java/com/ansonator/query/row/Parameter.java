@@ -0,0 +1,80 @@
+package com.ansonator.query.row;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * A placeholder for the value of a {@link ComparisonMatcher}, which is supplied each time a {@link
+ * com.ansonator.query.PreparedQuery} is executed. See {@link com.ansonator.query.Query#param}.
+ */
+@Getter
+@EqualsAndHashCode
+@RequiredArgsConstructor(staticName = "of")
+public class Parameter {
+  private final String name;
+
+  /**
+   * @return the names of the parameters which {@code matcher} compares to
+   */
+  public static Set<String> namesOf(RowMatcher matcher) {
+    Set<String> names = new LinkedHashSet<>();
+    collect(matcher, names);
+    return names;
+  }
+
+  private static void collect(RowMatcher matcher, Set<String> names) {
+    if (matcher instanceof ComparisonMatcher) {
+      Object value = ((ComparisonMatcher) matcher).getValue();
+      if (value instanceof Parameter) {
+        names.add(((Parameter) value).getName());
+      }
+    } else if (matcher instanceof AndMatcher) {
+      ((AndMatcher) matcher).getConjuncts().forEach(m -> collect(m, names));
+    } else if (matcher instanceof OrMatcher) {
+      ((OrMatcher) matcher).getDisjuncts().forEach(m -> collect(m, names));
+    } else if (matcher instanceof NotMatcher) {
+      collect(((NotMatcher) matcher).getMatcher(), names);
+    }
+  }
+
+  /**
+   * @param values by parameter name
+   * @return {@code matcher}, with each parameter replaced by its value
+   */
+  public static RowMatcher bind(RowMatcher matcher, Map<String, ?> values) {
+    if (matcher instanceof ComparisonMatcher) {
+      ComparisonMatcher comparison = (ComparisonMatcher) matcher;
+      if (!(comparison.getValue() instanceof Parameter)) {
+        return matcher;
+      }
+      String name = ((Parameter) comparison.getValue()).getName();
+      if (!values.containsKey(name)) {
+        throw new IllegalArgumentException(String.format("Parameter [%s] is not bound", name));
+      }
+      return ComparisonMatcher.of(
+          comparison.getName(), comparison.getComparison(), values.get(name));
+    } else if (matcher instanceof AndMatcher) {
+      return AndMatcher.of(bind(((AndMatcher) matcher).getConjuncts(), values));
+    } else if (matcher instanceof OrMatcher) {
+      return OrMatcher.of(bind(((OrMatcher) matcher).getDisjuncts(), values));
+    } else if (matcher instanceof NotMatcher) {
+      return NotMatcher.of(bind(((NotMatcher) matcher).getMatcher(), values));
+    }
+    return matcher;
+  }
+
+  private static List<RowMatcher> bind(List<RowMatcher> matchers, Map<String, ?> values) {
+    return matchers.stream().map(m -> bind(m, values)).collect(Collectors.toList());
+  }
+
+  @Override
+  public String toString() {
+    return ":" + name;
+  }
+}
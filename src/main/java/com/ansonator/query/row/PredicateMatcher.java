@@ -1,6 +1,7 @@
 package com.ansonator.query.row;
 
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Predicate;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -22,4 +23,14 @@ public class PredicateMatcher<T> implements RowMatcher {
     }
     return pred.test((T) row.vals[index]);
   }
+
+  @Override
+  public Set<String> getColumns() {
+    return Set.of(name);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("predicate(%s)", name);
+  }
 }
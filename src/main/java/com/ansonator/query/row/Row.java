@@ -1,5 +1,6 @@
 package com.ansonator.query.row;
 
+import com.ansonator.query.cell.NumericAggregate;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.function.BinaryOperator;
@@ -41,6 +42,8 @@ public class Row {
           accumulators) { // TODO: this should not be used outside this project
     if (vals == null) {
       vals = other.vals;
+      accumulators.forEach(
+          (i, accumulator) -> vals[i] = NumericAggregate.first(accumulator, vals[i]));
     } else if (vals.length != other.vals.length) {
       throw new IllegalArgumentException("Cannot merge rows of different size");
     } else {
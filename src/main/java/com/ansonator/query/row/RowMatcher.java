@@ -1,12 +1,26 @@
 package com.ansonator.query.row;
 
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 @FunctionalInterface
 public interface RowMatcher {
   boolean test(Row row, Map<String, Integer> columnByIndex);
 
+  /**
+   * The columns this matcher reads. The query planner uses these to decide where a filter may be
+   * evaluated (see {@link com.ansonator.query.plan.Optimizer}).
+   *
+   * @return the column names, or null when unknown (e.g., for a lambda). Such a matcher is never
+   *     moved.
+   */
+  default Set<String> getColumns() {
+    return null;
+  }
+
   /**
    * Returns a composed predicate that represents a short-circuiting logical AND of this predicate
    * and another. When evaluating the composed predicate, if this predicate is {@code false}, then
@@ -23,8 +37,7 @@ public interface RowMatcher {
    */
   default RowMatcher and(RowMatcher other) {
     Objects.requireNonNull(other);
-    return (Row row, Map<String, Integer> columnByIndex) ->
-        test(row, columnByIndex) && other.test(row, columnByIndex);
+    return AndMatcher.of(List.of(this, other));
   }
 
   /**
@@ -33,7 +46,7 @@ public interface RowMatcher {
    * @return a predicate that represents the logical negation of this predicate
    */
   default RowMatcher negate() {
-    return (Row row, Map<String, Integer> columnByIndex) -> !test(row, columnByIndex);
+    return NotMatcher.of(this);
   }
 
   /**
@@ -52,8 +65,21 @@ public interface RowMatcher {
    */
   default RowMatcher or(RowMatcher other) {
     Objects.requireNonNull(other);
-    Objects.requireNonNull(other);
-    return (Row row, Map<String, Integer> columnByIndex) ->
-        test(row, columnByIndex) || other.test(row, columnByIndex);
+    return OrMatcher.of(List.of(this, other));
+  }
+
+  /**
+   * @return the union of each matcher's {@link #getColumns}, or null if any of them is unknown.
+   */
+  static Set<String> union(List<RowMatcher> matchers) {
+    Set<String> columns = new HashSet<>();
+    for (RowMatcher matcher : matchers) {
+      Set<String> other = matcher.getColumns();
+      if (other == null) {
+        return null;
+      }
+      columns.addAll(other);
+    }
+    return columns;
   }
 }
@@ -0,0 +1,277 @@
+package com.ansonator.query.set;
+
+import com.ansonator.query.row.Row;
+import com.ansonator.query.spill.SpillFile;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Hash based set operations on {@code Stream<Row>} with a memory budget.
+ *
+ * <p>Each operation has a build input, which is loaded into a {@link RowMultiset}, and a probe
+ * input, which is streamed against it. For {@link #distinct}, the build input is empty and every
+ * probed row is added to the table as it is emitted. For {@link #intersect} and {@link #except},
+ * the right input is built and the left input is probed.
+ *
+ * <p>Whenever the table's estimated size exceeds the memory budget, the table and the remainder of
+ * both inputs are split into 16 partitions by {@link RowFingerprint} and written to spill files.
+ * Equal rows always land in the same partition, so each partition is then processed on its own,
+ * splitting again if necessary. Output order follows the probe input until the first spill. After
+ * that, rows are returned partition by partition.
+ *
+ * <p>All values must be encodable by {@link com.ansonator.query.spill.RowCodec} for a spill to
+ * succeed.
+ */
+@Log4j2
+public class HashSetOperator {
+  public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+  private static final int PARTITION_BITS = 4;
+  private static final int PARTITIONS = 1 << PARTITION_BITS;
+  private static final int MAX_LEVEL = Long.SIZE / PARTITION_BITS;
+
+  @Getter private final long memoryBudget;
+  private final Path tempDir;
+
+  private HashSetOperator(long memoryBudget, Path tempDir) {
+    if (memoryBudget <= 0) {
+      throw new IllegalArgumentException(
+          String.format("Memory budget must be positive but was [%d]", memoryBudget));
+    }
+    this.memoryBudget = memoryBudget;
+    this.tempDir = tempDir;
+  }
+
+  public static HashSetOperator of(long memoryBudget) {
+    return of(memoryBudget, Paths.get(System.getProperty("java.io.tmpdir")));
+  }
+
+  public static HashSetOperator of(long memoryBudget, Path tempDir) {
+    return new HashSetOperator(memoryBudget, tempDir);
+  }
+
+  /**
+   * @return the first occurrence of each distinct row
+   */
+  public Stream<Row> distinct(Stream<Row> input) {
+    return stream(
+        Stream.empty(), input, (table, row, fingerprint) -> table.add(row, fingerprint, 1) < 0);
+  }
+
+  /**
+   * @param all when true, a row which occurs m times in {@code left} and n times in {@code right}
+   *     is returned min(m, n) times. Otherwise, the result is {@link #distinct}.
+   * @return rows of {@code left} which also occur in {@code right}
+   */
+  public Stream<Row> intersect(Stream<Row> left, Stream<Row> right, boolean all) {
+    if (all) {
+      return stream(right, left, RowMultiset::decrement);
+    }
+    return distinct(
+        stream(right, left, (table, row, fingerprint) -> table.count(row, fingerprint) > 0));
+  }
+
+  /**
+   * @param all when true, a row which occurs m times in {@code left} and n times in {@code right}
+   *     is returned max(m - n, 0) times. Otherwise, the result is {@link #distinct}.
+   * @return rows of {@code left} which do not occur in {@code right}
+   */
+  public Stream<Row> except(Stream<Row> left, Stream<Row> right, boolean all) {
+    if (all) {
+      return stream(right, left, (table, row, fingerprint) -> !table.decrement(row, fingerprint));
+    }
+    return distinct(
+        stream(right, left, (table, row, fingerprint) -> table.count(row, fingerprint) <= 0));
+  }
+
+  private Stream<Row> stream(Stream<Row> build, Stream<Row> probe, Probe action) {
+    Operation operation = new Operation(build, probe, action);
+    return StreamSupport.stream(() -> operation, Spliterator.ORDERED, false)
+        .onClose(operation::close)
+        .onClose(build::close)
+        .onClose(probe::close);
+  }
+
+  /** Decides whether a probed row is emitted. It may update the table. */
+  @FunctionalInterface
+  private interface Probe {
+    boolean test(RowMultiset table, Row row, long fingerprint);
+  }
+
+  /** A build and probe input along with the spill files backing them, if any. */
+  private static class Task {
+    private final Iterator<Row> build;
+    private final Iterator<Row> probe;
+    private final int level;
+    private final SpillFile[] files;
+
+    private Task(Iterator<Row> build, Iterator<Row> probe, int level, SpillFile... files) {
+      this.build = build;
+      this.probe = probe;
+      this.level = level;
+      this.files = files;
+    }
+
+    private void close() {
+      for (SpillFile file : files) {
+        if (file != null) {
+          file.close();
+        }
+      }
+    }
+  }
+
+  /** The state of a single set operation. */
+  private class Operation implements Spliterator<Row> {
+    private final Stream<Row> buildInput;
+    private final Stream<Row> probeInput;
+    private final Probe action;
+    private final RowMultiset table = new RowMultiset();
+    private final Deque<Task> tasks = new ArrayDeque<>();
+    private Task current = null;
+    private boolean started = false;
+
+    private Operation(Stream<Row> buildInput, Stream<Row> probeInput, Probe action) {
+      this.buildInput = buildInput;
+      this.probeInput = probeInput;
+      this.action = action;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Row> consumer) {
+      if (!started) {
+        started = true;
+        tasks.add(new Task(buildInput.iterator(), probeInput.iterator(), 0));
+      }
+      while (true) {
+        if (current == null) {
+          current = tasks.poll();
+          if (current == null) {
+            return false;
+          }
+          table.clear();
+          if (!build(current)) {
+            current = null;
+            continue;
+          }
+        }
+        if (!current.probe.hasNext()) {
+          current.close();
+          current = null;
+          continue;
+        }
+        Row row = current.probe.next();
+        boolean emit = action.test(table, row, RowFingerprint.of(row));
+        if (mustSpill(current)) {
+          spill(current);
+          current = null;
+        }
+        if (emit) {
+          consumer.accept(row);
+          return true;
+        }
+      }
+    }
+
+    /**
+     * @return false if the task was spilled into partitions instead
+     */
+    private boolean build(Task task) {
+      while (task.build.hasNext()) {
+        Row row = task.build.next();
+        table.add(row, RowFingerprint.of(row), 1);
+        if (mustSpill(task)) {
+          spill(task);
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private boolean mustSpill(Task task) {
+      if (table.estimatedBytes() <= memoryBudget) {
+        return false;
+      }
+      if (task.level >= MAX_LEVEL) {
+        log.warn(
+            "Exceeded memory budget of {} bytes but rows can not be partitioned any further",
+            memoryBudget);
+        return false;
+      }
+      return true;
+    }
+
+    /** Splits the table and the rest of the task's inputs into partitions. */
+    private void spill(Task task) {
+      int level = task.level + 1;
+      SpillFile[] build = new SpillFile[PARTITIONS];
+      SpillFile[] probe = new SpillFile[PARTITIONS];
+      table.forEach(
+          (row, count) -> {
+            SpillFile file = partition(build, row, level);
+            for (int i = 0; i < count; i++) {
+              file.write(row);
+            }
+          });
+      table.clear();
+      task.build.forEachRemaining(row -> partition(build, row, level).write(row));
+      task.probe.forEachRemaining(row -> partition(probe, row, level).write(row));
+      task.close();
+      log.debug("Spilled set operation into {} partitions at level {}", PARTITIONS, level);
+      for (int i = PARTITIONS - 1; i >= 0; i--) {
+        if (probe[i] != null) {
+          tasks.push(new Task(iterator(build[i]), iterator(probe[i]), level, build[i], probe[i]));
+        } else if (build[i] != null) {
+          build[i].close();
+        }
+      }
+    }
+
+    private SpillFile partition(SpillFile[] files, Row row, int level) {
+      long fingerprint = RowFingerprint.of(row);
+      int partition =
+          (int) (fingerprint >>> (Long.SIZE - PARTITION_BITS * level)) & (PARTITIONS - 1);
+      if (files[partition] == null) {
+        files[partition] = new SpillFile(tempDir);
+      }
+      return files[partition];
+    }
+
+    private Iterator<Row> iterator(SpillFile file) {
+      return file == null ? Collections.emptyIterator() : file.iterator();
+    }
+
+    private void close() {
+      if (current != null) {
+        current.close();
+        current = null;
+      }
+      tasks.forEach(Task::close);
+      tasks.clear();
+    }
+
+    @Override
+    public Spliterator<Row> trySplit() {
+      return null;
+    }
+
+    @Override
+    public long estimateSize() {
+      return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+      return Spliterator.ORDERED;
+    }
+  }
+}
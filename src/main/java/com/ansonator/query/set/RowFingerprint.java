@@ -0,0 +1,58 @@
+package com.ansonator.query.set;
+
+import com.ansonator.query.row.Row;
+import java.util.Arrays;
+
+/**
+ * 64-bit hash of a {@link Row}. Rows which are {@link Row#equals equal} always have the same
+ * fingerprint. Unlike {@link Row#hashCode}, which is limited to 32 bits, collisions between
+ * distinct rows are rare enough that a fingerprint may be used to partition rows and to probe a
+ * hash table before falling back to {@link Row#equals}.
+ */
+public final class RowFingerprint {
+  private static final long SEED = 0x9E3779B97F4A7C15L;
+  private static final long NULL = 0x7F4A7C159E3779B9L;
+
+  private RowFingerprint() {}
+
+  public static long of(Row row) {
+    long hash = SEED;
+    for (Object val : row.vals) {
+      hash = (hash ^ of(val)) * 0x100000001B3L;
+    }
+    return mix(hash);
+  }
+
+  private static long of(Object val) {
+    if (val == null) {
+      return NULL;
+    } else if (val instanceof Long) {
+      return mix((Long) val);
+    } else if (val instanceof Integer) {
+      return mix((Integer) val);
+    } else if (val instanceof String) {
+      String str = (String) val;
+      long hash = str.length();
+      for (int i = 0; i < str.length(); i++) {
+        hash = hash * 31 + str.charAt(i);
+      }
+      return mix(hash);
+    } else if (val instanceof Double) {
+      return mix(Double.doubleToLongBits((Double) val));
+    } else if (val.getClass().isArray()) {
+      // As in Row#hashCode, arrays, including primitive ones, are hashed by value
+      return mix(Arrays.deepHashCode(new Object[] {val}));
+    }
+    return mix(val.hashCode());
+  }
+
+  /** The finalizer of MurmurHash3. */
+  static long mix(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xFF51AFD7ED558CCDL;
+    hash ^= hash >>> 33;
+    hash *= 0xC4CEB9FE1A85EC53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
@@ -0,0 +1,123 @@
+package com.ansonator.query.set;
+
+import com.ansonator.query.row.Row;
+import com.ansonator.query.spill.RowSize;
+import java.util.function.ObjIntConsumer;
+import lombok.Getter;
+
+/**
+ * An open addressing hash table from {@link Row} to a count. Each slot holds the row's {@link
+ * RowFingerprint} in a primitive array, so a probe only dereferences a row (and calls {@link
+ * Row#equals}) when fingerprints match.
+ */
+class RowMultiset {
+  private static final int INITIAL_CAPACITY = 1 << 10;
+  private static final long SLOT_SIZE = Long.BYTES + Integer.BYTES + 4;
+
+  private long[] fingerprints;
+  private Row[] rows;
+  private int[] counts;
+  private int mask;
+  @Getter private int size = 0;
+  private long rowBytes = 0;
+
+  RowMultiset() {
+    allocate(INITIAL_CAPACITY);
+  }
+
+  /**
+   * Adds {@code count} to the row's count, inserting the row if it is absent.
+   *
+   * @return the row's previous count, or -1 if it was absent
+   */
+  int add(Row row, long fingerprint, int count) {
+    int slot = find(row, fingerprint);
+    if (rows[slot] != null) {
+      int previous = counts[slot];
+      counts[slot] = previous + count;
+      return previous;
+    }
+    fingerprints[slot] = fingerprint;
+    rows[slot] = row;
+    counts[slot] = count;
+    rowBytes += RowSize.estimate(row);
+    if (++size > (mask + 1) / 2) {
+      rehash();
+    }
+    return -1;
+  }
+
+  /**
+   * @return the row's count, or -1 if it is absent
+   */
+  int count(Row row, long fingerprint) {
+    int slot = find(row, fingerprint);
+    return rows[slot] == null ? -1 : counts[slot];
+  }
+
+  /**
+   * Decrements the row's count unless it is absent or already zero.
+   *
+   * @return true if the count was decremented
+   */
+  boolean decrement(Row row, long fingerprint) {
+    int slot = find(row, fingerprint);
+    if (rows[slot] == null || counts[slot] <= 0) {
+      return false;
+    }
+    counts[slot]--;
+    return true;
+  }
+
+  /** Estimated heap consumed by this table and the rows it references. */
+  long estimatedBytes() {
+    return SLOT_SIZE * (mask + 1) + rowBytes;
+  }
+
+  void forEach(ObjIntConsumer<Row> action) {
+    for (int slot = 0; slot <= mask; slot++) {
+      if (rows[slot] != null) {
+        action.accept(rows[slot], counts[slot]);
+      }
+    }
+  }
+
+  void clear() {
+    size = 0;
+    rowBytes = 0;
+    allocate(INITIAL_CAPACITY);
+  }
+
+  private int find(Row row, long fingerprint) {
+    int slot = (int) fingerprint & mask;
+    while (rows[slot] != null && (fingerprints[slot] != fingerprint || !rows[slot].equals(row))) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void rehash() {
+    long[] oldFingerprints = fingerprints;
+    Row[] oldRows = rows;
+    int[] oldCounts = counts;
+    allocate(oldRows.length * 2);
+    for (int i = 0; i < oldRows.length; i++) {
+      if (oldRows[i] != null) {
+        int slot = (int) oldFingerprints[i] & mask;
+        while (rows[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        fingerprints[slot] = oldFingerprints[i];
+        rows[slot] = oldRows[i];
+        counts[slot] = oldCounts[i];
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    fingerprints = new long[capacity];
+    rows = new Row[capacity];
+    counts = new int[capacity];
+    mask = capacity - 1;
+  }
+}
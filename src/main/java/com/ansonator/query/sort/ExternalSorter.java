@@ -0,0 +1,251 @@
+package com.ansonator.query.sort;
+
+import com.ansonator.query.row.Row;
+import com.ansonator.query.spill.RowSize;
+import com.ansonator.query.spill.SpillFile;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Sorts a {@code Stream<Row>} while holding at most a fixed number of bytes of rows on the heap.
+ *
+ * <p>Input rows are buffered until the buffer's estimated size reaches the memory budget. The
+ * buffer is then sorted and written to a run file (see {@link SpillFile}). Once the input is
+ * exhausted, all runs are merged lazily through a priority queue. So, the first rows are returned
+ * as soon as the last run has been sorted rather than after the full merge. When everything fits
+ * within the budget, nothing is written to disk.
+ *
+ * <p>The sort is stable. Run files are deleted as soon as they are exhausted, and in any case when
+ * the returned Stream is closed.
+ */
+@Log4j2
+public class ExternalSorter {
+  public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+  static final int DEFAULT_MAX_FAN_IN = 64;
+
+  private final InMemorySorter runSorter;
+  private final Comparator<Row> comparator;
+  @Getter private final long memoryBudget;
+  private final Path tempDir;
+  private final int maxFanIn;
+
+  ExternalSorter(InMemorySorter runSorter, long memoryBudget, Path tempDir, int maxFanIn) {
+    if (memoryBudget <= 0) {
+      throw new IllegalArgumentException(
+          String.format("Memory budget must be positive but was [%d]", memoryBudget));
+    }
+    if (maxFanIn < 2) {
+      throw new IllegalArgumentException(
+          String.format("Merge fan-in must be at least 2 but was [%d]", maxFanIn));
+    }
+    this.runSorter = runSorter;
+    this.comparator = runSorter.getComparator();
+    this.memoryBudget = memoryBudget;
+    this.tempDir = tempDir;
+    this.maxFanIn = maxFanIn;
+  }
+
+  public static ExternalSorter of(Comparator<Row> comparator, long memoryBudget) {
+    return of(new InMemorySorter(comparator), memoryBudget);
+  }
+
+  public static ExternalSorter of(Comparator<Row> comparator, long memoryBudget, Path tempDir) {
+    return of(new InMemorySorter(comparator), memoryBudget, tempDir);
+  }
+
+  /**
+   * @param runSorter sorts each run before it is spilled. Its comparator is used for the merge.
+   */
+  public static ExternalSorter of(InMemorySorter runSorter, long memoryBudget) {
+    return of(runSorter, memoryBudget, Paths.get(System.getProperty("java.io.tmpdir")));
+  }
+
+  public static ExternalSorter of(InMemorySorter runSorter, long memoryBudget, Path tempDir) {
+    return new ExternalSorter(runSorter, memoryBudget, tempDir, DEFAULT_MAX_FAN_IN);
+  }
+
+  /**
+   * @param input This is not consumed until a terminal operation is invoked on the result.
+   * @return the input rows in sorted order
+   */
+  public Stream<Row> sort(Stream<Row> input) {
+    Sort sort = new Sort(input);
+    return StreamSupport.stream(() -> sort, Spliterator.ORDERED, false)
+        .onClose(sort::close)
+        .onClose(input::close);
+  }
+
+  /** The state of a single invocation of {@link #sort}. */
+  private class Sort implements Spliterator<Row> {
+    private final Stream<Row> input;
+    private final List<SpillFile> runs = new ArrayList<>();
+    private Iterator<Row> output = null;
+
+    private Sort(Stream<Row> input) {
+      this.input = input;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Row> action) {
+      if (output == null) {
+        output = prepare();
+      }
+      if (output.hasNext()) {
+        action.accept(output.next());
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public Spliterator<Row> trySplit() {
+      return null;
+    }
+
+    @Override
+    public long estimateSize() {
+      return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+      return Spliterator.ORDERED;
+    }
+
+    /** Consumes the input, spilling a sorted run each time the buffer exceeds the budget. */
+    private Iterator<Row> prepare() {
+      List<Row> buffer = new ArrayList<>();
+      long[] bufferSize = {0};
+      input.forEachOrdered(
+          row -> {
+            buffer.add(row);
+            bufferSize[0] += RowSize.estimate(row);
+            if (bufferSize[0] >= memoryBudget) {
+              runs.add(spill(buffer));
+              buffer.clear();
+              bufferSize[0] = 0;
+            }
+          });
+      Row[] last = buffer.toArray(new Row[0]);
+      buffer.clear();
+      runSorter.sort(last);
+      if (runs.isEmpty()) {
+        return Arrays.asList(last).iterator();
+      }
+      log.debug("Sorted {} runs of at most {} bytes each", runs.size() + 1, memoryBudget);
+      // Reduce the number of runs until we can merge all of them at once. The final in-memory
+      // buffer is always merged last so that it never needs to be written to disk.
+      while (runs.size() + 1 > maxFanIn) {
+        List<SpillFile> merged = new ArrayList<>();
+        for (int from = 0; from < runs.size(); from += maxFanIn) {
+          List<SpillFile> group = runs.subList(from, Math.min(from + maxFanIn, runs.size()));
+          SpillFile out = new SpillFile(tempDir);
+          merged.add(out);
+          merge(group, null).forEachRemaining(out::write);
+          out.finish();
+          group.forEach(SpillFile::close);
+        }
+        runs.clear();
+        runs.addAll(merged);
+      }
+      return merge(runs, Arrays.asList(last).iterator());
+    }
+
+    private SpillFile spill(List<Row> buffer) {
+      Row[] rows = buffer.toArray(new Row[0]);
+      runSorter.sort(rows);
+      SpillFile run = new SpillFile(tempDir);
+      for (Row row : rows) {
+        run.write(row);
+      }
+      return run.finish();
+    }
+
+    private Iterator<Row> merge(List<SpillFile> files, Iterator<Row> last) {
+      List<Iterator<Row>> sources = new ArrayList<>();
+      for (SpillFile file : files) {
+        sources.add(file.iterator());
+      }
+      if (last != null) {
+        sources.add(last);
+      }
+      return new MergeIterator(sources, files, comparator);
+    }
+
+    private void close() {
+      runs.forEach(SpillFile::close);
+      runs.clear();
+    }
+  }
+
+  /**
+   * K-way merge of sorted iterators. Ties are broken by source index so that the merge is stable
+   * when sources are provided in input order. The run file of each source, if any, is deleted as
+   * soon as the source is exhausted.
+   */
+  static class MergeIterator implements Iterator<Row> {
+    private final PriorityQueue<Head> heads;
+
+    /**
+     * @param files the run file read by each of the first {@code files.size()} sources
+     */
+    MergeIterator(List<Iterator<Row>> sources, List<SpillFile> files, Comparator<Row> comparator) {
+      Comparator<Head> byRow = (a, b) -> comparator.compare(a.row, b.row);
+      this.heads =
+          new PriorityQueue<>(Math.max(1, sources.size()), byRow.thenComparingInt(h -> h.source));
+      for (int i = 0; i < sources.size(); i++) {
+        Iterator<Row> source = sources.get(i);
+        SpillFile file = i < files.size() ? files.get(i) : null;
+        if (source.hasNext()) {
+          heads.add(new Head(source.next(), i, source, file));
+        } else if (file != null) {
+          file.close();
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !heads.isEmpty();
+    }
+
+    @Override
+    public Row next() {
+      Head head = heads.poll();
+      Row row = head.row;
+      if (head.rest.hasNext()) {
+        head.row = head.rest.next();
+        heads.add(head);
+      } else if (head.file != null) {
+        head.file.close();
+      }
+      return row;
+    }
+
+    private static class Head {
+      private Row row;
+      private final int source;
+      private final Iterator<Row> rest;
+      private final SpillFile file;
+
+      private Head(Row row, int source, Iterator<Row> rest, SpillFile file) {
+        this.row = row;
+        this.source = source;
+        this.rest = rest;
+        this.file = file;
+      }
+    }
+  }
+}
@@ -0,0 +1,223 @@
+package com.ansonator.query.sort;
+
+import com.ansonator.query.row.Row;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Sorts rows on the heap. The algorithm is chosen from the sort keys and the number of rows.
+ *
+ * <ul>
+ *   <li>A single integral sort column (i.e., every non-null value is a {@code Byte}, {@code Short},
+ *       {@code Integer} or {@code Long}) is sorted by {@link LongRadixSort}. Large inputs are
+ *       distributed across the common {@link ForkJoinPool}.
+ *   <li>Otherwise, when {@code normalized}, each row's sort columns are first encoded into a single
+ *       byte array by {@link NormalizedKeyEncoder}. Rows are then sorted by comparing those arrays.
+ *       This pays for one encoding per row in exchange for much cheaper comparisons. If some value
+ *       cannot be encoded, this falls back to the comparator.
+ *   <li>Otherwise, rows are sorted by the typed comparator from {@link RowComparators} (or the
+ *       client's comparator).
+ * </ul>
+ *
+ * <p>Comparison sorts of at least {@link #PARALLEL_THRESHOLD} rows use {@link
+ * Arrays#parallelSort(Object[], Comparator)}. All of these sorts are stable.
+ */
+@Log4j2
+public class InMemorySorter {
+  /** Below this size, sorting on the calling thread is faster than forking. */
+  public static final int PARALLEL_THRESHOLD = 1 << 13;
+  /** Below this size, a comparison sort is faster than radix sort. */
+  public static final int RADIX_THRESHOLD = 1 << 8;
+
+  private final List<SortKey> keys;
+  private final int[] indexes;
+  private final Map<String, Integer> columns;
+  @Getter private final Comparator<Row> comparator;
+  private final boolean normalized;
+
+  public InMemorySorter(List<SortKey> keys, Map<String, Integer> columns, boolean normalized) {
+    this.keys = keys;
+    this.indexes = keys.stream().mapToInt(key -> RowComparators.indexOf(key, columns)).toArray();
+    this.columns = columns;
+    this.comparator = RowComparators.of(keys, columns);
+    this.normalized = normalized;
+  }
+
+  /** A sorter for an arbitrary comparator. Only comparison sorts are available. */
+  public InMemorySorter(Comparator<Row> comparator) {
+    this.keys = List.of();
+    this.indexes = new int[0];
+    this.columns = Map.of();
+    this.comparator = comparator;
+    this.normalized = false;
+  }
+
+  /**
+   * @param input This is not consumed until a terminal operation is invoked on the result.
+   * @return the input rows in sorted order
+   */
+  public Stream<Row> sort(Stream<Row> input) {
+    return StreamSupport.stream(
+            () -> {
+              Row[] rows = input.toArray(Row[]::new);
+              sort(rows);
+              return Arrays.spliterator(rows);
+            },
+            Spliterator.ORDERED | Spliterator.SIZED,
+            false)
+        .onClose(input::close);
+  }
+
+  /**
+   * Identical to {@code sort(input).limit(n)} but only holds up to {@code 2 * n} rows. Rows are
+   * buffered and the buffer is sorted and truncated to {@code n} rows whenever it fills. After the
+   * first truncation, rows which do not precede the current n-th row are discarded as they arrive.
+   *
+   * @param input This is not consumed until a terminal operation is invoked on the result.
+   * @return the first {@code n} input rows in sorted order
+   */
+  public Stream<Row> top(Stream<Row> input, int n) {
+    return StreamSupport.stream(
+            () -> {
+              if (n == 0) {
+                return Arrays.spliterator(new Row[0]);
+              }
+              Row[] buffer = new Row[2 * n];
+              int[] size = {0};
+              Row[] cutoff = {null};
+              input.forEachOrdered(
+                  row -> {
+                    if (cutoff[0] != null && comparator.compare(row, cutoff[0]) >= 0) {
+                      return;
+                    }
+                    buffer[size[0]++] = row;
+                    if (size[0] == buffer.length) {
+                      sort(buffer);
+                      Arrays.fill(buffer, n, buffer.length, null);
+                      size[0] = n;
+                      cutoff[0] = buffer[n - 1];
+                    }
+                  });
+              sort(buffer, 0, size[0]);
+              return Arrays.spliterator(buffer, 0, Math.min(n, size[0]));
+            },
+            Spliterator.ORDERED | Spliterator.SIZED,
+            false)
+        .onClose(input::close);
+  }
+
+  /** Stable, in place sort. */
+  public void sort(Row[] rows) {
+    sort(rows, 0, rows.length);
+  }
+
+  /** Stable, in place sort of {@code rows[from, to)}. */
+  public void sort(Row[] rows, int from, int to) {
+    int size = to - from;
+    if (size < 2) {
+      return;
+    }
+    if (indexes.length == 1 && size >= RADIX_THRESHOLD && radixSort(rows, from, to)) {
+      return;
+    }
+    if (normalized && sortNormalized(rows, from, to)) {
+      return;
+    }
+    if (size >= PARALLEL_THRESHOLD) {
+      Arrays.parallelSort(rows, from, to, comparator);
+    } else {
+      Arrays.sort(rows, from, to, comparator);
+    }
+  }
+
+  /**
+   * Nulls are moved to one end first. Then, the remaining rows are radix sorted on their keys.
+   *
+   * @return false, without modifying {@code rows}, if the column has a non-integral value
+   */
+  private boolean radixSort(Row[] rows, int from, int to) {
+    int index = indexes[0];
+    SortKey key = keys.get(0);
+    int nulls = 0;
+    for (int i = from; i < to; i++) {
+      Object val = rows[i].vals[index];
+      if (val == null) {
+        nulls++;
+      } else if (!RowComparators.isIntegral(val)) {
+        return false;
+      }
+    }
+    // Stable partition of the nulls.
+    Row[] nullRows = new Row[nulls];
+    Row[] nonNullRows = new Row[to - from - nulls];
+    long[] sortKeys = new long[nonNullRows.length];
+    int n = 0;
+    int k = 0;
+    for (int i = from; i < to; i++) {
+      Object val = rows[i].vals[index];
+      if (val == null) {
+        nullRows[n++] = rows[i];
+      } else {
+        long num = ((Number) val).longValue();
+        sortKeys[k] =
+            key.isDescending() ? LongRadixSort.descending(num) : LongRadixSort.ascending(num);
+        nonNullRows[k++] = rows[i];
+      }
+    }
+    int parallelism = k >= PARALLEL_THRESHOLD ? ForkJoinPool.getCommonPoolParallelism() : 1;
+    LongRadixSort.sort(sortKeys, nonNullRows, 0, k, parallelism);
+    if (key.isNullsFirst()) {
+      System.arraycopy(nullRows, 0, rows, from, nulls);
+      System.arraycopy(nonNullRows, 0, rows, from + nulls, k);
+    } else {
+      System.arraycopy(nonNullRows, 0, rows, from, k);
+      System.arraycopy(nullRows, 0, rows, from + k, nulls);
+    }
+    return true;
+  }
+
+  private boolean sortNormalized(Row[] rows, int from, int to) {
+    NormalizedKeyEncoder encoder = new NormalizedKeyEncoder(keys, columns);
+    KeyedRow[] keyed = new KeyedRow[to - from];
+    for (int i = 0; i < keyed.length; i++) {
+      byte[] key = encoder.encode(rows[from + i]);
+      if (key == null) {
+        log.debug("Unable to normalize sort keys {} of row {}", keys, rows[from + i]);
+        return false;
+      }
+      keyed[i] = new KeyedRow(key, rows[from + i]);
+    }
+    if (keyed.length >= PARALLEL_THRESHOLD) {
+      Arrays.parallelSort(keyed);
+    } else {
+      Arrays.sort(keyed);
+    }
+    for (int i = 0; i < keyed.length; i++) {
+      rows[from + i] = keyed[i].row;
+    }
+    return true;
+  }
+
+  private static class KeyedRow implements Comparable<KeyedRow> {
+    private final byte[] key;
+    private final Row row;
+
+    private KeyedRow(byte[] key, Row row) {
+      this.key = key;
+      this.row = row;
+    }
+
+    @Override
+    public int compareTo(KeyedRow other) {
+      return Arrays.compareUnsigned(key, other.key);
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package com.ansonator.query.sort;
+
+import com.ansonator.query.row.Row;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Stable least-significant-digit radix sort of rows by a {@code long} key. Keys are compared as
+ * unsigned values. Callers map signed or descending keys onto that order (see {@link
+ * #ascending(long)} and {@link #descending(long)}).
+ *
+ * <p>Each pass distributes on one byte of the key. Passes on bytes which are identical across all
+ * keys are skipped, so small ranges of values (e.g., ids which fit in an int) only need a few
+ * passes. When parallel, the input is divided into one chunk per worker. Each worker builds a
+ * histogram of its own chunk and then scatters its chunk into disjoint, precomputed ranges of the
+ * output. This keeps every pass stable and free of contention.
+ */
+public final class LongRadixSort {
+  private static final int RADIX = 256;
+  private static final int PASSES = Long.BYTES;
+
+  private LongRadixSort() {}
+
+  /** Maps a signed value onto an unsigned key which sorts in ascending order. */
+  public static long ascending(long val) {
+    return val ^ Long.MIN_VALUE;
+  }
+
+  /** Maps a signed value onto an unsigned key which sorts in descending order. */
+  public static long descending(long val) {
+    return ~(val ^ Long.MIN_VALUE);
+  }
+
+  /**
+   * Sorts {@code rows[from, to)} by the corresponding entries of {@code keys}. Both arrays are
+   * reordered.
+   *
+   * @param parallelism the number of chunks to process concurrently. Use 1 to sort on the calling
+   *     thread.
+   */
+  public static void sort(long[] keys, Row[] rows, int from, int to, int parallelism) {
+    int size = to - from;
+    if (size < 2) {
+      return;
+    }
+    int chunks = Math.max(1, Math.min(parallelism, size / RADIX));
+    boolean[] trivial = trivialPasses(keys, from, to);
+
+    long[] srcKeys = keys;
+    Row[] srcRows = rows;
+    int srcFrom = from;
+    long[] dstKeys = new long[size];
+    Row[] dstRows = new Row[size];
+    int dstFrom = 0;
+    for (int pass = 0; pass < PASSES; pass++) {
+      if (trivial[pass]) {
+        continue;
+      }
+      distribute(srcKeys, srcRows, srcFrom, dstKeys, dstRows, dstFrom, size, pass * 8, chunks);
+      long[] tmpKeys = srcKeys;
+      Row[] tmpRows = srcRows;
+      int tmpFrom = srcFrom;
+      srcKeys = dstKeys;
+      srcRows = dstRows;
+      srcFrom = dstFrom;
+      dstKeys = tmpKeys;
+      dstRows = tmpRows;
+      dstFrom = tmpFrom;
+    }
+    if (srcKeys != keys) {
+      System.arraycopy(srcKeys, srcFrom, keys, from, size);
+      System.arraycopy(srcRows, srcFrom, rows, from, size);
+    }
+  }
+
+  /** A pass is trivial when every key has the same value for that byte. */
+  private static boolean[] trivialPasses(long[] keys, int from, int to) {
+    long first = keys[from];
+    long differing = 0;
+    for (int i = from + 1; i < to; i++) {
+      differing |= keys[i] ^ first;
+    }
+    boolean[] trivial = new boolean[PASSES];
+    for (int pass = 0; pass < PASSES; pass++) {
+      trivial[pass] = ((differing >>> (pass * 8)) & 0xFF) == 0;
+    }
+    return trivial;
+  }
+
+  private static void distribute(
+      long[] srcKeys,
+      Row[] srcRows,
+      int srcFrom,
+      long[] dstKeys,
+      Row[] dstRows,
+      int dstFrom,
+      int size,
+      int shift,
+      int chunks) {
+    int chunkSize = (size + chunks - 1) / chunks;
+    int[][] counts = new int[chunks][RADIX];
+    forEachChunk(
+        chunks,
+        chunk -> {
+          int[] count = counts[chunk];
+          int end = Math.min(size, (chunk + 1) * chunkSize);
+          for (int i = chunk * chunkSize; i < end; i++) {
+            count[(int) (srcKeys[srcFrom + i] >>> shift) & 0xFF]++;
+          }
+        });
+    // Convert counts into starting offsets. Buckets are laid out in order and, within a bucket,
+    // chunks are laid out in order. This is what keeps the sort stable.
+    int offset = dstFrom;
+    for (int bucket = 0; bucket < RADIX; bucket++) {
+      for (int chunk = 0; chunk < chunks; chunk++) {
+        int count = counts[chunk][bucket];
+        counts[chunk][bucket] = offset;
+        offset += count;
+      }
+    }
+    forEachChunk(
+        chunks,
+        chunk -> {
+          int[] next = counts[chunk];
+          int end = Math.min(size, (chunk + 1) * chunkSize);
+          for (int i = chunk * chunkSize; i < end; i++) {
+            long key = srcKeys[srcFrom + i];
+            int dst = next[(int) (key >>> shift) & 0xFF]++;
+            dstKeys[dst] = key;
+            dstRows[dst] = srcRows[srcFrom + i];
+          }
+        });
+  }
+
+  private static void forEachChunk(int chunks, IntConsumer action) {
+    if (chunks == 1) {
+      action.accept(0);
+    } else {
+      IntStream.range(0, chunks).parallel().forEach(action);
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package com.ansonator.query.sort;
+
+import com.ansonator.query.row.Row;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes the sort columns of a row into a single byte array whose unsigned lexicographic order
+ * matches the order defined by {@link RowComparators}. Sorting on these keys replaces a chain of
+ * per-column comparisons with one {@link Arrays#compareUnsigned(byte[], byte[])} per comparison.
+ *
+ * <p>Each column is encoded as a null marker followed by an order preserving encoding of its value.
+ * Descending columns have the bytes of their values inverted. Only booleans, boxed numbers,
+ * strings, {@link LocalDate}, {@link Instant} and {@link Date} can be encoded. All values within a
+ * column are expected to be of the same kind. Integral and floating point numbers within the same
+ * column do not compare correctly.
+ */
+public class NormalizedKeyEncoder {
+  private static final byte NULL_FIRST = 0x00;
+  private static final byte NOT_NULL = 0x01;
+  private static final byte NULL_LAST = 0x02;
+
+  private final int[] indexes;
+  private final boolean[] descending;
+  private final boolean[] nullsFirst;
+  private byte[] buffer = new byte[64];
+  private int position;
+
+  public NormalizedKeyEncoder(List<SortKey> keys, Map<String, Integer> columns) {
+    this.indexes = new int[keys.size()];
+    this.descending = new boolean[keys.size()];
+    this.nullsFirst = new boolean[keys.size()];
+    for (int i = 0; i < indexes.length; i++) {
+      indexes[i] = RowComparators.indexOf(keys.get(i), columns);
+      descending[i] = keys.get(i).isDescending();
+      nullsFirst[i] = keys.get(i).isNullsFirst();
+    }
+  }
+
+  /**
+   * @return the normalized key, or null if some value cannot be encoded.
+   */
+  public byte[] encode(Row row) {
+    position = 0;
+    for (int i = 0; i < indexes.length; i++) {
+      Object val = row.vals[indexes[i]];
+      if (val == null) {
+        put(nullsFirst[i] ? NULL_FIRST : NULL_LAST);
+        continue;
+      }
+      put(NOT_NULL);
+      int start = position;
+      if (!encode(val)) {
+        return null;
+      }
+      if (descending[i]) {
+        for (int j = start; j < position; j++) {
+          buffer[j] = (byte) ~buffer[j];
+        }
+      }
+    }
+    return Arrays.copyOf(buffer, position);
+  }
+
+  private boolean encode(Object val) {
+    if (RowComparators.isIntegral(val)) {
+      putLong(((Number) val).longValue());
+    } else if (val instanceof String) {
+      putString((String) val);
+    } else if (val instanceof Double || val instanceof Float) {
+      long bits = Double.doubleToLongBits(((Number) val).doubleValue());
+      putLong(bits < 0 ? ~bits ^ Long.MIN_VALUE : bits);
+    } else if (val instanceof Boolean) {
+      put((Boolean) val ? (byte) 1 : (byte) 0);
+    } else if (val instanceof LocalDate) {
+      putLong(((LocalDate) val).toEpochDay());
+    } else if (val instanceof Instant) {
+      putLong(((Instant) val).getEpochSecond());
+      putLong(((Instant) val).getNano());
+    } else if (val instanceof Date) {
+      putLong(((Date) val).getTime());
+    } else {
+      return false;
+    }
+    return true;
+  }
+
+  /** Big-endian with the sign bit flipped so that negative values sort first. */
+  private void putLong(long val) {
+    ensureCapacity(8);
+    long flipped = val ^ Long.MIN_VALUE;
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      buffer[position++] = (byte) (flipped >>> shift);
+    }
+  }
+
+  /**
+   * Encodes each UTF-16 code unit with a variable length, order preserving code and terminates the
+   * string with a zero byte. ASCII characters take a single byte.
+   */
+  private void putString(String val) {
+    ensureCapacity(3 * val.length() + 1);
+    for (int i = 0; i < val.length(); i++) {
+      int c = val.charAt(i);
+      if (c < 0x7F) {
+        buffer[position++] = (byte) (c + 1);
+      } else if (c < 0x407F) {
+        int d = c - 0x7F;
+        buffer[position++] = (byte) (0x80 | (d >>> 8));
+        buffer[position++] = (byte) d;
+      } else {
+        int d = c - 0x407F;
+        buffer[position++] = (byte) 0xC0;
+        buffer[position++] = (byte) (d >>> 8);
+        buffer[position++] = (byte) d;
+      }
+    }
+    buffer[position++] = 0;
+  }
+
+  private void put(byte b) {
+    ensureCapacity(1);
+    buffer[position++] = b;
+  }
+
+  private void ensureCapacity(int extra) {
+    if (position + extra > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+    }
+  }
+}
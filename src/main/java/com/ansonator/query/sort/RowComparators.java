@@ -0,0 +1,113 @@
+package com.ansonator.query.sort;
+
+import com.ansonator.query.row.Row;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Factory for {@code Comparator<Row>} built from {@link SortKey}s. Column indexes are resolved once
+ * when the comparator is created rather than on every comparison.
+ *
+ * <p>Values are compared by type. Boxed numbers are compared numerically, even when their types
+ * differ (e.g., {@code Integer} and {@code Long}). Otherwise, {@link Comparable} values of the same
+ * class use their natural ordering. Anything else falls back to comparing {@code toString()}.
+ */
+public final class RowComparators {
+  private RowComparators() {}
+
+  public static Comparator<Row> of(List<SortKey> keys, Map<String, Integer> columns) {
+    if (keys.isEmpty()) {
+      throw new IllegalArgumentException("At least one sort key is required");
+    }
+    ColumnComparator[] comparators = new ColumnComparator[keys.size()];
+    for (int i = 0; i < comparators.length; i++) {
+      comparators[i] = new ColumnComparator(keys.get(i), indexOf(keys.get(i), columns));
+    }
+    if (comparators.length == 1) {
+      return comparators[0];
+    }
+    return (a, b) -> {
+      for (ColumnComparator comparator : comparators) {
+        int result = comparator.compare(a, b);
+        if (result != 0) {
+          return result;
+        }
+      }
+      return 0;
+    };
+  }
+
+  static int indexOf(SortKey key, Map<String, Integer> columns) {
+    Integer index = columns.get(key.getColumn());
+    if (index == null) {
+      throw new IllegalArgumentException(String.format("Column [%s] not found", key.getColumn()));
+    }
+    return index;
+  }
+
+  /**
+   * Compares two non-null cell values.
+   *
+   * @return negative, zero or positive as {@code a} is less than, equal to or greater than {@code
+   *     b}
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public static int compareValues(Object a, Object b) {
+    if (a instanceof Integer && b instanceof Integer) {
+      return Integer.compare((Integer) a, (Integer) b);
+    } else if (a instanceof Long && b instanceof Long) {
+      return Long.compare((Long) a, (Long) b);
+    } else if (a instanceof String && b instanceof String) {
+      return ((String) a).compareTo((String) b);
+    } else if (a instanceof Double && b instanceof Double) {
+      return Double.compare((Double) a, (Double) b);
+    } else if (a.getClass() == b.getClass() && a instanceof Comparable) {
+      return ((Comparable) a).compareTo(b);
+    } else if (a instanceof Number && b instanceof Number) {
+      return compareNumbers((Number) a, (Number) b);
+    }
+    return a.toString().compareTo(b.toString());
+  }
+
+  private static int compareNumbers(Number a, Number b) {
+    if (isIntegral(a) && isIntegral(b)) {
+      return Long.compare(a.longValue(), b.longValue());
+    }
+    return Double.compare(a.doubleValue(), b.doubleValue());
+  }
+
+  static boolean isIntegral(Object val) {
+    return val instanceof Integer
+        || val instanceof Long
+        || val instanceof Short
+        || val instanceof Byte;
+  }
+
+  /** Compares a single column of two rows according to a {@link SortKey}. */
+  static class ColumnComparator implements Comparator<Row> {
+    private final int index;
+    private final boolean descending;
+    private final int nullOrder;
+
+    ColumnComparator(SortKey key, int index) {
+      this.index = index;
+      this.descending = key.isDescending();
+      this.nullOrder = key.isNullsFirst() ? -1 : 1;
+    }
+
+    @Override
+    public int compare(Row row1, Row row2) {
+      Object a = row1.vals[index];
+      Object b = row2.vals[index];
+      if (a == null || b == null) {
+        if (a == b) {
+          return 0;
+        }
+        return a == null ? nullOrder : -nullOrder;
+      }
+      int result = compareValues(a, b);
+      return descending ? -result : result;
+    }
+  }
+}
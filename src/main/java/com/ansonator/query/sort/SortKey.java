@@ -0,0 +1,41 @@
+package com.ansonator.query.sort;
+
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * A column to sort by along with its direction and the placement of nulls. By default, nulls are
+ * treated as larger than any other value. So, they sort last in ascending order and first in
+ * descending order.
+ */
+@Getter
+@EqualsAndHashCode
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class SortKey {
+  private final String column;
+  private final boolean descending;
+  private final boolean nullsFirst;
+
+  public static SortKey asc(String column) {
+    return new SortKey(column, false, false);
+  }
+
+  public static SortKey desc(String column) {
+    return new SortKey(column, true, true);
+  }
+
+  public SortKey nullsFirst() {
+    return new SortKey(column, descending, true);
+  }
+
+  public SortKey nullsLast() {
+    return new SortKey(column, descending, false);
+  }
+
+  @Override
+  public String toString() {
+    return column + (descending ? " DESC" : " ASC") + (nullsFirst ? " NULLS FIRST" : " NULLS LAST");
+  }
+}
@@ -0,0 +1,280 @@
+package com.ansonator.query.spill;
+
+import com.ansonator.query.row.Row;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Date;
+
+/**
+ * Compact binary encoding of {@link Row} values. Each value is written as a one byte type tag
+ * followed by a fixed width or length prefixed payload. Common cell types (boxed primitives,
+ * strings, dates and big numbers) have dedicated tags. Any other {@link Serializable} value falls
+ * back to Java serialization. Values which are neither cannot be encoded.
+ *
+ * <p>This is the format used for spill files. It is not meant to be a stable storage format.
+ */
+public final class RowCodec {
+  private static final byte NULL = 0;
+  private static final byte INTEGER = 1;
+  private static final byte LONG = 2;
+  private static final byte DOUBLE = 3;
+  private static final byte FLOAT = 4;
+  private static final byte SHORT = 5;
+  private static final byte BYTE = 6;
+  private static final byte TRUE = 7;
+  private static final byte FALSE = 8;
+  private static final byte CHARACTER = 9;
+  private static final byte STRING = 10;
+  private static final byte BIG_DECIMAL = 11;
+  private static final byte BIG_INTEGER = 12;
+  private static final byte INSTANT = 13;
+  private static final byte LOCAL_DATE = 14;
+  private static final byte LOCAL_DATE_TIME = 15;
+  private static final byte DATE = 16;
+  private static final byte SERIALIZED = 17;
+
+  private RowCodec() {}
+
+  /**
+   * @param value a cell value
+   * @return true if {@link #write} is able to encode this value
+   */
+  public static boolean isEncodable(Object value) {
+    return value == null || tagOf(value) != SERIALIZED || value instanceof Serializable;
+  }
+
+  public static void write(DataOutput out, Row row) throws IOException {
+    writeVarInt(out, row.vals.length);
+    for (Object val : row.vals) {
+      writeValue(out, val);
+    }
+  }
+
+  /**
+   * @return the next row, or null when the input is exhausted.
+   */
+  public static Row read(DataInput in) throws IOException {
+    final int size;
+    try {
+      size = readVarInt(in);
+    } catch (EOFException e) {
+      return null;
+    }
+    Object[] vals = new Object[size];
+    for (int i = 0; i < size; i++) {
+      vals[i] = readValue(in);
+    }
+    return new Row(vals);
+  }
+
+  public static void writeValue(DataOutput out, Object val) throws IOException {
+    byte tag = tagOf(val);
+    out.writeByte(tag);
+    switch (tag) {
+      case NULL:
+      case TRUE:
+      case FALSE:
+        break;
+      case INTEGER:
+        out.writeInt((Integer) val);
+        break;
+      case LONG:
+        out.writeLong((Long) val);
+        break;
+      case DOUBLE:
+        out.writeDouble((Double) val);
+        break;
+      case FLOAT:
+        out.writeFloat((Float) val);
+        break;
+      case SHORT:
+        out.writeShort((Short) val);
+        break;
+      case BYTE:
+        out.writeByte((Byte) val);
+        break;
+      case CHARACTER:
+        out.writeChar((Character) val);
+        break;
+      case STRING:
+        writeString(out, (String) val);
+        break;
+      case BIG_DECIMAL:
+        writeString(out, val.toString());
+        break;
+      case BIG_INTEGER:
+        writeBytes(out, ((BigInteger) val).toByteArray());
+        break;
+      case INSTANT:
+        out.writeLong(((Instant) val).getEpochSecond());
+        out.writeInt(((Instant) val).getNano());
+        break;
+      case LOCAL_DATE:
+        out.writeLong(((LocalDate) val).toEpochDay());
+        break;
+      case LOCAL_DATE_TIME:
+        writeString(out, val.toString());
+        break;
+      case DATE:
+        out.writeLong(((Date) val).getTime());
+        break;
+      default:
+        writeBytes(out, serialize(val));
+    }
+  }
+
+  public static Object readValue(DataInput in) throws IOException {
+    byte tag = in.readByte();
+    switch (tag) {
+      case NULL:
+        return null;
+      case TRUE:
+        return Boolean.TRUE;
+      case FALSE:
+        return Boolean.FALSE;
+      case INTEGER:
+        return in.readInt();
+      case LONG:
+        return in.readLong();
+      case DOUBLE:
+        return in.readDouble();
+      case FLOAT:
+        return in.readFloat();
+      case SHORT:
+        return in.readShort();
+      case BYTE:
+        return in.readByte();
+      case CHARACTER:
+        return in.readChar();
+      case STRING:
+        return readString(in);
+      case BIG_DECIMAL:
+        return new BigDecimal(readString(in));
+      case BIG_INTEGER:
+        return new BigInteger(readBytes(in));
+      case INSTANT:
+        return Instant.ofEpochSecond(in.readLong(), in.readInt());
+      case LOCAL_DATE:
+        return LocalDate.ofEpochDay(in.readLong());
+      case LOCAL_DATE_TIME:
+        return LocalDateTime.parse(readString(in));
+      case DATE:
+        return new Date(in.readLong());
+      case SERIALIZED:
+        return deserialize(readBytes(in));
+      default:
+        throw new IOException(String.format("Unknown value tag [%d]", tag));
+    }
+  }
+
+  private static byte tagOf(Object val) {
+    if (val == null) {
+      return NULL;
+    } else if (val instanceof String) {
+      return STRING;
+    } else if (val instanceof Integer) {
+      return INTEGER;
+    } else if (val instanceof Long) {
+      return LONG;
+    } else if (val instanceof Double) {
+      return DOUBLE;
+    } else if (val instanceof Boolean) {
+      return ((Boolean) val) ? TRUE : FALSE;
+    } else if (val instanceof Float) {
+      return FLOAT;
+    } else if (val instanceof Short) {
+      return SHORT;
+    } else if (val instanceof Byte) {
+      return BYTE;
+    } else if (val instanceof Character) {
+      return CHARACTER;
+    } else if (val.getClass() == BigDecimal.class) {
+      return BIG_DECIMAL;
+    } else if (val.getClass() == BigInteger.class) {
+      return BIG_INTEGER;
+    } else if (val instanceof Instant) {
+      return INSTANT;
+    } else if (val instanceof LocalDate) {
+      return LOCAL_DATE;
+    } else if (val instanceof LocalDateTime) {
+      return LOCAL_DATE_TIME;
+    } else if (val.getClass() == Date.class) {
+      return DATE;
+    }
+    return SERIALIZED;
+  }
+
+  private static void writeString(DataOutput out, String val) throws IOException {
+    writeBytes(out, val.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String readString(DataInput in) throws IOException {
+    return new String(readBytes(in), StandardCharsets.UTF_8);
+  }
+
+  private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+    writeVarInt(out, bytes.length);
+    out.write(bytes);
+  }
+
+  private static byte[] readBytes(DataInput in) throws IOException {
+    byte[] bytes = new byte[readVarInt(in)];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  private static void writeVarInt(DataOutput out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  private static int readVarInt(DataInput in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      byte b = in.readByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed variable length integer");
+  }
+
+  private static byte[] serialize(Object val) throws IOException {
+    if (!(val instanceof Serializable)) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Cannot spill value [%s] of type [%s] because it is not Serializable",
+              val, val.getClass().getName()));
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(val);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static Object deserialize(byte[] bytes) throws IOException {
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      return in.readObject();
+    } catch (ClassNotFoundException e) {
+      throw new IOException(e);
+    }
+  }
+}
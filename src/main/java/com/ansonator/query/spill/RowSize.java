@@ -0,0 +1,45 @@
+package com.ansonator.query.spill;
+
+import com.ansonator.query.row.Row;
+
+/**
+ * Cheap estimates of the heap consumed by a {@link Row}. These assume a 64-bit JVM with compressed
+ * references. They are intended for enforcing memory budgets, not for exact accounting.
+ */
+public final class RowSize {
+  private static final long ROW_OVERHEAD = 16 + 16;
+  private static final long REFERENCE = 4;
+
+  private RowSize() {}
+
+  public static long estimate(Row row) {
+    return estimate(row.vals);
+  }
+
+  /**
+   * @return the estimated size of a row holding {@code vals}
+   */
+  public static long estimate(Object[] vals) {
+    long size = ROW_OVERHEAD;
+    if (vals != null) {
+      size += REFERENCE * vals.length;
+      for (Object val : vals) {
+        size += estimate(val);
+      }
+    }
+    return size;
+  }
+
+  public static long estimate(Object val) {
+    if (val == null || val instanceof Boolean) {
+      return 0;
+    } else if (val instanceof String) {
+      return 40 + ((String) val).length();
+    } else if (val instanceof Long || val instanceof Double) {
+      return 24;
+    } else if (val instanceof Number || val instanceof Character) {
+      return 16;
+    }
+    return 32;
+  }
+}
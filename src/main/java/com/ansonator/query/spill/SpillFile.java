@@ -0,0 +1,147 @@
+package com.ansonator.query.spill;
+
+import com.ansonator.query.row.Row;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * A temporary file of rows encoded by {@link RowCodec}. Rows are appended through {@link #write}
+ * until the file is {@link #finish finished}. Afterwards, it may be read back any number of times
+ * via {@link #reader}. The file is removed by {@link #close}.
+ */
+@Log4j2
+public class SpillFile implements Closeable {
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  @Getter private final Path path;
+  private DataOutputStream out;
+  @Getter private long rowCount = 0;
+
+  public SpillFile(Path tempDir) {
+    try {
+      this.path = Files.createTempFile(tempDir, "junq-", ".spill");
+      this.out =
+          new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE));
+    } catch (IOException e) {
+      throw new UncheckedIOException(
+          String.format("Unable to create spill file in [%s]", tempDir), e);
+    }
+  }
+
+  public void write(Row row) {
+    try {
+      RowCodec.write(out, row);
+      rowCount++;
+    } catch (IOException e) {
+      throw new UncheckedIOException(String.format("Unable to write to [%s]", path), e);
+    }
+  }
+
+  /** Flushes and closes the writer. No more rows may be written. */
+  public SpillFile finish() {
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(String.format("Unable to write to [%s]", path), e);
+      } finally {
+        out = null;
+      }
+    }
+    return this;
+  }
+
+  public Reader reader() {
+    finish();
+    try {
+      return new Reader(
+          new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE)));
+    } catch (IOException e) {
+      throw new UncheckedIOException(String.format("Unable to read [%s]", path), e);
+    }
+  }
+
+  /** Reads the file from the beginning. The underlying reader is closed once it is exhausted. */
+  public Iterator<Row> iterator() {
+    Reader reader = reader();
+    return new Iterator<>() {
+      private Row next = advance();
+
+      private Row advance() {
+        Row row = reader.next();
+        if (row == null) {
+          reader.close();
+        }
+        return row;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return next != null;
+      }
+
+      @Override
+      public Row next() {
+        if (next == null) {
+          throw new NoSuchElementException();
+        }
+        Row current = next;
+        next = advance();
+        return current;
+      }
+    };
+  }
+
+  @Override
+  public void close() {
+    try {
+      finish();
+    } finally {
+      try {
+        Files.deleteIfExists(path);
+      } catch (IOException e) {
+        log.warn("Unable to delete spill file [{}]", path, e);
+      }
+    }
+  }
+
+  /** Sequential reader over the rows of a {@link SpillFile}. */
+  public class Reader implements Closeable {
+    private final DataInputStream in;
+
+    private Reader(DataInputStream in) {
+      this.in = in;
+    }
+
+    /**
+     * @return the next row, or null when the file is exhausted.
+     */
+    public Row next() {
+      try {
+        return RowCodec.read(in);
+      } catch (IOException e) {
+        throw new UncheckedIOException(String.format("Unable to read [%s]", path), e);
+      }
+    }
+
+    @Override
+    public void close() {
+      try {
+        in.close();
+      } catch (IOException e) {
+        log.warn("Unable to close spill file [{}]", path, e);
+      }
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package com.ansonator.query.stats;
+
+import com.ansonator.query.sort.RowComparators;
+
+/**
+ * The number of values, nulls and (approximately) distinct values of one column, and its smallest
+ * and largest values. Thread safe, since a parallel stream may add values from many threads.
+ *
+ * <p>The minimum and maximum are only kept while every value is a number, or every value is of one
+ * {@link Comparable} class, since only then are they ordered consistently by {@link
+ * RowComparators#compareValues}.
+ */
+public final class ColumnStatistics {
+  private final String name;
+  private long count = 0;
+  private long nullCount = 0;
+  private final HyperLogLog distinct = new HyperLogLog();
+  private Object min;
+  private Object max;
+  private boolean ordered = true;
+
+  ColumnStatistics(String name) {
+    this.name = name;
+  }
+
+  public synchronized void add(Object value) {
+    count++;
+    if (value == null) {
+      nullCount++;
+      return;
+    }
+    distinct.add(value);
+    if (!ordered) {
+      return;
+    }
+    if (min == null) {
+      if (value instanceof Number || value instanceof Comparable) {
+        min = value;
+        max = value;
+      } else {
+        ordered = false;
+      }
+    } else if (!isComparable(min, value)) {
+      ordered = false;
+      min = null;
+      max = null;
+    } else if (RowComparators.compareValues(value, min) < 0) {
+      min = value;
+    } else if (RowComparators.compareValues(value, max) > 0) {
+      max = value;
+    }
+  }
+
+  private static boolean isComparable(Object a, Object b) {
+    return (a instanceof Number && b instanceof Number) || a.getClass() == b.getClass();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the number of values added, including nulls. Zero if the column was never read.
+   */
+  public synchronized long getCount() {
+    return count;
+  }
+
+  public synchronized long getNullCount() {
+    return nullCount;
+  }
+
+  /**
+   * @return the estimated number of distinct non-null values, at most the number of them
+   */
+  public synchronized long getDistinctCount() {
+    return Math.min(distinct.estimate(), count - nullCount);
+  }
+
+  /**
+   * @return the smallest non-null value, or null if there is none or the values are not ordered
+   */
+  public synchronized Object getMin() {
+    return min;
+  }
+
+  /**
+   * @return the largest non-null value, or null if there is none or the values are not ordered
+   */
+  public synchronized Object getMax() {
+    return max;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        "%s[count=%d, nulls=%d, distinct=%d, min=%s, max=%s]",
+        name, count, nullCount, getDistinctCount(), min, max);
+  }
+}
@@ -0,0 +1,58 @@
+package com.ansonator.query.stats;
+
+/**
+ * Estimates the number of distinct values added to it in a fixed 4 KB, within about 2% for large
+ * counts. See Flajolet et al., "HyperLogLog: the analysis of a near-optimal cardinality estimation
+ * algorithm". Not thread safe.
+ */
+public final class HyperLogLog {
+  private static final int PRECISION = 12;
+  private static final int REGISTERS = 1 << PRECISION;
+  private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+  // The most leading zeros, plus one, seen among the hashes which fall in each register
+  private final byte[] registers = new byte[REGISTERS];
+
+  public void add(Object value) {
+    long hash = mix(value.hashCode());
+    int register = (int) (hash >>> (Long.SIZE - PRECISION));
+    int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+    if (rank > registers[register]) {
+      registers[register] = (byte) rank;
+    }
+  }
+
+  /** Adds the values counted by {@code other}. */
+  public void merge(HyperLogLog other) {
+    for (int i = 0; i < REGISTERS; i++) {
+      registers[i] = (byte) Math.max(registers[i], other.registers[i]);
+    }
+  }
+
+  public long estimate() {
+    double sum = 0;
+    int zeros = 0;
+    for (byte rank : registers) {
+      sum += 1.0 / (1L << rank);
+      if (rank == 0) {
+        zeros++;
+      }
+    }
+    double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+    if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+      // Linear counting is more accurate for small counts
+      estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+    }
+    return Math.round(estimate);
+  }
+
+  /** Spreads the bits of a hash code over 64 bits. From MurmurHash3's finalizer. */
+  private static long mix(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
@@ -0,0 +1,49 @@
+package com.ansonator.query.stats;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link ColumnStatistics} for each column of a source, plus its number of rows. Sources fill these
+ * in as they are read (see {@link com.ansonator.query.Query#collectStatistics}), or when they are
+ * built (see {@link com.ansonator.query.column.ColumnTable}). The {@link
+ * com.ansonator.query.plan.CardinalityEstimator} uses them in place of its default guesses.
+ */
+public final class TableStatistics {
+  private final LongAdder rows = new LongAdder();
+  private final Map<String, ColumnStatistics> columns = new LinkedHashMap<>();
+
+  private TableStatistics(List<String> columns) {
+    columns.forEach(column -> this.columns.put(column, new ColumnStatistics(column)));
+  }
+
+  public static TableStatistics of(List<String> columns) {
+    return new TableStatistics(columns);
+  }
+
+  public void addRow() {
+    rows.increment();
+  }
+
+  public void addRows(long count) {
+    rows.add(count);
+  }
+
+  public long getRowCount() {
+    return rows.sum();
+  }
+
+  /**
+   * @return the statistics of {@code column}, or null if it is not a column of the source
+   */
+  public ColumnStatistics getColumn(String column) {
+    return columns.get(column);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Statistics[rows=%d, %s]", getRowCount(), columns.values());
+  }
+}
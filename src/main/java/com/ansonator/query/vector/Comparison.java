@@ -0,0 +1,65 @@
+package com.ansonator.query.vector;
+
+/** A comparison between a column value and a constant. */
+public enum Comparison {
+  EQ("="),
+  NE("<>"),
+  LT("<"),
+  LE("<="),
+  GT(">"),
+  GE(">=");
+
+  private final String symbol;
+
+  Comparison(String symbol) {
+    this.symbol = symbol;
+  }
+
+  /**
+   * @param order the sign of {@code compare(value, constant)}
+   * @return true if a value which compares to the constant as {@code order} satisfies this
+   */
+  public boolean test(int order) {
+    switch (this) {
+      case EQ:
+        return order == 0;
+      case NE:
+        return order != 0;
+      case LT:
+        return order < 0;
+      case LE:
+        return order <= 0;
+      case GT:
+        return order > 0;
+      default:
+        return order >= 0;
+    }
+  }
+
+  public boolean test(long value, long constant) {
+    return test(Long.compare(value, constant));
+  }
+
+  /** IEEE semantics. So, NaN only satisfies {@link #NE}. */
+  public boolean test(double value, double constant) {
+    switch (this) {
+      case EQ:
+        return value == constant;
+      case NE:
+        return value != constant;
+      case LT:
+        return value < constant;
+      case LE:
+        return value <= constant;
+      case GT:
+        return value > constant;
+      default:
+        return value >= constant;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return symbol;
+  }
+}
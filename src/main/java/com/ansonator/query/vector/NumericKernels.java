@@ -0,0 +1,77 @@
+package com.ansonator.query.vector;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Comparisons and reductions over primitive column arrays.
+ *
+ * <p>Rows are addressed through a selection vector: ascending indexes of the rows to consider. When
+ * a selection is the identity over the whole array, implementations may read the array
+ * contiguously.
+ *
+ * <p>{@link #get} returns {@link VectorKernels} when the JVM was started with {@code --add-modules
+ * jdk.incubator.vector}, and {@link ScalarKernels} otherwise.
+ */
+public interface NumericKernels {
+  /**
+   * Remove rows whose value does not satisfy {@code comparison} from {@code selection}, preserving
+   * order.
+   *
+   * @param selection ascending row indexes. This is modified.
+   * @param selected number of rows in {@code selection}
+   * @return number of satisfying rows, which are now at the front of {@code selection}
+   */
+  int select(long[] values, Comparison comparison, long constant, int[] selection, int selected);
+
+  /** See {@link #select(long[], Comparison, long, int[], int)}. Comparisons are IEEE. */
+  int select(
+      double[] values, Comparison comparison, double constant, int[] selection, int selected);
+
+  /**
+   * @param rows ascending row indexes
+   * @return the sum of {@code values[rows[from, to)]}, which must not be empty
+   */
+  long sum(long[] values, int[] rows, int from, int to);
+
+  long min(long[] values, int[] rows, int from, int to);
+
+  long max(long[] values, int[] rows, int from, int to);
+
+  /** IEEE semantics. */
+  double min(double[] values, int[] rows, int from, int to);
+
+  /** IEEE semantics. */
+  double max(double[] values, int[] rows, int from, int to);
+
+  static NumericKernels get() {
+    return Holder.INSTANCE;
+  }
+
+  /**
+   * @return true if {@code selection[0, selected)} is every index of an array of {@code length}
+   */
+  static boolean isDense(int[] selection, int selected, int length) {
+    return selected == length && (selected == 0 || selection[selected - 1] == selected - 1);
+  }
+
+  @Log4j2
+  final class Holder {
+    private static final NumericKernels INSTANCE = load();
+
+    private Holder() {}
+
+    private static NumericKernels load() {
+      if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+        try {
+          NumericKernels kernels = new VectorKernels();
+          log.debug("Using {}", kernels);
+          return kernels;
+        } catch (LinkageError e) {
+          log.debug("Vector API is unavailable", e);
+        }
+      }
+      log.debug("Using scalar kernels. Add --add-modules jdk.incubator.vector to use SIMD.");
+      return new ScalarKernels();
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package com.ansonator.query.vector;
+
+/** Plain loops. The JIT may still auto-vectorize some of these. */
+public class ScalarKernels implements NumericKernels {
+  @Override
+  public int select(
+      long[] values, Comparison comparison, long constant, int[] selection, int selected) {
+    int matched = 0;
+    for (int i = 0; i < selected; i++) {
+      int row = selection[i];
+      if (comparison.test(values[row], constant)) {
+        selection[matched++] = row;
+      }
+    }
+    return matched;
+  }
+
+  @Override
+  public int select(
+      double[] values, Comparison comparison, double constant, int[] selection, int selected) {
+    int matched = 0;
+    for (int i = 0; i < selected; i++) {
+      int row = selection[i];
+      if (comparison.test(values[row], constant)) {
+        selection[matched++] = row;
+      }
+    }
+    return matched;
+  }
+
+  @Override
+  public long sum(long[] values, int[] rows, int from, int to) {
+    long sum = 0;
+    for (int i = from; i < to; i++) {
+      sum += values[rows[i]];
+    }
+    return sum;
+  }
+
+  @Override
+  public long min(long[] values, int[] rows, int from, int to) {
+    long min = Long.MAX_VALUE;
+    for (int i = from; i < to; i++) {
+      min = Math.min(min, values[rows[i]]);
+    }
+    return min;
+  }
+
+  @Override
+  public long max(long[] values, int[] rows, int from, int to) {
+    long max = Long.MIN_VALUE;
+    for (int i = from; i < to; i++) {
+      max = Math.max(max, values[rows[i]]);
+    }
+    return max;
+  }
+
+  @Override
+  public double min(double[] values, int[] rows, int from, int to) {
+    double min = Double.POSITIVE_INFINITY;
+    for (int i = from; i < to; i++) {
+      min = Math.min(min, values[rows[i]]);
+    }
+    return min;
+  }
+
+  @Override
+  public double max(double[] values, int[] rows, int from, int to) {
+    double max = Double.NEGATIVE_INFINITY;
+    for (int i = from; i < to; i++) {
+      max = Math.max(max, values[rows[i]]);
+    }
+    return max;
+  }
+
+  @Override
+  public String toString() {
+    return "ScalarKernels";
+  }
+}
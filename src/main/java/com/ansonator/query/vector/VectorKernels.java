@@ -0,0 +1,256 @@
+package com.ansonator.query.vector;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels written against the incubating Vector API, using the widest species the CPU supports
+ * (e.g. 4 longs per AVX2 register, 8 with AVX-512).
+ *
+ * <p>On JDK 17, turning a lane mask into row indexes is not intrinsified, and neither are gathers
+ * through an index array, so both are slower than a scalar loop. This shapes the kernels:
+ *
+ * <ul>
+ *   <li>Comparisons over a dense selection compare a whole vector at once, and only append rows one
+ *       by one when some but not all lanes match. That is a large win for clustered data (e.g.,
+ *       ranges over a sorted or time ordered column). When most vectors are mixed, the kernel
+ *       switches to the scalar loop for the rest of the batch.
+ *   <li>Reductions over contiguous rows load and reduce whole vectors.
+ *   <li>Sparse selections and scattered rows use {@link ScalarKernels}.
+ * </ul>
+ *
+ * <p>Vector operators are constants at each call site so that C2 can intrinsify them. Requires
+ * {@code --add-modules jdk.incubator.vector}. Use {@link NumericKernels#get} rather than
+ * constructing this directly.
+ */
+public class VectorKernels implements NumericKernels {
+  private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+  // Vectors to compare before deciding whether SIMD pays off for the rest of a batch
+  private static final int PROBE = 8;
+
+  private final ScalarKernels scalar = new ScalarKernels();
+
+  @Override
+  public int select(
+      long[] values, Comparison comparison, long constant, int[] selection, int selected) {
+    if (!NumericKernels.isDense(selection, selected, values.length)) {
+      return scalar.select(values, comparison, constant, selection, selected);
+    }
+    int step = LONGS.length();
+    int bound = LONGS.loopBound(selected);
+    int matched = 0;
+    int mixed = 0;
+    int i = 0;
+    for (; i < bound; i += step) {
+      VectorMask<Long> mask = compare(LongVector.fromArray(LONGS, values, i), comparison, constant);
+      if (mask.allTrue()) {
+        for (int lane = 0; lane < step; lane++) {
+          selection[matched++] = i + lane;
+        }
+      } else if (mask.anyTrue()) {
+        for (int row = i; row < i + step; row++) {
+          if (comparison.test(values[row], constant)) {
+            selection[matched++] = row;
+          }
+        }
+        if (++mixed > PROBE / 2 && i < PROBE * step) {
+          i += step;
+          break;
+        }
+      }
+    }
+    for (; i < selected; i++) {
+      if (comparison.test(values[i], constant)) {
+        selection[matched++] = i;
+      }
+    }
+    return matched;
+  }
+
+  @Override
+  public int select(
+      double[] values, Comparison comparison, double constant, int[] selection, int selected) {
+    if (!NumericKernels.isDense(selection, selected, values.length)) {
+      return scalar.select(values, comparison, constant, selection, selected);
+    }
+    int step = DOUBLES.length();
+    int bound = DOUBLES.loopBound(selected);
+    int matched = 0;
+    int mixed = 0;
+    int i = 0;
+    for (; i < bound; i += step) {
+      VectorMask<Double> mask =
+          compare(DoubleVector.fromArray(DOUBLES, values, i), comparison, constant);
+      if (mask.allTrue()) {
+        for (int lane = 0; lane < step; lane++) {
+          selection[matched++] = i + lane;
+        }
+      } else if (mask.anyTrue()) {
+        for (int row = i; row < i + step; row++) {
+          if (comparison.test(values[row], constant)) {
+            selection[matched++] = row;
+          }
+        }
+        if (++mixed > PROBE / 2 && i < PROBE * step) {
+          i += step;
+          break;
+        }
+      }
+    }
+    for (; i < selected; i++) {
+      if (comparison.test(values[i], constant)) {
+        selection[matched++] = i;
+      }
+    }
+    return matched;
+  }
+
+  private static VectorMask<Long> compare(LongVector vector, Comparison comparison, long constant) {
+    switch (comparison) {
+      case EQ:
+        return vector.compare(VectorOperators.EQ, constant);
+      case NE:
+        return vector.compare(VectorOperators.NE, constant);
+      case LT:
+        return vector.compare(VectorOperators.LT, constant);
+      case LE:
+        return vector.compare(VectorOperators.LE, constant);
+      case GT:
+        return vector.compare(VectorOperators.GT, constant);
+      default:
+        return vector.compare(VectorOperators.GE, constant);
+    }
+  }
+
+  private static VectorMask<Double> compare(
+      DoubleVector vector, Comparison comparison, double constant) {
+    switch (comparison) {
+      case EQ:
+        return vector.compare(VectorOperators.EQ, constant);
+      case NE:
+        return vector.compare(VectorOperators.NE, constant);
+      case LT:
+        return vector.compare(VectorOperators.LT, constant);
+      case LE:
+        return vector.compare(VectorOperators.LE, constant);
+      case GT:
+        return vector.compare(VectorOperators.GT, constant);
+      default:
+        return vector.compare(VectorOperators.GE, constant);
+    }
+  }
+
+  @Override
+  public long sum(long[] values, int[] rows, int from, int to) {
+    if (!isContiguous(rows, from, to)) {
+      return scalar.sum(values, rows, from, to);
+    }
+    int start = rows[from];
+    int end = start + to - from;
+    int bound = start + LONGS.loopBound(end - start);
+    LongVector accumulator = LongVector.zero(LONGS);
+    int i = start;
+    for (; i < bound; i += LONGS.length()) {
+      accumulator = accumulator.add(LongVector.fromArray(LONGS, values, i));
+    }
+    long sum = accumulator.reduceLanes(VectorOperators.ADD);
+    for (; i < end; i++) {
+      sum += values[i];
+    }
+    return sum;
+  }
+
+  @Override
+  public long min(long[] values, int[] rows, int from, int to) {
+    if (!isContiguous(rows, from, to)) {
+      return scalar.min(values, rows, from, to);
+    }
+    int start = rows[from];
+    int end = start + to - from;
+    int bound = start + LONGS.loopBound(end - start);
+    LongVector accumulator = LongVector.broadcast(LONGS, Long.MAX_VALUE);
+    int i = start;
+    for (; i < bound; i += LONGS.length()) {
+      accumulator = accumulator.min(LongVector.fromArray(LONGS, values, i));
+    }
+    long min = accumulator.reduceLanes(VectorOperators.MIN);
+    for (; i < end; i++) {
+      min = Math.min(min, values[i]);
+    }
+    return min;
+  }
+
+  @Override
+  public long max(long[] values, int[] rows, int from, int to) {
+    if (!isContiguous(rows, from, to)) {
+      return scalar.max(values, rows, from, to);
+    }
+    int start = rows[from];
+    int end = start + to - from;
+    int bound = start + LONGS.loopBound(end - start);
+    LongVector accumulator = LongVector.broadcast(LONGS, Long.MIN_VALUE);
+    int i = start;
+    for (; i < bound; i += LONGS.length()) {
+      accumulator = accumulator.max(LongVector.fromArray(LONGS, values, i));
+    }
+    long max = accumulator.reduceLanes(VectorOperators.MAX);
+    for (; i < end; i++) {
+      max = Math.max(max, values[i]);
+    }
+    return max;
+  }
+
+  @Override
+  public double min(double[] values, int[] rows, int from, int to) {
+    if (!isContiguous(rows, from, to)) {
+      return scalar.min(values, rows, from, to);
+    }
+    int start = rows[from];
+    int end = start + to - from;
+    int bound = start + DOUBLES.loopBound(end - start);
+    DoubleVector accumulator = DoubleVector.broadcast(DOUBLES, Double.POSITIVE_INFINITY);
+    int i = start;
+    for (; i < bound; i += DOUBLES.length()) {
+      accumulator = accumulator.min(DoubleVector.fromArray(DOUBLES, values, i));
+    }
+    double min = accumulator.reduceLanes(VectorOperators.MIN);
+    for (; i < end; i++) {
+      min = Math.min(min, values[i]);
+    }
+    return min;
+  }
+
+  @Override
+  public double max(double[] values, int[] rows, int from, int to) {
+    if (!isContiguous(rows, from, to)) {
+      return scalar.max(values, rows, from, to);
+    }
+    int start = rows[from];
+    int end = start + to - from;
+    int bound = start + DOUBLES.loopBound(end - start);
+    DoubleVector accumulator = DoubleVector.broadcast(DOUBLES, Double.NEGATIVE_INFINITY);
+    int i = start;
+    for (; i < bound; i += DOUBLES.length()) {
+      accumulator = accumulator.max(DoubleVector.fromArray(DOUBLES, values, i));
+    }
+    double max = accumulator.reduceLanes(VectorOperators.MAX);
+    for (; i < end; i++) {
+      max = Math.max(max, values[i]);
+    }
+    return max;
+  }
+
+  /** Ascending rows with no gaps are loaded directly rather than one by one. */
+  private static boolean isContiguous(int[] rows, int from, int to) {
+    return to > from && rows[to - 1] - rows[from] == to - from - 1;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("VectorKernels[%s, %s]", LONGS, DOUBLES);
+  }
+}
@@ -0,0 +1,243 @@
+package com.ansonator.query.window;
+
+import com.ansonator.query.cell.NumericAggregate;
+import com.ansonator.query.row.Row;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Aggregates rows per group and {@link TimeWindows time window}, like {@link Row#merge}: columns
+ * without an accumulator must be equal within a group, except the time column, which keeps its
+ * maximum unless it has an accumulator.
+ *
+ * <p>Input is read lazily, and each window's result is emitted as soon as the watermark closes it,
+ * so only open windows are kept in memory. Results come out in order of their window's end. When
+ * the input ends, the remaining windows are emitted.
+ */
+public class TimeWindowOperator {
+  private final TimeWindows windows;
+  private final int time;
+  private final int[] groupBy;
+  private final Map<Integer, BinaryOperator<Object>> accumulators = new HashMap<>();
+
+  /**
+   * @param columns the input's column to index mapping
+   */
+  public TimeWindowOperator(
+      TimeWindows windows,
+      List<String> groupBy,
+      Map<String, BinaryOperator<Object>> accumulators,
+      Map<String, Integer> columns) {
+    this.windows = windows;
+    this.time = indexOf(columns, windows.getTimeColumn());
+    this.groupBy = groupBy.stream().mapToInt(column -> indexOf(columns, column)).toArray();
+    accumulators.forEach(
+        (column, accumulator) -> {
+          if (columns.containsKey(column)) {
+            this.accumulators.put(columns.get(column), accumulator);
+          }
+        });
+    this.accumulators.putIfAbsent(time, NumericAggregate.MAX);
+  }
+
+  private static int indexOf(Map<String, Integer> columns, String column) {
+    Integer index = columns.get(column);
+    if (index == null) {
+      throw new IllegalArgumentException(
+          String.format("Unknown column [%s] in %s", column, columns.keySet()));
+    }
+    return index;
+  }
+
+  /**
+   * @return each window's merged row, followed by its start and end
+   */
+  public Stream<Row> evaluate(Stream<Row> input) {
+    Spliterator<Row> source = input.spliterator();
+    State state = new State();
+    Spliterator<Row> results =
+        new Spliterators.AbstractSpliterator<Row>(
+            Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+          private boolean done = false;
+
+          @Override
+          public boolean tryAdvance(Consumer<? super Row> action) {
+            while (state.output.isEmpty() && !done) {
+              if (!source.tryAdvance(state::add)) {
+                state.flush();
+                done = true;
+              }
+            }
+            if (state.output.isEmpty()) {
+              return false;
+            }
+            action.accept(state.output.poll());
+            return true;
+          }
+        };
+    return StreamSupport.stream(results, false).onClose(input::close);
+  }
+
+  /**
+   * @return the row's event time in epoch milliseconds, or null if it has none
+   */
+  static Long timestamp(Object value) {
+    if (value == null) {
+      return null;
+    } else if (value instanceof Number) {
+      return ((Number) value).longValue();
+    } else if (value instanceof Instant) {
+      return ((Instant) value).toEpochMilli();
+    } else if (value instanceof Date) {
+      return ((Date) value).getTime();
+    }
+    throw new IllegalArgumentException(
+        String.format("Value [%s] of type [%s] is not a timestamp", value, value.getClass()));
+  }
+
+  private static class Window {
+    private final Row key;
+    private final long start;
+    private final long end;
+    private final Row row;
+
+    Window(Row key, long start, long end, Row row) {
+      this.key = key;
+      this.start = start;
+      this.end = end;
+      this.row = row;
+    }
+  }
+
+  /** The open windows of one evaluation. */
+  private class State {
+    // Per group, its open windows by start
+    private final Map<Row, NavigableMap<Long, Window>> open = new HashMap<>();
+    // Open windows by end, in the order they were opened
+    private final NavigableMap<Long, Set<Window>> byEnd = new TreeMap<>();
+    private final ArrayDeque<Row> output = new ArrayDeque<>();
+    private long watermark = Long.MIN_VALUE;
+
+    void add(Row row) {
+      Long time = timestamp(row.vals[TimeWindowOperator.this.time]);
+      boolean accepted = false;
+      if (time != null) {
+        Row key = new Row(row, groupBy);
+        accepted =
+            windows.getKind() == TimeWindows.Kind.SESSION
+                ? addToSession(key, time, row)
+                : addToWindows(key, time, row);
+        watermark = Math.max(watermark, time - windows.getWatermarkDelay());
+      }
+      if (!accepted) {
+        windows.getLateRows().accept(row);
+      }
+      while (!byEnd.isEmpty() && isClosed(byEnd.firstKey())) {
+        byEnd.pollFirstEntry().getValue().forEach(this::emit);
+      }
+    }
+
+    private boolean isClosed(long end) {
+      return watermark != Long.MIN_VALUE && end + windows.getAllowedLateness() <= watermark;
+    }
+
+    private boolean addToWindows(Row key, long time, Row row) {
+      long size = windows.getSize();
+      long slide = windows.getSlide();
+      boolean accepted = false;
+      for (long start = Math.floorDiv(time, slide) * slide; start > time - size; start -= slide) {
+        if (isClosed(start + size)) {
+          break;
+        }
+        NavigableMap<Long, Window> groups = open.computeIfAbsent(key, k -> new TreeMap<>());
+        Window window = groups.get(start);
+        if (window == null) {
+          window = new Window(key, start, start + size, copy(row));
+          groups.put(start, window);
+          byEnd.computeIfAbsent(window.end, end -> new LinkedHashSet<>()).add(window);
+        } else {
+          window.row.merge(row, accumulators);
+        }
+        accepted = true;
+      }
+      return accepted;
+    }
+
+    private boolean addToSession(Row key, long time, Row row) {
+      long start = time;
+      long end = time + windows.getSize();
+      NavigableMap<Long, Window> sessions = open.computeIfAbsent(key, k -> new TreeMap<>());
+      // Sessions never overlap, so those which overlap [start, end) are adjacent
+      List<Window> overlapping = new ArrayList<>();
+      for (Window session : sessions.headMap(end, false).descendingMap().values()) {
+        if (session.end <= start) {
+          break;
+        }
+        overlapping.add(session);
+      }
+      if (overlapping.isEmpty() && isClosed(end)) {
+        if (sessions.isEmpty()) {
+          open.remove(key);
+        }
+        return false;
+      }
+      Row merged = copy(row);
+      for (Window session : overlapping) {
+        start = Math.min(start, session.start);
+        end = Math.max(end, session.end);
+        merged.merge(session.row, accumulators);
+        sessions.remove(session.start);
+        Set<Window> ending = byEnd.get(session.end);
+        ending.remove(session);
+        if (ending.isEmpty()) {
+          byEnd.remove(session.end);
+        }
+      }
+      Window session = new Window(key, start, end, merged);
+      sessions.put(start, session);
+      byEnd.computeIfAbsent(end, e -> new LinkedHashSet<>()).add(session);
+      return true;
+    }
+
+    /** A new group, starting with {@code row}. */
+    private Row copy(Row row) {
+      Row group = new Row();
+      group.merge(new Row(row.vals.clone()), accumulators);
+      return group;
+    }
+
+    private void emit(Window window) {
+      NavigableMap<Long, Window> groups = open.get(window.key);
+      groups.remove(window.start);
+      if (groups.isEmpty()) {
+        open.remove(window.key);
+      }
+      Object[] vals = Arrays.copyOf(window.row.vals, window.row.vals.length + 2);
+      vals[vals.length - 2] = window.start;
+      vals[vals.length - 1] = window.end;
+      output.add(new Row(vals));
+    }
+
+    void flush() {
+      while (!byEnd.isEmpty()) {
+        byEnd.pollFirstEntry().getValue().forEach(this::emit);
+      }
+    }
+  }
+}
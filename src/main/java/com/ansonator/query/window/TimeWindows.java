@@ -0,0 +1,120 @@
+package com.ansonator.query.window;
+
+import com.ansonator.query.row.Row;
+import java.time.Duration;
+import java.util.function.Consumer;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Assigns rows to windows by the event time in one of their columns. Times are epoch milliseconds
+ * ({@link Number}s), {@link java.time.Instant}s or {@link java.util.Date}s.
+ *
+ * <p>Windows close by watermark rather than at the end of the input, so they can be evaluated over
+ * unbounded streams. The watermark trails the latest event time seen by {@link
+ * #withWatermarkDelay}, i.e. the most that events are expected to arrive out of order. A window
+ * closes once the watermark passes its end plus {@link #withAllowedLateness}. Rows which only
+ * belong to closed windows are late, and are passed to {@link #onLateRow} instead.
+ *
+ * <p>See {@link com.ansonator.query.Query#groupBy(TimeWindows, String[],
+ * com.ansonator.query.cell.Aggregator...)}.
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class TimeWindows {
+  /** The column appended to each result for the start of its window, in epoch milliseconds. */
+  public static final String WINDOW_START = "window_start";
+  /** The column appended to each result for the (exclusive) end of its window. */
+  public static final String WINDOW_END = "window_end";
+
+  public enum Kind {
+    TUMBLING,
+    SLIDING,
+    SESSION
+  }
+
+  private final Kind kind;
+  private final String timeColumn;
+  /** The length of tumbling and sliding windows, or the gap which ends a session. */
+  private final long size;
+  /** The distance between the starts of sliding windows. */
+  private final long slide;
+
+  private final long watermarkDelay;
+  private final long allowedLateness;
+  private final Consumer<Row> lateRows;
+
+  /** Consecutive windows of {@code size}, each row in exactly one. */
+  public static TimeWindows tumbling(String timeColumn, Duration size) {
+    return sliding(timeColumn, size, size);
+  }
+
+  /** Windows of {@code size} starting every {@code slide}, so they overlap if slide < size. */
+  public static TimeWindows sliding(String timeColumn, Duration size, Duration slide) {
+    long sizeMillis = positive(size);
+    long slideMillis = positive(slide);
+    return new TimeWindows(
+        sizeMillis == slideMillis ? Kind.TUMBLING : Kind.SLIDING,
+        timeColumn,
+        sizeMillis,
+        slideMillis,
+        0,
+        0,
+        row -> {});
+  }
+
+  /**
+   * Windows of activity per group, which end after {@code gap} without a row. Sessions which come
+   * to overlap, e.g. because of a row arriving out of order, are merged.
+   */
+  public static TimeWindows session(String timeColumn, Duration gap) {
+    return new TimeWindows(Kind.SESSION, timeColumn, positive(gap), 0, 0, 0, row -> {});
+  }
+
+  public TimeWindows withWatermarkDelay(Duration delay) {
+    return new TimeWindows(
+        kind, timeColumn, size, slide, nonNegative(delay), allowedLateness, lateRows);
+  }
+
+  /** Keep windows open for {@code lateness} after the watermark passes their end. */
+  public TimeWindows withAllowedLateness(Duration lateness) {
+    return new TimeWindows(
+        kind, timeColumn, size, slide, watermarkDelay, nonNegative(lateness), lateRows);
+  }
+
+  /**
+   * @param action receives rows which arrive too late for any open window, or have no time
+   */
+  public TimeWindows onLateRow(Consumer<Row> action) {
+    return new TimeWindows(kind, timeColumn, size, slide, watermarkDelay, allowedLateness, action);
+  }
+
+  private static long positive(Duration duration) {
+    if (duration.toMillis() <= 0) {
+      throw new IllegalArgumentException(
+          String.format("Window length [%s] must be at least 1 ms", duration));
+    }
+    return duration.toMillis();
+  }
+
+  private static long nonNegative(Duration duration) {
+    if (duration.isNegative()) {
+      throw new IllegalArgumentException(
+          String.format("Duration [%s] must not be negative", duration));
+    }
+    return duration.toMillis();
+  }
+
+  @Override
+  public String toString() {
+    switch (kind) {
+      case TUMBLING:
+        return String.format("Tumbling[%s, %d ms]", timeColumn, size);
+      case SLIDING:
+        return String.format("Sliding[%s, %d ms every %d ms]", timeColumn, size, slide);
+      default:
+        return String.format("Session[%s, gap %d ms]", timeColumn, size);
+    }
+  }
+}
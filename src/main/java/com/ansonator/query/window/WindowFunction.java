@@ -0,0 +1,287 @@
+package com.ansonator.query.window;
+
+import com.ansonator.query.row.Row;
+import java.util.Map;
+import lombok.Getter;
+
+/**
+ * A function evaluated for each row over the other rows of its partition. Its result is appended to
+ * the row as a new column named {@link #getName}.
+ *
+ * <p>Each function declares how many rows before ({@link #getPreceding}) and after ({@link
+ * #getFollowing}) the current row it needs to see. The evaluator only buffers that many rows, so
+ * functions with bounded frames run in constant memory. Functions over an unbounded preceding frame
+ * (e.g., {@link #runningSum}) keep an accumulator instead.
+ */
+@Getter
+public abstract class WindowFunction {
+  private final String name;
+  private final int preceding;
+  private final int following;
+
+  protected WindowFunction(String name, int preceding, int following) {
+    if (preceding < 0 || following < 0) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Window function [%s] has a negative frame [%d, %d]", name, preceding, following));
+    }
+    this.name = name;
+    this.preceding = preceding;
+    this.following = following;
+  }
+
+  /**
+   * Resolves column names. This is called once per evaluation, so the result may keep state.
+   *
+   * @param columns the input's column to index mapping
+   */
+  public abstract Evaluator bind(Map<String, Integer> columns);
+
+  /** Computes a function's value for each row of a partition, in order. */
+  public interface Evaluator {
+    /** Called before the first row of each partition. */
+    default void reset() {}
+
+    Object evaluate(Frame frame);
+  }
+
+  /** A view of the rows surrounding the current row within its partition. */
+  public interface Frame {
+    /**
+     * @param offset relative to the current row. Must be within the function's declared frame.
+     * @return the row, or null if the offset falls outside of the partition
+     */
+    Row row(int offset);
+
+    /**
+     * @return the current row's position within its partition, starting from 0
+     */
+    long position();
+
+    /**
+     * @return true if the current row has the same sort key values as the previous row
+     */
+    boolean isPeer();
+  }
+
+  // Factory methods
+
+  public static WindowFunction rowNumber(String name) {
+    return new WindowFunction(name, 0, 0) {
+      @Override
+      public Evaluator bind(Map<String, Integer> columns) {
+        return frame -> frame.position() + 1;
+      }
+    };
+  }
+
+  /** Position of the first row with the same sort key values, starting from 1. */
+  public static WindowFunction rank(String name) {
+    return new WindowFunction(name, 0, 0) {
+      @Override
+      public Evaluator bind(Map<String, Integer> columns) {
+        return new Evaluator() {
+          private long rank;
+
+          @Override
+          public Object evaluate(Frame frame) {
+            if (!frame.isPeer()) {
+              rank = frame.position() + 1;
+            }
+            return rank;
+          }
+        };
+      }
+    };
+  }
+
+  /** Like {@link #rank} but without gaps. */
+  public static WindowFunction denseRank(String name) {
+    return new WindowFunction(name, 0, 0) {
+      @Override
+      public Evaluator bind(Map<String, Integer> columns) {
+        return new Evaluator() {
+          private long rank;
+
+          @Override
+          public void reset() {
+            rank = 0;
+          }
+
+          @Override
+          public Object evaluate(Frame frame) {
+            if (!frame.isPeer()) {
+              rank++;
+            }
+            return rank;
+          }
+        };
+      }
+    };
+  }
+
+  /** The value of {@code column} from {@code offset} rows before the current row. */
+  public static WindowFunction lag(String name, String column, int offset) {
+    return new Shift(name, column, -offset, offset, 0);
+  }
+
+  /** The value of {@code column} from {@code offset} rows after the current row. */
+  public static WindowFunction lead(String name, String column, int offset) {
+    return new Shift(name, column, offset, 0, offset);
+  }
+
+  /**
+   * Sum of the non-null values of {@code column} from the start of the partition through the
+   * current row. The result is a {@code Long} when all values are integral, otherwise a {@code
+   * Double}.
+   */
+  public static WindowFunction runningSum(String name, String column) {
+    return new WindowFunction(name, 0, 0) {
+      @Override
+      public Evaluator bind(Map<String, Integer> columns) {
+        int index = indexOf(columns, column);
+        return new Evaluator() {
+          private final Sum sum = new Sum();
+
+          @Override
+          public void reset() {
+            sum.clear();
+          }
+
+          @Override
+          public Object evaluate(Frame frame) {
+            sum.add(frame.row(0).vals[index]);
+            return sum.get();
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Sum over {@code ROWS BETWEEN preceding PRECEDING AND following FOLLOWING}.
+   *
+   * @see #runningSum
+   */
+  public static WindowFunction movingSum(String name, String column, int preceding, int following) {
+    return new Moving(name, column, preceding, following, false);
+  }
+
+  /**
+   * Average of the non-null values over {@code ROWS BETWEEN preceding PRECEDING AND following
+   * FOLLOWING}.
+   */
+  public static WindowFunction movingAverage(
+      String name, String column, int preceding, int following) {
+    return new Moving(name, column, preceding, following, true);
+  }
+
+  private static int indexOf(Map<String, Integer> columns, String column) {
+    Integer index = columns.get(column);
+    if (index == null) {
+      throw new IllegalArgumentException(String.format("Column [%s] not found", column));
+    }
+    return index;
+  }
+
+  private static class Shift extends WindowFunction {
+    private final String column;
+    private final int offset;
+
+    private Shift(String name, String column, int offset, int preceding, int following) {
+      super(name, preceding, following);
+      this.column = column;
+      this.offset = offset;
+    }
+
+    @Override
+    public Evaluator bind(Map<String, Integer> columns) {
+      int index = indexOf(columns, column);
+      return frame -> {
+        Row row = frame.row(offset);
+        return row == null ? null : row.vals[index];
+      };
+    }
+  }
+
+  private static class Moving extends WindowFunction {
+    private final String column;
+    private final boolean average;
+
+    private Moving(String name, String column, int preceding, int following, boolean average) {
+      super(name, preceding, following);
+      this.column = column;
+      this.average = average;
+    }
+
+    @Override
+    public Evaluator bind(Map<String, Integer> columns) {
+      int index = indexOf(columns, column);
+      Sum sum = new Sum();
+      return frame -> {
+        sum.clear();
+        for (int offset = -getPreceding(); offset <= getFollowing(); offset++) {
+          Row row = frame.row(offset);
+          if (row != null) {
+            sum.add(row.vals[index]);
+          }
+        }
+        return average ? sum.average() : sum.get();
+      };
+    }
+  }
+
+  /** Sum of boxed numbers which stays integral for as long as its inputs are. */
+  private static class Sum {
+    private long longSum;
+    private double doubleSum;
+    private boolean integral;
+    private long count;
+
+    private Sum() {
+      clear();
+    }
+
+    private void clear() {
+      longSum = 0;
+      doubleSum = 0;
+      integral = true;
+      count = 0;
+    }
+
+    private void add(Object val) {
+      if (val == null) {
+        return;
+      }
+      Number num = (Number) val;
+      count++;
+      if (integral
+          && (num instanceof Integer
+              || num instanceof Long
+              || num instanceof Short
+              || num instanceof Byte)) {
+        longSum += num.longValue();
+      } else {
+        if (integral) {
+          doubleSum = longSum;
+          integral = false;
+        }
+        doubleSum += num.doubleValue();
+      }
+    }
+
+    private Object get() {
+      if (count == 0) {
+        return null;
+      }
+      return integral ? (Object) longSum : (Object) doubleSum;
+    }
+
+    private Object average() {
+      if (count == 0) {
+        return null;
+      }
+      return (integral ? (double) longSum : doubleSum) / count;
+    }
+  }
+}
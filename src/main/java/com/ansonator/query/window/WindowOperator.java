@@ -0,0 +1,204 @@
+package com.ansonator.query.window;
+
+import com.ansonator.query.row.Row;
+import com.ansonator.query.sort.InMemorySorter;
+import com.ansonator.query.sort.SortKey;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Evaluates {@link WindowFunction}s in a single pass over input which is sorted by partition and
+ * sort keys.
+ *
+ * <p>Rows of the current partition are held in a ring buffer which is just large enough for the
+ * widest frame of any function. A row is evaluated (and returned) as soon as enough following rows
+ * have been read, or its partition has ended. So, memory use is bounded by the frame sizes rather
+ * than the partition sizes.
+ */
+public class WindowOperator {
+  private final WindowSpec spec;
+  private final List<WindowFunction> functions;
+  private final Map<String, Integer> columns;
+  private final int[] partitionIndexes;
+  private final int[] orderIndexes;
+  private final int preceding;
+  private final int following;
+
+  /**
+   * @param columns the input's column to index mapping
+   */
+  public WindowOperator(
+      WindowSpec spec, List<WindowFunction> functions, Map<String, Integer> columns) {
+    this.spec = spec;
+    this.functions = functions;
+    this.columns = columns;
+    this.partitionIndexes =
+        spec.getPartitionBy().stream().mapToInt(col -> indexOf(columns, col)).toArray();
+    this.orderIndexes =
+        spec.getOrderBy().stream()
+            .map(SortKey::getColumn)
+            .mapToInt(col -> indexOf(columns, col))
+            .toArray();
+    this.preceding = functions.stream().mapToInt(WindowFunction::getPreceding).max().orElse(0);
+    this.following = functions.stream().mapToInt(WindowFunction::getFollowing).max().orElse(0);
+  }
+
+  private static int indexOf(Map<String, Integer> columns, String column) {
+    Integer index = columns.get(column);
+    if (index == null) {
+      throw new IllegalArgumentException(String.format("Column [%s] not found", column));
+    }
+    return index;
+  }
+
+  /**
+   * @param input rows sorted as required by the {@link WindowSpec}. This is not consumed until a
+   *     terminal operation is invoked on the result.
+   * @param sortedBy the keys by which {@code input} is known to be sorted. If these do not satisfy
+   *     the {@link WindowSpec}, the input is sorted first.
+   * @return each input row with one column appended per function
+   */
+  public Stream<Row> evaluate(Stream<Row> input, List<SortKey> sortedBy) {
+    Stream<Row> sorted =
+        spec.isSatisfiedBy(sortedBy)
+            ? input
+            : new InMemorySorter(spec.getSortKeys(), columns, false).sort(input);
+    return StreamSupport.stream(
+            () -> new Evaluation(sorted.spliterator()), Spliterator.ORDERED, false)
+        .onClose(sorted::close);
+  }
+
+  private class Evaluation implements Spliterator<Row>, WindowFunction.Frame {
+    private final Spliterator<Row> input;
+    private final WindowFunction.Evaluator[] evaluators;
+    private final Row[] ring;
+    private final int mask;
+    private Row read;
+    private Row pending = null;
+    private boolean partitionComplete = false;
+    private long count = 0;
+    private long current = 0;
+
+    private Evaluation(Spliterator<Row> input) {
+      this.input = input;
+      this.evaluators =
+          functions.stream().map(fn -> fn.bind(columns)).toArray(WindowFunction.Evaluator[]::new);
+      int capacity = Integer.highestOneBit(preceding + following + 1) << 1;
+      this.ring = new Row[capacity];
+      this.mask = capacity - 1;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Row> action) {
+      while (true) {
+        if (current < count && (partitionComplete || count - 1 - current >= following)) {
+          action.accept(evaluateCurrent());
+          current++;
+          return true;
+        }
+        if (partitionComplete) {
+          if (pending == null) {
+            return false;
+          }
+          startPartition(pending);
+          pending = null;
+        } else if (!input.tryAdvance(row -> read = row)) {
+          partitionComplete = true;
+        } else if (count == 0) {
+          startPartition(read);
+        } else if (!samePartition(ring[(int) (count - 1) & mask], read)) {
+          pending = read;
+          partitionComplete = true;
+        } else {
+          ring[(int) count & mask] = read;
+          count++;
+        }
+      }
+    }
+
+    private void startPartition(Row first) {
+      Arrays.fill(ring, null);
+      ring[0] = first;
+      count = 1;
+      current = 0;
+      partitionComplete = false;
+      for (WindowFunction.Evaluator evaluator : evaluators) {
+        evaluator.reset();
+      }
+    }
+
+    private Row evaluateCurrent() {
+      Row row = ring[(int) current & mask];
+      Object[] vals = Arrays.copyOf(row.vals, row.vals.length + evaluators.length);
+      for (int i = 0; i < evaluators.length; i++) {
+        vals[row.vals.length + i] = evaluators[i].evaluate(this);
+      }
+      return new Row(vals);
+    }
+
+    private boolean samePartition(Row a, Row b) {
+      for (int index : partitionIndexes) {
+        if (!Objects.equals(a.vals[index], b.vals[index])) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public Row row(int offset) {
+      if (offset < -preceding || offset > following) {
+        throw new IllegalArgumentException(
+            String.format(
+                "Offset [%d] is outside of the window frame [%d, %d]",
+                offset, -preceding, following));
+      }
+      long position = current + offset;
+      if (position < 0 || position >= count) {
+        return null;
+      }
+      return ring[(int) position & mask];
+    }
+
+    @Override
+    public long position() {
+      return current;
+    }
+
+    @Override
+    public boolean isPeer() {
+      if (current == 0) {
+        return false;
+      }
+      Row row = ring[(int) current & mask];
+      Row previous = ring[(int) (current - 1) & mask];
+      for (int index : orderIndexes) {
+        if (!Objects.equals(row.vals[index], previous.vals[index])) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public Spliterator<Row> trySplit() {
+      return null;
+    }
+
+    @Override
+    public long estimateSize() {
+      return input.estimateSize();
+    }
+
+    @Override
+    public int characteristics() {
+      return Spliterator.ORDERED;
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package com.ansonator.query.window;
+
+import com.ansonator.query.sort.SortKey;
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * The {@code PARTITION BY ... ORDER BY ...} clause of a window. Rows are grouped into partitions by
+ * equal values of the partition columns. Within a partition, window functions see rows in the order
+ * of the sort keys.
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class WindowSpec {
+  private final List<String> partitionBy;
+  private final List<SortKey> orderBy;
+  private final boolean presorted;
+
+  public static WindowSpec partitionBy(String... columns) {
+    return new WindowSpec(ImmutableList.copyOf(columns), ImmutableList.of(), false);
+  }
+
+  public static WindowSpec orderBy(SortKey... keys) {
+    return partitionBy().thenOrderBy(keys);
+  }
+
+  public WindowSpec thenOrderBy(SortKey... keys) {
+    return new WindowSpec(partitionBy, ImmutableList.copyOf(keys), presorted);
+  }
+
+  /**
+   * Declares that the input is already sorted by the partition columns followed by the sort keys.
+   * This skips the sort which would otherwise precede evaluation. It is the client's responsibility
+   * to ensure that this is true.
+   */
+  public WindowSpec presorted() {
+    return new WindowSpec(partitionBy, orderBy, true);
+  }
+
+  /**
+   * @param sortedBy the keys by which the input is known to be sorted
+   * @return true if input sorted by {@code sortedBy} may be evaluated without sorting it first
+   */
+  public boolean isSatisfiedBy(List<SortKey> sortedBy) {
+    if (presorted) {
+      return true;
+    }
+    int size = partitionBy.size() + orderBy.size();
+    if (sortedBy.size() < size) {
+      return false;
+    }
+    for (int i = 0; i < partitionBy.size(); i++) {
+      if (!partitionBy.contains(sortedBy.get(i).getColumn())) {
+        return false;
+      }
+    }
+    return sortedBy.subList(partitionBy.size(), size).equals(orderBy);
+  }
+
+  /** The keys by which rows are sorted before evaluating window functions. */
+  public List<SortKey> getSortKeys() {
+    return ImmutableList.<SortKey>builder()
+        .addAll(partitionBy.stream().map(SortKey::asc).iterator())
+        .addAll(orderBy)
+        .build();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("PARTITION BY %s ORDER BY %s", partitionBy, orderBy);
+  }
+}
@@ -0,0 +1,168 @@
+package com.ansonator.query;
+
+import static com.ansonator.query.Query.isGreaterThan;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.ansonator.query.cell.Aggregator;
+import com.ansonator.query.row.Row;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.Test;
+
+public class IncrementalViewTest {
+
+  @Data
+  @AllArgsConstructor(staticName = "of")
+  @NoArgsConstructor
+  public static class Item {
+    private int id;
+    private String color;
+    private Integer size;
+    private Double score;
+  }
+
+  private static Item random(Random random, int id) {
+    return Item.of(
+        id,
+        List.of("red", "green", "blue", "black").get(random.nextInt(4)),
+        random.nextInt(10) == 0 ? null : random.nextInt(100),
+        random.nextInt(50) / 4d);
+  }
+
+  /** The view over {@code items}, computed from scratch. */
+  private static List<Row> expected(List<Item> items) {
+    return items.stream()
+        .filter(item -> item.getId() > 10)
+        .collect(Collectors.groupingBy(Item::getColor))
+        .entrySet()
+        .stream()
+        .map(
+            group -> {
+              List<Integer> sizes =
+                  group.getValue().stream()
+                      .map(Item::getSize)
+                      .filter(Objects::nonNull)
+                      .collect(Collectors.toList());
+              return Row.of(
+                  group.getValue().stream().mapToInt(Item::getId).max().getAsInt(),
+                  group.getKey(),
+                  sizes.isEmpty() ? null : sizes.stream().mapToLong(Integer::longValue).sum(),
+                  group.getValue().stream()
+                      .map(Item::getScore)
+                      .min(Comparator.naturalOrder())
+                      .get());
+            })
+        .collect(Collectors.toList());
+  }
+
+  private static Query totals(Query from) {
+    return from.where(isGreaterThan("id", 10))
+        .select("id", "color", "size", "score")
+        .groupBy("color", Aggregator.max("id"), Aggregator.sum("size"), Aggregator.min("score"));
+  }
+
+  @Test
+  public void singleRowGroupSumIsLong() {
+    List<Item> items = List.of(Item.of(11, "red", 5, 1.5), Item.of(12, "blue", 7, 2.5));
+    List<Row> expected = List.of(Row.of(11, "red", 5L, 1.5), Row.of(12, "blue", 7L, 2.5));
+    assertThat(totals(Query.from(items.stream(), Item.class)).materialize().snapshot().list())
+        .containsExactlyInAnyOrderElementsOf(expected);
+    assertThat(totals(Query.from(items.stream(), Item.class)).list())
+        .containsExactlyInAnyOrderElementsOf(expected);
+    assertThat(totals(Query.from(items.stream(), Item.class)).batched().list())
+        .containsExactlyInAnyOrderElementsOf(expected);
+    assertThat(totals(Query.from(items.stream(), Item.class)).compiled().list())
+        .containsExactlyInAnyOrderElementsOf(expected);
+    assertThat(totals(Query.from(items.stream(), Item.class)).adaptive().list())
+        .containsExactlyInAnyOrderElementsOf(expected);
+  }
+
+  @Test
+  public void insertAndDelete() {
+    Random random = new Random(0);
+    List<Item> items = new ArrayList<>();
+    IntStream.range(0, 200).forEach(i -> items.add(random(random, i)));
+    IncrementalView view = totals(Query.from(items.stream(), Item.class)).materialize();
+    assertThat(view.getSchema().getNames()).containsExactly("id", "color", "size", "score");
+    assertThat(view.snapshot().list()).containsExactlyInAnyOrderElementsOf(expected(items));
+
+    int next = items.size();
+    for (int round = 0; round < 50; round++) {
+      List<Item> inserted = new ArrayList<>();
+      List<Item> deleted = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        inserted.add(random(random, next++));
+        deleted.add(items.remove(random.nextInt(items.size())));
+      }
+      items.addAll(inserted);
+      view.insert(inserted.stream());
+      view.delete(deleted.stream());
+      assertThat(view.snapshot().list()).containsExactlyInAnyOrderElementsOf(expected(items));
+    }
+  }
+
+  @Test
+  public void snapshotIsAQuery() {
+    IncrementalView view = totals(Query.from("items", Item.class)).materialize();
+    assertThat(view.size()).isZero();
+    Query snapshot = view.snapshot();
+    view.insert(Stream.of(Item.of(11, "red", 1, 1d), Item.of(12, "red", 2, 2d)));
+    assertThat(snapshot.list()).isEmpty();
+    assertThat(view.snapshot().select("color", "size").list()).containsExactly(Row.of("red", 3L));
+
+    view.delete(Stream.of(Item.of(12, "red", 2, 2d)));
+    assertThat(view.snapshot().list()).containsExactly(Row.of(11, "red", 1L, 1d));
+    view.delete(Stream.of(Item.of(11, "red", 1, 1d)));
+    assertThat(view.size()).isZero();
+    assertThatThrownBy(() -> view.delete(Stream.of(Item.of(11, "red", 1, 1d))))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Row (11, red, 1, 1.0) is not in the view");
+  }
+
+  @Test
+  public void doubleSumIsExact() {
+    IncrementalView view =
+        Query.from("items", Item.class)
+            .select("color", "score")
+            .groupBy("color", Aggregator.sum("score"))
+            .materialize();
+    view.insert(Stream.of(Item.of(11, "red", null, 1e20), Item.of(12, "red", null, 1d)));
+    view.delete(Stream.of(Item.of(11, "red", null, 1e20)));
+    assertThat(view.snapshot().list()).containsExactly(Row.of("red", 1d));
+
+    view.insert(Stream.of(Item.of(13, "red", null, Double.NaN)));
+    assertThat(view.snapshot().list()).containsExactly(Row.of("red", Double.NaN));
+    view.delete(Stream.of(Item.of(13, "red", null, Double.NaN)));
+    assertThat(view.snapshot().list()).containsExactly(Row.of("red", 1d));
+  }
+
+  @Test
+  public void unsupported() {
+    assertThatThrownBy(() -> Query.from("items", Item.class).materialize())
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(
+            () ->
+                Query.from("items", Item.class)
+                    .orderBy("id")
+                    .groupBy("color", Aggregator.sum("size"))
+                    .materialize())
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(
+            () ->
+                Query.from("items", Item.class)
+                    .groupBy("color", Aggregator.of("size", (Integer a, Integer b) -> {}))
+                    .materialize())
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("Aggregator.sum, min or max");
+  }
+}
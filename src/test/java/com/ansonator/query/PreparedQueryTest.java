@@ -0,0 +1,142 @@
+package com.ansonator.query;
+
+import static com.ansonator.query.Query.isEqual;
+import static com.ansonator.query.Query.isGreaterThan;
+import static com.ansonator.query.Query.param;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.ansonator.query.row.Row;
+import com.ansonator.test.data.Item;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.Test;
+
+public class PreparedQueryTest {
+
+  @Data
+  @AllArgsConstructor(staticName = "of")
+  @NoArgsConstructor
+  public static class Color {
+    private String color;
+    private String hex;
+  }
+
+  private static final List<Item> items = Item.range(1000).collect(Collectors.toList());
+
+  private static List<Row> expected(String color, int min) {
+    return items.stream()
+        .filter(item -> item.getColor().equals(color) && item.getId() > min)
+        .map(item -> Row.of(item.getId()))
+        .collect(Collectors.toList());
+  }
+
+  private static Query byColor() {
+    return Query.from("items", Item.class)
+        .where(isEqual("color", param("color")), isGreaterThan("id", param("min")))
+        .select("id");
+  }
+
+  @Test
+  public void executeRepeatedly() {
+    PreparedQuery prepared = byColor().prepare();
+    assertThat(prepared.getSources()).containsExactly("items");
+    assertThat(prepared.getParameters()).containsExactlyInAnyOrder("color", "min");
+    assertThat(prepared.getSchema().getNames()).containsExactly("id");
+    for (String color : List.of("red", "blue")) {
+      for (int min : List.of(0, 500, 990)) {
+        assertThat(
+                prepared.list(Map.of("items", items.stream()), Map.of("color", color, "min", min)))
+            .isEqualTo(expected(color, min));
+      }
+    }
+  }
+
+  @Test
+  public void executeConcurrently() throws Exception {
+    PreparedQuery[] prepared = {byColor().prepare(), byColor().compiled().prepare()};
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Boolean>> results = new ArrayList<>();
+      for (int i = 0; i < 64; i++) {
+        final String color = i % 2 == 0 ? "red" : "blue";
+        final int min = i * 15;
+        final PreparedQuery query = prepared[i % prepared.length];
+        results.add(
+            executor.submit(
+                () ->
+                    query
+                        .list(Map.of("items", items.stream()), Map.of("color", color, "min", min))
+                        .equals(expected(color, min))));
+      }
+      for (Future<Boolean> result : results) {
+        assertThat(result.get()).isTrue();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void join() {
+    PreparedQuery prepared =
+        Query.from("items", Item.class)
+            .join(Query.from("colors", Color.class))
+            .using("color")
+            .where(isEqual("hex", param("hex")))
+            .select("id", "hex")
+            .prepare();
+    List<Row> actual =
+        prepared.list(
+            Map.of(
+                "items",
+                items.stream(),
+                "colors",
+                List.of(Color.of("red", "#f00"), Color.of("blue", "#00f")).stream()),
+            Map.of("hex", "#f00"));
+    assertThat(actual)
+        .isEqualTo(
+            expected("red", -1).stream()
+                .map(row -> Row.of(row.get(0), "#f00"))
+                .collect(Collectors.toList()));
+  }
+
+  @Test
+  public void unbound() {
+    PreparedQuery prepared = byColor().prepare();
+    assertThatThrownBy(() -> prepared.list(Map.of(), Map.of("color", "red", "min", 0)))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Source [items] is not bound");
+    assertThatThrownBy(() -> prepared.list(Map.of("items", items.stream()), Map.of("min", 0)))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Parameter [color] is not bound");
+    assertThatThrownBy(() -> byColor().list()).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  public void streamsCannotBePrepared() {
+    assertThatThrownBy(() -> Query.from(items.stream(), Item.class).prepare())
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Stream of [Item] cannot be prepared. Use Query.from(String, Class) instead");
+  }
+
+  @Test
+  public void listClosesSources() {
+    AtomicBoolean closed = new AtomicBoolean();
+    byColor()
+        .prepare()
+        .list(
+            Map.of("items", items.stream().onClose(() -> closed.set(true))),
+            Map.of("color", "red", "min", 0));
+    assertThat(closed).isTrue();
+  }
+}
@@ -0,0 +1,97 @@
+package com.ansonator.query.adaptive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ansonator.query.Query;
+import com.ansonator.query.cell.Aggregator;
+import com.ansonator.query.row.Row;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveTest {
+
+  @Data
+  @AllArgsConstructor(staticName = "of")
+  @NoArgsConstructor
+  public static class Order {
+    private int id;
+    private int customer;
+    private long amount;
+  }
+
+  @Data
+  @AllArgsConstructor(staticName = "of")
+  @NoArgsConstructor
+  public static class Customer {
+    private int customer;
+    private String name;
+  }
+
+  private static Stream<Order> orders(int size) {
+    return IntStream.range(0, size).mapToObj(i -> Order.of(i, i % 5_000, i % 7));
+  }
+
+  private static Stream<Customer> customers(int size) {
+    return IntStream.range(0, size).mapToObj(i -> Customer.of(i, "customer " + i));
+  }
+
+  private static Query join(int customers) {
+    return Query.from(orders(20_000), Order.class)
+        .join(Query.from(customers(customers), Customer.class))
+        .using("customer");
+  }
+
+  @Test
+  public void smallJoinStaysInMemory() {
+    List<Row> expected = join(100).list();
+    assertThat(join(100).adaptive().list()).isEqualTo(expected);
+    assertThat(join(100).adaptive().explainAnalyze().toString())
+        .contains("in-memory hash join: right side [100] rows");
+  }
+
+  @Test
+  public void largeJoinIsPartitioned() {
+    List<Row> expected = join(10_000).list();
+    assertThat(join(10_000).adaptive(1 << 16).list()).containsExactlyInAnyOrderElementsOf(expected);
+    assertThat(join(10_000).adaptive(1 << 16).batched().list())
+        .containsExactlyInAnyOrderElementsOf(expected);
+    assertThat(join(10_000).adaptive(1 << 16).explainAnalyze().toString())
+        .contains("partitioned hash join");
+  }
+
+  @Test
+  public void largeAggregationIsSorted() {
+    UnaryOperator<Query> totals =
+        query -> query.select("customer", "amount").groupBy("customer", Aggregator.sum("amount"));
+    List<Row> expected = totals.apply(Query.from(orders(20_000), Order.class)).list();
+    for (UnaryOperator<Query> mode :
+        List.<UnaryOperator<Query>>of(q -> q, Query::batched, Query::compiled)) {
+      List<Row> actual =
+          totals
+              .apply(mode.apply(Query.from(orders(20_000), Order.class).adaptive(1 << 16)))
+              .list();
+      assertThat(actual).containsExactlyInAnyOrderElementsOf(expected);
+      assertThat(actual.stream().map(row -> (Integer) row.get(0)).collect(Collectors.toList()))
+          .isSorted();
+    }
+    assertThat(
+            totals
+                .apply(Query.from(orders(20_000), Order.class).adaptive(1 << 16))
+                .explainAnalyze()
+                .toString())
+        .contains("sort aggregation");
+    assertThat(
+            totals
+                .apply(Query.from(orders(20_000), Order.class).adaptive())
+                .explainAnalyze()
+                .toString())
+        .contains("hash aggregation: [5000] groups");
+  }
+}
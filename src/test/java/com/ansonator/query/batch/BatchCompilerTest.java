@@ -0,0 +1,157 @@
+package com.ansonator.query.batch;
+
+import static com.ansonator.query.Query.isBetween;
+import static com.ansonator.query.Query.isEqual;
+import static com.ansonator.query.Query.isGreaterThan;
+import static com.ansonator.query.Query.isLessThan;
+import static com.ansonator.query.Query.isTrue;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ansonator.query.Query;
+import com.ansonator.query.cell.Aggregator;
+import com.ansonator.query.plan.Optimizer;
+import com.ansonator.query.plan.PlanCompiler;
+import com.ansonator.query.plan.PlanNode;
+import com.ansonator.query.row.PredicateMatcher;
+import com.ansonator.query.row.Row;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.Test;
+
+public class BatchCompilerTest {
+
+  @Data
+  @AllArgsConstructor(staticName = "of")
+  @NoArgsConstructor
+  public static class Item {
+    private int id;
+    private String color;
+    private boolean active;
+    private long amount;
+    private double weight;
+  }
+
+  @Data
+  @AllArgsConstructor(staticName = "of")
+  @NoArgsConstructor
+  public static class Color {
+    private String color;
+    private String hex;
+  }
+
+  private static final List<Item> items =
+      IntStream.range(0, 1000)
+          .mapToObj(
+              i -> Item.of(i, i % 3 == 0 ? "red" : "blue", i % 2 == 0, i * 10L, (i % 17) / 4.0))
+          .collect(Collectors.toList());
+  private static final List<Color> colors =
+      List.of(Color.of("red", "#f00"), Color.of("blue", "#00f"), Color.of("green", "#0f0"));
+
+  /** Compile the same query in row mode and in batch mode with an awkward batch size. */
+  private static void assertSameRows(Supplier<Query> query) {
+    PlanNode rowPlan = new Optimizer().optimize(query.get().getPlan());
+    List<Row> expected = new PlanCompiler().compile(rowPlan).collect(Collectors.toList());
+    PlanNode batchPlan = new Optimizer().optimize(query.get().getPlan());
+    List<Row> actual = new BatchCompiler(7).compile(batchPlan).collect(Collectors.toList());
+    assertThat(actual).isEqualTo(expected);
+  }
+
+  @Test
+  public void filterAndProject() {
+    assertSameRows(
+        () ->
+            Query.from(items.stream(), Item.class)
+                .where(
+                    isTrue("active")
+                        .and(
+                            isEqual("color", "red")
+                                .or(PredicateMatcher.of("id", id -> (Integer) id < 100)))
+                        .and(isEqual("id", 0).negate()))
+                .where((row, columns) -> (Long) row.get(columns.get("amount")) % 4 == 0)
+                .select("amount", "id"));
+  }
+
+  @Test
+  public void numericComparisons() {
+    assertSameRows(
+        () ->
+            Query.from(items.stream(), Item.class)
+                .where(
+                    isBetween("amount", 1000L, 8000L),
+                    isGreaterThan("id", 150L),
+                    isLessThan("weight", 3.0).or(isEqual("id", 700)))
+                .select("id", "weight"));
+  }
+
+  @Test
+  public void numericAggregates() {
+    assertSameRows(
+        () ->
+            Query.from(items.stream(), Item.class)
+                .select("color", "amount", "id", "weight")
+                .groupBy(
+                    "color",
+                    Aggregator.sum("amount"),
+                    Aggregator.min("id"),
+                    Aggregator.max("weight"))
+                .orderBy("color"));
+    assertThat(
+            Query.from(items.stream(), Item.class)
+                .select("color", "amount", "id")
+                .groupBy("color", Aggregator.sum("amount"), Aggregator.max("id"))
+                .orderBy("color")
+                .batched()
+                .list())
+        .containsExactly(Row.of("blue", 3326670L, 998), Row.of("red", 1668330L, 999));
+  }
+
+  @Test
+  public void hashJoin() {
+    assertSameRows(
+        () ->
+            Query.from(items.stream(), Item.class)
+                .join(Query.from(colors.stream(), Color.class))
+                .using("color")
+                .select("id", "hex"));
+  }
+
+  @Data
+  @AllArgsConstructor(staticName = "of")
+  @NoArgsConstructor
+  public static class Total {
+    private String color;
+    private Sum sum;
+  }
+
+  @Data
+  @AllArgsConstructor(staticName = "of")
+  public static class Sum {
+    private long value;
+
+    void add(Sum other) {
+      value += other.value;
+    }
+  }
+
+  // Accumulators modify their first argument, so each query needs its own items.
+  private static Query totals() {
+    return Query.from(
+            items.stream().map(item -> Total.of(item.getColor(), Sum.of(item.getAmount()))),
+            Total.class)
+        .groupBy("color", Aggregator.of("sum", Sum::add))
+        .orderBy("color");
+  }
+
+  @Test
+  public void aggregate() {
+    List<Row> actual = totals().batched().list();
+    assertThat(actual).isEqualTo(totals().list());
+    assertThat(actual)
+        .containsExactly(Row.of("blue", Sum.of(3326670)), Row.of("red", Sum.of(1668330)));
+  }
+}
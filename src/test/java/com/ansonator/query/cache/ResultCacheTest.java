@@ -0,0 +1,142 @@
+package com.ansonator.query.cache;
+
+import static com.ansonator.query.Query.isEqual;
+import static com.ansonator.query.Query.param;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ansonator.query.PreparedQuery;
+import com.ansonator.query.Query;
+import com.ansonator.query.cell.Aggregator;
+import com.ansonator.query.row.Row;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.Test;
+
+public class ResultCacheTest {
+
+  @Data
+  @AllArgsConstructor(staticName = "of")
+  @NoArgsConstructor
+  public static class Item {
+    private int id;
+    private String color;
+    private Object tag;
+  }
+
+  private static final List<Item> items =
+      IntStream.range(0, 1000)
+          .mapToObj(i -> Item.of(i, i % 3 == 0 ? "red" : "blue", "tag" + i % 7))
+          .collect(Collectors.toList());
+
+  private static PreparedQuery totals() {
+    return Query.from("items", Item.class)
+        .where(isEqual("color", param("color")))
+        .select("tag", "id")
+        .groupBy("tag", Aggregator.sum("id"))
+        .orderBy("tag")
+        .prepare();
+  }
+
+  private static Map<String, Stream<Item>> sources() {
+    return Map.of("items", items.stream());
+  }
+
+  @Test
+  public void hitsAndMisses() {
+    ResultCache cache = new ResultCache(1 << 20);
+    PreparedQuery query = totals();
+    List<Row> red = cache.list(query, 1, sources(), Map.of("color", "red"));
+    assertThat(red).isEqualTo(query.list(sources(), Map.of("color", "red")));
+
+    Stream<Item> unread = items.stream();
+    assertThat(cache.list(totals(), 1, Map.of("items", unread), Map.of("color", "red")))
+        .isEqualTo(red);
+    assertThat(unread.count()).isEqualTo(items.size());
+    assertThat(cache.getStats().hitCount()).isEqualTo(1);
+
+    cache.list(query, 1, sources(), Map.of("color", "blue"));
+    cache.list(query, 2, sources(), Map.of("color", "red"));
+    assertThat(cache.getStats().missCount()).isEqualTo(3);
+    assertThat(cache.size()).isEqualTo(3);
+    assertThat(cache.getBytes()).isPositive();
+  }
+
+  @Test
+  public void lambdasAreComparedByIdentity() {
+    ResultCache cache = new ResultCache(1 << 20);
+    PreparedQuery query =
+        Query.from("items", Item.class).where(isEqual("color", "red")).select("id").prepare();
+    PreparedQuery lambda =
+        Query.from("items", Item.class)
+            .where(Query.isTrue("id").negate())
+            .where(isEqual("color", "red"))
+            .select("id")
+            .prepare();
+    assertThat(query.getFingerprint()).isNotEqualTo(lambda.getFingerprint());
+    cache.list(lambda, 1, sources(), Map.of());
+    cache.list(lambda, 1, sources(), Map.of());
+    assertThat(cache.getStats().hitCount()).isEqualTo(1);
+    assertThat(
+            Query.from("items", Item.class)
+                .where(isEqual("color", "red"))
+                .select("id")
+                .prepare()
+                .getFingerprint())
+        .isEqualTo(query.getFingerprint());
+  }
+
+  @Test
+  public void invalidate() {
+    ResultCache cache = new ResultCache(1 << 20);
+    PreparedQuery query = totals();
+    cache.list(query, 1, sources(), Map.of("color", "red"));
+    cache.list(query, 1, sources(), Map.of("color", "blue"));
+    cache.invalidate("colors");
+    assertThat(cache.size()).isEqualTo(2);
+    cache.invalidate("items");
+    assertThat(cache.size()).isZero();
+
+    cache.list(query, 1, sources(), Map.of("color", "red"));
+    cache.invalidate(totals());
+    assertThat(cache.size()).isZero();
+  }
+
+  @Test
+  public void evictsBeyondBudget() {
+    PreparedQuery query =
+        Query.from("items", Item.class).where(isEqual("color", param("color"))).prepare();
+    ResultCache cache = new ResultCache(16 << 10);
+    for (int version = 0; version < 10; version++) {
+      cache.list(query, version, sources(), Map.of("color", "blue"));
+    }
+    assertThat(cache.getBytes()).isLessThanOrEqualTo(16 << 10);
+    assertThat(cache.getStats().evictionCount()).isPositive();
+  }
+
+  @Test
+  public void keepsResultOfHalfTheBudget() {
+    PreparedQuery query =
+        Query.from("items", Item.class).where(isEqual("color", param("color"))).prepare();
+    ResultCache sizing = new ResultCache(1 << 20);
+    sizing.list(query, 1, sources(), Map.of("color", "blue"));
+    ResultCache cache = new ResultCache(2 * sizing.getBytes());
+    cache.list(query, 1, sources(), Map.of("color", "blue"));
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(cache.getStats().evictionCount()).isZero();
+  }
+
+  @Test
+  public void skipsValuesWhichCannotBeEncoded() {
+    List<Item> unencodable = List.of(Item.of(1, "red", new Object()));
+    PreparedQuery query = Query.from("items", Item.class).prepare();
+    ResultCache cache = new ResultCache(1 << 20);
+    assertThat(cache.list(query, 1, Map.of("items", unencodable.stream()), Map.of())).hasSize(1);
+    assertThat(cache.size()).isZero();
+  }
+}
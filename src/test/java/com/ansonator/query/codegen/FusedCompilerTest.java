@@ -0,0 +1,168 @@
+package com.ansonator.query.codegen;
+
+import static com.ansonator.query.Query.colEqual;
+import static com.ansonator.query.Query.isBetween;
+import static com.ansonator.query.Query.isEqual;
+import static com.ansonator.query.Query.isGreaterThan;
+import static com.ansonator.query.Query.isLessThan;
+import static com.ansonator.query.Query.isTrue;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ansonator.query.Query;
+import com.ansonator.query.cell.Aggregator;
+import com.ansonator.query.plan.FilterNode;
+import com.ansonator.query.plan.Optimizer;
+import com.ansonator.query.plan.PlanCompiler;
+import com.ansonator.query.plan.PlanNode;
+import com.ansonator.query.row.AndMatcher;
+import com.ansonator.query.row.PredicateMatcher;
+import com.ansonator.query.row.Row;
+import com.ansonator.query.row.RowMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.Test;
+
+public class FusedCompilerTest {
+
+  @Data
+  @AllArgsConstructor(staticName = "of")
+  @NoArgsConstructor
+  public static class Item {
+    private int id;
+    private String color;
+    private boolean active;
+    private long amount;
+    private double weight;
+    private String shade;
+  }
+
+  private static final List<Item> items =
+      IntStream.range(0, 1000)
+          .mapToObj(
+              i ->
+                  Item.of(
+                      i,
+                      i % 3 == 0 ? "red" : "blue",
+                      i % 2 == 0,
+                      i * 10L,
+                      (i % 17) / 4.0,
+                      i % 5 == 0 ? "red" : "blue"))
+          .collect(Collectors.toList());
+
+  private static void assertSameRows(Supplier<Query> query) {
+    PlanNode rowPlan = new Optimizer().optimize(query.get().getPlan());
+    List<Row> expected = new PlanCompiler().compile(rowPlan).collect(Collectors.toList());
+    PlanNode fusedPlan = new Optimizer().optimize(query.get().getPlan());
+    List<Row> actual = new FusedCompiler().compile(fusedPlan).collect(Collectors.toList());
+    assertThat(actual).isEqualTo(expected);
+  }
+
+  @Test
+  public void filterAndProject() {
+    assertSameRows(
+        () ->
+            Query.from(items.stream(), Item.class)
+                .where(
+                    isTrue("active")
+                        .and(
+                            isEqual("color", "red")
+                                .or(PredicateMatcher.of("id", id -> (Integer) id < 100)))
+                        .and(isEqual("id", 0).negate()))
+                .where(isBetween("amount", 1000, 8000L), isLessThan("weight", 3.0))
+                .where(colEqual("color", "shade").or(isGreaterThan("id", 900L)))
+                .select("amount", "id", "shade"));
+  }
+
+  @Test
+  public void lambdaFilterIsNotFused() {
+    RowMatcher divisible = (row, columns) -> (Long) row.get(columns.get("amount")) % 4 == 0;
+    Supplier<Query> query =
+        () ->
+            Query.from(items.stream(), Item.class)
+                .where(isEqual("active", true))
+                .where(divisible)
+                .select("amount", "id");
+    assertSameRows(query);
+
+    PlanNode plan = new Optimizer().optimize(query.get().getPlan());
+    List<FilterNode> filters = new ArrayList<>();
+    for (PlanNode node = plan; !node.getChildren().isEmpty(); node = node.getChild()) {
+      if (node instanceof FilterNode) {
+        filters.add((FilterNode) node);
+      }
+    }
+    // Both filters are merged into one, which then runs row by row along with everything above it
+    assertThat(filters).hasSize(1);
+    assertThat(((AndMatcher) filters.get(0).getMatcher()).getConjuncts()).contains(divisible);
+    assertThat(FusedPlan.of(filters.get(0))).isNull();
+    assertThat(FusedPlan.of(plan)).isNull();
+    // Without the lambda, the same query is fused
+    PlanNode fusable =
+        new Optimizer()
+            .optimize(
+                Query.from(items.stream(), Item.class)
+                    .where(isEqual("active", true))
+                    .select("amount", "id")
+                    .getPlan());
+    assertThat(FusedPlan.of(fusable)).isNotNull();
+  }
+
+  @Test
+  public void aggregate() {
+    List<Row> actual =
+        Query.from(items.stream(), Item.class)
+            .select("color", "amount", "id")
+            .where(isGreaterThan("id", 10))
+            .groupBy("color", Aggregator.sum("amount"), Aggregator.max("id"))
+            .compiled()
+            .list();
+    List<Row> expected =
+        Query.from(items.stream(), Item.class)
+            .select("color", "amount", "id")
+            .where(isGreaterThan("id", 10))
+            .groupBy("color", Aggregator.sum("amount"), Aggregator.max("id"))
+            .list();
+    assertThat(actual).isEqualTo(expected);
+    assertThat(actual)
+        .containsExactlyInAnyOrder(Row.of("blue", 3326300L, 998), Row.of("red", 1668150L, 999));
+  }
+
+  @Test
+  public void onlyAggregatesMerge() {
+    PlanNode aggregate =
+        new Optimizer()
+            .optimize(
+                Query.from(items.stream(), Item.class)
+                    .select("color", "amount")
+                    .groupBy("color", Aggregator.sum("amount"))
+                    .getPlan());
+    assertThat(FusedCompiler.pipeline(FusedPlan.of(aggregate)))
+        .isInstanceOf(AggregatingPipeline.class);
+    PlanNode project =
+        new Optimizer()
+            .optimize(Query.from(items.stream(), Item.class).select("color", "amount").getPlan());
+    assertThat(FusedCompiler.pipeline(FusedPlan.of(project)))
+        .isNotInstanceOf(AggregatingPipeline.class);
+  }
+
+  @Test
+  public void cachedByShape() {
+    long misses = FusedCompiler.getCacheStats().missCount();
+    for (int limit : new int[] {100, 200, 300}) {
+      List<Row> actual =
+          Query.from(items.stream(), Item.class)
+              .where(isLessThan("id", limit), isEqual("shade", "red"))
+              .select("id")
+              .compiled()
+              .list();
+      assertThat(actual).hasSize(limit / 5);
+    }
+    assertThat(FusedCompiler.getCacheStats().missCount()).isEqualTo(misses + 1);
+  }
+}
@@ -0,0 +1,91 @@
+package com.ansonator.query.column;
+
+import static com.ansonator.query.Query.isBetween;
+import static com.ansonator.query.Query.isEqual;
+import static com.ansonator.query.Query.isGreaterThan;
+import static com.ansonator.query.Query.isLessThan;
+import static com.ansonator.query.Query.param;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.ansonator.query.PreparedQuery;
+import com.ansonator.query.Query;
+import com.ansonator.query.plan.Schema;
+import com.ansonator.query.row.Row;
+import com.ansonator.query.row.RowMatcher;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+public class ColumnIndexTest {
+  private static final Schema SCHEMA = Schema.of(List.of("id", "code", "price"));
+
+  // Neither column is ordered by row
+  private static List<Row> rows() {
+    return IntStream.range(0, 20_000)
+        .mapToObj(i -> Row.of(i, "c" + (i * 7919) % 500, i % 10 == 0 ? null : (i * 31) % 1000))
+        .collect(Collectors.toList());
+  }
+
+  private static ColumnTable table() {
+    return ColumnTable.of(rows().stream(), SCHEMA).withHashIndex("code").withSortedIndex("price");
+  }
+
+  private static List<Row> expected(RowMatcher filter) {
+    return rows().stream()
+        .filter(row -> filter.test(row, SCHEMA.asMap()))
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void lookups() {
+    ColumnTable table = table();
+    assertThat(table.getIndex("code").getType()).isEqualTo(ColumnIndex.Type.HASH);
+    assertThat(table.getIndex("id")).isNull();
+    for (RowMatcher filter :
+        List.of(
+            isEqual("code", "c42"),
+            isEqual("price", 500),
+            isBetween("price", 100, 104),
+            isGreaterThan("price", 990).and(isLessThan("price", 995)),
+            isEqual("code", "missing"))) {
+      assertThat(table.open(SCHEMA.getNames(), filter).collect(Collectors.toList()))
+          .as(filter.toString())
+          .isEqualTo(expected(filter));
+    }
+    // The most selective index is used
+    RowMatcher both = isEqual("price", 500).and(isBetween("code", "c0", "c9"));
+    assertThat(table.open(SCHEMA.getNames(), both).count()).isEqualTo(expected(both).size());
+  }
+
+  @Test
+  public void queriesUseIndexes() {
+    ColumnTable table = table();
+    RowMatcher filter = isBetween("price", 100, 104).and(isEqual("code", "c1"));
+    Query query = Query.from(table).where(filter);
+    assertThat(query.explain().toString()).contains("indexed on [code, price]");
+    assertThat(query.list()).isEqualTo(expected(filter));
+    assertThat(Query.from(table).where(filter).batched().list()).isEqualTo(expected(filter));
+
+    PreparedQuery prepared =
+        Query.from(table).where(isEqual("code", param("code"))).select("id").prepare();
+    for (String code : List.of("c1", "c2")) {
+      assertThat(prepared.list(Map.of(), Map.of("code", code)))
+          .isEqualTo(
+              expected(isEqual("code", code)).stream()
+                  .map(row -> Row.of(row.get(0)))
+                  .collect(Collectors.toList()));
+    }
+  }
+
+  @Test
+  public void sortedIndexNeedsOrderedValues() {
+    ColumnTable table = ColumnTable.of(Stream.of(Row.of(1), Row.of("a")), Schema.of(List.of("x")));
+    assertThatThrownBy(() -> table.withSortedIndex("x"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("[x]");
+  }
+}
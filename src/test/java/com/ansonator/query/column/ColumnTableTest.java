@@ -0,0 +1,103 @@
+package com.ansonator.query.column;
+
+import static com.ansonator.query.Query.isEqual;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ansonator.query.Query;
+import com.ansonator.query.plan.Schema;
+import com.ansonator.query.row.Row;
+import com.ansonator.query.spill.RowSize;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.Test;
+
+public class ColumnTableTest {
+  private static final String[] SPECIES = {"wolf", "tortoise", "raccoon"};
+
+  @Data
+  @AllArgsConstructor(staticName = "of")
+  @NoArgsConstructor
+  public static class Participant {
+    private int id;
+    private String species;
+    private boolean registered;
+  }
+
+  private static Stream<Participant> participants(int size) {
+    return IntStream.range(0, size)
+        .mapToObj(i -> Participant.of(i, SPECIES[i % SPECIES.length], i % 4 == 0));
+  }
+
+  @Test
+  public void roundTrip() {
+    List<Row> rows =
+        List.of(
+            Row.of(null, "a", 1.5, null, true),
+            Row.of(2, null, 2.5, 10L, null),
+            Row.of(3, "a", null, "mixed", false),
+            Row.of(4, "b", 4.5, LocalDate.of(2020, 1, 1), true));
+    ColumnTable table = ColumnTable.of(rows.stream(), Schema.of(List.of("i", "s", "d", "o", "b")));
+    assertThat(table.size()).isEqualTo(4);
+    assertThat(table.open(List.of("i", "s", "d", "o", "b")).collect(Collectors.toList()))
+        .isEqualTo(rows);
+    assertThat(table.open(List.of("b", "i")).collect(Collectors.toList()))
+        .containsExactly(Row.of(true, null), Row.of(null, 2), Row.of(false, 3), Row.of(true, 4));
+    assertThat(table.getColumn("i").getType()).isEqualTo(ColumnVector.Type.INT);
+    assertThat(table.getColumn("s").getType()).isEqualTo(ColumnVector.Type.DICTIONARY);
+    assertThat(table.getColumn("d").getType()).isEqualTo(ColumnVector.Type.DOUBLE);
+    assertThat(table.getColumn("o").getType()).isEqualTo(ColumnVector.Type.OBJECT);
+    assertThat(table.getColumn("b").getType()).isEqualTo(ColumnVector.Type.BOOLEAN);
+  }
+
+  @Test
+  public void sparseColumn() {
+    // A run of nulls longer than the column's arrays, between two values
+    List<Row> rows = new ArrayList<>();
+    rows.add(Row.of(1));
+    IntStream.range(0, 40).forEach(i -> rows.add(Row.of((Object) null)));
+    rows.add(Row.of(2));
+    ColumnTable table = ColumnTable.of(rows.stream(), Schema.of(List.of("i")));
+    assertThat(table.open(List.of("i")).collect(Collectors.toList())).isEqualTo(rows);
+
+    // The column changes type after the run of nulls
+    rows.set(0, Row.of("a"));
+    ColumnTable mixed = ColumnTable.of(rows.stream(), Schema.of(List.of("i")));
+    assertThat(mixed.getColumn("i").getType()).isEqualTo(ColumnVector.Type.OBJECT);
+    assertThat(mixed.open(List.of("i")).collect(Collectors.toList())).isEqualTo(rows);
+  }
+
+  @Test
+  public void lowCardinalityStringsCostAnIntPerRow() {
+    ColumnTable table = Query.from(participants(100_000), Participant.class).toColumnTable();
+    ColumnVector species = table.getColumn("species");
+    assertThat(((ColumnVector.DictionaryVector) species).cardinality()).isEqualTo(3);
+    assertThat(species.getBytes()).isLessThan(100_000L * Integer.BYTES + 1024);
+    long rowBytes =
+        Query.from(participants(100_000), Participant.class).list().stream()
+            .mapToLong(RowSize::estimate)
+            .sum();
+    assertThat(table.getBytes() * 5).isLessThan(rowBytes);
+  }
+
+  @Test
+  public void scanManyTimes() {
+    ColumnTable table = Query.from(participants(1_000), Participant.class).toColumnTable();
+    List<Row> expected =
+        Query.from(participants(1_000), Participant.class)
+            .where(isEqual("species", "wolf"))
+            .select("id")
+            .list();
+    for (int i = 0; i < 2; i++) {
+      assertThat(Query.from(table).where(isEqual("species", "wolf")).select("id").list())
+          .isEqualTo(expected);
+    }
+    assertThat(Query.from(table).batched().list()).isEqualTo(Query.from(table).list());
+  }
+}
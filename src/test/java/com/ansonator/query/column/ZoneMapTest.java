@@ -0,0 +1,74 @@
+package com.ansonator.query.column;
+
+import static com.ansonator.query.Query.isBetween;
+import static com.ansonator.query.Query.isEqual;
+import static com.ansonator.query.Query.isGreaterThan;
+import static com.ansonator.query.Query.isLessThan;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ansonator.query.Query;
+import com.ansonator.query.plan.Schema;
+import com.ansonator.query.row.Row;
+import com.ansonator.query.row.RowMatcher;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+public class ZoneMapTest {
+  private static final LocalDate START = LocalDate.of(2020, 1, 1);
+  private static final int SIZE = 10 * ColumnTable.CHUNK_SIZE;
+  private static final Schema SCHEMA = Schema.of(List.of("id", "day", "kind"));
+
+  // Time ordered: about 400 rows per day
+  private static List<Row> rows() {
+    return IntStream.range(0, SIZE)
+        .mapToObj(i -> Row.of(i, START.plusDays(i / 400), i % 7 == 0 ? null : "k" + i % 3))
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void chunkBounds() {
+    ColumnTable table = ColumnTable.of(rows().stream(), SCHEMA);
+    ZoneMap day = table.getZoneMap("day");
+    assertThat(day.getChunks()).isEqualTo(10);
+    assertThat(day.getMin(0)).isEqualTo(START);
+    assertThat(day.getMax(0)).isEqualTo(START.plusDays((ColumnTable.CHUNK_SIZE - 1) / 400));
+    assertThat(table.getZoneMap("id").getMin(1)).isEqualTo(ColumnTable.CHUNK_SIZE);
+    assertThat(table.getZoneMap("kind").getNullCount(0))
+        .isEqualTo((ColumnTable.CHUNK_SIZE + 6) / 7);
+  }
+
+  @Test
+  public void skipChunks() {
+    ColumnTable table = ColumnTable.of(rows().stream(), SCHEMA);
+    RowMatcher range = isBetween("day", START.plusDays(30), START.plusDays(31));
+    List<Row> scanned = table.open(SCHEMA.getNames(), range).collect(Collectors.toList());
+    assertThat(scanned).hasSize(2 * ColumnTable.CHUNK_SIZE);
+    assertThat(table.open(List.of("id"), isLessThan("id", 0)).count()).isZero();
+    assertThat(table.open(List.of("id"), isGreaterThan("id", 0).or(isEqual("id", 5))).count())
+        .isEqualTo(SIZE);
+    assertThat(table.open(List.of("id"), isEqual("kind", null)).count()).isZero();
+    // Compares numbers by value, whatever their type
+    assertThat(table.open(List.of("id"), isGreaterThan("id", (long) SIZE - 2)).count())
+        .isEqualTo(ColumnTable.CHUNK_SIZE);
+  }
+
+  @Test
+  public void filtersSkipChunks() {
+    ColumnTable table = ColumnTable.of(rows().stream(), SCHEMA);
+    RowMatcher filter =
+        isBetween("day", START.plusDays(30), START.plusDays(31)).and(isEqual("kind", "k1"));
+    Query query = Query.from(table).where(filter).select("id");
+    assertThat(query.explain().toString()).contains("skip unless");
+    List<Row> expected =
+        rows().stream()
+            .filter(row -> filter.test(row, SCHEMA.asMap()))
+            .map(row -> Row.of(row.get(0)))
+            .collect(Collectors.toList());
+    assertThat(expected).isNotEmpty();
+    assertThat(query.list()).isEqualTo(expected);
+    assertThat(Query.from(table).where(filter).select("id").batched().list()).isEqualTo(expected);
+  }
+}
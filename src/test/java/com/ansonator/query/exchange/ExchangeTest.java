@@ -0,0 +1,119 @@
+package com.ansonator.query.exchange;
+
+import static com.ansonator.query.Query.isEqual;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import com.ansonator.query.Query;
+import com.ansonator.query.cell.Aggregator;
+import com.ansonator.query.row.Row;
+import com.ansonator.test.data.Item;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+public class ExchangeTest {
+
+  private static Query totals(Query query) {
+    return query.where(isEqual("color", "red")).groupBy("color", Aggregator.sum("id"));
+  }
+
+  @Test
+  public void sameResult() {
+    List<Row> expected = totals(Query.from(Item.range(100_000), Item.class)).list();
+    ExchangeMetrics metrics = new ExchangeMetrics();
+    assertThat(totals(Query.from(Item.range(100_000), Item.class).exchange(metrics)).list())
+        .isEqualTo(expected);
+    assertThat(
+            totals(Query.from(Item.range(100_000), Item.class).exchange(metrics)).batched().list())
+        .isEqualTo(expected);
+    assertThat(
+            totals(Query.from(Item.range(100_000), Item.class).exchange(metrics)).compiled().list())
+        .isEqualTo(expected);
+    // The filter moves below the exchange
+    assertThat(metrics.getRows()).isEqualTo(3 * 33_334);
+    assertThat(metrics.getBatches()).isEqualTo(3 * 33);
+  }
+
+  @Test
+  public void stagesRunConcurrently() {
+    Set<String> producers = ConcurrentHashMap.newKeySet();
+    ExchangeMetrics metrics = new ExchangeMetrics();
+    List<Row> rows =
+        Query.from(Item.range(10_000), Item.class)
+            .peek(row -> producers.add(Thread.currentThread().getName()))
+            .exchange(2, Exchange.DAEMON_THREADS, metrics)
+            .peek(
+                row -> {
+                  // A slow consumer, so that the queue fills up
+                  if ((Integer) row.get(0) % 1024 == 0) {
+                    sleep(20);
+                  }
+                })
+            .list();
+    assertThat(rows).hasSize(10_000);
+    assertThat(producers).hasSize(1).doesNotContain(Thread.currentThread().getName());
+    assertThat(producers.iterator().next()).startsWith("junq-exchange-");
+    assertThat(metrics.getMaxQueueDepth()).isEqualTo(2);
+    assertThat(metrics.getProducerStallNanos()).isPositive();
+  }
+
+  @Test
+  public void errors() {
+    IllegalStateException failure = new IllegalStateException("failed");
+    Query query =
+        Query.from(Item.range(5000), Item.class)
+            .peek(
+                row -> {
+                  if ((Integer) row.get(0) == 4000) {
+                    throw failure;
+                  }
+                })
+            .exchange();
+    assertThatThrownBy(query::list).isSameAs(failure);
+  }
+
+  @Test
+  public void errorsAreRethrown() {
+    AssertionError failure = new AssertionError("failed");
+    Query query =
+        Query.from(Item.range(5000), Item.class)
+            .peek(
+                row -> {
+                  if ((Integer) row.get(0) == 5) {
+                    throw failure;
+                  }
+                })
+            .exchange();
+    assertTimeoutPreemptively(
+        Duration.ofSeconds(10), () -> assertThatThrownBy(query::list).isSameAs(failure));
+  }
+
+  @Test
+  public void closeStopsTheProducer() throws Exception {
+    CountDownLatch closed = new CountDownLatch(1);
+    Stream<Row> rows =
+        Query.from(Stream.generate(() -> Item.of(1, "red")).onClose(closed::countDown), Item.class)
+            .exchange()
+            .stream();
+    Iterator<Row> iterator = rows.iterator();
+    assertThat(iterator.next()).isEqualTo(Row.of(1, "red"));
+    rows.close();
+    assertThat(closed.await(10, TimeUnit.SECONDS)).isTrue();
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,215 @@
+package com.ansonator.query.flow;
+
+import static com.ansonator.query.Query.isEqual;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import com.ansonator.query.Query;
+import com.ansonator.query.row.Row;
+import com.ansonator.test.data.Item;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+public class FlowTest {
+
+  private static List<Row> expected(int size) {
+    return IntStream.range(0, size)
+        .filter(id -> id % 3 == 0)
+        .mapToObj(Row::of)
+        .collect(Collectors.toList());
+  }
+
+  /** Publishes items on the requesting thread, tracking the largest outstanding demand. */
+  private static class RangePublisher implements Flow.Publisher<Item> {
+    private final int size;
+    private final RuntimeException failure;
+    private long outstanding = 0;
+    private long maxOutstanding = 0;
+    private int next = 0;
+    private boolean emitting = false;
+
+    RangePublisher(int size, RuntimeException failure) {
+      this.size = size;
+      this.failure = failure;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Item> subscriber) {
+      subscriber.onSubscribe(
+          new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+              outstanding += n;
+              maxOutstanding = Math.max(maxOutstanding, outstanding);
+              if (emitting) {
+                return;
+              }
+              emitting = true;
+              while (outstanding > 0 && next < size) {
+                outstanding--;
+                subscriber.onNext(Item.of(next++));
+              }
+              if (next == size) {
+                next++;
+                if (failure == null) {
+                  subscriber.onComplete();
+                } else {
+                  subscriber.onError(failure);
+                }
+              }
+              emitting = false;
+            }
+
+            @Override
+            public void cancel() {
+              next = size + 1;
+            }
+          });
+    }
+  }
+
+  /** Requests {@code batch} rows at a time, up to {@code limit}. */
+  private static class Collector implements Flow.Subscriber<Row> {
+    private final int batch;
+    private final int limit;
+    private final List<Row> rows = new ArrayList<>();
+    private Flow.Subscription subscription;
+    private Throwable error;
+    private boolean complete = false;
+
+    Collector(int batch, int limit) {
+      this.batch = batch;
+      this.limit = limit;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      subscription.request(batch);
+    }
+
+    @Override
+    public void onNext(Row row) {
+      rows.add(row);
+      if (rows.size() % batch == 0 && rows.size() < limit) {
+        subscription.request(batch);
+      }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      error = throwable;
+    }
+
+    @Override
+    public void onComplete() {
+      complete = true;
+    }
+  }
+
+  @Test
+  public void backpressure() {
+    RangePublisher publisher = new RangePublisher(1000, null);
+    Collector collector = new Collector(1, Integer.MAX_VALUE);
+    Query.fromPublisher(publisher, Item.class, 16)
+        .where(isEqual("color", "red"))
+        .select("id")
+        .toPublisher()
+        .subscribe(collector);
+    assertThat(collector.complete).isTrue();
+    assertThat(collector.rows).isEqualTo(expected(1000));
+    assertThat(publisher.maxOutstanding).isLessThanOrEqualTo(16);
+  }
+
+  @Test
+  public void asynchronousPublisher() throws Exception {
+    try (SubmissionPublisher<Item> publisher = new SubmissionPublisher<>()) {
+      Thread producer =
+          new Thread(
+              () -> {
+                // Items submitted before the query subscribes would be dropped
+                while (publisher.getNumberOfSubscribers() == 0) {
+                  Thread.onSpinWait();
+                }
+                IntStream.range(0, 500).forEach(id -> publisher.submit(Item.of(id)));
+                publisher.close();
+              });
+      Query query =
+          Query.fromPublisher(publisher, Item.class, 8).where(isEqual("color", "red")).select("id");
+      producer.start();
+      assertThat(query.list()).isEqualTo(expected(500));
+      producer.join();
+    }
+  }
+
+  @Test
+  public void demandAndCancel() {
+    AtomicBoolean closed = new AtomicBoolean();
+    Flow.Publisher<Row> rows =
+        Query.from(Item.range(100).onClose(() -> closed.set(true)), Item.class)
+            .select("id")
+            .toPublisher();
+    Collector collector = new Collector(3, 6);
+    rows.subscribe(collector);
+    assertThat(collector.rows)
+        .containsExactly(Row.of(0), Row.of(1), Row.of(2), Row.of(3), Row.of(4), Row.of(5));
+    assertThat(closed).isFalse();
+    collector.subscription.cancel();
+    assertThat(closed).isTrue();
+    assertThat(collector.complete).isFalse();
+
+    Collector second = new Collector(1, 1);
+    rows.subscribe(second);
+    assertThat(second.error).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  public void errors() {
+    Collector collector = new Collector(10, Integer.MAX_VALUE);
+    IllegalArgumentException failure = new IllegalArgumentException("failed");
+    Query.fromPublisher(new RangePublisher(20, failure), Item.class, 4)
+        .toPublisher()
+        .subscribe(collector);
+    assertThat(collector.rows).hasSize(20);
+    assertThat(collector.error).isSameAs(failure);
+
+    Collector invalid = new Collector(0, 0);
+    Query.fromPublisher(new RangePublisher(20, null), Item.class).toPublisher().subscribe(invalid);
+    assertThat(invalid.error).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void publisherIgnoringDemand() {
+    // Sends every item, then completes, without waiting for requests
+    Flow.Publisher<Item> eager =
+        subscriber -> {
+          subscriber.onSubscribe(
+              new Flow.Subscription() {
+                @Override
+                public void request(long n) {}
+
+                @Override
+                public void cancel() {}
+              });
+          IntStream.range(0, 3).forEach(id -> subscriber.onNext(Item.of(id)));
+          subscriber.onComplete();
+        };
+    assertTimeoutPreemptively(
+        Duration.ofSeconds(10),
+        () ->
+            assertThatThrownBy(() -> Query.fromPublisher(eager, Item.class, 2).list())
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("sent more items than were requested"));
+    assertTimeoutPreemptively(
+        Duration.ofSeconds(10),
+        () -> assertThat(Query.fromPublisher(eager, Item.class, 3).list()).hasSize(3));
+  }
+}
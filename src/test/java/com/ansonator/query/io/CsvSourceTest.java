@@ -0,0 +1,133 @@
+package com.ansonator.query.io;
+
+import static com.ansonator.query.Query.isLessThan;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.ansonator.query.Query;
+import com.ansonator.query.io.CsvSchema.Type;
+import com.ansonator.query.row.Row;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CsvSourceTest {
+  private static final CsvSchema SCHEMA =
+      CsvSchema.builder()
+          .column("id", Type.INT)
+          .column("name", Type.STRING)
+          .column("total", Type.LONG)
+          .column("price", Type.DOUBLE)
+          .column("active", Type.BOOLEAN)
+          .header()
+          .build();
+
+  @TempDir Path dir;
+
+  private Path write(String name, String text) throws IOException {
+    return Files.writeString(dir.resolve(name), text, StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void parse() throws IOException {
+    Path path =
+        write(
+            "items.csv",
+            "id,name,total,price,active\r\n"
+                + "1,plain,10,1.5,true\r\n"
+                + "2,\"a, \"\"quoted\"\" café\",-9000000000,-0.25,FALSE\r\n"
+                + "\r\n"
+                + "3,,,,\r\n"
+                + "4,\"\",7,1e3,true\n"
+                + "5,short\n");
+    assertThat(Query.fromCsv(path, SCHEMA).list())
+        .containsExactly(
+            Row.of(1, "plain", 10L, 1.5, true),
+            Row.of(2, "a, \"quoted\" café", -9_000_000_000L, -0.25, false),
+            Row.of(3, null, null, null, null),
+            Row.of(4, "", 7L, 1000.0, true),
+            Row.of(5, "short", null, null, null));
+    assertThat(Query.fromCsv(path, SCHEMA).select("price", "id").where(isLessThan("id", 3)).list())
+        .containsExactly(Row.of(1.5, 1), Row.of(-0.25, 2));
+
+    Path tsv = write("items.tsv", "1\ta,b\t2\n");
+    CsvSchema tabs =
+        CsvSchema.builder()
+            .column("id", Type.INT)
+            .column("name", Type.STRING)
+            .column("total", Type.LONG)
+            .delimiter('\t')
+            .build();
+    assertThat(Query.fromCsv(tsv, tabs).list()).containsExactly(Row.of(1, "a,b", 2L));
+  }
+
+  @Test
+  public void split() throws IOException {
+    String lines =
+        IntStream.range(0, 200_000)
+            .mapToObj(
+                i ->
+                    String.format(
+                        "%d,name %d,%d,%d.%02d,%s\n", i, i, i * 7L, i, i % 100, i % 3 == 0))
+            .collect(Collectors.joining());
+    Path path = write("large.csv", "id,name,total,price,active\n" + lines);
+    assertThat(Files.size(path)).isGreaterThan(4 * CsvSpliterator.MIN_SPLIT);
+    List<Row> expected = Query.fromCsv(path, SCHEMA).list();
+    assertThat(expected).hasSize(200_000);
+    assertThat(expected.get(12)).isEqualTo(Row.of(12, "name 12", 84L, 12.12, true));
+
+    // Split down to the minimum size. The parts, in order, hold every line exactly once.
+    List<Spliterator<Row>> parts = new ArrayList<>();
+    parts.add(new CsvSpliterator(path, Files.size(path), SCHEMA, new int[] {0, 1, 2, 3, 4}, 5));
+    for (int i = 0; i < parts.size(); ) {
+      Spliterator<Row> prefix = parts.get(i).trySplit();
+      if (prefix == null) {
+        i++;
+      } else {
+        parts.add(i, prefix);
+      }
+    }
+    assertThat(parts.size()).isGreaterThanOrEqualTo(4);
+    List<Row> actual = new ArrayList<>();
+    parts.forEach(part -> part.forEachRemaining(actual::add));
+    assertThat(actual).isEqualTo(expected);
+
+    assertThat(Query.fromCsv(path, SCHEMA, true).select("id", "price").list())
+        .containsExactlyInAnyOrderElementsOf(
+            expected.stream()
+                .map(row -> Row.of(row.get(0), row.get(3)))
+                .collect(Collectors.toList()));
+  }
+
+  @Test
+  public void invalidField() throws IOException {
+    Path path = write("bad.csv", "id,name,total,price,active\n1,a,12x,1.0,true\n");
+    assertThatThrownBy(() -> Query.fromCsv(path, SCHEMA).list())
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("Field [total] at byte [31]")
+        .hasMessageContaining("not a valid LONG: [12x]");
+    // Values which only the slow path rejects
+    for (String total : List.of("-", "\"\"", "1234567890123456789012x")) {
+      Path slow = write("slow.csv", "id,name,total,price,active\n1,a," + total + ",1.0,true\n");
+      assertThatThrownBy(() -> Query.fromCsv(slow, SCHEMA).list())
+          .isInstanceOf(IllegalArgumentException.class)
+          .isNotInstanceOf(NumberFormatException.class)
+          .hasMessageContaining("Field [total] at byte [")
+          .hasMessageContaining("not a valid LONG");
+    }
+    Path price = write("price.csv", "id,name,total,price,active\n1,a,1,+,true\n");
+    assertThatThrownBy(() -> Query.fromCsv(price, SCHEMA).list())
+        .isNotInstanceOf(NumberFormatException.class)
+        .hasMessageContaining("Field [price] at byte [33]");
+    // Fields which are not read are not decoded
+    assertThat(Query.fromCsv(path, SCHEMA).select("id").list()).containsExactly(Row.of(1));
+  }
+}
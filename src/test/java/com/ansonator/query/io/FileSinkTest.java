@@ -0,0 +1,148 @@
+package com.ansonator.query.io;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.ansonator.query.Query;
+import com.ansonator.query.io.CsvSchema.Type;
+import com.ansonator.query.row.Row;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FileSinkTest {
+  @Data
+  @AllArgsConstructor(staticName = "of")
+  @NoArgsConstructor
+  public static class Item {
+    private int id;
+    private String name;
+    private Long total;
+    private Double price;
+    private boolean active;
+  }
+
+  private static final CsvSchema SCHEMA =
+      CsvSchema.builder()
+          .column("id", Type.INT)
+          .column("name", Type.STRING)
+          .column("total", Type.LONG)
+          .column("price", Type.DOUBLE)
+          .column("active", Type.BOOLEAN)
+          .header()
+          .build();
+
+  private static final List<Item> ITEMS =
+      List.of(
+          Item.of(1, "plain", 10L, 1.5, true),
+          Item.of(-2, "a, \"quoted\"\tcafé", Long.MIN_VALUE, -0.25, false),
+          Item.of(3, "", null, null, true),
+          Item.of(4, null, 0L, 1e-7, false));
+
+  private static Stream<Item> items(int size) {
+    return IntStream.range(0, size)
+        .mapToObj(i -> Item.of(i, "name " + i, i * 31L, i / 8.0, i % 2 == 0));
+  }
+
+  @TempDir Path dir;
+
+  @Test
+  public void csv() throws IOException {
+    Path path = dir.resolve("items.csv");
+    assertThat(Query.from(ITEMS.stream(), Item.class).toCsv(path)).isEqualTo(4);
+    assertThat(Files.readAllLines(path).get(0)).isEqualTo("id,name,total,price,active");
+    assertThat(Query.fromCsv(path, SCHEMA).list())
+        .containsExactly(
+            Row.of(1, "plain", 10L, 1.5, true),
+            Row.of(-2, "a, \"quoted\"\tcafé", Long.MIN_VALUE, -0.25, false),
+            Row.of(3, "", null, null, true),
+            Row.of(4, null, 0L, 1e-7, false));
+
+    Path tsv = dir.resolve("items.tsv");
+    Query.from(ITEMS.stream(), Item.class)
+        .select("id", "name")
+        .toCsv(tsv, WriteOptions.builder().delimiter('\t').noHeader().build());
+    assertThat(Files.readAllLines(tsv, StandardCharsets.UTF_8))
+        .containsExactly("1\tplain", "-2\t\"a, \"\"quoted\"\"\tcafé\"", "3\t\"\"", "4\t");
+  }
+
+  @Test
+  public void lineBreaksAreQuoted() throws IOException {
+    Path path = dir.resolve("breaks.csv");
+    Query.from(Stream.of(Item.of(1, "two\nlines", 2L, 0.5, true)), Item.class)
+        .select("id", "name")
+        .toCsv(path, WriteOptions.builder().noHeader().build());
+    assertThat(Files.readString(path)).isEqualTo("1,\"two\nlines\"\n");
+    // CsvSource splits lines at every line break, so this does not read back
+    CsvSchema schema =
+        CsvSchema.builder().column("id", Type.INT).column("name", Type.STRING).build();
+    assertThatThrownBy(() -> Query.fromCsv(path, schema).list())
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("is not a valid INT: [lines\"]");
+  }
+
+  @Test
+  public void jsonLines() throws IOException {
+    Path path = dir.resolve("items.json");
+    Query.from(ITEMS.stream(), Item.class).toJsonLines(path);
+    List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+    assertThat(lines).hasSize(4);
+    assertThat(lines.get(0))
+        .isEqualTo("{\"id\":1,\"name\":\"plain\",\"total\":10,\"price\":1.5,\"active\":true}");
+    Map<?, ?> second = new ObjectMapper().readValue(lines.get(1), Map.class);
+    assertThat(second.get("name")).isEqualTo("a, \"quoted\"\tcafé");
+    assertThat(second.get("total")).isEqualTo(Long.MIN_VALUE);
+    assertThat(lines.get(3)).contains("\"name\":null");
+  }
+
+  @Test
+  public void parallelGzip() throws IOException {
+    Path plain = dir.resolve("plain.json");
+    Query.from(items(50_000), Item.class).toJsonLines(plain);
+    Path sequential = dir.resolve("sequential.json.gz");
+    Query.from(items(50_000), Item.class)
+        .toJsonLines(sequential, WriteOptions.builder().gzip().build());
+    Path parallel = dir.resolve("parallel.json.gz");
+    assertThat(
+            Query.from(items(50_000), Item.class)
+                .toJsonLines(parallel, WriteOptions.builder().gzip().parallel(3).build()))
+        .isEqualTo(50_000);
+    byte[] expected = Files.readAllBytes(plain);
+    assertThat(gunzip(sequential)).isEqualTo(expected);
+    assertThat(gunzip(parallel)).isEqualTo(expected);
+
+    Path csv = dir.resolve("parallel.csv");
+    Query.from(items(50_000), Item.class).toCsv(csv, WriteOptions.builder().parallel(3).build());
+    assertThat(Query.fromCsv(csv, SCHEMA).list())
+        .isEqualTo(
+            items(50_000)
+                .map(i -> Row.of(i.getId(), i.getName(), i.getTotal(), i.getPrice(), i.isActive()))
+                .collect(Collectors.toList()));
+
+    Path empty = dir.resolve("empty.csv.gz");
+    Query.from(Stream.<Item>empty(), Item.class)
+        .toCsv(empty, WriteOptions.builder().gzip().parallel(2).build());
+    assertThat(new String(gunzip(empty), StandardCharsets.UTF_8))
+        .isEqualTo("id,name,total,price,active\n");
+  }
+
+  private static byte[] gunzip(Path path) throws IOException {
+    try (InputStream in = new GZIPInputStream(Files.newInputStream(path))) {
+      return in.readAllBytes();
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package com.ansonator.query.plan;
+
+import static com.ansonator.query.Query.isEqual;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ansonator.query.Query;
+import com.ansonator.test.data.Item;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+public class ExplainNodeTest {
+
+  private static final List<Item> items =
+      IntStream.range(0, 1000)
+          .mapToObj(i -> Item.of(i, i % 4 == 0 ? "red" : "blue"))
+          .collect(Collectors.toList());
+
+  private static Query query() {
+    return Query.from(items.stream(), Item.class).where(isEqual("color", "red")).select("id");
+  }
+
+  @Test
+  public void explain() {
+    ExplainNode root = query().explain();
+    assertThat(root.isAnalyzed()).isFalse();
+    assertThat(root.getOperator()).isEqualTo("Project[id]");
+    ExplainNode filter = root.getChildren().get(0);
+    assertThat(filter.getEstimatedRows()).isEqualTo(250);
+    ExplainNode scan = filter.getChildren().get(0);
+    assertThat(scan.getEstimatedRows()).isEqualTo(1000);
+    assertThat(scan.getColumns()).containsExactly("id", "color");
+    assertThat(root.toString()).contains("Filter[color = red] (estimated rows=250)");
+  }
+
+  @Test
+  public void explainAnalyze() {
+    ExplainNode root = query().explainAnalyze();
+    ExplainNode filter = root.getChildren().get(0);
+    ExplainNode scan = filter.getChildren().get(0);
+    assertThat(scan.getMetrics().getRowsOut()).isEqualTo(1000);
+    assertThat(filter.getRowsIn()).isEqualTo(1000);
+    assertThat(filter.getMetrics().getRowsOut()).isEqualTo(250);
+    assertThat(root.getMetrics().getRowsOut()).isEqualTo(250);
+    assertThat(root.getMetrics().getWallNanos())
+        .isGreaterThanOrEqualTo(scan.getMetrics().getWallNanos());
+    assertThat(root.getSelfWallNanos()).isNotNegative();
+    assertThat(root.toString()).contains("rows in=250 out=250");
+  }
+
+  @Test
+  public void explainAnalyzeStatesMode() {
+    assertThat(query().explainAnalyze().toString()).startsWith("Project[id]");
+    assertThat(query().compiled().explainAnalyze().toString())
+        .startsWith("Measured in row mode, not in compiled mode as the query runs\nProject[id]");
+    assertThat(query().batched().explainAnalyze().getNote()).contains("batched mode");
+  }
+}
@@ -0,0 +1,78 @@
+package com.ansonator.query.plan;
+
+import static com.ansonator.query.Query.isEqual;
+import static com.ansonator.query.Query.isGreaterThan;
+import static com.ansonator.query.Query.isLessThan;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ansonator.query.Query;
+import com.ansonator.query.cell.Aggregator;
+import com.ansonator.query.column.ColumnTable;
+import com.ansonator.query.row.Row;
+import com.ansonator.query.sort.SortKey;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+public class LateMaterializationTest {
+  // Wide rows: a key, a group and payload columns which only the output reads
+  private static final ColumnTable ORDERS =
+      ColumnTable.of(
+          IntStream.range(0, 5_000)
+              .mapToObj(i -> Row.of(i, i % 50, "order " + i, i * 1.5, "note " + i % 7)),
+          Schema.of(List.of("id", "customer", "description", "amount", "note")));
+  private static final ColumnTable CUSTOMERS =
+      ColumnTable.of(
+          IntStream.range(0, 50).mapToObj(i -> Row.of(i, "name " + i, "address " + i)),
+          Schema.of(List.of("customer", "name", "address")));
+
+  private static void assertSameRows(UnaryOperator<Query> query) {
+    List<Row> expected = query.apply(Query.from(ORDERS)).list();
+    assertThat(expected).isNotEmpty();
+    assertThat(query.apply(Query.from(ORDERS).lateMaterialized()).list()).isEqualTo(expected);
+    assertThat(query.apply(Query.from(ORDERS).lateMaterialized().batched()).list())
+        .isEqualTo(expected);
+  }
+
+  @Test
+  public void fetchAboveFilterAndSort() {
+    Query query =
+        Query.from(ORDERS)
+            .lateMaterialized()
+            .where(isLessThan("customer", 3))
+            .orderBy(SortKey.desc("id"))
+            .limit(10);
+    String plan = query.explain().toString();
+    assertThat(plan).contains("Fetch[description by $row_id0");
+    assertThat(plan).contains("Scan[Columns(5000) with $row_id0 [id, customer, $row_id0]");
+    assertSameRows(q -> q.where(isLessThan("customer", 3)).orderBy(SortKey.desc("id")).limit(10));
+    assertSameRows(q -> q.where(isGreaterThan("amount", 7000.0)).select("note", "id"));
+  }
+
+  @Test
+  public void fetchAboveJoin() {
+    Query query =
+        Query.from(ORDERS)
+            .lateMaterialized()
+            .where(isEqual("id", 7).or(isEqual("id", 4242)))
+            .join(Query.from(CUSTOMERS))
+            .using("customer");
+    assertThat(query.explain().toString()).contains("$row_id1");
+    assertSameRows(
+        q ->
+            q.where(isEqual("id", 7).or(isEqual("id", 4242)))
+                .join(Query.from(CUSTOMERS))
+                .using("customer"));
+  }
+
+  @Test
+  public void fetchBelowAggregate() {
+    assertSameRows(
+        q ->
+            q.where(isLessThan("id", 100))
+                .select("customer", "amount")
+                .groupBy("customer", Aggregator.sum("amount"))
+                .orderBy("customer"));
+  }
+}
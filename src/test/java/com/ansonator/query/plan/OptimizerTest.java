@@ -0,0 +1,156 @@
+package com.ansonator.query.plan;
+
+import static com.ansonator.query.Query.isEqual;
+import static com.ansonator.query.Query.isTrue;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.ansonator.query.Query;
+import com.ansonator.query.row.Row;
+import com.ansonator.query.sort.SortKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.Test;
+
+public class OptimizerTest {
+
+  @Data
+  @AllArgsConstructor(staticName = "of")
+  @NoArgsConstructor
+  public static class Item {
+    private int id;
+    private String color;
+    private boolean active;
+  }
+
+  @Data
+  @AllArgsConstructor(staticName = "of")
+  @NoArgsConstructor
+  public static class Color {
+    private String color;
+    private String hex;
+  }
+
+  private static final List<Item> items =
+      IntStream.range(0, 100)
+          .mapToObj(i -> Item.of(i, i % 3 == 0 ? "red" : "blue", i % 2 == 0))
+          .collect(Collectors.toList());
+  private static final List<Color> colors =
+      List.of(Color.of("red", "#f00"), Color.of("blue", "#00f"), Color.of("green", "#0f0"));
+
+  private static List<PlanNode> flatten(PlanNode node) {
+    List<PlanNode> nodes = new ArrayList<>();
+    nodes.add(node);
+    node.getChildren().forEach(child -> nodes.addAll(flatten(child)));
+    return nodes;
+  }
+
+  private static Query joined() {
+    return Query.from(items.stream(), Item.class)
+        .join(Query.from(colors.stream(), Color.class))
+        .where(isTrue("active"), isEqual("right_color", "red"))
+        .on("color", "right_color")
+        .select("id", "hex");
+  }
+
+  @Test
+  public void pushDownFilterAndChooseHashJoin() {
+    PlanNode plan = new Optimizer().optimize(joined().getPlan());
+
+    JoinNode join =
+        flatten(plan).stream()
+            .filter(JoinNode.class::isInstance)
+            .map(JoinNode.class::cast)
+            .findFirst()
+            .get();
+    assertThat(join.getStrategy()).isEqualTo(JoinNode.Strategy.HASH);
+    assertThat(join.getLeftKeys()).containsExactly("color");
+    assertThat(join.getRightKeys()).containsExactly("color");
+    assertThat(join.getLeft()).isInstanceOf(FilterNode.class);
+    assertThat(join.getRight()).isInstanceOf(FilterNode.class);
+    assertThat(((FilterNode) join.getRight()).getAliases()).containsEntry("right_color", "color");
+    // Only the columns which are read survive
+    assertThat(join.getLeft().getChild().getSchema().getNames())
+        .containsExactly("id", "color", "active");
+    assertThat(join.getRight().getChild().getSchema().getNames()).containsExactly("color", "hex");
+    assertThat(plan.getSchema().getNames()).containsExactly("id", "hex");
+
+    List<Row> expected =
+        items.stream()
+            .filter(item -> item.isActive() && item.getColor().equals("red"))
+            .map(item -> Row.of(item.getId(), "#f00"))
+            .collect(Collectors.toList());
+    assertThat(joined().list()).containsExactlyElementsOf(expected);
+  }
+
+  @Test
+  public void threeWayJoinOnSharedColumn() {
+    Query query =
+        Query.from(items.stream(), Item.class)
+            .join(Query.from(colors.stream(), Color.class))
+            .join(Query.from(colors.stream(), Color.class));
+    assertThat(query.getSelectedColumns().keySet())
+        .containsExactly(
+            "id", "color", "active", "right_color", "hex", "right_color_2", "right_hex");
+    List<Row> actual =
+        query
+            .on("color", "right_color")
+            .on("color", "right_color_2")
+            .where(isEqual("id", 3))
+            .select("id", "hex", "right_hex")
+            .list();
+    assertThat(actual).containsExactly(Row.of(3, "#f00", "#f00"));
+
+    List<Row> using =
+        Query.from(items.stream(), Item.class)
+            .join(Query.from(colors.stream(), Color.class))
+            .on("color", "right_color")
+            .join(Query.from(colors.stream(), Color.class))
+            .using("color")
+            .where(isEqual("id", 4))
+            .list();
+    assertThat(using).containsExactly(Row.of(4, "blue", true, "blue", "#00f"));
+  }
+
+  @Test
+  public void pushDownLimit() {
+    Query query =
+        Query.from(items.stream(), Item.class).orderBy(SortKey.desc("id")).select("id").limit(3);
+    PlanNode plan = new Optimizer().optimize(query.getPlan());
+    // The projection moves into the scan, leaving a top-N sort over a single column
+    assertThat(plan).isInstanceOf(SortNode.class);
+    assertThat(((SortNode) plan).getLimit()).isEqualTo(3);
+    assertThat(plan.getChild().getSchema().getNames()).containsExactly("id");
+    assertThat(query.list()).containsExactly(Row.of(99), Row.of(98), Row.of(97));
+  }
+
+  @Test
+  public void opaqueMatchersAreNotMoved() {
+    Query query =
+        Query.from(items.stream(), Item.class)
+            .select("id", "active")
+            .where((row, columns) -> (Integer) row.get(0) < 10);
+    PlanNode plan = new Optimizer().optimize(query.getPlan());
+    assertThat(plan).isInstanceOf(FilterNode.class);
+    assertThat(query.list()).hasSize(10);
+  }
+
+  @Test
+  public void filtersOnDroppedColumnsStayAboveProjection() {
+    Query query =
+        Query.from(items.stream(), Item.class)
+            .select("id", "active")
+            .where(isTrue("active"), isEqual("color", "red"));
+    PlanNode plan = new Optimizer().optimize(query.getPlan());
+    assertThat(plan).isInstanceOf(FilterNode.class);
+    assertThat(((FilterNode) plan).getMatcher().getColumns()).containsExactly("color");
+    assertThatThrownBy(query::list)
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Column [color] not found");
+  }
+}
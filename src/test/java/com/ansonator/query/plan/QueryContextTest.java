@@ -0,0 +1,101 @@
+package com.ansonator.query.plan;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.ansonator.query.Query;
+import com.ansonator.query.cell.Aggregator;
+import com.ansonator.query.row.Row;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.Test;
+
+public class QueryContextTest {
+
+  @Data
+  @AllArgsConstructor(staticName = "of")
+  @NoArgsConstructor
+  public static class Item {
+    private int id;
+    private String name;
+  }
+
+  private static Stream<Item> items(int size) {
+    return IntStream.range(0, size).mapToObj(i -> Item.of(i, "item number " + (size - i)));
+  }
+
+  @Test
+  public void groupByExceedsLimit() {
+    for (UnaryOperator<Query> mode :
+        List.<UnaryOperator<Query>>of(q -> q, Query::batched, Query::compiled)) {
+      QueryContext context = new QueryContext(1 << 20, Duration.ZERO);
+      Query query =
+          mode.apply(Query.from(items(100_000), Item.class).groupBy("id", Aggregator.sum("id")));
+      assertThatThrownBy(() -> query.list(context))
+          .isInstanceOf(QueryMemoryExceededException.class)
+          .hasMessageContaining("Aggregate");
+      assertThat(context.getReservedBytes()).isLessThanOrEqualTo(1 << 20);
+    }
+  }
+
+  @Test
+  public void joinExceedsLimit() {
+    QueryContext context = new QueryContext(1 << 20, Duration.ZERO);
+    assertThatThrownBy(() -> join().list(context))
+        .isInstanceOf(QueryMemoryExceededException.class)
+        .hasMessageContaining("HashJoin");
+    assertThat(join().list(new QueryContext(64 << 20, Duration.ZERO))).hasSize(10);
+  }
+
+  private static Query join() {
+    return Query.from(items(10), Item.class)
+        .join(Query.from(items(100_000), Item.class))
+        .on("id", "right_id");
+  }
+
+  @Test
+  public void sortSpillsWithinLimit() {
+    QueryContext context = new QueryContext(4 << 20, Duration.ZERO);
+    List<Row> actual = Query.from(items(100_000), Item.class).orderBy("name").list(context);
+    List<Row> expected = Query.from(items(100_000), Item.class).orderBy("name").list();
+    assertThat(actual).isEqualTo(expected);
+    assertThat(context.getReservedBytes()).isLessThanOrEqualTo(2 << 20);
+  }
+
+  @Test
+  public void timeout() {
+    QueryContext context = new QueryContext(Long.MAX_VALUE, Duration.ofMillis(50));
+    Query query =
+        Query.from(Stream.generate(() -> Item.of(1, "a")), Item.class)
+            .where(Query.isEqual("id", 2));
+    assertThatThrownBy(() -> query.list(context))
+        .isInstanceOfSatisfying(
+            QueryCancelledException.class, e -> assertThat(e.isTimedOut()).isTrue());
+  }
+
+  @Test
+  public void cancel() {
+    QueryContext context = QueryContext.unlimited();
+    AtomicInteger read = new AtomicInteger();
+    Query query =
+        Query.from(items(1_000_000), Item.class)
+            .peek(
+                row -> {
+                  if (read.incrementAndGet() == 10_000) {
+                    context.cancel();
+                  }
+                })
+            .groupBy("name", Aggregator.sum("id"));
+    assertThatThrownBy(() -> query.list(context))
+        .isInstanceOfSatisfying(
+            QueryCancelledException.class, e -> assertThat(e.isTimedOut()).isFalse());
+    assertThat(read.get()).isLessThan(10_000 + QueryContext.CHECK_INTERVAL);
+  }
+}
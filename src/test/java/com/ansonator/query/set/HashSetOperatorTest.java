@@ -0,0 +1,93 @@
+package com.ansonator.query.set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ansonator.query.row.Row;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Multisets;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class HashSetOperatorTest {
+  private static final List<Row> LEFT = randomRows(5000, 1);
+  private static final List<Row> RIGHT = randomRows(3000, 2);
+
+  private static List<Row> randomRows(int size, long seed) {
+    Random random = new Random(seed);
+    return IntStream.range(0, size)
+        .mapToObj(i -> Row.of(random.nextInt(40), "v" + random.nextInt(30)))
+        .collect(Collectors.toList());
+  }
+
+  private static List<Row> collect(Stream<Row> stream) {
+    try (stream) {
+      return stream.collect(Collectors.toList());
+    }
+  }
+
+  private static void assertNoSpillFiles(Path tempDir) throws IOException {
+    try (Stream<Path> files = Files.list(tempDir)) {
+      assertThat(files).isEmpty();
+    }
+  }
+
+  @Test
+  public void distinctKeepsFirstOccurrenceInOrder(@TempDir Path tempDir) throws IOException {
+    List<Row> actual = collect(HashSetOperator.of(Long.MAX_VALUE, tempDir).distinct(LEFT.stream()));
+    assertThat(actual)
+        .containsExactlyElementsOf(LEFT.stream().distinct().collect(Collectors.toList()));
+    assertNoSpillFiles(tempDir);
+  }
+
+  @Test
+  public void distinctSpills(@TempDir Path tempDir) throws IOException {
+    List<Row> actual = collect(HashSetOperator.of(32 << 10, tempDir).distinct(LEFT.stream()));
+    assertThat(actual)
+        .containsExactlyInAnyOrderElementsOf(LEFT.stream().distinct().collect(Collectors.toList()));
+    assertNoSpillFiles(tempDir);
+  }
+
+  @Test
+  public void intersectAndExcept(@TempDir Path tempDir) throws IOException {
+    Multiset<Row> left = HashMultiset.create(LEFT);
+    Multiset<Row> right = HashMultiset.create(RIGHT);
+    for (long budget : new long[] {Long.MAX_VALUE, 32 << 10}) {
+      HashSetOperator operator = HashSetOperator.of(budget, tempDir);
+      assertThat(collect(operator.intersect(LEFT.stream(), RIGHT.stream(), true)))
+          .containsExactlyInAnyOrderElementsOf(Multisets.intersection(left, right));
+      assertThat(collect(operator.intersect(LEFT.stream(), RIGHT.stream(), false)))
+          .containsExactlyInAnyOrderElementsOf(Multisets.intersection(left, right).elementSet());
+      assertThat(collect(operator.except(LEFT.stream(), RIGHT.stream(), true)))
+          .containsExactlyInAnyOrderElementsOf(Multisets.difference(left, right));
+      assertThat(collect(operator.except(LEFT.stream(), RIGHT.stream(), false)))
+          .containsExactlyInAnyOrderElementsOf(
+              left.elementSet().stream()
+                  .filter(row -> !right.contains(row))
+                  .collect(Collectors.toList()));
+      assertNoSpillFiles(tempDir);
+    }
+  }
+
+  @Test
+  public void arraysAreComparedByValue(@TempDir Path tempDir) throws IOException {
+    Row ints = Row.of(1, new int[] {1, 2});
+    Row bytes = Row.of(1, new byte[] {1, 2});
+    assertThat(RowFingerprint.of(Row.of(1, new int[] {1, 2}))).isEqualTo(RowFingerprint.of(ints));
+    assertThat(RowFingerprint.of(Row.of(1, new byte[] {1, 2}))).isEqualTo(RowFingerprint.of(bytes));
+    List<Row> actual =
+        collect(
+            HashSetOperator.of(Long.MAX_VALUE, tempDir)
+                .distinct(Stream.of(ints, Row.of(1, new int[] {1, 2}), bytes)));
+    assertThat(actual).containsExactly(ints, bytes);
+    assertNoSpillFiles(tempDir);
+  }
+}
@@ -0,0 +1,110 @@
+package com.ansonator.query.sort;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ansonator.query.Query;
+import com.ansonator.query.row.Row;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ExternalSorterTest {
+  private static final Comparator<Row> BY_KEY = Comparator.comparing(row -> (Integer) row.get(0));
+
+  private static List<Row> randomRows(int size) {
+    Random random = new Random(42);
+    return IntStream.range(0, size)
+        .mapToObj(i -> Row.of(random.nextInt(100), i, "name" + i))
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void sortsWithinBudget(@TempDir Path tempDir) throws IOException {
+    List<Row> input = randomRows(1000);
+    List<Row> actual =
+        ExternalSorter.of(BY_KEY, Long.MAX_VALUE, tempDir)
+            .sort(input.stream())
+            .collect(Collectors.toList());
+    assertThat(actual).isEqualTo(input.stream().sorted(BY_KEY).collect(Collectors.toList()));
+    try (Stream<Path> files = Files.list(tempDir)) {
+      assertThat(files).isEmpty();
+    }
+  }
+
+  @Test
+  public void spillsAndMergesStably(@TempDir Path tempDir) throws IOException {
+    List<Row> input = randomRows(10_000);
+    ExternalSorter sorter = new ExternalSorter(new InMemorySorter(BY_KEY), 8 << 10, tempDir, 4);
+    try (Stream<Row> sorted = sorter.sort(input.stream())) {
+      List<Row> actual = sorted.collect(Collectors.toList());
+      // Stream.sorted is stable, so ties on the key must keep their input order here too.
+      assertThat(actual).isEqualTo(input.stream().sorted(BY_KEY).collect(Collectors.toList()));
+    }
+    try (Stream<Path> files = Files.list(tempDir)) {
+      assertThat(files).isEmpty();
+    }
+  }
+
+  @Test
+  public void exhaustedRunsAreDeletedWithoutClose(@TempDir Path tempDir) throws IOException {
+    ExternalSorter sorter = new ExternalSorter(new InMemorySorter(BY_KEY), 8 << 10, tempDir, 4);
+    assertThat(sorter.sort(randomRows(10_000).stream()).count()).isEqualTo(10_000);
+    assertNoSpillFiles(tempDir);
+  }
+
+  @Data
+  @AllArgsConstructor(staticName = "of")
+  @NoArgsConstructor
+  public static class Item {
+    private int id;
+    private String name;
+  }
+
+  @Test
+  public void queryListDeletesRuns(@TempDir Path tempDir) throws IOException {
+    String tmpdir = System.getProperty("java.io.tmpdir");
+    System.setProperty("java.io.tmpdir", tempDir.toString());
+    try {
+      List<Row> actual =
+          Query.from(
+                  IntStream.range(0, 20_000)
+                      .mapToObj(i -> Item.of(i, "name" + (i * 7919 % 20_000))),
+                  Item.class)
+              .orderBy(1 << 14, "name")
+              .list();
+      assertThat(actual).hasSize(20_000);
+      assertThat(actual.get(0).get(1)).isEqualTo("name0");
+    } finally {
+      System.setProperty("java.io.tmpdir", tmpdir);
+    }
+    assertNoSpillFiles(tempDir);
+  }
+
+  private static void assertNoSpillFiles(Path tempDir) throws IOException {
+    try (Stream<Path> files = Files.list(tempDir)) {
+      assertThat(files).isEmpty();
+    }
+  }
+
+  @Test
+  public void closeRemovesRunsOfPartialMerge(@TempDir Path tempDir) throws IOException {
+    ExternalSorter sorter = new ExternalSorter(new InMemorySorter(BY_KEY), 8 << 10, tempDir, 64);
+    try (Stream<Row> sorted = sorter.sort(randomRows(10_000).stream())) {
+      assertThat(sorted.limit(5).map(row -> row.get(0))).containsOnly(0);
+    }
+    try (Stream<Path> files = Files.list(tempDir)) {
+      assertThat(files).isEmpty();
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package com.ansonator.query.sort;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ansonator.query.row.Row;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+public class InMemorySorterTest {
+  private static final Map<String, Integer> COLUMNS = ImmutableMap.of("n", 0, "s", 1, "d", 2);
+  private static final String[] STRINGS = {"", "a", "ab", "b", "B", "é", "￿", "a\u0000"};
+
+  private static List<Row> randomRows(int size) {
+    Random random = new Random(7);
+    return IntStream.range(0, size)
+        .mapToObj(
+            i ->
+                Row.of(
+                    random.nextInt(10) == 0 ? null : random.nextInt(41) - 20,
+                    random.nextInt(10) == 0 ? null : STRINGS[random.nextInt(STRINGS.length)],
+                    random.nextInt(10) == 0 ? null : random.nextGaussian()))
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void comparesNumbersNumerically() {
+    List<Row> actual =
+        new InMemorySorter(ImmutableList.of(SortKey.asc("n")), COLUMNS, false)
+            .sort(Stream.of(Row.of(10, "", 0.0), Row.of(9, "", 0.0), Row.of(-1, "", 0.0)))
+            .collect(Collectors.toList());
+    assertThat(actual.stream().map(row -> row.get(0))).containsExactly(-1, 9, 10);
+  }
+
+  @Test
+  public void placesNulls() {
+    Row nullRow = Row.of(null, "", 0.0);
+    List<Row> input = ImmutableList.of(Row.of(2, "", 0.0), nullRow, Row.of(1, "", 0.0));
+    assertThat(sort(input, false, SortKey.asc("n"))).endsWith(nullRow);
+    assertThat(sort(input, false, SortKey.asc("n").nullsFirst())).startsWith(nullRow);
+    assertThat(sort(input, false, SortKey.desc("n"))).startsWith(nullRow);
+    assertThat(sort(input, false, SortKey.desc("n").nullsLast())).endsWith(nullRow);
+  }
+
+  @Test
+  public void normalizedKeysMatchComparator() {
+    List<Row> input = randomRows(5000);
+    SortKey[][] sorts = {
+      {SortKey.asc("n"), SortKey.asc("s")},
+      {SortKey.desc("s"), SortKey.asc("d").nullsFirst()},
+      {SortKey.asc("d"), SortKey.desc("n").nullsLast()},
+      {SortKey.desc("s").nullsLast(), SortKey.desc("n"), SortKey.asc("d")}
+    };
+    for (SortKey[] keys : sorts) {
+      assertThat(sort(input, true, keys)).isEqualTo(sort(input, false, keys));
+    }
+  }
+
+  @Test
+  public void radixSortMatchesComparator() {
+    Random random = new Random(11);
+    List<Row> input =
+        IntStream.range(0, 3 * InMemorySorter.PARALLEL_THRESHOLD)
+            .mapToObj(
+                i ->
+                    Row.of(
+                        random.nextInt(50) == 0
+                            ? null
+                            : random.nextBoolean() ? random.nextLong() : (long) random.nextInt(100),
+                        "",
+                        (double) i))
+            .collect(Collectors.toList());
+    for (SortKey key :
+        new SortKey[] {
+          SortKey.asc("n"),
+          SortKey.desc("n"),
+          SortKey.asc("n").nullsFirst(),
+          SortKey.desc("n").nullsLast()
+        }) {
+      List<Row> expected =
+          input.stream()
+              .sorted(RowComparators.of(List.of(key), COLUMNS))
+              .collect(Collectors.toList());
+      assertThat(sort(input, false, key)).isEqualTo(expected);
+    }
+  }
+
+  private static List<Row> sort(List<Row> input, boolean normalized, SortKey... keys) {
+    Row[] rows = input.toArray(new Row[0]);
+    new InMemorySorter(Arrays.asList(keys), COLUMNS, normalized).sort(rows);
+    return Arrays.asList(rows);
+  }
+}
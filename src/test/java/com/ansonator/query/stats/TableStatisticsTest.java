@@ -0,0 +1,97 @@
+package com.ansonator.query.stats;
+
+import static com.ansonator.query.Query.isEqual;
+import static com.ansonator.query.Query.isLessThan;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import com.ansonator.query.Query;
+import com.ansonator.query.cell.Aggregator;
+import com.ansonator.query.column.ColumnTable;
+import com.ansonator.query.plan.Schema;
+import com.ansonator.query.row.Row;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.Test;
+
+public class TableStatisticsTest {
+  @Data
+  @AllArgsConstructor(staticName = "of")
+  @NoArgsConstructor
+  public static class Reading {
+    private int id;
+    private String sensor;
+    private Double value;
+  }
+
+  // Sparse: most values are null
+  private static Stream<Reading> readings(int size) {
+    return IntStream.range(0, size)
+        .mapToObj(i -> Reading.of(i, "sensor " + i % 40, i % 10 == 0 ? i / 10.0 : null));
+  }
+
+  @Test
+  public void distinctCount() {
+    for (int size : List.of(10, 1_000, 100_000)) {
+      HyperLogLog sketch = new HyperLogLog();
+      IntStream.range(0, 3 * size).forEach(i -> sketch.add("value " + i % size));
+      assertThat((double) sketch.estimate()).isCloseTo(size, within(size * 0.05));
+    }
+  }
+
+  @Test
+  public void collectWhileScanning() {
+    Query query = Query.from(readings(10_000), Reading.class).collectStatistics();
+    assertThat(query.where(isLessThan("id", 100)).select("id", "value").list()).hasSize(100);
+    TableStatistics statistics = query.getStatistics();
+    assertThat(statistics.getRowCount()).isEqualTo(10_000);
+    ColumnStatistics value = statistics.getColumn("value");
+    assertThat(value.getCount()).isEqualTo(10_000);
+    assertThat(value.getNullCount()).isEqualTo(9_000);
+    assertThat(value.getMin()).isEqualTo(0.0);
+    assertThat(value.getMax()).isEqualTo(999.0);
+    assertThat((double) value.getDistinctCount()).isCloseTo(1_000, within(50.0));
+    // Never read
+    assertThat(statistics.getColumn("sensor").getCount()).isZero();
+
+    Query compiled = Query.from(readings(100), Reading.class).compiled().collectStatistics();
+    assertThat(compiled.select("sensor").list()).hasSize(100);
+    assertThat(compiled.getStatistics().getColumn("sensor").getDistinctCount())
+        .isCloseTo(40L, within(2L));
+    assertThat(Query.from(readings(100), Reading.class).getStatistics()).isNull();
+  }
+
+  @Test
+  public void estimatesUseStatistics() {
+    ColumnTable table = Query.from(readings(10_000), Reading.class).toColumnTable();
+    assertThat(table.getStatistics().getColumn("sensor").getDistinctCount())
+        .isCloseTo(40L, within(2L));
+    assertThat(Query.from(table).getStatistics()).isSameAs(table.getStatistics());
+
+    assertThat(Query.from(table).where(isEqual("sensor", "sensor 1")).explain().getEstimatedRows())
+        .isCloseTo(250L, within(15L));
+    assertThat(Query.from(table).where(isLessThan("id", 2_500)).explain().getEstimatedRows())
+        .isCloseTo(2_500L, within(5L));
+    assertThat(
+            Query.from(table)
+                .groupBy("sensor", Aggregator.sum("value"))
+                .explain()
+                .getEstimatedRows())
+        .isCloseTo(40L, within(2L));
+    ColumnTable sensors =
+        ColumnTable.of(
+            IntStream.range(0, 40).mapToObj(i -> Row.of("sensor " + i, i % 3)),
+            Schema.of(List.of("sensor", "site")));
+    assertThat(
+            Query.from(table)
+                .join(Query.from(sensors))
+                .using("sensor")
+                .explain()
+                .getEstimatedRows())
+        .isCloseTo(10_000L, within(500L));
+  }
+}
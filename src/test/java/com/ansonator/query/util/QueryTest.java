@@ -6,6 +6,9 @@ import static org.assertj.core.api.Assertions.assertThat;
 import com.ansonator.query.Query;
 import com.ansonator.query.cell.Aggregator;
 import com.ansonator.query.row.Row;
+import com.ansonator.query.sort.SortKey;
+import com.ansonator.query.window.WindowFunction;
+import com.ansonator.query.window.WindowSpec;
 import com.ansonator.test.random.RepeatingRandomizer;
 import com.google.common.collect.ImmutableList;
 import java.util.Comparator;
@@ -138,6 +141,45 @@ public class QueryTest {
         .containsExactlyElementsOf(expected);
   }
 
+  @Test
+  public void orderByWithMemoryBudget() {
+    List<Row> actual =
+        Query.from(data.stream(), Participant.class)
+            .select("id", "name", "species")
+            .orderBy(1 << 10, "id", "name")
+            .list();
+    List<Row> expected =
+        Query.from(data.stream(), Participant.class)
+            .select("id", "name", "species")
+            .orderBy("id", "name")
+            .list();
+    assertThat(actual).containsExactlyElementsOf(expected);
+  }
+
+  @Test
+  public void orderBySortKeys() {
+    List<Row> actual =
+        Query.from(data.stream(), Participant.class)
+            .select("id", "name")
+            .orderBy(SortKey.desc("id"), SortKey.asc("name"))
+            .list();
+    List<Row> normalized =
+        Query.from(data.stream(), Participant.class)
+            .select("id", "name")
+            .orderByNormalized(SortKey.desc("id"), SortKey.asc("name"))
+            .list();
+    List<Row> expected =
+        data.stream()
+            .sorted(
+                Comparator.comparing(Participant::getId)
+                    .reversed()
+                    .thenComparing(Participant::getName))
+            .map(p -> Row.of(p.getId(), p.getName()))
+            .collect(Collectors.toList());
+    assertThat(actual).containsExactlyElementsOf(expected);
+    assertThat(normalized).containsExactlyElementsOf(expected);
+  }
+
   @Test
   public void where() throws NoSuchFieldException, SecurityException {
     List<Participant> actual =
@@ -230,6 +272,74 @@ public class QueryTest {
     assertThat(actual).containsExactlyInAnyOrderElementsOf(expected);
   }
 
+  @Test
+  public void setOperations() {
+    List<Row> distinct =
+        Query.from(data.stream(), Participant.class).select("id", "species").distinct().list();
+    assertThat(distinct)
+        .containsExactlyElementsOf(
+            data.stream()
+                .map(p -> Row.of(p.getId(), p.getSpecies()))
+                .distinct()
+                .collect(Collectors.toList()));
+
+    List<Row> registered =
+        Query.from(data.stream(), Participant.class)
+            .select("id", "species")
+            .intersect(
+                Query.from(data.stream(), Participant.class)
+                    .where(isTrue("registered"))
+                    .select("id", "species"))
+            .list();
+    assertThat(registered)
+        .containsExactlyInAnyOrderElementsOf(
+            data.stream()
+                .filter(Participant::isRegistered)
+                .map(p -> Row.of(p.getId(), p.getSpecies()))
+                .distinct()
+                .collect(Collectors.toList()));
+
+    List<Row> none =
+        Query.from(data.stream(), Participant.class)
+            .select("id", "species")
+            .except(Query.from(data.stream(), Participant.class).select("id", "species"))
+            .list();
+    assertThat(none).isEmpty();
+  }
+
+  @Test
+  public void window() {
+    WindowSpec spec = WindowSpec.partitionBy("species").thenOrderBy(SortKey.asc("id"));
+    Query query =
+        Query.from(data.stream(), Participant.class)
+            .select("id", "species")
+            .orderBy(SortKey.asc("species"), SortKey.asc("id"))
+            .window(spec, WindowFunction.rowNumber("rn"), WindowFunction.runningSum("total", "id"));
+    assertThat(query.getSelectedColumns().keySet()).containsExactly("id", "species", "rn", "total");
+    List<Row> actual = query.list();
+    List<Row> unsorted =
+        Query.from(data.stream(), Participant.class)
+            .select("id", "species")
+            .window(spec, WindowFunction.rowNumber("rn"), WindowFunction.runningSum("total", "id"))
+            .list();
+    assertThat(unsorted).isEqualTo(actual);
+
+    String species = null;
+    long rowNumber = 0;
+    long total = 0;
+    for (Row row : actual) {
+      if (!row.get(1).equals(species)) {
+        species = (String) row.get(1);
+        rowNumber = 0;
+        total = 0;
+      }
+      rowNumber++;
+      total += (Integer) row.get(0);
+      assertThat(row.get(2)).isEqualTo(rowNumber);
+      assertThat(row.get(3)).isEqualTo(total);
+    }
+  }
+
   @Test
   public void everything() {
     RepeatingRandomizer<String> color =
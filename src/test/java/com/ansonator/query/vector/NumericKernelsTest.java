@@ -0,0 +1,77 @@
+package com.ansonator.query.vector;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+public class NumericKernelsTest {
+  private static final int SIZE = 1003;
+
+  private final Random random = new Random(42);
+  private final NumericKernels vector = new VectorKernels();
+  private final NumericKernels scalar = new ScalarKernels();
+
+  private int[] dense() {
+    return IntStream.range(0, SIZE).toArray();
+  }
+
+  private int[] sparse() {
+    return IntStream.range(0, SIZE).filter(i -> random.nextInt(3) > 0).toArray();
+  }
+
+  @Test
+  public void select() {
+    select(random.longs(SIZE, -50, 50).toArray(), random.doubles(SIZE, -50, 50).toArray());
+    // Ascending, so most vectors match entirely or not at all
+    select(
+        IntStream.range(0, SIZE).mapToLong(i -> i - 300).toArray(),
+        IntStream.range(0, SIZE).mapToDouble(i -> i - 300.5).toArray());
+  }
+
+  private void select(long[] longs, double[] doubles) {
+    doubles[5] = Double.NaN;
+    for (Comparison comparison : Comparison.values()) {
+      for (int[] selection : new int[][] {dense(), sparse()}) {
+        int[] expected = selection.clone();
+        int[] actual = selection.clone();
+        int matched = scalar.select(longs, comparison, 7L, expected, expected.length);
+        assertThat(vector.select(longs, comparison, 7L, actual, actual.length)).isEqualTo(matched);
+        assertThat(Arrays.copyOf(actual, matched)).isEqualTo(Arrays.copyOf(expected, matched));
+
+        expected = selection.clone();
+        actual = selection.clone();
+        matched = scalar.select(doubles, comparison, 0.5, expected, expected.length);
+        assertThat(vector.select(doubles, comparison, 0.5, actual, actual.length))
+            .isEqualTo(matched);
+        assertThat(Arrays.copyOf(actual, matched)).isEqualTo(Arrays.copyOf(expected, matched));
+      }
+    }
+  }
+
+  @Test
+  public void reduce() {
+    long[] longs = random.longs(SIZE).toArray();
+    double[] doubles = random.doubles(SIZE, -1e6, 1e6).toArray();
+    int[] rows = sparse();
+    for (int[] range : new int[][] {{0, rows.length}, {3, 4}, {1, 14}, {100, 117}}) {
+      reduce(longs, doubles, rows, range[0], range[1]);
+      reduce(longs, doubles, dense(), range[0], range[1]);
+    }
+  }
+
+  private void reduce(long[] longs, double[] doubles, int[] rows, int from, int to) {
+    assertThat(vector.sum(longs, rows, from, to)).isEqualTo(scalar.sum(longs, rows, from, to));
+    assertThat(vector.min(longs, rows, from, to)).isEqualTo(scalar.min(longs, rows, from, to));
+    assertThat(vector.max(longs, rows, from, to)).isEqualTo(scalar.max(longs, rows, from, to));
+    assertThat(vector.min(doubles, rows, from, to)).isEqualTo(scalar.min(doubles, rows, from, to));
+    assertThat(vector.max(doubles, rows, from, to)).isEqualTo(scalar.max(doubles, rows, from, to));
+  }
+
+  @Test
+  public void preferVectorKernels() {
+    assertThat(NumericKernels.get()).isInstanceOf(VectorKernels.class);
+  }
+}
@@ -0,0 +1,117 @@
+package com.ansonator.query.vector;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares {@link ScalarKernels} and {@link VectorKernels} on one batch of rows. Run {@link #main}
+ * from the test classpath, e.g.
+ *
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java --add-modules jdk.incubator.vector -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *   com.ansonator.query.vector.VectorKernelsBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(
+    value = 1,
+    jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class VectorKernelsBenchmark {
+  private static final int SIZE = 1 << 10;
+
+  @Param({"scalar", "vector"})
+  private String kernels;
+
+  private NumericKernels impl;
+  // Uniformly random, so most vectors have some lanes which match and some which do not
+  private long[] random;
+  // Ascending, like an id or a timestamp
+  private long[] clustered;
+  private double[] clusteredDoubles;
+  private int[] dense;
+  private int[] sparse;
+  private int[] selection;
+
+  @Setup
+  public void setup() {
+    impl = kernels.equals("vector") ? new VectorKernels() : new ScalarKernels();
+    Random rnd = new Random(42);
+    random = rnd.longs(SIZE, 0, SIZE).toArray();
+    clustered = IntStream.range(0, SIZE).mapToLong(i -> i).toArray();
+    clusteredDoubles = IntStream.range(0, SIZE).mapToDouble(i -> i / 4.0).toArray();
+    dense = IntStream.range(0, SIZE).toArray();
+    sparse = IntStream.range(0, SIZE).filter(i -> rnd.nextBoolean()).toArray();
+    selection = new int[SIZE];
+  }
+
+  private int select(long[] values, int[] rows) {
+    System.arraycopy(rows, 0, selection, 0, rows.length);
+    return impl.select(values, Comparison.LT, SIZE / 2, selection, rows.length);
+  }
+
+  @Benchmark
+  public int selectRandom() {
+    return select(random, dense);
+  }
+
+  @Benchmark
+  public int selectClustered() {
+    return select(clustered, dense);
+  }
+
+  @Benchmark
+  public int selectSparse() {
+    return select(random, sparse);
+  }
+
+  @Benchmark
+  public int selectClusteredDoubles() {
+    System.arraycopy(dense, 0, selection, 0, SIZE);
+    return impl.select(clusteredDoubles, Comparison.GE, SIZE / 16.0, selection, SIZE);
+  }
+
+  @Benchmark
+  public long sumContiguous() {
+    return impl.sum(random, dense, 0, SIZE);
+  }
+
+  @Benchmark
+  public long maxContiguous() {
+    return impl.max(random, dense, 0, SIZE);
+  }
+
+  @Benchmark
+  public double maxContiguousDoubles() {
+    return impl.max(clusteredDoubles, dense, 0, SIZE);
+  }
+
+  @Benchmark
+  public long sumScattered() {
+    return impl.sum(random, sparse, 0, sparse.length);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(VectorKernelsBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
@@ -0,0 +1,118 @@
+package com.ansonator.query.window;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ansonator.query.Query;
+import com.ansonator.query.cell.Aggregator;
+import com.ansonator.query.cell.NumericAggregate;
+import com.ansonator.query.row.Row;
+import com.google.common.collect.ImmutableMap;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.Test;
+
+public class TimeWindowOperatorTest {
+  private static final ImmutableMap<String, Integer> COLUMNS =
+      ImmutableMap.of("host", 0, "time", 1, "bytes", 2);
+  private static final Map<String, BinaryOperator<Object>> SUM =
+      Map.of("bytes", NumericAggregate.SUM);
+
+  @Data
+  @AllArgsConstructor(staticName = "of")
+  @NoArgsConstructor
+  public static class Event {
+    private String host;
+    private long time;
+    private long bytes;
+  }
+
+  private static List<Row> evaluate(TimeWindows windows, Row... rows) {
+    return new TimeWindowOperator(windows, List.of("host"), SUM, COLUMNS)
+        .evaluate(Stream.of(rows))
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void tumblingOverUnboundedInput() {
+    // One event per host every 100 ms, forever
+    Stream<Event> events =
+        Stream.iterate(0L, i -> i + 1).map(i -> Event.of(i % 2 == 0 ? "a" : "b", i / 2 * 100, i));
+    List<Row> actual =
+        Query.from(events, Event.class)
+            .groupBy(
+                TimeWindows.tumbling("time", Duration.ofSeconds(1)),
+                "host",
+                Aggregator.sum("bytes"))
+            .limit(4)
+            .list();
+    assertThat(actual)
+        .containsExactly(
+            Row.of("a", 900L, 90L, 0L, 1000L),
+            Row.of("b", 900L, 100L, 0L, 1000L),
+            Row.of("a", 1900L, 290L, 1000L, 2000L),
+            Row.of("b", 1900L, 300L, 1000L, 2000L));
+  }
+
+  @Test
+  public void sliding() {
+    TimeWindows windows = TimeWindows.sliding("time", Duration.ofMillis(10), Duration.ofMillis(5));
+    assertThat(evaluate(windows, Row.of("a", 3L, 1L), Row.of("a", 7L, 2L), Row.of("a", 12L, 4L)))
+        .containsExactly(
+            Row.of("a", 3L, 1L, -5L, 5L),
+            Row.of("a", 7L, 3L, 0L, 10L),
+            Row.of("a", 12L, 6L, 5L, 15L),
+            Row.of("a", 12L, 4L, 10L, 20L));
+  }
+
+  @Test
+  public void sessionsMergeOutOfOrderRows() {
+    TimeWindows windows =
+        TimeWindows.session("time", Duration.ofMillis(15))
+            .withWatermarkDelay(Duration.ofMillis(20));
+    List<Row> actual =
+        evaluate(
+            windows,
+            Row.of("a", 0L, 1L),
+            Row.of("a", 25L, 2L),
+            // Joins the two sessions above
+            Row.of("a", 12L, 4L),
+            Row.of("b", 13L, 8L),
+            Row.of("a", 100L, 16L));
+    assertThat(actual)
+        .containsExactly(
+            Row.of("b", 13L, 8L, 13L, 28L),
+            Row.of("a", 25L, 7L, 0L, 40L),
+            Row.of("a", 100L, 16L, 100L, 115L));
+  }
+
+  @Test
+  public void lateRows() {
+    List<Row> late = new ArrayList<>();
+    TimeWindows windows =
+        TimeWindows.tumbling("time", Duration.ofMillis(10))
+            .withAllowedLateness(Duration.ofMillis(5))
+            .onLateRow(late::add);
+    List<Row> actual =
+        evaluate(
+            windows,
+            Row.of("a", 1L, 1L),
+            Row.of("a", 14L, 2L),
+            // Within the allowed lateness of [0, 10)
+            Row.of("a", 2L, 4L),
+            Row.of("a", 15L, 8L),
+            // [0, 10) closed at 15
+            Row.of("a", 3L, 16L),
+            Row.of("a", null, 32L));
+    assertThat(actual)
+        .containsExactly(Row.of("a", 2L, 5L, 0L, 10L), Row.of("a", 15L, 10L, 10L, 20L));
+    assertThat(late).containsExactly(Row.of("a", 3L, 16L), Row.of("a", null, 32L));
+  }
+}
@@ -0,0 +1,67 @@
+package com.ansonator.query.window;
+
+import static com.ansonator.query.window.WindowFunction.lag;
+import static com.ansonator.query.window.WindowFunction.lead;
+import static com.ansonator.query.window.WindowFunction.movingAverage;
+import static com.ansonator.query.window.WindowFunction.rank;
+import static com.ansonator.query.window.WindowFunction.rowNumber;
+import static com.ansonator.query.window.WindowFunction.runningSum;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ansonator.query.row.Row;
+import com.ansonator.query.sort.SortKey;
+import com.google.common.collect.ImmutableMap;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+public class WindowOperatorTest {
+  private static final ImmutableMap<String, Integer> COLUMNS =
+      ImmutableMap.of("group", 0, "val", 1);
+
+  @Test
+  public void evaluatesUnboundedInputInOnePass() {
+    // An infinite input can only be evaluated if partitions are streamed.
+    Stream<Row> input = Stream.iterate(0, i -> i + 1).map(i -> Row.of(i / 4, i));
+    WindowSpec spec = WindowSpec.partitionBy("group").thenOrderBy(SortKey.asc("val")).presorted();
+    List<Row> actual =
+        new WindowOperator(
+                spec,
+                List.of(
+                    rowNumber("rn"),
+                    lag("prev", "val", 1),
+                    lead("next", "val", 2),
+                    runningSum("sum", "val"),
+                    movingAverage("avg", "val", 1, 1)),
+                COLUMNS)
+            .evaluate(input, List.of())
+            .limit(5)
+            .collect(Collectors.toList());
+    assertThat(actual)
+        .containsExactly(
+            Row.of(0, 0, 1L, null, 2, 0L, 0.5),
+            Row.of(0, 1, 2L, 0, 3, 1L, 1.0),
+            Row.of(0, 2, 3L, 1, null, 3L, 2.0),
+            Row.of(0, 3, 4L, 2, null, 6L, 2.5),
+            Row.of(1, 4, 1L, null, 6, 4L, 4.5));
+  }
+
+  @Test
+  public void sortsWhenRequired() {
+    Stream<Row> input =
+        Stream.of(Row.of("b", 2), Row.of("a", 5), Row.of("b", 1), Row.of("a", 5), Row.of("a", 3));
+    WindowSpec spec = WindowSpec.partitionBy("group").thenOrderBy(SortKey.desc("val"));
+    List<Row> actual =
+        new WindowOperator(spec, List.of(rank("rank")), COLUMNS)
+            .evaluate(input, List.of())
+            .collect(Collectors.toList());
+    assertThat(actual)
+        .containsExactly(
+            Row.of("a", 5, 1L),
+            Row.of("a", 5, 1L),
+            Row.of("a", 3, 3L),
+            Row.of("b", 2, 1L),
+            Row.of("b", 1, 2L));
+  }
+}
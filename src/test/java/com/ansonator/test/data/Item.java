@@ -0,0 +1,30 @@
+package com.ansonator.test.data;
+
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** The simplest bean a query can read: an id and a color. */
+@Data
+@AllArgsConstructor(staticName = "of")
+@NoArgsConstructor
+public class Item {
+  private int id;
+  private String color;
+
+  /**
+   * @return the item {@code id}, which is red when {@code id} is a multiple of 3 and blue otherwise
+   */
+  public static Item of(int id) {
+    return of(id, id % 3 == 0 ? "red" : "blue");
+  }
+
+  /**
+   * @return items {@code 0} to {@code size - 1}, colored as by {@link #of(int)}
+   */
+  public static Stream<Item> range(int size) {
+    return IntStream.range(0, size).mapToObj(Item::of);
+  }
+}